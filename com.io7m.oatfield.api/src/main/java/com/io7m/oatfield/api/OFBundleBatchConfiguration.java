@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.List;
+
+/**
+ * The parameters of a batch of bundle writes.
+ *
+ * <p>Bundles are written concurrently on a fixed pool of {@code parallelism}
+ * threads, each bundle being written entirely on one thread. The
+ * {@link OFBundleWriterConfiguration#parallelism()} of each item applies
+ * within its bundle, and is usually left at {@code 1} in a batch: the batch
+ * already keeps every thread busy when there are at least as many bundles
+ * as threads.</p>
+ *
+ * @param items       The bundles to write
+ * @param parallelism The maximum number of bundles written at once
+ *
+ * @see OFBundleWriterFactoryType#writeBatch(OFBundleBatchConfiguration)
+ */
+
+public record OFBundleBatchConfiguration(
+  List<OFBundleBatchItem> items,
+  int parallelism)
+{
+  /**
+   * The parameters of a batch of bundle writes.
+   *
+   * @param items       The bundles to write
+   * @param parallelism The maximum number of bundles written at once
+   */
+
+  public OFBundleBatchConfiguration
+  {
+    items = List.copyOf(items);
+
+    if (parallelism < 1) {
+      throw new IllegalArgumentException(
+        "Parallelism %d must be at least 1"
+          .formatted(Integer.valueOf(parallelism))
+      );
+    }
+  }
+
+  /**
+   * The parameters of a batch of bundle writes, writing one bundle at once
+   * per available processor.
+   *
+   * @param inItems The bundles to write
+   */
+
+  public OFBundleBatchConfiguration(
+    final List<OFBundleBatchItem> inItems)
+  {
+    this(inItems, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param inParallelism The maximum number of bundles written at once
+   *
+   * @return This configuration with the given parallelism
+   */
+
+  public OFBundleBatchConfiguration withParallelism(
+    final int inParallelism)
+  {
+    return new OFBundleBatchConfiguration(this.items, inParallelism);
+  }
+}
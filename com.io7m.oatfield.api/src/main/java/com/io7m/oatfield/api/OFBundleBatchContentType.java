@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.io.IOException;
+
+/**
+ * A procedure that adds the content of a bundle to a writer in a batch.
+ * Procedures are called concurrently on the threads of the batch, and so
+ * must not depend on shared mutable state without synchronization.
+ *
+ * @see OFBundleBatchItem
+ */
+
+@FunctionalInterface
+public interface OFBundleBatchContentType
+{
+  /**
+   * Add package declarations and files to the given writer. The writer is
+   * executed and closed by the batch when this method returns.
+   *
+   * @param writer The writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void addContent(OFBundleWriterType writer)
+    throws IOException;
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.Objects;
+
+/**
+ * The outcome of writing a single bundle in a batch.
+ */
+
+public sealed interface OFBundleBatchOutcomeType
+{
+  /**
+   * @return The configuration of the bundle
+   */
+
+  OFBundleWriterConfiguration configuration();
+
+  /**
+   * The bundle was written.
+   *
+   * @param configuration The configuration of the bundle
+   * @param result        The result of writing the bundle
+   */
+
+  record OFBatchWritten(
+    OFBundleWriterConfiguration configuration,
+    OFBundleWriteResult result)
+    implements OFBundleBatchOutcomeType
+  {
+    /**
+     * The bundle was written.
+     */
+
+    public OFBatchWritten
+    {
+      Objects.requireNonNull(configuration, "configuration");
+      Objects.requireNonNull(result, "result");
+    }
+  }
+
+  /**
+   * The bundle could not be written. The output may be incomplete.
+   *
+   * @param configuration The configuration of the bundle
+   * @param exception     The exception raised while writing the bundle
+   */
+
+  record OFBatchFailed(
+    OFBundleWriterConfiguration configuration,
+    Exception exception)
+    implements OFBundleBatchOutcomeType
+  {
+    /**
+     * The bundle could not be written.
+     */
+
+    public OFBatchFailed
+    {
+      Objects.requireNonNull(configuration, "configuration");
+      Objects.requireNonNull(exception, "exception");
+    }
+  }
+}
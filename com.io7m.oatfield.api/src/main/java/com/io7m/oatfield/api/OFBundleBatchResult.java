@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchFailed;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchWritten;
+
+import java.util.List;
+
+/**
+ * The result of writing a batch of bundles.
+ *
+ * @param outcomes The outcome of each bundle, in the order of the items
+ *                 in the batch
+ */
+
+public record OFBundleBatchResult(
+  List<OFBundleBatchOutcomeType> outcomes)
+{
+  /**
+   * The result of writing a batch of bundles.
+   *
+   * @param outcomes The outcome of each bundle, in the order of the items
+   *                 in the batch
+   */
+
+  public OFBundleBatchResult
+  {
+    outcomes = List.copyOf(outcomes);
+  }
+
+  /**
+   * @return The bundles that were written
+   */
+
+  public List<OFBatchWritten> written()
+  {
+    return this.outcomes.stream()
+      .filter(OFBatchWritten.class::isInstance)
+      .map(OFBatchWritten.class::cast)
+      .toList();
+  }
+
+  /**
+   * @return The bundles that could not be written
+   */
+
+  public List<OFBatchFailed> failed()
+  {
+    return this.outcomes.stream()
+      .filter(OFBatchFailed.class::isInstance)
+      .map(OFBatchFailed.class::cast)
+      .toList();
+  }
+
+  /**
+   * @return {@code true} if every bundle was written
+   */
+
+  public boolean isSuccessful()
+  {
+    return this.outcomes.stream().allMatch(OFBatchWritten.class::isInstance);
+  }
+}
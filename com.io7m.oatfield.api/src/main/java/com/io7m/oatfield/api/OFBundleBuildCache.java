@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The configuration of a local build cache for bundle writers. Bundles
+ * are cached by a hash of everything that determines their content: the
+ * compression and digest settings, the manifest, and the name, storage
+ * method and content of every entry. When a writer is executed with inputs
+ * that match a cached bundle, the cached bundle is copied to the output
+ * target instead of being written again.
+ *
+ * <p>The cache directory may be shared by writers in several processes.
+ * When the total size of the cache exceeds {@code maximumSize} bytes, the
+ * least recently used bundles are deleted.</p>
+ *
+ * @param directory   The cache directory
+ * @param maximumSize The maximum total size of the cache in bytes
+ */
+
+public record OFBundleBuildCache(
+  Path directory,
+  long maximumSize)
+{
+  /**
+   * The configuration of a local build cache.
+   *
+   * @param directory   The cache directory
+   * @param maximumSize The maximum total size of the cache in bytes
+   */
+
+  public OFBundleBuildCache
+  {
+    Objects.requireNonNull(directory, "directory");
+
+    if (maximumSize < 0L) {
+      throw new IllegalArgumentException(
+        "Maximum size %d must be non-negative"
+          .formatted(Long.valueOf(maximumSize))
+      );
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A single clause of an OSGi manifest header such as
+ * {@code Import-Package} or {@code Require-Capability}. A clause names
+ * one or more paths (packages, or capability namespaces) that share the
+ * same attributes and directives.
+ *
+ * @param names      The names of the clause
+ * @param attributes The attributes, with any type annotations removed
+ * @param directives The directives
+ *
+ * @see OFBundleReaderType#clauses(String)
+ */
+
+public record OFBundleClause(
+  List<String> names,
+  SortedMap<String, String> attributes,
+  SortedMap<String, String> directives)
+{
+  /**
+   * A single clause of an OSGi manifest header.
+   *
+   * @param names      The names of the clause
+   * @param attributes The attributes, with any type annotations removed
+   * @param directives The directives
+   */
+
+  public OFBundleClause
+  {
+    names = List.copyOf(names);
+    attributes = Collections.unmodifiableSortedMap(new TreeMap<>(attributes));
+    directives = Collections.unmodifiableSortedMap(new TreeMap<>(directives));
+
+    if (names.isEmpty()) {
+      throw new IllegalArgumentException("A clause must have at least one name");
+    }
+  }
+
+  /**
+   * @return The first name of the clause
+   */
+
+  public String name()
+  {
+    return this.names.get(0);
+  }
+
+  /**
+   * @param name The attribute name
+   *
+   * @return The value of the attribute, if present
+   */
+
+  public Optional<String> attribute(
+    final String name)
+  {
+    return Optional.ofNullable(
+      this.attributes.get(Objects.requireNonNull(name, "name"))
+    );
+  }
+
+  /**
+   * @param name The directive name
+   *
+   * @return The value of the directive, if present
+   */
+
+  public Optional<String> directive(
+    final String name)
+  {
+    return Optional.ofNullable(
+      this.directives.get(Objects.requireNonNull(name, "name"))
+    );
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The source of the content of a file within a bundle.
+ */
+
+public sealed interface OFBundleContentSourceType
+{
+  /**
+   * Content read from a file.
+   *
+   * @param file The file
+   *
+   * @return A content source
+   */
+
+  static OFBundleContentSourceType ofFile(
+    final Path file)
+  {
+    return new OFContentFile(file);
+  }
+
+  /**
+   * Content held in a byte array. The array is not copied, and must not
+   * be modified until the bundle has been written.
+   *
+   * @param data The content
+   *
+   * @return A content source
+   */
+
+  static OFBundleContentSourceType ofBytes(
+    final byte[] data)
+  {
+    return new OFContentBuffer(
+      ByteBuffer.wrap(Objects.requireNonNull(data, "data")));
+  }
+
+  /**
+   * Content held in the remaining bytes of a buffer. The buffer's position
+   * and limit are captured when this method is called, but the contents
+   * are not copied and must not be modified until the bundle has been
+   * written.
+   *
+   * @param buffer The content
+   *
+   * @return A content source
+   */
+
+  static OFBundleContentSourceType ofBuffer(
+    final ByteBuffer buffer)
+  {
+    return new OFContentBuffer(buffer);
+  }
+
+  /**
+   * Content read from streams. The supplier may be called more than once.
+   *
+   * @param streams The stream supplier
+   *
+   * @return A content source
+   */
+
+  static OFBundleContentSourceType ofStreams(
+    final OFBundleContentStreamSupplierType streams)
+  {
+    return new OFContentStreams(streams);
+  }
+
+  /**
+   * Content read from a file.
+   *
+   * @param file The file
+   */
+
+  record OFContentFile(Path file)
+    implements OFBundleContentSourceType
+  {
+    /**
+     * Content read from a file.
+     */
+
+    public OFContentFile
+    {
+      Objects.requireNonNull(file, "file");
+    }
+  }
+
+  /**
+   * Content held in memory.
+   *
+   * @param buffer A read-only view of the content
+   */
+
+  record OFContentBuffer(ByteBuffer buffer)
+    implements OFBundleContentSourceType
+  {
+    /**
+     * Content held in memory.
+     */
+
+    public OFContentBuffer
+    {
+      buffer = Objects.requireNonNull(buffer, "buffer")
+        .slice()
+        .asReadOnlyBuffer();
+    }
+
+    /**
+     * @return A read-only view of the content
+     */
+
+    @Override
+    public ByteBuffer buffer()
+    {
+      return this.buffer.duplicate();
+    }
+  }
+
+  /**
+   * Content read from streams.
+   *
+   * @param streams The stream supplier
+   */
+
+  record OFContentStreams(OFBundleContentStreamSupplierType streams)
+    implements OFBundleContentSourceType
+  {
+    /**
+     * Content read from streams.
+     */
+
+    public OFContentStreams
+    {
+      Objects.requireNonNull(streams, "streams");
+    }
+  }
+}
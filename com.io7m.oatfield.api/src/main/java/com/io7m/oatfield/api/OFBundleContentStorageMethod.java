@@ -33,5 +33,13 @@ public enum OFBundleContentStorageMethod
    * Store the content uncompressed.
    */
 
-  STORE_UNCOMPRESSED
+  STORE_UNCOMPRESSED,
+
+  /**
+   * Sample the content and store it uncompressed if deflating it would not
+   * save a worthwhile amount of space (as is typical for images, nested
+   * archives, and other already-compressed data), and deflate it otherwise.
+   */
+
+  STORE_AUTOMATIC
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * A message digest of some content.
+ *
+ * @param algorithm The digest algorithm (such as {@code SHA-256})
+ * @param value     The digest value as lowercase hexadecimal
+ */
+
+public record OFBundleDigest(
+  String algorithm,
+  String value)
+{
+  /**
+   * A message digest of some content.
+   *
+   * @param algorithm The digest algorithm (such as {@code SHA-256})
+   * @param value     The digest value as lowercase hexadecimal
+   */
+
+  public OFBundleDigest
+  {
+    Objects.requireNonNull(algorithm, "algorithm");
+    Objects.requireNonNull(value, "value");
+    value = HexFormat.of().formatHex(HexFormat.of().parseHex(value));
+  }
+
+  /**
+   * A message digest of some content.
+   *
+   * @param algorithm The digest algorithm (such as {@code SHA-256})
+   * @param bytes     The digest value
+   *
+   * @return A digest
+   */
+
+  public static OFBundleDigest of(
+    final String algorithm,
+    final byte[] bytes)
+  {
+    return new OFBundleDigest(algorithm, HexFormat.of().formatHex(bytes));
+  }
+
+  /**
+   * @return The digest value
+   */
+
+  public byte[] bytes()
+  {
+    return HexFormat.of().parseHex(this.value);
+  }
+
+  /**
+   * @return The digest value in base64, as used in JAR manifests
+   */
+
+  public String base64()
+  {
+    return Base64.getEncoder().encodeToString(this.bytes());
+  }
+}
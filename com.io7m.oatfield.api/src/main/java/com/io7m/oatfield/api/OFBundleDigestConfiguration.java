@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * The digests computed by a bundle writer. Digests are computed in the
+ * same pass that writes the bundle, so the bundle does not need to be read
+ * again afterwards.
+ *
+ * @param entryAlgorithms         The algorithms used to digest the
+ *                                uncompressed content of each entry
+ * @param archiveAlgorithms       The algorithms used to digest the
+ *                                complete bundle
+ * @param recordEntriesInManifest {@code true} if entry digests should be
+ *                                recorded in per-entry manifest sections
+ *                                ({@code Name} and {@code <algorithm>-Digest}
+ *                                headers)
+ */
+
+public record OFBundleDigestConfiguration(
+  List<String> entryAlgorithms,
+  List<String> archiveAlgorithms,
+  boolean recordEntriesInManifest)
+{
+  private static final Pattern VALID_HEADER_ALGORITHM =
+    Pattern.compile("[A-Za-z0-9_\\-]+");
+
+  private static final OFBundleDigestConfiguration NONE =
+    new OFBundleDigestConfiguration(List.of(), List.of(), false);
+
+  /**
+   * The digests computed by a bundle writer.
+   *
+   * @param entryAlgorithms         The algorithms used to digest the
+   *                                uncompressed content of each entry
+   * @param archiveAlgorithms       The algorithms used to digest the
+   *                                complete bundle
+   * @param recordEntriesInManifest {@code true} if entry digests should be
+   *                                recorded in per-entry manifest sections
+   */
+
+  public OFBundleDigestConfiguration
+  {
+    entryAlgorithms = List.copyOf(entryAlgorithms);
+    archiveAlgorithms = List.copyOf(archiveAlgorithms);
+
+    checkAlgorithms(entryAlgorithms);
+    checkAlgorithms(archiveAlgorithms);
+
+    if (recordEntriesInManifest) {
+      if (entryAlgorithms.isEmpty()) {
+        throw new IllegalArgumentException(
+          "At least one entry algorithm is required to record digests in the manifest");
+      }
+      for (final var algorithm : entryAlgorithms) {
+        if (!VALID_HEADER_ALGORITHM.matcher(algorithm).matches()) {
+          throw new IllegalArgumentException(
+            "Algorithm '%s' cannot be used in a manifest header name"
+              .formatted(algorithm)
+          );
+        }
+      }
+    }
+  }
+
+  /**
+   * @return A configuration that computes no digests
+   */
+
+  public static OFBundleDigestConfiguration none()
+  {
+    return NONE;
+  }
+
+  /**
+   * @return {@code true} if no digests are computed
+   */
+
+  public boolean isEmpty()
+  {
+    return this.entryAlgorithms.isEmpty() && this.archiveAlgorithms.isEmpty();
+  }
+
+  private static void checkAlgorithms(
+    final List<String> algorithms)
+  {
+    final var seen = new HashSet<String>();
+    for (final var algorithm : algorithms) {
+      Objects.requireNonNull(algorithm, "algorithm");
+      if (!seen.add(algorithm)) {
+        throw new IllegalArgumentException(
+          "Algorithm '%s' is specified more than once".formatted(algorithm));
+      }
+      try {
+        MessageDigest.getInstance(algorithm);
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+  }
+}
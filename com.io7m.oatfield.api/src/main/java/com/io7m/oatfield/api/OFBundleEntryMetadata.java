@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_DEFLATED;
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_UNCOMPRESSED;
+
+/**
+ * The metadata of an entry within a bundle, as recorded in the central
+ * directory of the archive. Obtaining metadata does not require reading
+ * or decompressing the entry content, and so the CRC32 values of entries
+ * can be used to cheaply detect changed files.
+ *
+ * @param name              The entry name
+ * @param size              The size of the uncompressed content
+ * @param compressedSize    The size of the content as stored in the archive
+ * @param crc               The CRC32 of the uncompressed content
+ * @param method            The ZIP compression method number
+ * @param localHeaderOffset The offset of the entry's local header in the
+ *                          archive
+ *
+ * @see OFBundleReaderType#entry(String)
+ */
+
+public record OFBundleEntryMetadata(
+  String name,
+  long size,
+  long compressedSize,
+  long crc,
+  int method,
+  long localHeaderOffset)
+{
+  /**
+   * The ZIP compression method number for stored entries.
+   */
+
+  public static final int METHOD_STORED = 0;
+
+  /**
+   * The ZIP compression method number for deflated entries.
+   */
+
+  public static final int METHOD_DEFLATED = 8;
+
+  /**
+   * The metadata of an entry within a bundle.
+   *
+   * @param name              The entry name
+   * @param size              The size of the uncompressed content
+   * @param compressedSize    The size of the content as stored in the archive
+   * @param crc               The CRC32 of the uncompressed content
+   * @param method            The ZIP compression method number
+   * @param localHeaderOffset The offset of the entry's local header in the
+   *                          archive
+   */
+
+  public OFBundleEntryMetadata
+  {
+    Objects.requireNonNull(name, "name");
+  }
+
+  /**
+   * @return The storage method of the entry, if the entry uses a
+   * compression method that bundles can be written with
+   */
+
+  public Optional<OFBundleContentStorageMethod> storageMethod()
+  {
+    return switch (this.method) {
+      case METHOD_STORED -> Optional.of(STORE_UNCOMPRESSED);
+      case METHOD_DEFLATED -> Optional.of(STORE_DEFLATED);
+      default -> Optional.empty();
+    };
+  }
+
+  /**
+   * @return {@code true} if the entry is a directory
+   */
+
+  public boolean isDirectory()
+  {
+    return this.name.endsWith("/");
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The main section headers of a bundle manifest. Header names are
+ * compared case-insensitively, as in the JAR file specification.
+ *
+ * @param headers The headers
+ *
+ * @see OFBundleReaderFactoryType#readHeaders(java.nio.file.Path)
+ */
+
+public record OFBundleHeaders(
+  SortedMap<String, String> headers)
+{
+  /**
+   * The main section headers of a bundle manifest.
+   *
+   * @param headers The headers
+   */
+
+  public OFBundleHeaders
+  {
+    final var copy =
+      new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+    for (final Map.Entry<String, String> entry : headers.entrySet()) {
+      copy.put(entry.getKey(), entry.getValue());
+    }
+    headers = Collections.unmodifiableSortedMap(copy);
+  }
+
+  /**
+   * @param name The header name
+   *
+   * @return The value of the header, if present
+   */
+
+  public Optional<String> header(
+    final String name)
+  {
+    return Optional.ofNullable(this.headers.get(name));
+  }
+
+  /**
+   * @return The bundle symbolic name, without any attributes or
+   * directives, if the manifest declares one
+   */
+
+  public Optional<String> bundleSymbolicName()
+  {
+    return this.header("Bundle-SymbolicName")
+      .map(value -> {
+        final var clauseEnd = value.indexOf(';');
+        return (clauseEnd >= 0 ? value.substring(0, clauseEnd) : value).trim();
+      });
+  }
+
+  /**
+   * @return The bundle version, if the manifest declares one
+   */
+
+  public Optional<String> bundleVersion()
+  {
+    return this.header("Bundle-Version").map(String::trim);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import org.osgi.resource.Resource;
+
+import java.util.List;
+
+/**
+ * A group of resources that must be installed together. A group contains
+ * more than one resource only if the resources are wired to each other in
+ * a cycle (that is, the group is a strongly connected component of the
+ * wiring graph).
+ *
+ * @param resources The resources in the group
+ */
+
+public record OFBundleInstallGroup(
+  List<Resource> resources)
+{
+  /**
+   * A group of resources that must be installed together.
+   *
+   * @param resources The resources in the group
+   */
+
+  public OFBundleInstallGroup
+  {
+    resources = List.copyOf(resources);
+    if (resources.isEmpty()) {
+      throw new IllegalArgumentException("Groups must be non-empty.");
+    }
+  }
+
+  /**
+   * @return {@code true} if the resources in this group are wired in a cycle
+   */
+
+  public boolean isCyclic()
+  {
+    return this.resources.size() > 1;
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import org.osgi.resource.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An installation plan: a sequence of waves, where each wave contains
+ * groups of resources that depend only on resources in earlier waves.
+ *
+ * @param waves The waves, in installation order
+ */
+
+public record OFBundleInstallPlan(
+  List<OFBundleInstallWave> waves)
+{
+  /**
+   * An installation plan.
+   *
+   * @param waves The waves, in installation order
+   */
+
+  public OFBundleInstallPlan
+  {
+    waves = List.copyOf(waves);
+  }
+
+  /**
+   * @return All resources in a sequential installation order
+   */
+
+  public List<Resource> installOrder()
+  {
+    final var order = new ArrayList<Resource>();
+    for (final var wave : this.waves) {
+      for (final var group : wave.groups()) {
+        order.addAll(group.resources());
+      }
+    }
+    return List.copyOf(order);
+  }
+}
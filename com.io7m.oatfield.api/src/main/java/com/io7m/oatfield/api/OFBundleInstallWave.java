@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.List;
+
+/**
+ * A set of groups that can be installed concurrently. Every group in a wave
+ * depends only on groups in earlier waves.
+ *
+ * @param level  The level of the wave, starting at {@code 1}, suitable for
+ *               use as a start level
+ * @param groups The groups in the wave
+ */
+
+public record OFBundleInstallWave(
+  int level,
+  List<OFBundleInstallGroup> groups)
+{
+  /**
+   * A set of groups that can be installed concurrently.
+   *
+   * @param level  The level of the wave, starting at {@code 1}
+   * @param groups The groups in the wave
+   */
+
+  public OFBundleInstallWave
+  {
+    if (level < 1) {
+      throw new IllegalArgumentException(
+        "Level %d must be >= 1".formatted(Integer.valueOf(level)));
+    }
+    groups = List.copyOf(groups);
+  }
+}
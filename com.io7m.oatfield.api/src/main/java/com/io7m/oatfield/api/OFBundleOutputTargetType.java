@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The destination of a bundle produced by a bundle writer. The bytes
+ * written are identical regardless of the kind of target.
+ */
+
+public sealed interface OFBundleOutputTargetType
+{
+  /**
+   * A file. The file is created or truncated, and is closed by the writer.
+   *
+   * @param file The file
+   *
+   * @return An output target
+   */
+
+  static OFBundleOutputTargetType ofFile(
+    final Path file)
+  {
+    return new OFOutputFile(file);
+  }
+
+  /**
+   * A stream. The stream is flushed, but not closed, by the writer.
+   *
+   * @param stream The stream
+   *
+   * @return An output target
+   */
+
+  static OFBundleOutputTargetType ofStream(
+    final OutputStream stream)
+  {
+    return new OFOutputStream(stream);
+  }
+
+  /**
+   * A channel. The channel is not closed by the writer.
+   *
+   * @param channel The channel
+   *
+   * @return An output target
+   */
+
+  static OFBundleOutputTargetType ofChannel(
+    final WritableByteChannel channel)
+  {
+    return new OFOutputChannel(channel);
+  }
+
+  /**
+   * A file.
+   *
+   * @param file The file
+   */
+
+  record OFOutputFile(Path file)
+    implements OFBundleOutputTargetType
+  {
+    /**
+     * A file.
+     */
+
+    public OFOutputFile
+    {
+      Objects.requireNonNull(file, "file");
+    }
+  }
+
+  /**
+   * A stream owned by the caller.
+   *
+   * @param stream The stream
+   */
+
+  record OFOutputStream(OutputStream stream)
+    implements OFBundleOutputTargetType
+  {
+    /**
+     * A stream owned by the caller.
+     */
+
+    public OFOutputStream
+    {
+      Objects.requireNonNull(stream, "stream");
+    }
+  }
+
+  /**
+   * A channel owned by the caller.
+   *
+   * @param channel The channel
+   */
+
+  record OFOutputChannel(WritableByteChannel channel)
+    implements OFBundleOutputTargetType
+  {
+    /**
+     * A channel owned by the caller.
+     */
+
+    public OFOutputChannel
+    {
+      Objects.requireNonNull(channel, "channel");
+    }
+  }
+}
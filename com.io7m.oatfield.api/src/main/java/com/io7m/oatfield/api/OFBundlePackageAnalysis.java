@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+/**
+ * The package analysis performed by a bundle writer. When enabled, the
+ * writer reads the constant pool, field and method descriptors, and
+ * runtime-visible annotations of every class file as it is compressed
+ * (in the same pass, and in parallel when the writer is parallel), and
+ * merges the packages found with any explicitly declared imports and
+ * exports. Explicit declarations always take precedence: a computed import
+ * or export is only added for a package that was not declared explicitly.
+ *
+ * <p>Packages in the {@code java} namespace are never imported, as the
+ * framework always provides them. Generic signatures are not analysed,
+ * as they are not needed to load classes.</p>
+ *
+ * @param importReferencedPackages {@code true} if an unversioned import
+ *                                 should be added for every package that is
+ *                                 referenced but not contained in the
+ *                                 bundle
+ * @param exportContainedPackages  {@code true} if an unversioned export
+ *                                 should be added for every package
+ *                                 contained in the bundle
+ * @param computeUses              {@code true} if the {@code uses}
+ *                                 directive of every export of a contained
+ *                                 package should be extended with the
+ *                                 imported and exported packages referenced
+ *                                 by the classes in the package
+ */
+
+public record OFBundlePackageAnalysis(
+  boolean importReferencedPackages,
+  boolean exportContainedPackages,
+  boolean computeUses)
+{
+  private static final OFBundlePackageAnalysis NONE =
+    new OFBundlePackageAnalysis(false, false, false);
+
+  private static final OFBundlePackageAnalysis IMPORTS_AND_USES =
+    new OFBundlePackageAnalysis(true, false, true);
+
+  /**
+   * @return An analysis that does nothing
+   */
+
+  public static OFBundlePackageAnalysis none()
+  {
+    return NONE;
+  }
+
+  /**
+   * @return An analysis that imports referenced packages and computes the
+   * {@code uses} directives of explicit exports
+   */
+
+  public static OFBundlePackageAnalysis importsAndUses()
+  {
+    return IMPORTS_AND_USES;
+  }
+
+  /**
+   * @return {@code true} if class files must be analysed
+   */
+
+  public boolean isEnabled()
+  {
+    return this.importReferencedPackages
+           || this.exportContainedPackages
+           || this.computeUses;
+  }
+}
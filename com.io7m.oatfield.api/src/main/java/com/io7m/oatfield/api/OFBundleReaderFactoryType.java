@@ -41,4 +41,21 @@ public interface OFBundleReaderFactoryType
   OFBundleReaderType createReader(
     Path input)
     throws IOException;
+
+  /**
+   * Read only the main section headers of a bundle's manifest. This is
+   * much cheaper than {@link #createReader(Path)}: the manifest is located
+   * through the archive's central directory using positioned reads, and
+   * no other entries are read or enumerated.
+   *
+   * @param input The bundle path
+   *
+   * @return The manifest headers
+   *
+   * @throws IOException On I/O errors, or if the bundle has no manifest
+   */
+
+  OFBundleHeaders readHeaders(
+    Path input)
+    throws IOException;
 }
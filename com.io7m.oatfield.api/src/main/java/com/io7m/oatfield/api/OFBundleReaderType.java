@@ -21,11 +21,16 @@ import org.osgi.resource.Resource;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Optional;
+import java.util.SortedMap;
 import java.util.SortedSet;
 
 /**
- * The type of bundle readers.
+ * The type of bundle readers. Readers are safe for concurrent use by
+ * multiple threads, so a single reader may be shared by all threads that
+ * read from the same bundle.
  */
 
 public interface OFBundleReaderType extends Closeable
@@ -43,7 +48,65 @@ public interface OFBundleReaderType extends Closeable
   Optional<String> bundleVersion();
 
   /**
-   * Expose the bundle as an OSGi resource.
+   * @return The main section headers of the bundle manifest
+   */
+
+  OFBundleHeaders headers();
+
+  /**
+   * Parse the clauses of the given manifest header. Each header is parsed
+   * at most once, and the result is cached for the lifetime of the reader.
+   *
+   * @param header The header name
+   *
+   * @return The clauses of the header, or an empty list if the manifest
+   * does not declare the header
+   *
+   * @throws IllegalArgumentException If the header value is malformed
+   */
+
+  List<OFBundleClause> clauses(String header);
+
+  /**
+   * @return The clauses of the {@code Import-Package} header
+   */
+
+  default List<OFBundleClause> packageImports()
+  {
+    return this.clauses("Import-Package");
+  }
+
+  /**
+   * @return The clauses of the {@code Export-Package} header
+   */
+
+  default List<OFBundleClause> packageExports()
+  {
+    return this.clauses("Export-Package");
+  }
+
+  /**
+   * @return The clauses of the {@code Require-Capability} header
+   */
+
+  default List<OFBundleClause> requiredCapabilities()
+  {
+    return this.clauses("Require-Capability");
+  }
+
+  /**
+   * @return The clauses of the {@code Provide-Capability} header
+   */
+
+  default List<OFBundleClause> providedCapabilities()
+  {
+    return this.clauses("Provide-Capability");
+  }
+
+  /**
+   * Expose the bundle as an OSGi resource. The resource is built on the
+   * first call to this method; callers that only need the package or
+   * capability headers should prefer {@link #clauses(String)}.
    *
    * @return The OSGi resource
    */
@@ -56,6 +119,59 @@ public interface OFBundleReaderType extends Closeable
 
   SortedSet<String> files();
 
+  /**
+   * Find the files within the bundle whose names start with the given
+   * prefix. The prefix is matched literally; to list the files within a
+   * directory, include the trailing {@code /}.
+   *
+   * @param prefix The name prefix
+   *
+   * @return A read-only view of the matching files
+   */
+
+  SortedSet<String> filesUnder(String prefix);
+
+  /**
+   * The packages contained in the bundle. A package is contained in the
+   * bundle if the bundle has at least one class file directly within the
+   * package's directory. The unnamed package and directories under
+   * {@code META-INF/} are not included.
+   *
+   * @return The names of the contained packages, such as {@code com.io7m.x}
+   */
+
+  SortedSet<String> packages();
+
+  /**
+   * Determine if the bundle contains the class file for a class.
+   *
+   * @param className The binary name of the class, such as
+   *                  {@code com.io7m.x.Y} or {@code com.io7m.x.Y$Z}
+   *
+   * @return {@code true} if the bundle contains the class file
+   */
+
+  boolean containsClass(String className);
+
+  /**
+   * Get the metadata of a file within the bundle. The metadata is taken
+   * from the central directory of the archive, and no content is read.
+   *
+   * @param name The file name
+   *
+   * @return The metadata, if the bundle contains the file
+   */
+
+  Optional<OFBundleEntryMetadata> entry(String name);
+
+  /**
+   * @return A read-only view of the metadata of all files within the bundle
+   *
+   * @see #entry(String)
+   */
+
+  SortedMap<String, OFBundleEntryMetadata> entries();
+
   /**
    * Get the content for a file within the bundle.
    *
@@ -68,4 +184,31 @@ public interface OFBundleReaderType extends Closeable
 
   InputStream contentFor(String name)
     throws IOException;
+
+  /**
+   * Get the content for a file within the bundle as a read-only buffer.
+   * The content of a large uncompressed (stored) file is returned as a
+   * memory mapping of that file's region of the bundle, without being
+   * copied onto the heap; the content of a small or compressed file is
+   * read into a new heap buffer. Returned buffers remain valid after the
+   * reader is closed.
+   *
+   * <p>A memory-mapped buffer reads the bundle file directly. If the bundle
+   * is truncated or rewritten in place while such a buffer is in use, then
+   * the buffer may observe the new data, and accessing it may fail with an
+   * {@link InternalError} or terminate the JVM on some platforms. Callers
+   * that keep buffers across changes to the bundle should copy them, and
+   * can tell mapped buffers apart with {@link ByteBuffer#isDirect()}.</p>
+   *
+   * @param name The file name
+   *
+   * @return The file content
+   *
+   * @throws IOException On errors
+   *
+   * @see OFBundleEntryMetadata#storageMethod()
+   */
+
+  ByteBuffer contentBufferFor(String name)
+    throws IOException;
 }
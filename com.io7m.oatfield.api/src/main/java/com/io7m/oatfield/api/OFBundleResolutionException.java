@@ -20,6 +20,7 @@ import org.osgi.resource.Requirement;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * A failure to resolve a set of requirements.
@@ -28,6 +29,7 @@ import java.util.Objects;
 public final class OFBundleResolutionException extends Exception
 {
   private final List<Requirement> unmetRequirements;
+  private final OFBundleResolutionDiagnostics diagnostics;
 
   /**
    * A failure to resolve a set of requirements.
@@ -41,6 +43,7 @@ public final class OFBundleResolutionException extends Exception
     this.unmetRequirements =
       List.copyOf(
         Objects.requireNonNull(inRequirements, "inRequirements"));
+    this.diagnostics = null;
   }
 
   /**
@@ -58,6 +61,28 @@ public final class OFBundleResolutionException extends Exception
     this.unmetRequirements =
       List.copyOf(
         Objects.requireNonNull(inRequirements, "inRequirements"));
+    this.diagnostics = null;
+  }
+
+  /**
+   * A failure to resolve a set of requirements.
+   *
+   * @param cause          The root cause
+   * @param inRequirements The unmet requirements
+   * @param inDiagnostics  The recorded diagnostics
+   */
+
+  public OFBundleResolutionException(
+    final Throwable cause,
+    final List<Requirement> inRequirements,
+    final OFBundleResolutionDiagnostics inDiagnostics)
+  {
+    super(Objects.requireNonNull(cause, "cause"));
+    this.unmetRequirements =
+      List.copyOf(
+        Objects.requireNonNull(inRequirements, "inRequirements"));
+    this.diagnostics =
+      Objects.requireNonNull(inDiagnostics, "inDiagnostics");
   }
 
   /**
@@ -68,4 +93,15 @@ public final class OFBundleResolutionException extends Exception
   {
     return this.unmetRequirements;
   }
+
+  /**
+   * @return The diagnostics, if the resolver was configured to record them
+   *
+   * @see OFBundleResolverConfiguration#recordDiagnostics()
+   */
+
+  public Optional<OFBundleResolutionDiagnostics> diagnostics()
+  {
+    return Optional.ofNullable(this.diagnostics);
+  }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import org.osgi.resource.Requirement;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A single unmet requirement, along with the chain of requirements that
+ * caused the resolver to consider it, and the candidates that were rejected.
+ *
+ * @param requirement The unmet requirement
+ * @param chain       The chain of requirements leading from a mandatory or
+ *                    optional resource to the unmet requirement (inclusive)
+ * @param rejections  The candidate capabilities that were rejected
+ */
+
+public record OFBundleResolutionFailure(
+  Requirement requirement,
+  List<Requirement> chain,
+  List<OFBundleResolutionRejection> rejections)
+{
+  /**
+   * A single unmet requirement, along with the chain of requirements that
+   * caused the resolver to consider it, and the candidates that were
+   * rejected.
+   *
+   * @param requirement The unmet requirement
+   * @param chain       The chain of requirements leading from a mandatory or
+   *                    optional resource to the unmet requirement
+   *                    (inclusive)
+   * @param rejections  The candidate capabilities that were rejected
+   */
+
+  public OFBundleResolutionFailure
+  {
+    Objects.requireNonNull(requirement, "requirement");
+    chain = List.copyOf(chain);
+    rejections = List.copyOf(rejections);
+  }
+}
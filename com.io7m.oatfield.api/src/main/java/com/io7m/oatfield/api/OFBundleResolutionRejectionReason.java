@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+/**
+ * The reason a candidate capability was rejected for a requirement.
+ */
+
+public enum OFBundleResolutionRejectionReason
+{
+  /**
+   * The candidate is in the right namespace, but does not match the
+   * requirement's filter.
+   */
+
+  FILTER_MISMATCH,
+
+  /**
+   * The requirement's filter could not be parsed.
+   */
+
+  FILTER_INVALID,
+
+  /**
+   * The candidate matched the requirement, but the resource providing it
+   * could not itself be resolved.
+   */
+
+  PROVIDER_UNRESOLVABLE,
+
+  /**
+   * The candidate matched the requirement, but the resource providing it
+   * was involved in a uses constraint violation.
+   */
+
+  PROVIDER_USES_CONFLICT
+}
@@ -29,12 +29,17 @@ import java.util.Objects;
  *                           resolved set
  * @param optionalResources  The set of resources that may optionally be present
  *                           in the resolved set
+ * @param recordDiagnostics  {@code true} if structured diagnostics should be
+ *                           recorded and attached to resolution failures
+ *
+ * @see OFBundleResolutionException#diagnostics()
  */
 
 public record OFBundleResolverConfiguration(
   List<Resource> availableResources,
   List<Resource> mandatoryResources,
-  List<Resource> optionalResources)
+  List<Resource> optionalResources,
+  boolean recordDiagnostics)
 {
   /**
    * The configuration to be resolved.
@@ -44,6 +49,8 @@ public record OFBundleResolverConfiguration(
    *                           resolved set
    * @param optionalResources  The set of resources that may optionally be
    *                           present in the resolved set
+   * @param recordDiagnostics  {@code true} if structured diagnostics should be
+   *                           recorded and attached to resolution failures
    */
 
   public OFBundleResolverConfiguration
@@ -52,4 +59,44 @@ public record OFBundleResolverConfiguration(
     Objects.requireNonNull(mandatoryResources, "mandatoryResources");
     Objects.requireNonNull(optionalResources, "optionalResources");
   }
+
+  /**
+   * The configuration to be resolved. Diagnostics are not recorded.
+   *
+   * @param inAvailableResources The set of available resources
+   * @param inMandatoryResources The set of resources that must be present in
+   *                             the resolved set
+   * @param inOptionalResources  The set of resources that may optionally be
+   *                             present in the resolved set
+   */
+
+  public OFBundleResolverConfiguration(
+    final List<Resource> inAvailableResources,
+    final List<Resource> inMandatoryResources,
+    final List<Resource> inOptionalResources)
+  {
+    this(
+      inAvailableResources,
+      inMandatoryResources,
+      inOptionalResources,
+      false
+    );
+  }
+
+  /**
+   * @param enabled {@code true} if diagnostics should be recorded
+   *
+   * @return This configuration with diagnostics enabled or disabled
+   */
+
+  public OFBundleResolverConfiguration withRecordDiagnostics(
+    final boolean enabled)
+  {
+    return new OFBundleResolverConfiguration(
+      this.availableResources,
+      this.mandatoryResources,
+      this.optionalResources,
+      enabled
+    );
+  }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The configuration of the sort buffer used by streaming writers that
+ * write entries in name order rather than in the order they were added.
+ * Entries are buffered in memory until {@code maximumEntries} entries are
+ * pending, at which point they are sorted and written (compressed) to a
+ * temporary run file. The runs are merged into the bundle when the writer
+ * finishes, copying the compressed entry data without recompressing it.
+ *
+ * @param directory      The directory in which temporary files are created
+ * @param maximumEntries The maximum number of entries buffered in memory
+ */
+
+public record OFBundleSortBuffer(
+  Path directory,
+  int maximumEntries)
+{
+  /**
+   * The configuration of a sort buffer.
+   *
+   * @param directory      The directory in which temporary files are created
+   * @param maximumEntries The maximum number of entries buffered in memory
+   */
+
+  public OFBundleSortBuffer
+  {
+    Objects.requireNonNull(directory, "directory");
+
+    if (maximumEntries < 1) {
+      throw new IllegalArgumentException(
+        "Maximum entries %d must be positive"
+          .formatted(Integer.valueOf(maximumEntries))
+      );
+    }
+  }
+}
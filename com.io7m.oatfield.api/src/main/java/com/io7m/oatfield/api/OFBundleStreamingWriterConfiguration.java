@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The configuration of a streaming bundle writer. Streaming writers write
+ * entries sequentially, so the parallelism of the bundle configuration is
+ * ignored. Streaming writers do not compute digests, use build caches, or
+ * analyse packages, so the bundle configuration must not request any of
+ * them.
+ *
+ * @param bundle     The bundle configuration
+ * @param sortBuffer The sort buffer, if entries should be written in name
+ *                   order; entries are otherwise written in the order in
+ *                   which they are added
+ */
+
+public record OFBundleStreamingWriterConfiguration(
+  OFBundleWriterConfiguration bundle,
+  Optional<OFBundleSortBuffer> sortBuffer)
+{
+  /**
+   * The configuration of a streaming bundle writer.
+   *
+   * @param bundle     The bundle configuration
+   * @param sortBuffer The sort buffer, if entries should be written in name
+   *                   order; entries are otherwise written in the order in
+   *                   which they are added
+   */
+
+  public OFBundleStreamingWriterConfiguration
+  {
+    Objects.requireNonNull(bundle, "bundle");
+    Objects.requireNonNull(sortBuffer, "sortBuffer");
+
+    if (!bundle.digests().isEmpty()) {
+      throw new IllegalArgumentException(
+        "Streaming writers do not compute digests");
+    }
+    if (bundle.buildCache().isPresent()) {
+      throw new IllegalArgumentException(
+        "Streaming writers do not use build caches");
+    }
+    if (bundle.analysis().isEnabled()) {
+      throw new IllegalArgumentException(
+        "Streaming writers do not analyse packages");
+    }
+  }
+
+  /**
+   * The configuration of a streaming bundle writer that writes entries in
+   * the order in which they are added.
+   *
+   * @param inBundle The bundle configuration
+   */
+
+  public OFBundleStreamingWriterConfiguration(
+    final OFBundleWriterConfiguration inBundle)
+  {
+    this(inBundle, Optional.empty());
+  }
+}
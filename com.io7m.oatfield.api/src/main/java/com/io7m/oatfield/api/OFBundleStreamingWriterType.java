@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The type of streaming bundle writers. Unlike {@link OFBundleWriterType},
+ * a streaming writer writes each entry to the output as soon as it is
+ * added (or, with a sort buffer, as soon as the buffer fills), so that
+ * writing overlaps with content generation and memory use stays bounded.
+ *
+ * <p>The manifest is written before the first entry, so all package
+ * imports and exports must be declared before any entries are added.
+ * Closing a writer without calling {@link #finish()} leaves the output
+ * incomplete.</p>
+ *
+ * @see OFBundleWriterFactoryType#createStreamingWriter(OFBundleStreamingWriterConfiguration)
+ */
+
+public interface OFBundleStreamingWriterType extends Closeable
+{
+  /**
+   * Add a package import declaration.
+   *
+   * @param name    The name of the package
+   * @param version The package version
+   *
+   * @return this
+   *
+   * @throws IllegalStateException If the manifest has already been written
+   */
+
+  OFBundleStreamingWriterType addPackageImport(
+    String name,
+    Optional<String> version);
+
+  /**
+   * Add a package export declaration.
+   *
+   * @param name    The name of the package
+   * @param version The package version
+   * @param uses    The list of "uses" for this package
+   *
+   * @return this
+   *
+   * @throws IllegalStateException If the manifest has already been written
+   */
+
+  OFBundleStreamingWriterType addPackageExport(
+    String name,
+    Optional<String> version,
+    List<String> uses);
+
+  /**
+   * Add a file to the bundle.
+   *
+   * @param name    The file name
+   * @param storage The storage method
+   * @param source  The source of the file content
+   *
+   * @return this
+   *
+   * @throws IOException On I/O errors
+   */
+
+  OFBundleStreamingWriterType addFile(
+    String name,
+    OFBundleContentStorageMethod storage,
+    OFBundleContentSourceType source)
+    throws IOException;
+
+  /**
+   * Add a file to the bundle.
+   *
+   * @param name    The file name
+   * @param storage The storage method
+   * @param file    The source file
+   *
+   * @return this
+   *
+   * @throws IOException On I/O errors
+   */
+
+  default OFBundleStreamingWriterType addFile(
+    final String name,
+    final OFBundleContentStorageMethod storage,
+    final Path file)
+    throws IOException
+  {
+    return this.addFile(name, storage, OFBundleContentSourceType.ofFile(file));
+  }
+
+  /**
+   * Add a file to the bundle.
+   *
+   * @param name    The file name
+   * @param storage The storage method
+   * @param data    The file content
+   *
+   * @return this
+   *
+   * @throws IOException On I/O errors
+   */
+
+  default OFBundleStreamingWriterType addFile(
+    final String name,
+    final OFBundleContentStorageMethod storage,
+    final byte[] data)
+    throws IOException
+  {
+    return this.addFile(name, storage, OFBundleContentSourceType.ofBytes(data));
+  }
+
+  /**
+   * Add an entry copied from an existing archive without recompressing it.
+   *
+   * @param name      The file name in the bundle
+   * @param archive   The source archive
+   * @param entryName The name of the entry in the source archive
+   *
+   * @return this
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see OFBundleWriterType#addArchiveEntry(String, Path, String)
+   */
+
+  OFBundleStreamingWriterType addArchiveEntry(
+    String name,
+    Path archive,
+    String entryName)
+    throws IOException;
+
+  /**
+   * Add an entry copied from an existing archive, keeping its name.
+   *
+   * @param archive The source archive
+   * @param name    The name of the entry in the source archive
+   *
+   * @return this
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #addArchiveEntry(String, Path, String)
+   */
+
+  default OFBundleStreamingWriterType addArchiveEntry(
+    final Path archive,
+    final String name)
+    throws IOException
+  {
+    return this.addArchiveEntry(name, archive, name);
+  }
+
+  /**
+   * Write any remaining entries and the central directory, completing the
+   * bundle.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void finish()
+    throws IOException;
+}
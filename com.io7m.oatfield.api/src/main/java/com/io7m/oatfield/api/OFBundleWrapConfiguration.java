@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The parameters of wrapping a directory of plain jar files into OSGi
+ * bundles.
+ *
+ * <p>Every {@code *.jar} file in the input directory is written to a
+ * bundle of the same name in the output directory. The bundle symbolic
+ * name is taken from the jar's {@code Bundle-SymbolicName} or
+ * {@code Automatic-Module-Name} manifest header, or failing that, from the
+ * file name. The bundle version is taken from the jar's
+ * {@code Bundle-Version} or {@code Implementation-Version} header, or from
+ * a version suffix in the file name, and is converted to an OSGi version.
+ * Package imports and exports are computed with the given analysis.</p>
+ *
+ * <p>Entries are copied into the bundle without being recompressed. The
+ * jar's manifest is replaced, and signature files are dropped, since the
+ * new manifest would invalidate them. Jars are wrapped concurrently on
+ * {@code parallelism} threads.</p>
+ *
+ * <p>The input and output directories must be different directories, as
+ * writing a bundle over the jar it is being read from would destroy the
+ * jar. Each bundle is written to a temporary file in the output directory
+ * and then moved into place, so a failed wrap never leaves a partially
+ * written bundle behind.</p>
+ *
+ * @param inputDirectory  The directory containing jar files
+ * @param outputDirectory The directory that will contain the bundles
+ * @param analysis        The package analysis
+ * @param parallelism     The maximum number of jars wrapped at once
+ *
+ * @see OFBundleWriterFactoryType#wrapDirectory(OFBundleWrapConfiguration)
+ */
+
+public record OFBundleWrapConfiguration(
+  Path inputDirectory,
+  Path outputDirectory,
+  OFBundlePackageAnalysis analysis,
+  int parallelism)
+{
+  private static final OFBundlePackageAnalysis DEFAULT_ANALYSIS =
+    new OFBundlePackageAnalysis(true, true, true);
+
+  /**
+   * The parameters of wrapping a directory of plain jar files.
+   *
+   * @param inputDirectory  The directory containing jar files
+   * @param outputDirectory The directory that will contain the bundles
+   * @param analysis        The package analysis
+   * @param parallelism     The maximum number of jars wrapped at once
+   *
+   * @throws IllegalArgumentException If the directories are the same
+   */
+
+  public OFBundleWrapConfiguration
+  {
+    Objects.requireNonNull(inputDirectory, "inputDirectory");
+    Objects.requireNonNull(outputDirectory, "outputDirectory");
+    Objects.requireNonNull(analysis, "analysis");
+
+    if (realPathOf(inputDirectory).equals(realPathOf(outputDirectory))) {
+      throw new IllegalArgumentException(
+        "Input directory %s and output directory %s must be different"
+          .formatted(inputDirectory, outputDirectory)
+      );
+    }
+
+    if (parallelism < 1) {
+      throw new IllegalArgumentException(
+        "Parallelism %d must be positive"
+          .formatted(Integer.valueOf(parallelism))
+      );
+    }
+  }
+
+  /**
+   * The parameters of wrapping a directory of plain jar files, importing
+   * every referenced package, exporting every contained package, and
+   * wrapping one jar at once per available processor.
+   *
+   * @param inInputDirectory  The directory containing jar files
+   * @param inOutputDirectory The directory that will contain the bundles
+   */
+
+  public OFBundleWrapConfiguration(
+    final Path inInputDirectory,
+    final Path inOutputDirectory)
+  {
+    this(
+      inInputDirectory,
+      inOutputDirectory,
+      DEFAULT_ANALYSIS,
+      Runtime.getRuntime().availableProcessors()
+    );
+  }
+
+  private static Path realPathOf(
+    final Path directory)
+  {
+    final var absolute = directory.toAbsolutePath().normalize();
+    try {
+      return absolute.toRealPath();
+    } catch (final IOException e) {
+      return absolute;
+    }
+  }
+
+  /**
+   * @param threads The maximum number of jars wrapped at once
+   *
+   * @return This configuration with the given parallelism
+   */
+
+  public OFBundleWrapConfiguration withParallelism(
+    final int threads)
+  {
+    return new OFBundleWrapConfiguration(
+      this.inputDirectory,
+      this.outputDirectory,
+      this.analysis,
+      threads
+    );
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The result of writing a bundle.
+ *
+ * @param size           The size of the bundle in bytes
+ * @param entryDigests   The digests of the uncompressed content of each
+ *                       entry, by entry name
+ * @param archiveDigests The digests of the complete bundle
+ *
+ * @see OFBundleDigestConfiguration
+ */
+
+public record OFBundleWriteResult(
+  long size,
+  SortedMap<String, List<OFBundleDigest>> entryDigests,
+  List<OFBundleDigest> archiveDigests)
+{
+  /**
+   * The result of writing a bundle.
+   *
+   * @param size           The size of the bundle in bytes
+   * @param entryDigests   The digests of the uncompressed content of each
+   *                       entry, by entry name
+   * @param archiveDigests The digests of the complete bundle
+   */
+
+  public OFBundleWriteResult
+  {
+    Objects.requireNonNull(entryDigests, "entryDigests");
+    final var copy = new TreeMap<String, List<OFBundleDigest>>();
+    for (final var entry : entryDigests.entrySet()) {
+      copy.put(entry.getKey(), List.copyOf(entry.getValue()));
+    }
+    entryDigests = Collections.unmodifiableSortedMap(copy);
+    archiveDigests = List.copyOf(archiveDigests);
+  }
+
+  /**
+   * @param name      The entry name
+   * @param algorithm The digest algorithm
+   *
+   * @return The digest of the given entry, if one was computed
+   */
+
+  public Optional<OFBundleDigest> entryDigest(
+    final String name,
+    final String algorithm)
+  {
+    return this.entryDigests.getOrDefault(name, List.of())
+      .stream()
+      .filter(d -> Objects.equals(d.algorithm(), algorithm))
+      .findFirst();
+  }
+
+  /**
+   * @param algorithm The digest algorithm
+   *
+   * @return The digest of the complete bundle, if one was computed
+   */
+
+  public Optional<OFBundleDigest> archiveDigest(
+    final String algorithm)
+  {
+    return this.archiveDigests.stream()
+      .filter(d -> Objects.equals(d.algorithm(), algorithm))
+      .findFirst();
+  }
+}
@@ -18,32 +18,310 @@ package com.io7m.oatfield.api;
 
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * The required configuration values for a minimal OSGi bundle.
  *
- * @param outputFile    The output file
- * @param bundleVersion The bundle version
- * @param symbolicName  The bundle symbolic name
+ * @param output              The output target
+ * @param symbolicName        The bundle symbolic name
+ * @param bundleVersion       The bundle version
+ * @param compressionLevel    The deflate level ({@code 0-9}, or {@code -1}
+ *                            for the default level)
+ * @param compressionStrategy The deflate strategy
+ * @param parallelism         The number of threads used to compress and
+ *                            write entries; {@code 1} writes sequentially
+ * @param digests             The digests computed while writing
+ * @param buildCache          The build cache, if bundles should be cached
+ * @param analysis            The package analysis performed while writing
  */
 
 public record OFBundleWriterConfiguration(
-  Path outputFile,
+  OFBundleOutputTargetType output,
   String symbolicName,
-  String bundleVersion)
+  String bundleVersion,
+  int compressionLevel,
+  OFBundleCompressionStrategy compressionStrategy,
+  int parallelism,
+  OFBundleDigestConfiguration digests,
+  Optional<OFBundleBuildCache> buildCache,
+  OFBundlePackageAnalysis analysis)
 {
+  /**
+   * The default deflate level.
+   */
+
+  public static final int DEFAULT_COMPRESSION_LEVEL = -1;
+
   /**
    * The required configuration values for a minimal OSGi bundle.
    *
-   * @param outputFile    The output file
-   * @param bundleVersion The bundle version
-   * @param symbolicName  The bundle symbolic name
+   * @param output              The output target
+   * @param symbolicName        The bundle symbolic name
+   * @param bundleVersion       The bundle version
+   * @param compressionLevel    The deflate level ({@code 0-9}, or {@code -1}
+   *                            for the default level)
+   * @param compressionStrategy The deflate strategy
+   * @param parallelism         The number of threads used to compress and
+   *                            write entries; {@code 1} writes sequentially
+   * @param digests             The digests computed while writing
+   * @param buildCache          The build cache, if bundles should be cached
+   * @param analysis            The package analysis performed while writing
    */
 
   public OFBundleWriterConfiguration
   {
-    Objects.requireNonNull(outputFile, "outputFile");
+    Objects.requireNonNull(output, "output");
+    Objects.requireNonNull(digests, "digests");
+    Objects.requireNonNull(buildCache, "buildCache");
+    Objects.requireNonNull(analysis, "analysis");
     Objects.requireNonNull(symbolicName, "symbolicName");
     Objects.requireNonNull(bundleVersion, "bundleVersion");
+    Objects.requireNonNull(compressionStrategy, "compressionStrategy");
+
+    if (compressionLevel < DEFAULT_COMPRESSION_LEVEL || compressionLevel > 9) {
+      throw new IllegalArgumentException(
+        "Compression level %d must be in the range [-1, 9]"
+          .formatted(Integer.valueOf(compressionLevel))
+      );
+    }
+    if (parallelism < 1) {
+      throw new IllegalArgumentException(
+        "Parallelism %d must be positive"
+          .formatted(Integer.valueOf(parallelism))
+      );
+    }
+  }
+
+  /**
+   * The required configuration values for a minimal OSGi bundle, using the
+   * default settings: default compression, sequential writing, no digests,
+   * no build cache, and no package analysis. Use the {@code with} methods
+   * to change any of these.
+   *
+   * @param inOutput        The output target
+   * @param inSymbolicName  The bundle symbolic name
+   * @param inBundleVersion The bundle version
+   */
+
+  public OFBundleWriterConfiguration(
+    final OFBundleOutputTargetType inOutput,
+    final String inSymbolicName,
+    final String inBundleVersion)
+  {
+    this(
+      inOutput,
+      inSymbolicName,
+      inBundleVersion,
+      DEFAULT_COMPRESSION_LEVEL,
+      OFBundleCompressionStrategy.DEFAULT,
+      1,
+      OFBundleDigestConfiguration.none(),
+      Optional.empty(),
+      OFBundlePackageAnalysis.none()
+    );
+  }
+
+  /**
+   * The required configuration values for a minimal OSGi bundle written
+   * to a file.
+   *
+   * @param inOutputFile    The output file
+   * @param inSymbolicName  The bundle symbolic name
+   * @param inBundleVersion The bundle version
+   */
+
+  public OFBundleWriterConfiguration(
+    final Path inOutputFile,
+    final String inSymbolicName,
+    final String inBundleVersion)
+  {
+    this(
+      OFBundleOutputTargetType.ofFile(inOutputFile),
+      inSymbolicName,
+      inBundleVersion
+    );
+  }
+
+  /**
+   * The output file. Configurations originally held only a file; this
+   * accessor remains for existing callers.
+   *
+   * @return The output file
+   *
+   * @throws IllegalStateException If the output target is not a file
+   * @deprecated Use {@link #output()}, which may also be a stream or a
+   * channel
+   */
+
+  @Deprecated(since = "0.0.1")
+  public Path outputFile()
+  {
+    if (this.output instanceof final OFBundleOutputTargetType.OFOutputFile file) {
+      return file.file();
+    }
+    throw new IllegalStateException(
+      "Output target %s is not a file".formatted(this.output));
+  }
+
+  /**
+   * @param level The deflate level ({@code 0-9}, or {@code -1} for the
+   *              default level)
+   *
+   * @return This configuration with the given compression level
+   */
+
+  public OFBundleWriterConfiguration withCompressionLevel(
+    final int level)
+  {
+    return new OFBundleWriterConfiguration(
+      this.output,
+      this.symbolicName,
+      this.bundleVersion,
+      level,
+      this.compressionStrategy,
+      this.parallelism,
+      this.digests,
+      this.buildCache,
+      this.analysis
+    );
+  }
+
+  /**
+   * @param strategy The deflate strategy
+   *
+   * @return This configuration with the given compression strategy
+   */
+
+  public OFBundleWriterConfiguration withCompressionStrategy(
+    final OFBundleCompressionStrategy strategy)
+  {
+    return new OFBundleWriterConfiguration(
+      this.output,
+      this.symbolicName,
+      this.bundleVersion,
+      this.compressionLevel,
+      strategy,
+      this.parallelism,
+      this.digests,
+      this.buildCache,
+      this.analysis
+    );
+  }
+
+  /**
+   * Entries are compressed concurrently when the parallelism is greater
+   * than {@code 1}. They are also written concurrently if the output target
+   * is a file (or a channel that is a {@link java.nio.channels.FileChannel})
+   * and no archive digests are requested; otherwise, they are written in
+   * order. The bytes written are identical to those written sequentially.
+   *
+   * @param threads The number of threads used to compress and write entries
+   *
+   * @return This configuration with the given parallelism
+   */
+
+  public OFBundleWriterConfiguration withParallelism(
+    final int threads)
+  {
+    return new OFBundleWriterConfiguration(
+      this.output,
+      this.symbolicName,
+      this.bundleVersion,
+      this.compressionLevel,
+      this.compressionStrategy,
+      threads,
+      this.digests,
+      this.buildCache,
+      this.analysis
+    );
+  }
+
+  /**
+   * @param configuration The digests computed while writing
+   *
+   * @return This configuration with the given digest configuration
+   */
+
+  public OFBundleWriterConfiguration withDigests(
+    final OFBundleDigestConfiguration configuration)
+  {
+    return new OFBundleWriterConfiguration(
+      this.output,
+      this.symbolicName,
+      this.bundleVersion,
+      this.compressionLevel,
+      this.compressionStrategy,
+      this.parallelism,
+      configuration,
+      this.buildCache,
+      this.analysis
+    );
+  }
+
+  /**
+   * @param cache The build cache
+   *
+   * @return This configuration with the given build cache
+   */
+
+  public OFBundleWriterConfiguration withBuildCache(
+    final OFBundleBuildCache cache)
+  {
+    return new OFBundleWriterConfiguration(
+      this.output,
+      this.symbolicName,
+      this.bundleVersion,
+      this.compressionLevel,
+      this.compressionStrategy,
+      this.parallelism,
+      this.digests,
+      Optional.of(cache),
+      this.analysis
+    );
+  }
+
+  /**
+   * @param target The output target
+   *
+   * @return This configuration with the given output target
+   */
+
+  public OFBundleWriterConfiguration withOutput(
+    final OFBundleOutputTargetType target)
+  {
+    return new OFBundleWriterConfiguration(
+      target,
+      this.symbolicName,
+      this.bundleVersion,
+      this.compressionLevel,
+      this.compressionStrategy,
+      this.parallelism,
+      this.digests,
+      this.buildCache,
+      this.analysis
+    );
+  }
+
+  /**
+   * @param packageAnalysis The package analysis
+   *
+   * @return This configuration with the given package analysis
+   */
+
+  public OFBundleWriterConfiguration withAnalysis(
+    final OFBundlePackageAnalysis packageAnalysis)
+  {
+    return new OFBundleWriterConfiguration(
+      this.output,
+      this.symbolicName,
+      this.bundleVersion,
+      this.compressionLevel,
+      this.compressionStrategy,
+      this.parallelism,
+      this.digests,
+      this.buildCache,
+      packageAnalysis
+    );
   }
 }
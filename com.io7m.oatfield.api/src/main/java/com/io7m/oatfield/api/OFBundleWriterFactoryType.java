@@ -18,6 +18,8 @@ package com.io7m.oatfield.api;
 
 import org.osgi.annotation.versioning.ProviderType;
 
+import java.io.IOException;
+
 /**
  * A factory of bundle writers.
  */
@@ -35,4 +37,55 @@ public interface OFBundleWriterFactoryType
 
   OFBundleWriterType createWriter(
     OFBundleWriterConfiguration configuration);
+
+  /**
+   * Create a new streaming bundle writer. The output is opened
+   * immediately.
+   *
+   * @param configuration The writer configuration
+   *
+   * @return A new streaming bundle writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  OFBundleStreamingWriterType createStreamingWriter(
+    OFBundleStreamingWriterConfiguration configuration)
+    throws IOException;
+
+  /**
+   * Write a batch of bundles concurrently. A failure to write one bundle
+   * does not prevent the others from being written; the outcome of every
+   * bundle is reported in the result.
+   *
+   * @param configuration The batch configuration
+   *
+   * @return The outcome of each bundle
+   *
+   * @throws InterruptedException If interrupted while waiting for the batch
+   */
+
+  OFBundleBatchResult writeBatch(
+    OFBundleBatchConfiguration configuration)
+    throws InterruptedException;
+
+  /**
+   * Wrap every plain jar file in a directory into an OSGi bundle,
+   * concurrently. A failure to wrap one jar does not prevent the others
+   * from being wrapped; the outcome of every jar is reported in the
+   * result, in file name order.
+   *
+   * @param configuration The wrap configuration
+   *
+   * @return The outcome of each jar
+   *
+   * @throws IOException          If the input directory cannot be listed,
+   *                              or the output directory cannot be created
+   * @throws InterruptedException If interrupted while waiting for the jars
+   *                              to be wrapped
+   */
+
+  OFBundleBatchResult wrapDirectory(
+    OFBundleWrapConfiguration configuration)
+    throws IOException, InterruptedException;
 }
@@ -126,17 +126,95 @@ public interface OFBundleWriterType extends Closeable
    * @return this
    */
 
+  default OFBundleWriterType addFile(
+    final String name,
+    final OFBundleContentStorageMethod storage,
+    final Path file)
+  {
+    return this.addFile(name, storage, OFBundleContentSourceType.ofFile(file));
+  }
+
+  /**
+   * Add a file to the bundle. The CRC and size of the content are computed
+   * by the writer; in-memory content is never written to the filesystem.
+   *
+   * @param name    The file name
+   * @param storage The storage method
+   * @param source  The source of the file content
+   *
+   * @return this
+   */
+
   OFBundleWriterType addFile(
     String name,
     OFBundleContentStorageMethod storage,
-    Path file);
+    OFBundleContentSourceType source);
+
+  /**
+   * Add a file to the bundle.
+   *
+   * @param name    The file name
+   * @param storage The storage method
+   * @param data    The file content
+   *
+   * @return this
+   *
+   * @see OFBundleContentSourceType#ofBytes(byte[])
+   */
+
+  default OFBundleWriterType addFile(
+    final String name,
+    final OFBundleContentStorageMethod storage,
+    final byte[] data)
+  {
+    return this.addFile(name, storage, OFBundleContentSourceType.ofBytes(data));
+  }
+
+  /**
+   * Add an entry copied from an existing archive. The entry is copied in
+   * its stored form: compressed data is transferred as-is, along with its
+   * CRC and sizes, and is never decompressed or recompressed.
+   *
+   * @param name      The file name in the bundle
+   * @param archive   The source archive
+   * @param entryName The name of the entry in the source archive
+   *
+   * @return this
+   */
+
+  OFBundleWriterType addArchiveEntry(
+    String name,
+    Path archive,
+    String entryName);
+
+  /**
+   * Add an entry copied from an existing archive, keeping its name.
+   *
+   * @param archive The source archive
+   * @param name    The name of the entry in the source archive
+   *
+   * @return this
+   *
+   * @see #addArchiveEntry(String, Path, String)
+   */
+
+  default OFBundleWriterType addArchiveEntry(
+    final Path archive,
+    final String name)
+  {
+    return this.addArchiveEntry(name, archive, name);
+  }
 
   /**
    * Execute the bundle writer, producing a bundle file.
    *
+   * @return The size and digests of the bundle
+   *
    * @throws IOException On I/O errors
+   *
+   * @see OFBundleWriterConfiguration#digests()
    */
 
-  void execute()
+  OFBundleWriteResult execute()
     throws IOException;
 }
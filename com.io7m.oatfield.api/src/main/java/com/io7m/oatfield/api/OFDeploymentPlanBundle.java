@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import org.osgi.resource.Resource;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A bundle within a deployment plan.
+ *
+ * @param resource     The resource
+ * @param symbolicName The bundle symbolic name
+ * @param version      The bundle version
+ * @param location     The location of the bundle, if known
+ */
+
+public record OFDeploymentPlanBundle(
+  Resource resource,
+  String symbolicName,
+  String version,
+  Optional<URI> location)
+{
+  /**
+   * A bundle within a deployment plan.
+   *
+   * @param resource     The resource
+   * @param symbolicName The bundle symbolic name
+   * @param version      The bundle version
+   * @param location     The location of the bundle, if known
+   */
+
+  public OFDeploymentPlanBundle
+  {
+    Objects.requireNonNull(resource, "resource");
+    Objects.requireNonNull(symbolicName, "symbolicName");
+    Objects.requireNonNull(version, "version");
+    Objects.requireNonNull(location, "location");
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A deployment plan serializer.
+ */
+
+public interface OFDeploymentPlanSerializerType extends Closeable
+{
+  /**
+   * Serialize the given deployment plan. A serializer writes exactly one
+   * plan, and is closed when this method returns.
+   *
+   * @param plan The plan
+   *
+   * @throws IOException           On I/O errors
+   * @throws IllegalStateException If the serializer is closed
+   */
+
+  void execute(OFDeploymentPlan plan)
+    throws IOException;
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.tests;
+
+import com.io7m.oatfield.api.OFBundleInstallGroup;
+import com.io7m.oatfield.api.OFBundleInstallPlanFactoryType;
+import com.io7m.oatfield.api.OFBundleResolverConfiguration;
+import com.io7m.oatfield.api.OFBundleWriterType;
+import com.io7m.oatfield.vanilla.OFBundleResolvers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.resource.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public abstract class OFBundleInstallPlanContract
+{
+  private OFBundleInstallPlanFactoryType plans;
+  private OFBundleResolvers resolvers;
+  private Path directory;
+
+  protected abstract OFBundleInstallPlanFactoryType plans();
+
+  @BeforeEach
+  public final void setup()
+    throws IOException
+  {
+    this.plans =
+      this.plans();
+    this.resolvers =
+      new OFBundleResolvers();
+    this.directory =
+      OFTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public final void tearDown()
+    throws IOException
+  {
+    OFTestDirectories.deleteDirectory(this.directory);
+  }
+
+  /**
+   * An empty wiring produces an empty plan.
+   */
+
+  @Test
+  public final void testEmpty()
+  {
+    final var plan = this.plans.createInstallPlan(Map.of());
+    assertEquals(List.of(), plan.waves());
+    assertEquals(List.of(), plan.installOrder());
+  }
+
+  /**
+   * Independent bundles are ordered by name and then by version, with
+   * versions compared numerically rather than as text.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testVersionOrder()
+    throws Exception
+  {
+    final var v10 =
+      OFTestBundles.bundleOf(
+        this.directory, "com.io7m.oatfield.v", "10.0.0", w -> {
+
+        });
+    final var v9 =
+      OFTestBundles.bundleOf(
+        this.directory, "com.io7m.oatfield.v", "9.0.0", w -> {
+
+        });
+    final var a =
+      this.bundleOf("com.io7m.oatfield.a", w -> {
+
+      });
+
+    final var wiring =
+      this.resolvers.createResolver(
+        new OFBundleResolverConfiguration(
+          List.of(v10, a, v9),
+          List.of(v10, a, v9),
+          List.of()
+        )).execute();
+
+    final var plan = this.plans.createInstallPlan(wiring);
+    assertEquals(List.of(a, v9, v10), plan.installOrder());
+  }
+
+  /**
+   * Cyclic wiring is collapsed into groups, and independent groups are
+   * placed into the same wave.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testCyclesAndWaves()
+    throws Exception
+  {
+    final var a =
+      this.bundleOf("com.io7m.oatfield.a", w -> {
+        w.addPackageExport("com.io7m.oatfield.a", "1.0.0");
+        w.addPackageImport("com.io7m.oatfield.b", "1.0.0");
+      });
+    final var b =
+      this.bundleOf("com.io7m.oatfield.b", w -> {
+        w.addPackageExport("com.io7m.oatfield.b", "1.0.0");
+        w.addPackageImport("com.io7m.oatfield.a", "1.0.0");
+      });
+    final var c =
+      this.bundleOf("com.io7m.oatfield.c", w -> {
+        w.addPackageImport("com.io7m.oatfield.a", "1.0.0");
+      });
+    final var d =
+      this.bundleOf("com.io7m.oatfield.d", w -> {
+        w.addPackageExport("com.io7m.oatfield.d", "1.0.0");
+      });
+    final var e =
+      this.bundleOf("com.io7m.oatfield.e", w -> {
+        w.addPackageImport("com.io7m.oatfield.d", "1.0.0");
+        w.addPackageImport("com.io7m.oatfield.b", "1.0.0");
+      });
+    final var f =
+      this.bundleOf("com.io7m.oatfield.f", w -> {
+        w.addPackageImport("com.io7m.oatfield.c", "1.0.0");
+      });
+    final var cExport =
+      this.bundleOf("com.io7m.oatfield.c.export", w -> {
+        w.addPackageExport("com.io7m.oatfield.c", "1.0.0");
+        w.addPackageImport("com.io7m.oatfield.a", "1.0.0");
+      });
+
+    final var wiring =
+      this.resolvers.createResolver(
+        new OFBundleResolverConfiguration(
+          List.of(a, b, c, d, e, f, cExport),
+          List.of(c, e, f),
+          List.of()
+        )).execute();
+
+    final var plan = this.plans.createInstallPlan(wiring);
+    assertEquals(3, plan.waves().size());
+
+    final var wave1 = plan.waves().get(0);
+    assertEquals(1, wave1.level());
+    assertEquals(2, wave1.groups().size());
+    assertEquals(
+      List.of(a, b),
+      wave1.groups().get(0).resources()
+    );
+    assertTrue(wave1.groups().get(0).isCyclic());
+    assertEquals(List.of(d), wave1.groups().get(1).resources());
+    assertFalse(wave1.groups().get(1).isCyclic());
+
+    final var wave2 = plan.waves().get(1);
+    assertEquals(2, wave2.level());
+    assertEquals(
+      List.of(c, cExport, e),
+      wave2.groups()
+        .stream()
+        .map(OFBundleInstallGroup::resources)
+        .flatMap(List::stream)
+        .toList()
+    );
+
+    final var wave3 = plan.waves().get(2);
+    assertEquals(3, wave3.level());
+    assertEquals(List.of(f), wave3.groups().get(0).resources());
+
+    assertEquals(List.of(a, b, d, c, cExport, e, f), plan.installOrder());
+  }
+
+  private Resource bundleOf(
+    final String name,
+    final Consumer<OFBundleWriterType> contents)
+    throws IOException
+  {
+    return OFTestBundles.bundleOf(this.directory, name, contents);
+  }
+}
@@ -24,10 +24,42 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_DEFLATED;
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_UNCOMPRESSED;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -266,6 +298,697 @@ public abstract class OFBundleReaderContract
     assertTrue(ex.getMessage().contains("does not contain a jar manifest"));
   }
 
+  /**
+   * If a bundle contains more than one manifest, the last one is used both
+   * when reading headers alone and when opening a reader, as it is by the
+   * JDK.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testHeadersDuplicateManifest()
+    throws Exception
+  {
+    final var other = "META-INF/MANIFEST.MX";
+    try (var jar = new ZipOutputStream(Files.newOutputStream(this.output))) {
+      jar.putNextEntry(new ZipEntry(JarFile.MANIFEST_NAME));
+      jar.write(
+        "Manifest-Version: 1.0\r\nBundle-SymbolicName: first\r\n\r\n"
+          .getBytes(UTF_8));
+      jar.putNextEntry(new ZipEntry(other));
+      jar.write(
+        "Manifest-Version: 1.0\r\nBundle-SymbolicName: second\r\n\r\n"
+          .getBytes(UTF_8));
+    }
+
+    final var bytes = Files.readAllBytes(this.output);
+    final var search = other.getBytes(UTF_8);
+    final var replacement = JarFile.MANIFEST_NAME.getBytes(UTF_8);
+    for (int index = 0; index + search.length <= bytes.length; ++index) {
+      if (Arrays.equals(
+        bytes, index, index + search.length, search, 0, search.length)) {
+        System.arraycopy(replacement, 0, bytes, index, replacement.length);
+      }
+    }
+    Files.write(this.output, bytes);
+
+    try (var file = new JarFile(this.output.toFile())) {
+      assertEquals(
+        "second",
+        file.getManifest().getMainAttributes().getValue("Bundle-SymbolicName")
+      );
+    }
+
+    final var headers = this.readers.readHeaders(this.output);
+    assertEquals(Optional.of("second"), headers.bundleSymbolicName());
+    try (var reader = this.readers.createReader(this.output)) {
+      assertEquals(headers, reader.headers());
+      assertEquals("second", reader.bundleSymbolicName());
+    }
+  }
+
+  /**
+   * Entries are found whatever the order of the central directory, and
+   * names are ordered as strings, even where that differs from the order
+   * of their UTF-8 encodings. The last of any entries with the same name
+   * is used, and names that are not valid UTF-8 are decoded with
+   * replacement characters.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testEntryNamesUnordered()
+    throws Exception
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-SymbolicName", "com.io7m.x");
+
+    final var written = List.of(
+      "z.txt",
+      "d/\uE000.txt",
+      "d/\uD83D\uDE00.txt",
+      "d/a.txt",
+      "a.txt",
+      "dup.txt",
+      "bad-XX.txt",
+      "dup.txx"
+    );
+    try (var jar = new JarOutputStream(
+      Files.newOutputStream(this.output), manifest)) {
+      for (final var name : written) {
+        jar.putNextEntry(new ZipEntry(name));
+        jar.write(("content " + written.indexOf(name)).getBytes(UTF_8));
+      }
+    }
+
+    final var bytes = Files.readAllBytes(this.output);
+    replaceAll(bytes, "dup.txx".getBytes(UTF_8), "dup.txt".getBytes(UTF_8));
+    replaceAll(
+      bytes,
+      "bad-XX".getBytes(UTF_8),
+      new byte[]{'b', 'a', 'd', '-', (byte) 0xc3, (byte) 0x28}
+    );
+    Files.write(this.output, bytes);
+
+    final var expected = new TreeSet<>(written);
+    expected.remove("dup.txx");
+    expected.remove("bad-XX.txt");
+    expected.add("bad-\uFFFD(.txt");
+    expected.add(JarFile.MANIFEST_NAME);
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertEquals(List.copyOf(expected), List.copyOf(reader.files()));
+      assertEquals(expected, reader.entries().keySet());
+
+      for (final var name : expected) {
+        assertTrue(reader.files().contains(name), name);
+        assertTrue(reader.entry(name).isPresent(), name);
+      }
+
+      assertEquals(
+        "content 7",
+        new String(reader.contentFor("dup.txt").readAllBytes(), UTF_8)
+      );
+      assertEquals(
+        "content 6",
+        new String(reader.contentFor("bad-\uFFFD(.txt").readAllBytes(), UTF_8)
+      );
+      assertEquals(
+        "content 2",
+        new String(
+          reader.contentFor("d/\uD83D\uDE00.txt").readAllBytes(), UTF_8)
+      );
+
+      assertEquals(
+        List.of("d/a.txt", "d/\uD83D\uDE00.txt", "d/\uE000.txt"),
+        List.copyOf(reader.filesUnder("d/"))
+      );
+      assertFalse(reader.files().contains("d/\uD83D"));
+      assertTrue(reader.entry("d/\uD83D").isEmpty());
+      assertEquals(
+        List.of("d/\uD83D\uDE00.txt"),
+        List.copyOf(reader.filesUnder("d/\uD83D"))
+      );
+    }
+  }
+
+  private static void replaceAll(
+    final byte[] bytes,
+    final byte[] search,
+    final byte[] replacement)
+  {
+    for (int index = 0; index + search.length <= bytes.length; ++index) {
+      if (Arrays.equals(
+        bytes, index, index + search.length, search, 0, search.length)) {
+        System.arraycopy(replacement, 0, bytes, index, replacement.length);
+      }
+    }
+  }
+
+  /**
+   * Trying to open a bundle whose central directory headers claim more
+   * bytes than the directory holds fails cleanly.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testReadTruncatedDirectory()
+    throws Exception
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-SymbolicName", "com.io7m.x");
+
+    try (var jar = new JarOutputStream(
+      Files.newOutputStream(this.output), manifest)) {
+      jar.putNextEntry(new ZipEntry("x.txt"));
+      jar.write("x".getBytes(UTF_8));
+    }
+
+    final var bytes = Files.readAllBytes(this.output);
+    var header = -1;
+    for (int index = 0; index + 4 <= bytes.length; ++index) {
+      if (bytes[index] == 'P'
+          && bytes[index + 1] == 'K'
+          && bytes[index + 2] == 1
+          && bytes[index + 3] == 2) {
+        header = index;
+      }
+    }
+    assertTrue(header >= 0);
+    bytes[header + 30] = (byte) 0xff;
+    bytes[header + 31] = (byte) 0xff;
+    Files.write(this.output, bytes);
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.readers.createReader(this.output);
+      });
+    assertTrue(ex.getMessage().contains("central directory header"));
+  }
+
+  /**
+   * Manifest headers can be read without opening a full reader, and match
+   * the headers read by the JDK.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testHeaders()
+    throws Exception
+  {
+    final var headers =
+      this.readers.readHeaders(this.resourceOf("example0.jar"));
+    assertEquals(Optional.of("com.io7m.oatfield.ex0"), headers.bundleSymbolicName());
+    assertEquals(Optional.of("1.0.0"), headers.bundleVersion());
+    assertEquals(Optional.of("2"), headers.header("bundle-manifestversion"));
+    assertEquals(Optional.empty(), headers.header("Nonexistent"));
+
+    final var jar = this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var expected = new TreeMap<String, String>();
+    try (var file = new JarFile(jar.toFile())) {
+      for (final var entry : file.getManifest().getMainAttributes().entrySet()) {
+        expected.put(entry.getKey().toString(), entry.getValue().toString());
+      }
+    }
+    assertEquals(expected, this.readers.readHeaders(jar).headers());
+  }
+
+  /**
+   * Manifest headers can be read from archives whose manifest comes after
+   * many other entries, is stored rather than deflated, or is followed by
+   * an archive comment.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testHeadersManifestLast()
+    throws Exception
+  {
+    final var manifest =
+      "Manifest-Version: 1.0\r\nBundle-SymbolicName: com.io7m.x;singleton:=true\r\n\r\n"
+        .getBytes(UTF_8);
+
+    for (final var method : new int[]{ZipEntry.DEFLATED, ZipEntry.STORED}) {
+      try (var zip = new ZipOutputStream(Files.newOutputStream(this.output))) {
+        for (int index = 0; index < 2000; ++index) {
+          zip.putNextEntry(new ZipEntry("data/%s/%d.txt".formatted("x".repeat(index % 100), index)));
+          zip.write(new byte[1]);
+        }
+
+        final var entry = new ZipEntry("META-INF/MANIFEST.MF");
+        if (method == ZipEntry.STORED) {
+          final var crc = new CRC32();
+          crc.update(manifest);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(manifest.length);
+          entry.setCrc(crc.getValue());
+          zip.setComment("A comment.");
+        }
+        zip.putNextEntry(entry);
+        zip.write(manifest);
+      }
+
+      final var headers = this.readers.readHeaders(this.output);
+      assertEquals(Optional.of("com.io7m.x"), headers.bundleSymbolicName());
+      assertEquals(Optional.empty(), headers.bundleVersion());
+    }
+  }
+
+  /**
+   * Reading the headers of something that isn't a bundle fails.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testHeadersNotBundle()
+    throws Exception
+  {
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        this.readers.readHeaders(this.resourceOf("empty.jar"));
+      });
+    assertTrue(ex.getMessage().contains("does not contain a jar manifest"));
+
+    Files.write(this.output, new byte[100]);
+    assertThrows(IOException.class, () -> {
+      this.readers.readHeaders(this.output);
+    });
+  }
+
+  /**
+   * Package and capability headers are parsed into clauses, and the parsed
+   * clauses are cached.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testClauses()
+    throws Exception
+  {
+    try (var reader = this.readers.createReader(
+      this.resourceOf("com.io7m.junreachable.core-4.0.0.jar"))) {
+      final var exports = reader.packageExports();
+      assertEquals(1, exports.size());
+      assertEquals("com.io7m.junreachable", exports.get(0).name());
+      assertEquals(Optional.of("4.0.0"), exports.get(0).attribute("version"));
+      assertSame(exports, reader.clauses("export-package"));
+
+      final var imports = reader.packageImports();
+      assertEquals(List.of("java.lang"), imports.get(0).names());
+
+      final var required = reader.requiredCapabilities();
+      assertEquals("osgi.ee", required.get(0).name());
+      assertEquals(
+        Optional.of("(&(osgi.ee=JavaSE)(version=17))"),
+        required.get(0).directive("filter")
+      );
+
+      assertEquals(List.of(), reader.providedCapabilities());
+      assertEquals(
+        Optional.of("com.io7m.junreachable.core"),
+        reader.headers().header("automatic-module-name")
+      );
+    }
+  }
+
+  /**
+   * Clauses with multiple names, typed attributes, and quoted values
+   * containing separators are parsed correctly, and malformed clauses are
+   * rejected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testClausesQuoted()
+    throws Exception
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-SymbolicName", "com.io7m.x");
+    attributes.putValue(
+      "Import-Package",
+      "a.b;c.d;version:Version=\"[1,2)\";resolution:=optional, "
+        + "e.f;x=\"q\\\"uote;d\",,");
+    attributes.putValue("Export-Package", "a;version=1;b");
+    attributes.putValue("Require-Capability", "a;version=\"1.0, b");
+    attributes.putValue("Provide-Capability", "a;x=\"\\");
+
+    try (var jar = new JarOutputStream(
+      Files.newOutputStream(this.output), manifest)) {
+      jar.flush();
+    }
+
+    try (var reader = this.readers.createReader(this.output)) {
+      final var imports = reader.packageImports();
+      assertEquals(2, imports.size());
+
+      final var first = imports.get(0);
+      assertEquals(List.of("a.b", "c.d"), first.names());
+      assertEquals(Optional.of("[1,2)"), first.attribute("version"));
+      assertEquals(Optional.of("optional"), first.directive("resolution"));
+
+      final var second = imports.get(1);
+      assertEquals(List.of("e.f"), second.names());
+      assertEquals(Optional.of("q\"uote;d"), second.attribute("x"));
+      assertEquals(Map.of(), second.directives());
+
+      assertThrows(IllegalArgumentException.class, reader::packageExports);
+      assertThrows(
+        IllegalArgumentException.class, reader::requiredCapabilities);
+      assertThrows(
+        IllegalArgumentException.class, reader::providedCapabilities);
+    }
+  }
+
+  /**
+   * Entry metadata is read from the central directory and agrees with the
+   * JDK, and can be used to find changed entries without reading content.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testEntryMetadata()
+    throws Exception
+  {
+    final var other = this.directory.resolve("other.jar");
+    this.writeJar(this.output, "Hello.".getBytes(UTF_8));
+    this.writeJar(other, "Goodbye.".getBytes(UTF_8));
+
+    try (var reader = this.readers.createReader(this.output);
+         var zip = new ZipFile(this.output.toFile())) {
+      assertEquals(reader.files(), reader.entries().keySet());
+
+      for (final var expected : Collections.list(zip.entries())) {
+        final var entry = reader.entry(expected.getName()).orElseThrow();
+        assertEquals(expected.getSize(), entry.size());
+        assertEquals(expected.getCompressedSize(), entry.compressedSize());
+        assertEquals(expected.getCrc(), entry.crc());
+        assertEquals(expected.getMethod(), entry.method());
+      }
+
+      final var stored = reader.entry("stored.txt").orElseThrow();
+      assertEquals(Optional.of(STORE_UNCOMPRESSED), stored.storageMethod());
+      assertEquals(stored.size(), stored.compressedSize());
+      final var deflated = reader.entry("deflated.txt").orElseThrow();
+      assertEquals(Optional.of(STORE_DEFLATED), deflated.storageMethod());
+      assertTrue(deflated.localHeaderOffset() > stored.localHeaderOffset());
+      assertEquals(Optional.empty(), reader.entry("nonexistent"));
+
+      try (var otherReader = this.readers.createReader(other)) {
+        final var changed = new TreeSet<String>();
+        for (final var entry : reader.entries().values()) {
+          final var otherEntry = otherReader.entry(entry.name()).orElseThrow();
+          if (otherEntry.crc() != entry.crc()) {
+            changed.add(entry.name());
+          }
+        }
+        assertEquals(Set.of("stored.txt"), changed);
+      }
+    }
+  }
+
+  /**
+   * Entry content can be obtained as read-only buffers. Small stored
+   * entries are copied, and so survive the bundle being truncated.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentBuffer()
+    throws Exception
+  {
+    final var data = "Hello.".getBytes(UTF_8);
+    this.writeJar(this.output, data);
+
+    final ByteBuffer stored;
+    try (var reader = this.readers.createReader(this.output)) {
+      stored = reader.contentBufferFor("stored.txt");
+      assertTrue(stored.isReadOnly());
+      assertFalse(stored.isDirect());
+      assertEquals(ByteBuffer.wrap(data), stored);
+
+      final var deflated = reader.contentBufferFor("deflated.txt");
+      assertTrue(deflated.isReadOnly());
+      assertEquals(
+        ByteBuffer.wrap(reader.contentFor("deflated.txt").readAllBytes()),
+        deflated
+      );
+
+      assertThrows(NoSuchFileException.class, () -> {
+        reader.contentBufferFor("nonexistent");
+      });
+    }
+
+    Files.write(this.output, new byte[0]);
+    assertEquals(ByteBuffer.wrap(data), stored);
+  }
+
+  /**
+   * Large stored entries are mapped rather than copied, and the mapping
+   * covers only the entry itself.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentBufferMapped()
+    throws Exception
+  {
+    final var data = new byte[256 * 1024];
+    new Random(0x5eedL).nextBytes(data);
+    this.writeJar(this.output, data);
+
+    final ByteBuffer stored;
+    try (var reader = this.readers.createReader(this.output)) {
+      stored = reader.contentBufferFor("stored.txt");
+      assertTrue(stored.isReadOnly());
+      assertTrue(stored.isDirect());
+      assertEquals(data.length, stored.capacity());
+      assertEquals(ByteBuffer.wrap(data), stored);
+    }
+
+    assertEquals(ByteBuffer.wrap(data), stored);
+  }
+
+  /**
+   * A single reader can be used by many threads concurrently, and a thread
+   * that is interrupted while reading does not break the reader for the
+   * other threads.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testConcurrentReads()
+    throws Exception
+  {
+    final var random = new Random(0x5eedL);
+    final var contents = new TreeMap<String, byte[]>();
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-SymbolicName", "com.io7m.x");
+    attributes.putValue("Import-Package", "org.slf4j");
+
+    try (var jar = new JarOutputStream(
+      Files.newOutputStream(this.output), manifest)) {
+      for (int index = 0; index < 64; ++index) {
+        final var data = new byte[random.nextInt(65536)];
+        if (index % 2 == 0) {
+          random.nextBytes(data);
+        }
+        final var name = "file%d.bin".formatted(Integer.valueOf(index));
+        final var entry = new ZipEntry(name);
+        if (index % 2 == 0) {
+          final var crc = new CRC32();
+          crc.update(data);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(data.length);
+          entry.setCrc(crc.getValue());
+        }
+        jar.putNextEntry(entry);
+        jar.write(data);
+        contents.put(name, data);
+      }
+    }
+
+    final var names = List.copyOf(contents.keySet());
+    final var threads = 8;
+    final var resources = ConcurrentHashMap.<Object>newKeySet();
+    final var ready = new CountDownLatch(threads);
+    final var executor = Executors.newFixedThreadPool(threads);
+    try (var reader = this.readers.createReader(this.output)) {
+      final var futures = new ArrayList<Future<?>>();
+      for (int thread = 0; thread < threads; ++thread) {
+        final var seed = random.nextLong();
+        futures.add(executor.submit(() -> {
+          final var taskRandom = new Random(seed);
+          ready.countDown();
+          ready.await();
+          for (int index = 0; index < 200; ++index) {
+            final var name = names.get(taskRandom.nextInt(names.size()));
+            final var expected = contents.get(name);
+            if (index % 50 == 25) {
+              Thread.currentThread().interrupt();
+              assertThrows(ClosedByInterruptException.class, () -> {
+                try (var stream = reader.contentFor(name)) {
+                  stream.readAllBytes();
+                }
+              });
+              assertTrue(Thread.interrupted());
+            }
+            try (var stream = reader.contentFor(name)) {
+              assertArrayEquals(expected, stream.readAllBytes());
+            }
+            assertEquals(
+              ByteBuffer.wrap(expected), reader.contentBufferFor(name));
+            assertEquals(65, reader.files().size());
+            assertEquals("org.slf4j", reader.packageImports().get(0).name());
+            resources.add(reader.toResource());
+          }
+          return null;
+        }));
+      }
+      for (final var future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(1, resources.size());
+  }
+
+  /**
+   * File names can be queried by prefix, package, and class, and agree
+   * with a plain sorted set of the same names.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testFileQueries()
+    throws Exception
+  {
+    final var random = new Random(0x5eedL);
+    final var expected = new TreeSet<String>();
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-SymbolicName", "com.io7m.x");
+
+    try (var jar = new JarOutputStream(
+      Files.newOutputStream(this.output), manifest)) {
+      expected.add(JarFile.MANIFEST_NAME);
+
+      final var names = new ArrayList<String>();
+      names.add("module-info.class");
+      names.add("META-INF/versions/11/com/io7m/x/A.class");
+      names.add("com/io7m/x/B$1.class");
+      names.add("com/io7m/x/data/été.txt");
+      names.add("com/io7m/xy/C.class");
+      for (int index = 0; index < 500; ++index) {
+        names.add("com/io7m/x/p%d/C%d.class".formatted(
+          Integer.valueOf(random.nextInt(10)),
+          Integer.valueOf(index)
+        ));
+      }
+      for (final var name : names) {
+        jar.putNextEntry(new ZipEntry(name));
+        expected.add(name);
+      }
+    }
+
+    try (var reader = this.readers.createReader(this.output)) {
+      final var files = reader.files();
+      assertEquals(expected, files);
+      assertEquals(List.copyOf(expected), List.copyOf(files));
+      assertEquals(expected.first(), files.first());
+      assertEquals(expected.last(), files.last());
+      assertEquals(
+        expected.subSet("com/io7m/x/p3", "com/io7m/x/p7"),
+        files.subSet("com/io7m/x/p3", "com/io7m/x/p7"));
+      assertEquals(
+        expected.headSet("com/io7m/x/p5"), files.headSet("com/io7m/x/p5"));
+      assertEquals(
+        expected.tailSet("com/io7m/x/p5"), files.tailSet("com/io7m/x/p5"));
+
+      for (final var prefix : List.of(
+        "", "com/", "com/io7m/x", "com/io7m/x/", "com/io7m/x/p4/", "zzz")) {
+        final var under = new TreeSet<String>();
+        for (final var name : expected) {
+          if (name.startsWith(prefix)) {
+            under.add(name);
+          }
+        }
+        assertEquals(under, reader.filesUnder(prefix), prefix);
+        assertEquals(
+          List.copyOf(under), List.copyOf(reader.filesUnder(prefix)), prefix);
+      }
+
+      final var underX = reader.filesUnder("com/io7m/x/");
+      assertTrue(underX.contains("com/io7m/x/B$1.class"));
+      assertFalse(underX.contains("com/io7m/xy/C.class"));
+      assertFalse(underX.contains(JarFile.MANIFEST_NAME));
+
+      final var packages = new TreeSet<String>();
+      packages.add("com.io7m.x");
+      packages.add("com.io7m.xy");
+      for (final var name : expected) {
+        if (name.startsWith("com/io7m/x/p")) {
+          packages.add("com.io7m.x.p" + name.charAt(12));
+        }
+      }
+      assertEquals(packages, reader.packages());
+
+      assertTrue(reader.containsClass("com.io7m.x.B$1"));
+      assertTrue(reader.containsClass("com.io7m.xy.C"));
+      assertTrue(reader.containsClass("module-info"));
+      assertFalse(reader.containsClass("com.io7m.x.B"));
+      assertFalse(reader.containsClass("com.io7m.x.A"));
+    }
+  }
+
+  private void writeJar(
+    final Path file,
+    final byte[] storedData)
+    throws IOException
+  {
+    final var manifest = new Manifest();
+    final var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Bundle-SymbolicName", "com.io7m.x");
+
+    try (var jar = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+      final var crc = new CRC32();
+      crc.update(storedData);
+      final var stored = new ZipEntry("stored.txt");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(storedData.length);
+      stored.setCrc(crc.getValue());
+      jar.putNextEntry(stored);
+      jar.write(storedData);
+
+      jar.putNextEntry(new ZipEntry("deflated.txt"));
+      jar.write("Deflated ".repeat(100).getBytes(UTF_8));
+    }
+  }
+
   private Path resourceOf(
     final String name)
     throws IOException
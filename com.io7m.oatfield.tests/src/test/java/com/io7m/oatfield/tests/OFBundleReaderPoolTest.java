@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.tests;
+
+import com.io7m.oatfield.api.OFBundleReaderFactoryType;
+import com.io7m.oatfield.vanilla.OFBundleReaderPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class OFBundleReaderPoolTest extends OFBundleReaderContract
+{
+  private Path poolDirectory;
+  private OFBundleReaderPool sharedPool;
+
+  @Override
+  protected OFBundleReaderFactoryType readers()
+  {
+    this.sharedPool = new OFBundleReaderPool(4);
+    return this.sharedPool;
+  }
+
+  @BeforeEach
+  public void poolSetup()
+    throws IOException
+  {
+    this.poolDirectory = OFTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public void poolTearDown()
+    throws IOException
+  {
+    try {
+      this.sharedPool.close();
+    } finally {
+      OFTestDirectories.deleteDirectory(this.poolDirectory);
+    }
+  }
+
+  /**
+   * Readers for the same bundle share a single pooled reader, which stays
+   * open after all of its leases are closed.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPoolShared()
+    throws Exception
+  {
+    final var file = this.bundle("example0.jar", "a.jar");
+
+    try (var pool = new OFBundleReaderPool(2)) {
+      final var reader0 = pool.createReader(file);
+      final var reader1 = pool.createReader(file);
+      assertSame(reader0.toResource(), reader1.toResource());
+      assertEquals(1, pool.openReaders());
+
+      reader0.close();
+      reader1.close();
+      assertEquals(1, pool.openReaders());
+
+      try (var reader2 = pool.createReader(file)) {
+        assertEquals("com.io7m.oatfield.ex0", reader2.bundleSymbolicName());
+      }
+      assertEquals(
+        "com.io7m.oatfield.ex0",
+        pool.readHeaders(file).bundleSymbolicName().orElseThrow()
+      );
+      assertEquals(1, pool.openReaders());
+    }
+  }
+
+  /**
+   * A pooled reader is not reused if its bundle changes.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPoolChanged()
+    throws Exception
+  {
+    final var file = this.bundle("example0.jar", "a.jar");
+
+    try (var pool = new OFBundleReaderPool(2)) {
+      final var reader0 = pool.createReader(file);
+      assertEquals("com.io7m.oatfield.ex0", reader0.bundleSymbolicName());
+
+      Files.copy(
+        this.bundle("com.io7m.junreachable.core-4.0.0.jar", "b.jar"),
+        file,
+        REPLACE_EXISTING
+      );
+      Files.setLastModifiedTime(file, FileTime.from(Instant.EPOCH));
+
+      try (var reader1 = pool.createReader(file)) {
+        assertEquals(
+          "com.io7m.junreachable.core", reader1.bundleSymbolicName());
+      }
+
+      assertEquals("com.io7m.oatfield.ex0", reader0.bundleSymbolicName());
+      reader0.close();
+      assertEquals(1, pool.openReaders());
+    }
+  }
+
+  /**
+   * A pooled reader is not reused if an interrupt closed its channel.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPoolInterrupted()
+    throws Exception
+  {
+    final var file = this.bundle("example0.jar", "a.jar");
+
+    try (var pool = new OFBundleReaderPool(2)) {
+      final var reader0 = pool.createReader(file);
+      final var resource0 = reader0.toResource();
+      final var name = reader0.files().first();
+
+      Thread.currentThread().interrupt();
+      assertThrows(ClosedByInterruptException.class, () -> {
+        try (var stream = reader0.contentFor(name)) {
+          stream.readAllBytes();
+        }
+      });
+      assertTrue(Thread.interrupted());
+      reader0.close();
+
+      try (var reader1 = pool.createReader(file)) {
+        assertNotSame(resource0, reader1.toResource());
+        try (var stream = reader1.contentFor(name)) {
+          stream.readAllBytes();
+        }
+      }
+      assertEquals(1, pool.openReaders());
+    }
+  }
+
+  /**
+   * The least recently used readers that are not in use are closed when
+   * too many readers are open.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPoolEviction()
+    throws Exception
+  {
+    final var file0 = this.bundle("example0.jar", "a.jar");
+    final var file1 = this.bundle("example0.jar", "b.jar");
+    final var file2 = this.bundle("example0.jar", "c.jar");
+
+    try (var pool = new OFBundleReaderPool(2)) {
+      final var reader0 = pool.createReader(file0);
+      final var reader1 = pool.createReader(file1);
+      final var reader2 = pool.createReader(file2);
+      assertEquals(3, pool.openReaders());
+
+      final var resource1 = reader1.toResource();
+      final var resource2 = reader2.toResource();
+      reader1.close();
+      reader2.close();
+      reader0.close();
+      assertEquals(2, pool.openReaders());
+
+      try (var reader = pool.createReader(file2)) {
+        assertSame(resource2, reader.toResource());
+      }
+      try (var reader = pool.createReader(file1)) {
+        assertNotSame(resource1, reader.toResource());
+      }
+      assertEquals(2, pool.openReaders());
+    }
+  }
+
+  /**
+   * Leases can be closed exactly once, remain usable after the pool is
+   * closed, and the pool refuses new readers once closed.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testPoolClosed()
+    throws Exception
+  {
+    final var file = this.bundle("example0.jar", "a.jar");
+    final var pool = new OFBundleReaderPool(2);
+
+    final var reader0 = pool.createReader(file);
+    final var reader1 = pool.createReader(file);
+    reader0.close();
+    reader0.close();
+    assertThrows(IllegalStateException.class, reader0::files);
+
+    pool.close();
+    assertEquals(0, pool.openReaders());
+    assertEquals("com.io7m.oatfield.ex0", reader1.bundleSymbolicName());
+    reader1.close();
+
+    assertThrows(IllegalStateException.class, () -> {
+      pool.createReader(file);
+    });
+  }
+
+  private Path bundle(
+    final String resource,
+    final String name)
+    throws IOException
+  {
+    var source = this.poolDirectory.resolve(resource);
+    if (!Files.exists(source)) {
+      source = OFTestDirectories.resourceOf(
+        OFBundleReaderPoolTest.class,
+        this.poolDirectory,
+        resource
+      );
+    }
+    final var target = this.poolDirectory.resolve(name);
+    Files.copy(source, target, REPLACE_EXISTING);
+    return target;
+  }
+}
@@ -16,10 +16,16 @@
 
 package com.io7m.oatfield.tests;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 import com.io7m.oatfield.api.OFBundleResolutionException;
+import com.io7m.oatfield.api.OFBundleResolutionFailure;
 import com.io7m.oatfield.api.OFBundleResolverConfiguration;
 import com.io7m.oatfield.api.OFBundleResolverFactoryType;
+import com.io7m.oatfield.api.OFBundleWriterType;
 import com.io7m.oatfield.vanilla.OFBundleReaders;
+import com.io7m.oatfield.vanilla.internal.OFBundleResolver;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -31,8 +37,14 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
+import static com.io7m.oatfield.api.OFBundleResolutionRejectionReason.FILTER_MISMATCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public abstract class OFBundleResolverContract
 {
@@ -91,8 +103,222 @@ public abstract class OFBundleResolverContract
       });
 
     logFailure(ex.unmetRequirements());
+    assertTrue(ex.diagnostics().isEmpty());
   }
 
+  /**
+   * Diagnostics are recorded for missing requirements if requested.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testMandatoryNotPresentDiagnostics()
+    throws Exception
+  {
+    final var unreachable =
+      this.osgiResourceOf("com.io7m.junreachable.core-4.0.0.jar");
+
+    final var configuration =
+      new OFBundleResolverConfiguration(
+        List.of(),
+        List.of(unreachable),
+        List.of(),
+        true
+      );
+
+    final var ex =
+      assertThrows(OFBundleResolutionException.class, () -> {
+        this.resolvers.createResolver(configuration)
+          .execute();
+      });
+
+    final var diagnostics = ex.diagnostics().orElseThrow();
+    assertFalse(diagnostics.failures().isEmpty());
+
+    for (final var failure : diagnostics.failures()) {
+      assertEquals(
+        failure.requirement(),
+        failure.chain().get(failure.chain().size() - 1)
+      );
+      assertTrue(failure.rejections().isEmpty());
+    }
+  }
+
+  /**
+   * Diagnostics record the chain of requirements that led to a failure, and
+   * the candidates that were rejected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testTransitiveVersionMismatchDiagnostics()
+    throws Exception
+  {
+    final var top =
+      this.bundleOf("com.io7m.oatfield.top", w -> {
+        w.addPackageImport("com.io7m.oatfield.middle", "1.0.0");
+      });
+    final var middle =
+      this.bundleOf("com.io7m.oatfield.middle", w -> {
+        w.addPackageExport("com.io7m.oatfield.middle", "1.0.0");
+        w.addPackageImport("com.io7m.oatfield.bottom", "2.0.0");
+      });
+    final var bottom =
+      this.bundleOf("com.io7m.oatfield.bottom", w -> {
+        w.addPackageExport("com.io7m.oatfield.bottom", "1.0.0");
+      });
+
+    final var configuration =
+      new OFBundleResolverConfiguration(
+        List.of(top, middle, bottom),
+        List.of(top),
+        List.of()
+      ).withRecordDiagnostics(true);
+
+    final var ex =
+      assertThrows(OFBundleResolutionException.class, () -> {
+        this.resolvers.createResolver(configuration)
+          .execute();
+      });
+
+    logFailure(ex.unmetRequirements());
+
+    final var diagnostics =
+      ex.diagnostics().orElseThrow();
+    final var failure =
+      diagnostics.failures()
+        .stream()
+        .filter(f -> f.requirement().getResource().equals(middle))
+        .findFirst()
+        .orElseThrow();
+
+    logDiagnostic(failure);
+
+    assertEquals(2, failure.chain().size());
+    assertEquals(top, failure.chain().get(0).getResource());
+    assertEquals(middle, failure.chain().get(1).getResource());
+
+    assertEquals(1, failure.rejections().size());
+    final var rejection = failure.rejections().get(0);
+    assertEquals(bottom, rejection.candidate().getResource());
+    assertEquals(FILTER_MISMATCH, rejection.reason());
+  }
+
+  /**
+   * Uses constraint violations are recorded in the diagnostics even when
+   * debug logging is disabled, and the resolver only produces debug output
+   * when debug logging is enabled on the SLF4J logger.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testUsesConflictDiagnosticsLogLevel()
+    throws Exception
+  {
+    final var x1 =
+      this.bundleOf("com.io7m.oatfield.x1", w -> {
+        w.addPackageExport("com.io7m.oatfield.x", "1.0.0");
+      });
+    final var x2 =
+      this.bundleOf("com.io7m.oatfield.x2", w -> {
+        w.addPackageExport("com.io7m.oatfield.x", "2.0.0");
+      });
+    final var a =
+      this.bundleOf("com.io7m.oatfield.a", w -> {
+        w.addPackageExport(
+          "com.io7m.oatfield.a",
+          Optional.of("1.0.0"),
+          List.of("com.io7m.oatfield.x"));
+        w.addPackageImport("com.io7m.oatfield.x", "[1.0.0,2.0.0)");
+      });
+    final var b =
+      this.bundleOf("com.io7m.oatfield.b", w -> {
+        w.addPackageImport("com.io7m.oatfield.a", "1.0.0");
+        w.addPackageImport("com.io7m.oatfield.x", "[2.0.0,3.0.0)");
+      });
+
+    final var configuration =
+      new OFBundleResolverConfiguration(
+        List.of(x1, x2, a, b),
+        List.of(b),
+        List.of()
+      ).withRecordDiagnostics(true);
+
+    final var logger =
+      (ch.qos.logback.classic.Logger)
+        LoggerFactory.getLogger(OFBundleResolver.class);
+    final var levelSaved = logger.getLevel();
+    final var appender = new ListAppender<ILoggingEvent>();
+    appender.start();
+    logger.addAppender(appender);
+
+    try {
+      logger.setLevel(Level.INFO);
+
+      final var ex =
+        assertThrows(OFBundleResolutionException.class, () -> {
+          this.resolvers.createResolver(configuration)
+            .execute();
+        });
+
+      final var conflicts =
+        ex.diagnostics().orElseThrow().conflicts();
+      assertFalse(conflicts.isEmpty());
+      assertTrue(
+        conflicts.stream().anyMatch(c -> c.resource().equals(b)),
+        "Conflict recorded for the mandatory bundle"
+      );
+      assertTrue(
+        appender.list.stream()
+          .noneMatch(e -> e.getLevel() == Level.DEBUG),
+        "No debug output with debug disabled"
+      );
+
+      logger.setLevel(Level.DEBUG);
+
+      assertThrows(OFBundleResolutionException.class, () -> {
+        this.resolvers.createResolver(configuration)
+          .execute();
+      });
+
+      assertTrue(
+        appender.list.stream()
+          .anyMatch(e -> e.getLevel() == Level.DEBUG),
+        "Debug output with debug enabled"
+      );
+    } finally {
+      logger.detachAppender(appender);
+      logger.setLevel(levelSaved);
+    }
+  }
+
+  private static void logDiagnostic(
+    final OFBundleResolutionFailure failure)
+  {
+    LOG.debug("Failure: {}", failure.requirement());
+    for (final var requirement : failure.chain()) {
+      LOG.debug("  Via: {}", requirement);
+    }
+    for (final var rejection : failure.rejections()) {
+      LOG.debug(
+        "  Rejected: {} ({})",
+        rejection.candidate(),
+        rejection.reason());
+    }
+  }
+
+  private Resource bundleOf(
+    final String name,
+    final Consumer<OFBundleWriterType> contents)
+    throws IOException
+  {
+    return OFTestBundles.bundleOf(this.directory, name, contents);
+  }
+
+
   private static void logFailure(
     final List<Requirement> requirements)
   {
@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.tests;
+
+import com.io7m.oatfield.api.OFBundleBatchConfiguration;
+import com.io7m.oatfield.api.OFBundleBatchItem;
+import com.io7m.oatfield.api.OFBundleWriterConfiguration;
+import com.io7m.oatfield.api.OFBundleWriterFactoryType;
+import com.io7m.oatfield.vanilla.OFBundleWriters;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_DEFLATED;
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_UNCOMPRESSED;
+import static com.io7m.oatfield.api.OFBundleOutputTargetType.ofStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes many small bundles with a shared factory (and therefore a shared
+ * pool of deflaters and buffers) and with a new factory per bundle,
+ * writes a large bundle with varying parallelism, and writes batches of
+ * bundles with varying parallelism.
+ * Enabled with {@code -Dcom.io7m.oatfield.benchmark=true}.
+ */
+
+@EnabledIfSystemProperty(named = "com.io7m.oatfield.benchmark", matches = "true")
+public final class OFBundleWriterBenchmarkTest
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(OFBundleWriterBenchmarkTest.class);
+
+  private static final int BUNDLES = 10_000;
+  private static final byte[] CLASS_DATA =
+    "public final class Example { }\n".repeat(40).getBytes(UTF_8);
+
+  private static void writeBundles(
+    final String label,
+    final Supplier<OFBundleWriterFactoryType> writers)
+    throws IOException
+  {
+    final var output = new ByteArrayOutputStream(4096);
+    final var timeThen = System.nanoTime();
+    var bytes = 0L;
+
+    for (int index = 0; index < BUNDLES; ++index) {
+      output.reset();
+
+      final var configuration =
+        new OFBundleWriterConfiguration(
+          ofStream(output),
+          "com.io7m.oatfield.bench" + index,
+          "1.0.0"
+        );
+
+      try (var writer = writers.get().createWriter(configuration)) {
+        writer.addPackageExport("com.io7m.oatfield.bench" + index, "1.0.0");
+        writer.addPackageImport("java.lang");
+        writer.addFile("a/Example.class", STORE_DEFLATED, CLASS_DATA);
+        writer.addFile("b/Example.class", STORE_DEFLATED, CLASS_DATA);
+        writer.execute();
+      }
+      bytes += output.size();
+    }
+
+    final var timeNow = System.nanoTime();
+    final var millis = (timeNow - timeThen) / 1_000_000L;
+    LOG.info(
+      "{}: {} bundles ({} bytes) in {} ms ({} us/bundle)",
+      label,
+      Integer.valueOf(BUNDLES),
+      Long.valueOf(bytes),
+      Long.valueOf(millis),
+      Long.valueOf((millis * 1000L) / BUNDLES)
+    );
+  }
+
+  /**
+   * Write many small bundles.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testWriteSmallBundles()
+    throws Exception
+  {
+    final var shared = new OFBundleWriters();
+
+    writeBundles("warmup (shared)", () -> shared);
+    writeBundles("warmup (unshared)", OFBundleWriters::new);
+    writeBundles("shared factory", () -> shared);
+    writeBundles("factory per bundle", OFBundleWriters::new);
+  }
+
+  private static void writeLarge(
+    final OFBundleWriterFactoryType writers,
+    final Path output,
+    final int parallelism)
+    throws IOException
+  {
+    final var random = new Random(0x5eedL);
+    final var stored = new byte[1024 * 1024];
+    random.nextBytes(stored);
+
+    final var configuration =
+      new OFBundleWriterConfiguration(output, "com.io7m.oatfield.large", "1.0.0")
+        .withParallelism(parallelism);
+
+    final var timeThen = System.nanoTime();
+    try (var writer = writers.createWriter(configuration)) {
+      for (int index = 0; index < 256; ++index) {
+        writer.addFile("stored/%d.bin".formatted(index), STORE_UNCOMPRESSED, stored);
+        writer.addFile("text/%d.class".formatted(index), STORE_DEFLATED,
+          ("class Example%d { }\n".formatted(index)).repeat(20_000).getBytes(UTF_8));
+      }
+      writer.execute();
+    }
+    final var timeNow = System.nanoTime();
+
+    LOG.info(
+      "large bundle, parallelism {}: {} bytes in {} ms",
+      Integer.valueOf(parallelism),
+      Long.valueOf(Files.size(output)),
+      Long.valueOf((timeNow - timeThen) / 1_000_000L)
+    );
+  }
+
+  /**
+   * Write a large bundle with increasing parallelism.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testWriteLargeBundle()
+    throws Exception
+  {
+    final var writers = new OFBundleWriters();
+    final var output = Files.createTempFile("oatfield-", ".jar");
+    try {
+      writeLarge(writers, output, 1);
+      for (final var parallelism : new int[]{1, 2, 4, 8}) {
+        writeLarge(writers, output, parallelism);
+      }
+    } finally {
+      Files.deleteIfExists(output);
+    }
+  }
+
+  private static void writeBatch(
+    final OFBundleWriterFactoryType writers,
+    final Path directory,
+    final int parallelism)
+    throws InterruptedException
+  {
+    final var items = new ArrayList<OFBundleBatchItem>();
+    for (int index = 0; index < 256; ++index) {
+      final var name = "com.io7m.oatfield.batch" + index;
+      final var configuration =
+        new OFBundleWriterConfiguration(
+          directory.resolve(name + ".jar"), name, "1.0.0");
+
+      items.add(new OFBundleBatchItem(configuration, writer -> {
+        writer.addPackageExport(name, "1.0.0");
+        for (int file = 0; file < 64; ++file) {
+          writer.addFile("%s/%d.class".formatted(name, file), STORE_DEFLATED,
+            ("class Example%d { }\n".formatted(file)).repeat(2_000).getBytes(UTF_8));
+        }
+      }));
+    }
+
+    final var timeThen = System.nanoTime();
+    final var result = writers.writeBatch(
+      new OFBundleBatchConfiguration(items, parallelism));
+    final var timeNow = System.nanoTime();
+
+    if (!result.isSuccessful()) {
+      throw new IllegalStateException(result.failed().toString());
+    }
+
+    LOG.info(
+      "batch, parallelism {}: {} bundles in {} ms",
+      Integer.valueOf(parallelism),
+      Integer.valueOf(items.size()),
+      Long.valueOf((timeNow - timeThen) / 1_000_000L)
+    );
+  }
+
+  /**
+   * Write a batch of bundles with increasing parallelism.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testWriteBatch()
+    throws Exception
+  {
+    final var writers = new OFBundleWriters();
+    final var directory = OFTestDirectories.createTempDirectory();
+    try {
+      writeBatch(writers, directory, 1);
+      for (final var parallelism : new int[]{1, 2, 4, 8}) {
+        writeBatch(writers, directory, parallelism);
+      }
+    } finally {
+      OFTestDirectories.deleteDirectory(directory);
+    }
+  }
+}
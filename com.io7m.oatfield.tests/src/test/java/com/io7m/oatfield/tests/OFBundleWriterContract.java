@@ -16,7 +16,21 @@
 
 package com.io7m.oatfield.tests;
 
+import com.io7m.oatfield.api.OFBundleBatchConfiguration;
+import com.io7m.oatfield.api.OFBundleBatchItem;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchFailed;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchWritten;
+import com.io7m.oatfield.api.OFBundleBuildCache;
+import com.io7m.oatfield.api.OFBundleCompressionStrategy;
+import com.io7m.oatfield.api.OFBundleDigest;
+import com.io7m.oatfield.api.OFBundleDigestConfiguration;
+import com.io7m.oatfield.api.OFBundleOutputTargetType;
+import com.io7m.oatfield.api.OFBundlePackageAnalysis;
 import com.io7m.oatfield.api.OFBundleReaderFactoryType;
+import com.io7m.oatfield.api.OFBundleSortBuffer;
+import com.io7m.oatfield.api.OFBundleStreamingWriterConfiguration;
+import com.io7m.oatfield.api.OFBundleWrapConfiguration;
+import com.io7m.oatfield.api.OFBundleWriteResult;
 import com.io7m.oatfield.api.OFBundleWriterConfiguration;
 import com.io7m.oatfield.api.OFBundleWriterFactoryType;
 import org.junit.jupiter.api.AfterEach;
@@ -25,17 +39,52 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
+import static com.io7m.oatfield.api.OFBundleContentSourceType.ofBuffer;
+import static com.io7m.oatfield.api.OFBundleContentSourceType.ofStreams;
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_AUTOMATIC;
 import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_DEFLATED;
 import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_UNCOMPRESSED;
+import static com.io7m.oatfield.api.OFBundleOutputTargetType.ofChannel;
+import static com.io7m.oatfield.api.OFBundleOutputTargetType.ofFile;
+import static com.io7m.oatfield.api.OFBundleOutputTargetType.ofStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public abstract class OFBundleWriterContract
 {
@@ -239,6 +288,1466 @@ public abstract class OFBundleWriterContract
     }
   }
 
+  /**
+   * Including stored content larger than the writer's buffers works.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentStoredLarge()
+    throws Exception
+  {
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      );
+
+    final var data = new byte[3_000_000];
+    new Random(0x5eedL).nextBytes(data);
+    final var large = this.directory.resolve("large.bin");
+    Files.write(large, data);
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addFile("large.bin", STORE_UNCOMPRESSED, large);
+      writer.addFile("after.bin", STORE_UNCOMPRESSED, large);
+      writer.execute();
+    }
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertArrayEquals(data, reader.contentFor("large.bin").readAllBytes());
+      assertArrayEquals(data, reader.contentFor("after.bin").readAllBytes());
+    }
+  }
+
+  /**
+   * Automatic storage deflates compressible content and stores
+   * incompressible content.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentAutomatic()
+    throws Exception
+  {
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      ).withCompressionLevel(9)
+        .withCompressionStrategy(OFBundleCompressionStrategy.FILTERED);
+
+    final var random = new byte[100_000];
+    new Random(0x5eedL).nextBytes(random);
+    final var golden = this.resourceOf("golden.txt");
+    final var text = Files.readString(golden).repeat(100).getBytes(UTF_8);
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addFile("random.bin", STORE_AUTOMATIC, random);
+      writer.addFile("text.txt", STORE_AUTOMATIC, text);
+      writer.addFile("golden.txt", STORE_AUTOMATIC, golden);
+      writer.addFile("empty.txt", STORE_AUTOMATIC, new byte[0]);
+      writer.execute();
+    }
+
+    try (var zip = new ZipFile(this.output.toFile())) {
+      assertEquals(ZipEntry.STORED, zip.getEntry("random.bin").getMethod());
+      assertEquals(ZipEntry.DEFLATED, zip.getEntry("text.txt").getMethod());
+      assertEquals(ZipEntry.STORED, zip.getEntry("empty.txt").getMethod());
+      assertArrayEquals(
+        random, zip.getInputStream(zip.getEntry("random.bin")).readAllBytes());
+      assertArrayEquals(
+        text, zip.getInputStream(zip.getEntry("text.txt")).readAllBytes());
+      assertArrayEquals(
+        Files.readAllBytes(golden),
+        zip.getInputStream(zip.getEntry("golden.txt")).readAllBytes());
+    }
+  }
+
+  /**
+   * Invalid compression levels are rejected.
+   */
+
+  @Test
+  public final void testCompressionLevelInvalid()
+  {
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      );
+
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> config.withCompressionLevel(10));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> config.withCompressionLevel(-2));
+  }
+
+  /**
+   * The deprecated output file accessor still returns file targets.
+   */
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public final void testOutputFileDeprecated()
+  {
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      );
+
+    assertEquals(this.output, config.outputFile());
+    assertThrows(IllegalStateException.class, () -> {
+      config.withOutput(ofStream(new ByteArrayOutputStream())).outputFile();
+    });
+  }
+
+  /**
+   * Content can be supplied from memory and from streams.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentSources()
+    throws Exception
+  {
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      );
+
+    final var expected =
+      Files.readAllBytes(this.resourceOf("golden.txt"));
+    final var padded =
+      ByteBuffer.allocate(expected.length + 8);
+    padded.position(4);
+    padded.put(expected);
+    padded.position(4);
+    padded.limit(4 + expected.length);
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addFile("bytes-deflated.txt", STORE_DEFLATED, expected);
+      writer.addFile("bytes-stored.txt", STORE_UNCOMPRESSED, expected);
+      writer.addFile("buffer-deflated.txt", STORE_DEFLATED, ofBuffer(padded));
+      writer.addFile("buffer-stored.txt", STORE_UNCOMPRESSED, ofBuffer(padded));
+      writer.addFile("streams-deflated.txt", STORE_DEFLATED,
+        ofStreams(() -> new ByteArrayInputStream(expected)));
+      writer.addFile("streams-stored.txt", STORE_UNCOMPRESSED,
+        ofStreams(() -> new ByteArrayInputStream(expected)));
+      writer.execute();
+    }
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertEquals(7, reader.files().size());
+      for (final var name : reader.files()) {
+        if (name.endsWith(".txt")) {
+          assertArrayEquals(
+            expected,
+            reader.contentFor(name).readAllBytes(),
+            name
+          );
+        }
+      }
+    }
+  }
+
+  /**
+   * Stream suppliers that yield different content on each call are
+   * detected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentStreamsInconsistent()
+    throws Exception
+  {
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      );
+
+    final var calls = new AtomicInteger();
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addFile("x.txt", STORE_UNCOMPRESSED, ofStreams(() -> {
+        return new ByteArrayInputStream(new byte[calls.incrementAndGet()]);
+      }));
+      assertThrows(ZipException.class, writer::execute);
+    }
+  }
+
+  /**
+   * Entries copied from existing archives are transferred without being
+   * recompressed.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentArchiveEntries()
+    throws Exception
+  {
+    final var source =
+      this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var className =
+      "com/io7m/junreachable/UnreachableCodeException.class";
+
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      );
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addArchiveEntry(source, className);
+      writer.addArchiveEntry("pom.xml", source,
+        "META-INF/maven/com.io7m.junreachable/com.io7m.junreachable.core/pom.xml");
+      writer.addArchiveEntry(source, "com/");
+      writer.execute();
+    }
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertEquals(
+        Set.of("META-INF/MANIFEST.MF", className, "pom.xml", "com/"),
+        reader.files()
+      );
+    }
+
+    try (var sourceZip = new ZipFile(source.toFile());
+         var outputZip = new ZipFile(this.output.toFile())) {
+      final var expected = sourceZip.getEntry(className);
+      final var received = outputZip.getEntry(className);
+      assertEquals(expected.getMethod(), received.getMethod());
+      assertEquals(expected.getCrc(), received.getCrc());
+      assertEquals(expected.getSize(), received.getSize());
+      assertEquals(
+        expected.getCompressedSize(),
+        received.getCompressedSize()
+      );
+      assertArrayEquals(
+        sourceZip.getInputStream(expected).readAllBytes(),
+        outputZip.getInputStream(received).readAllBytes()
+      );
+    }
+  }
+
+  /**
+   * Entries can be copied from archives produced by the writer itself.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentArchiveEntriesRewritten()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var first = this.directory.resolve("first.jar");
+
+    try (var writer = this.writers.createWriter(
+      new OFBundleWriterConfiguration(first, "com.io7m.oatfield.ex0", "1.0.0"))) {
+      writer.addFile("deflated.txt", STORE_DEFLATED, golden);
+      writer.addFile("stored.txt", STORE_UNCOMPRESSED, golden);
+      writer.execute();
+    }
+
+    try (var writer = this.writers.createWriter(
+      new OFBundleWriterConfiguration(this.output, "com.io7m.oatfield.ex0", "2.0.0"))) {
+      writer.addArchiveEntry(first, "deflated.txt");
+      writer.addArchiveEntry(first, "stored.txt");
+      writer.execute();
+    }
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertEquals(Optional.of("2.0.0"), reader.bundleVersion());
+
+      final var expected = Files.readAllBytes(golden);
+      assertArrayEquals(
+        expected, reader.contentFor("deflated.txt").readAllBytes());
+      assertArrayEquals(
+        expected, reader.contentFor("stored.txt").readAllBytes());
+    }
+  }
+
+  /**
+   * Copying a nonexistent archive entry fails.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testContentArchiveEntryMissing()
+    throws Exception
+  {
+    final var source =
+      this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+
+    final var config =
+      new OFBundleWriterConfiguration(
+        this.output,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      );
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addArchiveEntry(source, "nonexistent");
+      assertThrows(NoSuchFileException.class, writer::execute);
+    }
+  }
+
+  /**
+   * Bundles written to streams and channels are byte-for-byte identical
+   * to bundles written to files, and caller-owned targets are left open.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testOutputTargets()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var stream = new ByteArrayOutputStream();
+    final var channelFile = this.directory.resolve("channel.jar");
+
+    this.writeExample(ofFile(this.output), golden);
+    this.writeExample(ofStream(stream), golden);
+    try (var channel = FileChannel.open(channelFile, CREATE_NEW, WRITE)) {
+      this.writeExample(ofChannel(channel), golden);
+      assertTrue(channel.isOpen());
+    }
+
+    final var expected = Files.readAllBytes(this.output);
+    assertArrayEquals(expected, stream.toByteArray());
+    assertArrayEquals(expected, Files.readAllBytes(channelFile));
+  }
+
+  /**
+   * Writers created by one factory produce identical output regardless of
+   * what the factory's previous writers (possibly on other threads) did.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testOutputRepeatable()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var expected = new ByteArrayOutputStream();
+    this.writeExample(ofStream(expected), golden);
+
+    final var executor = Executors.newFixedThreadPool(4);
+    try {
+      final var tasks = new ArrayList<Future<byte[]>>();
+      for (int index = 0; index < 32; ++index) {
+        final var level = index % 10;
+        tasks.add(executor.submit(() -> {
+          final var ignored = new ByteArrayOutputStream();
+          this.writeExample(
+            new OFBundleWriterConfiguration(
+              ofStream(ignored), "com.io7m.oatfield.ex1", "1.0.0")
+              .withCompressionLevel(level)
+              .withCompressionStrategy(OFBundleCompressionStrategy.HUFFMAN_ONLY),
+            golden
+          );
+          final var received = new ByteArrayOutputStream();
+          this.writeExample(ofStream(received), golden);
+          return received.toByteArray();
+        }));
+      }
+      for (final var task : tasks) {
+        assertArrayEquals(expected.toByteArray(), task.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Streaming writers write entries in the order they are added.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testStreamingCallerOrder()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var expected = Files.readAllBytes(golden);
+    final var config =
+      new OFBundleStreamingWriterConfiguration(
+        new OFBundleWriterConfiguration(
+          this.output,
+          "com.io7m.oatfield.ex0",
+          "1.0.0"
+        )
+      );
+
+    try (var writer = this.writers.createStreamingWriter(config)) {
+      writer.addPackageImport("com.io7m.example0", Optional.of("1.0.0"));
+      writer.addPackageExport("com.io7m.oat.ex0", Optional.empty(), List.of());
+      writer.addFile("c.txt", STORE_DEFLATED, golden);
+      writer.addFile("a.txt", STORE_UNCOMPRESSED, expected);
+      writer.addFile("b.txt", STORE_AUTOMATIC, expected);
+
+      assertThrows(
+        IllegalStateException.class,
+        () -> writer.addPackageImport("java.lang", Optional.empty()));
+
+      writer.finish();
+    }
+
+    assertEquals(
+      List.of("META-INF/MANIFEST.MF", "c.txt", "a.txt", "b.txt"),
+      entryNames(this.output)
+    );
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertEquals("com.io7m.oatfield.ex0", reader.bundleSymbolicName());
+      for (final var name : List.of("a.txt", "b.txt", "c.txt")) {
+        assertArrayEquals(expected, reader.contentFor(name).readAllBytes());
+      }
+    }
+  }
+
+  /**
+   * Streaming writers with a sort buffer write entries in name order,
+   * spilling to (and cleaning up) temporary runs.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testStreamingSorted()
+    throws Exception
+  {
+    final var source =
+      this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var className =
+      "com/io7m/junreachable/UnreachableCodeException.class";
+    final var runs =
+      Files.createDirectories(this.directory.resolve("runs"));
+
+    final var config =
+      new OFBundleStreamingWriterConfiguration(
+        new OFBundleWriterConfiguration(
+          this.output,
+          "com.io7m.oatfield.ex0",
+          "1.0.0"
+        ),
+        Optional.of(new OFBundleSortBuffer(runs, 3))
+      );
+
+    final var names = new ArrayList<String>();
+    try (var writer = this.writers.createStreamingWriter(config)) {
+      for (int index = 9; index >= 0; --index) {
+        final var name = "file%d.txt".formatted(Integer.valueOf(index));
+        names.add(name);
+        writer.addFile(name, STORE_DEFLATED, name.getBytes(UTF_8));
+      }
+      writer.addArchiveEntry(source, className);
+      names.add(className);
+      writer.finish();
+    }
+
+    try (var files = Files.list(runs)) {
+      assertEquals(0L, files.count());
+    }
+
+    names.sort(String::compareTo);
+    names.add(0, "META-INF/MANIFEST.MF");
+    assertEquals(names, entryNames(this.output));
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertArrayEquals(
+        "file3.txt".getBytes(UTF_8),
+        reader.contentFor("file3.txt").readAllBytes()
+      );
+    }
+
+    try (var sourceZip = new ZipFile(source.toFile())) {
+      try (var reader = this.readers.createReader(this.output);
+           var expected = sourceZip.getInputStream(sourceZip.getEntry(className))) {
+        assertArrayEquals(
+          expected.readAllBytes(),
+          reader.contentFor(className).readAllBytes()
+        );
+      }
+    }
+  }
+
+  /**
+   * Duplicate entries are detected when merging sorted runs.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testStreamingSortedDuplicate()
+    throws Exception
+  {
+    final var config =
+      new OFBundleStreamingWriterConfiguration(
+        new OFBundleWriterConfiguration(
+          this.output,
+          "com.io7m.oatfield.ex0",
+          "1.0.0"
+        ),
+        Optional.of(new OFBundleSortBuffer(this.directory, 2))
+      );
+
+    try (var writer = this.writers.createStreamingWriter(config)) {
+      writer.addFile("a.txt", STORE_DEFLATED, new byte[1]);
+      writer.addFile("b.txt", STORE_DEFLATED, new byte[1]);
+      writer.addFile("a.txt", STORE_DEFLATED, new byte[1]);
+      assertThrows(ZipException.class, writer::finish);
+    }
+  }
+
+  /**
+   * Writing in parallel produces exactly the same bytes as writing
+   * sequentially, for every kind of entry and output target.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testParallelIdentical()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var jar = this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var random = new byte[200_000];
+    new Random(0x5eedL).nextBytes(random);
+    final var large = this.directory.resolve("large.bin");
+    Files.write(large, random);
+
+    final var sequential = this.directory.resolve("sequential.jar");
+    final var parallel = this.directory.resolve("parallel.jar");
+    final var channelFile = this.directory.resolve("channel.jar");
+    final var prefix = "prefix".getBytes(UTF_8);
+
+    this.writeMixed(
+      new OFBundleWriterConfiguration(sequential, "com.io7m.ex", "1.0.0"),
+      golden, jar, large);
+    this.writeMixed(
+      new OFBundleWriterConfiguration(parallel, "com.io7m.ex", "1.0.0")
+        .withParallelism(4),
+      golden, jar, large);
+
+    try (var channel = FileChannel.open(channelFile, CREATE_NEW, WRITE)) {
+      channel.write(ByteBuffer.wrap(prefix));
+      this.writeMixed(
+        new OFBundleWriterConfiguration(ofChannel(channel), "com.io7m.ex", "1.0.0")
+          .withParallelism(3),
+        golden, jar, large);
+      assertEquals(Files.size(sequential) + prefix.length, channel.position());
+    }
+
+    final var expected = Files.readAllBytes(sequential);
+    assertArrayEquals(expected, Files.readAllBytes(parallel));
+
+    final var received = Files.readAllBytes(channelFile);
+    assertArrayEquals(
+      expected,
+      Arrays.copyOfRange(received, prefix.length, received.length)
+    );
+
+    try (var reader = this.readers.createReader(parallel)) {
+      assertArrayEquals(random, reader.contentFor("large.bin").readAllBytes());
+      assertArrayEquals(
+        Files.readAllBytes(golden),
+        reader.contentFor("streams-deflated.txt").readAllBytes()
+      );
+    }
+  }
+
+  /**
+   * Deflated entries whose compressed data is too large to be held in
+   * memory while writing in parallel are spilled to temporary files, and
+   * the bytes written are the same as when writing sequentially.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testParallelSpilled()
+    throws Exception
+  {
+    final var random = new byte[12 * 1024 * 1024];
+    new Random(0x5eedL).nextBytes(random);
+    final var large = this.directory.resolve("large.bin");
+    Files.write(large, random);
+
+    final var sequential = this.directory.resolve("sequential.jar");
+    final var parallel = this.directory.resolve("parallel.jar");
+    final var spillsBefore = spillFiles();
+
+    for (final var config : List.of(
+      new OFBundleWriterConfiguration(sequential, "com.io7m.ex", "1.0.0"),
+      new OFBundleWriterConfiguration(parallel, "com.io7m.ex", "1.0.0")
+        .withParallelism(2))) {
+      try (var writer = this.writers.createWriter(config)) {
+        writer.addFile("file.bin", STORE_DEFLATED, large);
+        writer.addFile("bytes.bin", STORE_DEFLATED, random);
+        writer.execute();
+      }
+    }
+
+    assertArrayEquals(
+      Files.readAllBytes(sequential),
+      Files.readAllBytes(parallel)
+    );
+    assertEquals(spillsBefore, spillFiles());
+
+    try (var reader = this.readers.createReader(parallel)) {
+      assertArrayEquals(random, reader.contentFor("file.bin").readAllBytes());
+      assertArrayEquals(random, reader.contentFor("bytes.bin").readAllBytes());
+    }
+  }
+
+  private static Set<Path> spillFiles()
+    throws IOException
+  {
+    final var temporary = Path.of(System.getProperty("java.io.tmpdir"));
+    try (var files = Files.list(temporary)) {
+      return files.filter(f -> {
+        return f.getFileName().toString().endsWith(".deflated");
+      }).collect(Collectors.toSet());
+    }
+  }
+
+  /**
+   * Parallelism must be positive.
+   */
+
+  @Test
+  public final void testParallelismInvalid()
+  {
+    final var config =
+      new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0");
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      config.withParallelism(0);
+    });
+  }
+
+  /**
+   * Writing in parallel detects duplicate entries before writing anything.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testParallelDuplicate()
+    throws Exception
+  {
+    final var config =
+      new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+        .withParallelism(2);
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addFile("META-INF/MANIFEST.MF", STORE_DEFLATED, new byte[1]);
+      assertThrows(ZipException.class, writer::execute);
+    }
+  }
+
+  /**
+   * Entry and archive digests are computed while writing, and match
+   * digests computed from the written bundle.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testDigests()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var jar = this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var large = this.directory.resolve("large.bin");
+    Files.write(large, new byte[100_000]);
+
+    final var digests =
+      new OFBundleDigestConfiguration(
+        List.of("SHA-256", "SHA-1"),
+        List.of("SHA-256", "SHA-512"),
+        false
+      );
+
+    final var sequential = this.directory.resolve("sequential.jar");
+    final var parallel = this.directory.resolve("parallel.jar");
+    final var result = this.writeMixed(
+      new OFBundleWriterConfiguration(sequential, "com.io7m.ex", "1.0.0")
+        .withDigests(digests),
+      golden, jar, large);
+    final var resultParallel = this.writeMixed(
+      new OFBundleWriterConfiguration(parallel, "com.io7m.ex", "1.0.0")
+        .withDigests(digests)
+        .withParallelism(4),
+      golden, jar, large);
+
+    assertArrayEquals(
+      Files.readAllBytes(sequential),
+      Files.readAllBytes(parallel)
+    );
+    assertEquals(result, resultParallel);
+    assertEquals(Files.size(sequential), result.size());
+
+    assertEquals(
+      digestOf("SHA-512", Files.readAllBytes(sequential)),
+      result.archiveDigest("SHA-512").orElseThrow()
+    );
+
+    try (var zip = new ZipFile(sequential.toFile())) {
+      final var names = entryNames(sequential);
+      assertEquals(Set.copyOf(names), result.entryDigests().keySet());
+
+      for (final var name : names) {
+        final byte[] data;
+        try (var stream = zip.getInputStream(zip.getEntry(name))) {
+          data = stream.readAllBytes();
+        }
+        assertEquals(
+          digestOf("SHA-256", data),
+          result.entryDigest(name, "SHA-256").orElseThrow()
+        );
+        assertEquals(
+          digestOf("SHA-1", data),
+          result.entryDigest(name, "SHA-1").orElseThrow()
+        );
+      }
+    }
+  }
+
+  /**
+   * Entry digests can be recorded in the manifest, whichever way the bundle
+   * is written.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testDigestsManifest()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var jar = this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var large = this.directory.resolve("large.bin");
+    Files.write(large, new byte[100_000]);
+
+    final var digests =
+      new OFBundleDigestConfiguration(
+        List.of("SHA-256"),
+        List.of("SHA-256"),
+        true
+      );
+
+    final var stream = new ByteArrayOutputStream();
+    final var result = this.writeMixed(
+      new OFBundleWriterConfiguration(ofStream(stream), "com.io7m.ex", "1.0.0")
+        .withDigests(digests),
+      golden, jar, large);
+
+    this.writeMixed(
+      new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+        .withDigests(digests)
+        .withParallelism(3),
+      golden, jar, large);
+
+    final var bytes = stream.toByteArray();
+    assertArrayEquals(bytes, Files.readAllBytes(this.output));
+    assertEquals(
+      digestOf("SHA-256", bytes),
+      result.archiveDigest("SHA-256").orElseThrow()
+    );
+
+    try (var input = new JarInputStream(new ByteArrayInputStream(bytes))) {
+      final var manifest = input.getManifest();
+      assertEquals(
+        "com.io7m.ex",
+        manifest.getMainAttributes().getValue("Bundle-SymbolicName")
+      );
+
+      var count = 0;
+      while (true) {
+        final var entry = input.getNextJarEntry();
+        if (entry == null) {
+          break;
+        }
+        final var name = entry.getName();
+        final var data = input.readAllBytes();
+        assertEquals(
+          digestOf("SHA-256", data).base64(),
+          manifest.getAttributes(name).getValue("SHA-256-Digest")
+        );
+        ++count;
+      }
+      assertEquals(manifest.getEntries().size(), count);
+    }
+  }
+
+  /**
+   * Invalid digest configurations are rejected.
+   */
+
+  @Test
+  public final void testDigestsInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleDigestConfiguration(List.of("NOT-AN-ALGORITHM"), List.of(), false);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleDigestConfiguration(List.of("SHA-256", "SHA-256"), List.of(), false);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleDigestConfiguration(List.of(), List.of("SHA-256"), true);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleDigestConfiguration(List.of("SHA-512/256"), List.of(), true);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleStreamingWriterConfiguration(
+        new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+          .withDigests(
+            new OFBundleDigestConfiguration(List.of("SHA-256"), List.of(), false))
+      );
+    });
+  }
+
+  /**
+   * Writing the same bundle twice with a build cache produces the same
+   * bytes and result, and the second write is served from the cache.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testBuildCacheHit()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var jar = this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var large = this.directory.resolve("large.bin");
+    Files.write(large, new byte[100_000]);
+
+    final var cacheDirectory = this.directory.resolve("cache");
+    final var uncached = this.directory.resolve("uncached.jar");
+    final var uncachedConfig =
+      new OFBundleWriterConfiguration(uncached, "com.io7m.ex", "1.0.0")
+        .withDigests(
+          new OFBundleDigestConfiguration(
+            List.of("SHA-256"), List.of("SHA-256"), false));
+    final var config =
+      uncachedConfig.withOutput(ofFile(this.output))
+        .withBuildCache(new OFBundleBuildCache(cacheDirectory, 10_000_000L));
+
+    final var expectedResult =
+      this.writeMixed(uncachedConfig, golden, jar, large);
+    final var expected = Files.readAllBytes(uncached);
+
+    final var result0 = this.writeMixed(config, golden, jar, large);
+    assertArrayEquals(expected, Files.readAllBytes(this.output));
+    assertEquals(expectedResult, result0);
+
+    final var cached = cachedBundles(cacheDirectory);
+    assertEquals(1, cached.size());
+
+    /*
+     * Replace the cached bundle with a recognizable copy of itself, so
+     * that the next write can be seen to have come from the cache.
+     */
+
+    final var marked = expected.clone();
+    marked[marked.length - 1] = (byte) 0x7f;
+    Files.write(cached.get(0), marked);
+
+    final var result1 = this.writeMixed(config, golden, jar, large);
+    assertArrayEquals(marked, Files.readAllBytes(this.output));
+    assertEquals(expectedResult, result1);
+
+    final var stream = new ByteArrayOutputStream();
+    final var result2 = this.writeMixed(
+      config.withOutput(ofStream(stream)), golden, jar, large);
+    assertArrayEquals(marked, stream.toByteArray());
+    assertEquals(expectedResult, result2);
+    assertEquals(cached, cachedBundles(cacheDirectory));
+  }
+
+  /**
+   * Changing the content of an entry or the configuration misses the build
+   * cache, but changing the output or parallelism does not.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testBuildCacheMiss()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var jar = this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var large = this.directory.resolve("large.bin");
+    Files.write(large, new byte[100_000]);
+
+    final var cacheDirectory = this.directory.resolve("cache");
+    final var config =
+      new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+        .withBuildCache(new OFBundleBuildCache(cacheDirectory, 10_000_000L));
+
+    this.writeMixed(config, golden, jar, large);
+    assertEquals(1, cachedBundles(cacheDirectory).size());
+
+    this.writeMixed(
+      config.withOutput(ofFile(this.directory.resolve("other.jar")))
+        .withParallelism(2),
+      golden, jar, large);
+    assertEquals(1, cachedBundles(cacheDirectory).size());
+    assertArrayEquals(
+      Files.readAllBytes(this.output),
+      Files.readAllBytes(this.directory.resolve("other.jar"))
+    );
+
+    this.writeMixed(config.withCompressionLevel(1), golden, jar, large);
+    assertEquals(2, cachedBundles(cacheDirectory).size());
+
+    final var data = new byte[100_000];
+    data[50_000] = 1;
+    Files.write(large, data);
+    this.writeMixed(config, golden, jar, large);
+    assertEquals(3, cachedBundles(cacheDirectory).size());
+
+    try (var reader = this.readers.createReader(this.output)) {
+      assertArrayEquals(data, reader.contentFor("large.bin").readAllBytes());
+    }
+  }
+
+  /**
+   * The least recently used bundles are evicted to keep the build cache
+   * within its maximum size.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testBuildCacheEviction()
+    throws Exception
+  {
+    final var cacheDirectory = this.directory.resolve("cache");
+    final var cache = new OFBundleBuildCache(cacheDirectory, 4_000L);
+    final var random = new Random(0x5eedL);
+
+    for (int index = 0; index < 8; ++index) {
+      final var data = new byte[1_000];
+      random.nextBytes(data);
+
+      final var config =
+        new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+          .withBuildCache(cache);
+
+      try (var writer = this.writers.createWriter(config)) {
+        writer.addFile("data.bin", STORE_UNCOMPRESSED, data);
+        writer.execute();
+      }
+
+      try (var reader = this.readers.createReader(this.output)) {
+        assertArrayEquals(data, reader.contentFor("data.bin").readAllBytes());
+      }
+
+      var total = 0L;
+      try (var files = Files.list(cacheDirectory)) {
+        for (final var file : files.toList()) {
+          total += Files.size(file);
+        }
+      }
+      assertTrue(total <= cache.maximumSize(), "Cache size " + total);
+    }
+
+    final var remaining = cachedBundles(cacheDirectory).size();
+    assertTrue(remaining >= 1 && remaining < 8, "Remaining " + remaining);
+  }
+
+  /**
+   * Invalid build cache configurations are rejected.
+   */
+
+  @Test
+  public final void testBuildCacheInvalid()
+  {
+    final var cache =
+      new OFBundleBuildCache(this.directory.resolve("cache"), 1_000L);
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleBuildCache(this.directory.resolve("cache"), -1L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleStreamingWriterConfiguration(
+        new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+          .withBuildCache(cache)
+      );
+    });
+  }
+
+  /**
+   * A batch writes every bundle, reports the outcome of each bundle in
+   * order, and does not let a failing bundle prevent the others from being
+   * written.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testBatch()
+    throws Exception
+  {
+    final var golden = this.resourceOf("golden.txt");
+    final var items = new ArrayList<OFBundleBatchItem>();
+    for (int index = 0; index < 20; ++index) {
+      final var name = "com.io7m.ex" + index;
+      final var configuration =
+        new OFBundleWriterConfiguration(
+          this.directory.resolve(name + ".jar"), name, "1.0.0");
+      final var fails = index % 7 == 3;
+
+      items.add(new OFBundleBatchItem(configuration, writer -> {
+        writer.addPackageExport(name, "1.0.0");
+        writer.addFile("golden.txt", STORE_DEFLATED, golden);
+        if (fails) {
+          writer.addArchiveEntry(golden, "nonexistent");
+        }
+      }));
+    }
+
+    final var result =
+      this.writers.writeBatch(new OFBundleBatchConfiguration(items, 4));
+
+    assertEquals(items.size(), result.outcomes().size());
+    assertEquals(3, result.failed().size());
+    assertEquals(17, result.written().size());
+    assertFalse(result.isSuccessful());
+
+    for (int index = 0; index < items.size(); ++index) {
+      final var outcome = result.outcomes().get(index);
+      final var configuration = items.get(index).configuration();
+      assertEquals(configuration, outcome.configuration());
+
+      switch (outcome) {
+        case final OFBatchFailed failed -> {
+          assertEquals(3, index % 7);
+          assertInstanceOf(IOException.class, failed.exception());
+        }
+        case final OFBatchWritten written -> {
+          final var file = this.directory.resolve(
+            configuration.symbolicName() + ".jar");
+          assertEquals(Files.size(file), written.result().size());
+          try (var reader = this.readers.createReader(file)) {
+            assertArrayEquals(
+              Files.readAllBytes(golden),
+              reader.contentFor("golden.txt").readAllBytes()
+            );
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * An empty batch succeeds, and batch parallelism must be positive.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testBatchEmpty()
+    throws Exception
+  {
+    final var result =
+      this.writers.writeBatch(new OFBundleBatchConfiguration(List.of()));
+    assertTrue(result.isSuccessful());
+    assertEquals(List.of(), result.outcomes());
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleBatchConfiguration(List.of(), 0);
+    });
+  }
+
+  /**
+   * Package analysis imports the packages referenced by class files,
+   * keeps explicit imports, and computes the uses of explicit exports,
+   * whichever way the bundle is written.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testAnalysisImportsAndUses()
+    throws Exception
+  {
+    final byte[] classData;
+    try (var stream =
+           OFBundleWriterContract.class.getResourceAsStream(
+             "OFBundleWriterContract.class")) {
+      classData = stream.readAllBytes();
+    }
+
+    final var parallel = this.directory.resolve("parallel.jar");
+    final var config =
+      new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+        .withAnalysis(OFBundlePackageAnalysis.importsAndUses());
+
+    for (final var target : List.of(
+      config, config.withOutput(ofFile(parallel)).withParallelism(4))) {
+      try (var writer = this.writers.createWriter(target)) {
+        writer.addPackageImport("org.slf4j", "2.0.0");
+        writer.addPackageExport(
+          "com.io7m.oatfield.tests", Optional.of("1.0.0"), List.of("x.y"));
+        writer.addFile(
+          "com/io7m/oatfield/tests/OFBundleWriterContract.class",
+          STORE_AUTOMATIC,
+          classData
+        );
+        writer.addFile("golden.txt", STORE_DEFLATED, new byte[16]);
+        writer.execute();
+      }
+    }
+
+    assertArrayEquals(
+      Files.readAllBytes(this.output),
+      Files.readAllBytes(parallel)
+    );
+
+    final var imports =
+      packagesOf(this.output, "Import-Package");
+    assertTrue(imports.contains("org.slf4j;version=\"2.0.0\""), imports::toString);
+    assertTrue(imports.contains("org.junit.jupiter.api"), imports::toString);
+    assertTrue(imports.contains("com.io7m.oatfield.api"), imports::toString);
+    assertFalse(imports.contains("org.slf4j"), imports::toString);
+    assertFalse(imports.contains("java.lang"), imports::toString);
+    assertFalse(imports.contains("com.io7m.oatfield.tests"), imports::toString);
+
+    final var exports =
+      mainAttributesOf(this.output).getValue("Export-Package");
+    assertTrue(exports.startsWith("com.io7m.oatfield.tests;version=\"1.0.0\";uses:=\""), exports);
+    assertTrue(exports.contains("com.io7m.oatfield.api"), exports);
+    assertTrue(exports.contains("org.junit.jupiter.api"), exports);
+    assertTrue(exports.contains("org.slf4j"), exports);
+    assertTrue(exports.contains("x.y"), exports);
+    assertFalse(exports.contains("java.lang"), exports);
+  }
+
+  /**
+   * Package analysis can export the packages of class files copied from
+   * other archives.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testAnalysisExportsArchiveEntries()
+    throws Exception
+  {
+    final var jar = this.resourceOf("com.io7m.junreachable.core-4.0.0.jar");
+    final var config =
+      new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+        .withAnalysis(new OFBundlePackageAnalysis(true, true, false));
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addArchiveEntry(
+        jar, "com/io7m/junreachable/UnreachableCodeException.class");
+      writer.addArchiveEntry(jar, "module-info.class");
+      writer.execute();
+    }
+
+    final var attributes = mainAttributesOf(this.output);
+    assertEquals("com.io7m.junreachable", attributes.getValue("Export-Package"));
+    assertEquals(null, attributes.getValue("Import-Package"));
+  }
+
+  /**
+   * Malformed class files cannot be analysed, and streaming writers do not
+   * analyse packages.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testAnalysisInvalid()
+    throws Exception
+  {
+    final var config =
+      new OFBundleWriterConfiguration(this.output, "com.io7m.ex", "1.0.0")
+        .withAnalysis(OFBundlePackageAnalysis.importsAndUses());
+
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addFile("x/Y.class", STORE_DEFLATED, new byte[]{(byte) 0xca, (byte) 0xfe});
+      assertThrows(ZipException.class, writer::execute);
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleStreamingWriterConfiguration(config);
+    });
+  }
+
+  /**
+   * Wrapping a directory of jars produces a bundle for every jar, with
+   * headers taken from the jar manifest or file name, entries copied
+   * without recompression, and computed package exports.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testWrapDirectory()
+    throws Exception
+  {
+    final var input = this.directory.resolve("input");
+    final var outputs = this.directory.resolve("output");
+    Files.createDirectories(input);
+
+    final byte[] classData;
+    try (var stream =
+           OFBundleWriterContract.class.getResourceAsStream(
+             "OFTestDirectories.class")) {
+      classData = stream.readAllBytes();
+    }
+
+    Files.copy(
+      this.resourceOf("com.io7m.junreachable.core-4.0.0.jar"),
+      input.resolve("junreachable.jar")
+    );
+    try (var jar = new JarOutputStream(
+      Files.newOutputStream(input.resolve("plain-lib-1.2.3-SNAPSHOT.jar")))) {
+      jar.putNextEntry(new JarEntry("com/io7m/oatfield/tests/OFTestDirectories.class"));
+      jar.write(classData);
+      jar.putNextEntry(new JarEntry("META-INF/SIGNER.SF"));
+      jar.write(new byte[8]);
+      jar.putNextEntry(new JarEntry("data/readme.txt"));
+      jar.write("Hello.".getBytes(UTF_8));
+    }
+    Files.write(input.resolve("broken.jar"), new byte[64]);
+    Files.writeString(input.resolve("notes.txt"), "Not a jar.");
+    try (var jar = new JarOutputStream(
+      Files.newOutputStream(input.resolve("corrupt.jar")))) {
+      jar.putNextEntry(new JarEntry("data/readme.txt"));
+      jar.write("Hello.".getBytes(UTF_8));
+    }
+    final var corrupt = Files.readAllBytes(input.resolve("corrupt.jar"));
+    corrupt[0] = 'X';
+    Files.write(input.resolve("corrupt.jar"), corrupt);
+
+    Files.createDirectories(outputs);
+    Files.writeString(outputs.resolve("broken.jar"), "Previous.");
+    Files.writeString(outputs.resolve("corrupt.jar"), "Previous.");
+
+    final var result = this.writers.wrapDirectory(
+      new OFBundleWrapConfiguration(input, outputs).withParallelism(2));
+
+    assertEquals(4, result.outcomes().size());
+    assertEquals(2, result.failed().size());
+    assertEquals(
+      ofFile(outputs.resolve("broken.jar")),
+      result.failed().get(0).configuration().output()
+    );
+    assertEquals(
+      ofFile(outputs.resolve("corrupt.jar")),
+      result.failed().get(1).configuration().output()
+    );
+    assertEquals("Previous.", Files.readString(outputs.resolve("broken.jar")));
+    assertEquals("Previous.", Files.readString(outputs.resolve("corrupt.jar")));
+    try (var files = Files.list(outputs)) {
+      assertEquals(
+        List.of(
+          "broken.jar",
+          "corrupt.jar",
+          "junreachable.jar",
+          "plain-lib-1.2.3-SNAPSHOT.jar"),
+        files.map(f -> f.getFileName().toString()).sorted().toList()
+      );
+    }
+
+    try (var reader = this.readers.createReader(outputs.resolve("junreachable.jar"))) {
+      assertEquals("com.io7m.junreachable.core", reader.bundleSymbolicName());
+      assertEquals(Optional.of("4.0.0"), reader.bundleVersion());
+      assertTrue(reader.files().contains("module-info.class"));
+    }
+
+    final var plain = outputs.resolve("plain-lib-1.2.3-SNAPSHOT.jar");
+    try (var reader = this.readers.createReader(plain)) {
+      assertEquals("plain-lib", reader.bundleSymbolicName());
+      assertEquals(Optional.of("1.2.3.SNAPSHOT"), reader.bundleVersion());
+      assertFalse(reader.files().contains("META-INF/SIGNER.SF"));
+      assertArrayEquals(
+        classData,
+        reader.contentFor("com/io7m/oatfield/tests/OFTestDirectories.class")
+          .readAllBytes()
+      );
+    }
+    final var attributes = mainAttributesOf(plain);
+    assertEquals(
+      "com.io7m.oatfield.tests;uses:=\"org.slf4j\"",
+      attributes.getValue("Export-Package")
+    );
+    assertEquals("org.slf4j", attributes.getValue("Import-Package"));
+  }
+
+  /**
+   * Wrapping a directory into itself is rejected, as the bundles would
+   * overwrite the jars they are read from.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testWrapDirectorySame()
+    throws Exception
+  {
+    final var input = this.directory.resolve("input");
+    Files.createDirectories(input);
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleWrapConfiguration(input, input);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleWrapConfiguration(
+        input, input.resolve("..").resolve("input"));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new OFBundleWrapConfiguration(
+        input, Files.createSymbolicLink(this.directory.resolve("link"), input));
+    });
+  }
+
+  private static Attributes mainAttributesOf(
+    final Path file)
+    throws IOException
+  {
+    try (var jar = new JarFile(file.toFile())) {
+      return jar.getManifest().getMainAttributes();
+    }
+  }
+
+  private static List<String> packagesOf(
+    final Path file,
+    final String header)
+    throws IOException
+  {
+    return List.of(mainAttributesOf(file).getValue(header).split(","));
+  }
+
+  private static List<Path> cachedBundles(
+    final Path cacheDirectory)
+    throws IOException
+  {
+    try (var files = Files.list(cacheDirectory)) {
+      return files.filter(p -> p.toString().endsWith(".jar"))
+        .sorted()
+        .toList();
+    }
+  }
+
+  private static OFBundleDigest digestOf(
+    final String algorithm,
+    final byte[] data)
+    throws NoSuchAlgorithmException
+  {
+    return OFBundleDigest.of(
+      algorithm,
+      MessageDigest.getInstance(algorithm).digest(data)
+    );
+  }
+
+  private OFBundleWriteResult writeMixed(
+    final OFBundleWriterConfiguration config,
+    final Path golden,
+    final Path jar,
+    final Path large)
+    throws IOException
+  {
+    final var text = Files.readAllBytes(golden);
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addPackageImport("com.io7m.example0", "1.0.0");
+      writer.addPackageExport("com.io7m.oat.ex0", "1.0.0");
+      writer.addFile("file-deflated.txt", STORE_DEFLATED, golden);
+      writer.addFile("file-stored.txt", STORE_UNCOMPRESSED, golden);
+      writer.addFile("bytes-deflated.txt", STORE_DEFLATED, text);
+      writer.addFile("bytes-stored.txt", STORE_UNCOMPRESSED, text);
+      writer.addFile("bytes-automatic.txt", STORE_AUTOMATIC, text);
+      writer.addFile("empty.txt", STORE_DEFLATED, new byte[0]);
+      writer.addFile("large.bin", STORE_UNCOMPRESSED, large);
+      writer.addFile("large-automatic.bin", STORE_AUTOMATIC, large);
+      writer.addFile(
+        "buffer.txt", STORE_DEFLATED, ofBuffer(ByteBuffer.wrap(text)));
+      writer.addFile(
+        "streams-deflated.txt",
+        STORE_DEFLATED,
+        ofStreams(() -> new ByteArrayInputStream(text)));
+      writer.addFile(
+        "streams-stored.txt",
+        STORE_UNCOMPRESSED,
+        ofStreams(() -> new ByteArrayInputStream(text)));
+      writer.addArchiveEntry(
+        jar, "com/io7m/junreachable/UnreachableCodeException.class");
+      writer.addArchiveEntry(
+        "copied/MANIFEST.MF", jar, "META-INF/MANIFEST.MF");
+      return writer.execute();
+    }
+  }
+
+  private static List<String> entryNames(
+    final Path file)
+    throws IOException
+  {
+    try (var zip = new ZipFile(file.toFile())) {
+      return zip.stream().map(ZipEntry::getName).toList();
+    }
+  }
+
+  private void writeExample(
+    final OFBundleOutputTargetType target,
+    final Path golden)
+    throws IOException
+  {
+    this.writeExample(
+      new OFBundleWriterConfiguration(
+        target,
+        "com.io7m.oatfield.ex0",
+        "1.0.0"
+      ),
+      golden
+    );
+  }
+
+  private void writeExample(
+    final OFBundleWriterConfiguration config,
+    final Path golden)
+    throws IOException
+  {
+    try (var writer = this.writers.createWriter(config)) {
+      writer.addPackageImport("com.io7m.example0", "1.0.0");
+      writer.addPackageExport("com.io7m.oat.ex0", "1.0.0");
+      writer.addFile("deflated.txt", STORE_DEFLATED, golden);
+      writer.addFile("stored.txt", STORE_UNCOMPRESSED, golden);
+      writer.execute();
+    }
+  }
+
   private Path resourceOf(
     final String name)
     throws IOException
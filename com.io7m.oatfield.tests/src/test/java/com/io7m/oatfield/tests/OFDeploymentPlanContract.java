@@ -0,0 +1,301 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.tests;
+
+import com.io7m.oatfield.api.OFBundleResolverConfiguration;
+import com.io7m.oatfield.api.OFDeploymentPlanBundle;
+import com.io7m.oatfield.api.OFDeploymentPlanFactoryType;
+import com.io7m.oatfield.api.OFDeploymentPlanParserFactoryType;
+import com.io7m.oatfield.api.OFDeploymentPlanSerializerFactoryType;
+import com.io7m.oatfield.api.OFBundleWriterType;
+import com.io7m.oatfield.vanilla.OFBundleResolvers;
+import com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public abstract class OFDeploymentPlanContract
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(OFDeploymentPlanContract.class);
+
+  private OFDeploymentPlanFactoryType plans;
+  private OFDeploymentPlanSerializerFactoryType serializers;
+  private OFDeploymentPlanParserFactoryType parsers;
+  private OFBundleResolvers resolvers;
+  private Path directory;
+
+  protected abstract OFDeploymentPlanFactoryType plans();
+
+  protected abstract OFDeploymentPlanSerializerFactoryType serializers();
+
+  protected abstract OFDeploymentPlanParserFactoryType parsers();
+
+  @BeforeEach
+  public final void setup()
+    throws IOException
+  {
+    this.plans =
+      this.plans();
+    this.serializers =
+      this.serializers();
+    this.parsers =
+      this.parsers();
+    this.resolvers =
+      new OFBundleResolvers();
+    this.directory =
+      OFTestDirectories.createTempDirectory();
+  }
+
+  @AfterEach
+  public final void tearDown()
+    throws IOException
+  {
+    OFTestDirectories.deleteDirectory(this.directory);
+  }
+
+  /**
+   * A resolved set of bundles is placed into installation order, and
+   * survives a round trip through the plan file format.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testRoundTrip()
+    throws Exception
+  {
+    final var top =
+      this.bundleOf("com.io7m.oatfield.top", w -> {
+        w.addPackageImport("com.io7m.oatfield.middle", "1.0.0");
+      });
+    final var middle =
+      this.bundleOf("com.io7m.oatfield.middle", w -> {
+        w.addPackageExport("com.io7m.oatfield.middle", "1.0.0");
+        w.addPackageImport("com.io7m.oatfield.bottom", "1.0.0");
+      });
+    final var bottom =
+      this.bundleOf("com.io7m.oatfield.bottom", w -> {
+        w.addPackageExport("com.io7m.oatfield.bottom", "1.0.0");
+      });
+
+    final var wiring =
+      this.resolvers.createResolver(
+        new OFBundleResolverConfiguration(
+          List.of(top, middle, bottom),
+          List.of(top),
+          List.of()
+        )).execute();
+
+    final var plan = this.plans.createPlan(wiring);
+    assertEquals(
+      List.of(
+        "com.io7m.oatfield.bottom",
+        "com.io7m.oatfield.middle",
+        "com.io7m.oatfield.top"),
+      plan.bundles()
+        .stream()
+        .map(OFDeploymentPlanBundle::symbolicName)
+        .toList()
+    );
+
+    final var file = this.directory.resolve("plan.bin");
+    try (var serializer = this.serializers.createSerializer(file)) {
+      serializer.execute(plan);
+    }
+    LOG.debug("plan size: {}", Long.valueOf(Files.size(file)));
+
+    final var restored =
+      this.parsers.createParser(file).execute();
+
+    assertEquals(plan.bundles().size(), restored.bundles().size());
+    for (int index = 0; index < plan.bundles().size(); ++index) {
+      final var expected = plan.bundles().get(index);
+      final var received = restored.bundles().get(index);
+      assertEquals(expected.symbolicName(), received.symbolicName());
+      assertEquals(expected.version(), received.version());
+      assertEquals(expected.location(), received.location());
+      assertTrue(received.location().isPresent());
+      assertEquals(
+        expected.resource().getCapabilities(null).size(),
+        received.resource().getCapabilities(null).size()
+      );
+      assertEquals(
+        expected.resource().getRequirements(null).size(),
+        received.resource().getRequirements(null).size()
+      );
+      assertEquals(
+        Optional.ofNullable(plan.wiring().get(expected.resource()))
+          .map(List::size),
+        Optional.ofNullable(restored.wiring().get(received.resource()))
+          .map(List::size)
+      );
+    }
+
+    final var topRestored =
+      restored.bundles().get(2).resource();
+    final var wire =
+      restored.wiring().get(topRestored).get(0);
+
+    assertEquals(topRestored, wire.getRequirer());
+    assertEquals(restored.bundles().get(1).resource(), wire.getProvider());
+    assertEquals(
+      "com.io7m.oatfield.middle",
+      wire.getCapability().getAttributes().get("osgi.wiring.package")
+    );
+    assertEquals(
+      "1.0.0",
+      wire.getCapability().getAttributes().get("version").toString()
+    );
+  }
+
+  /**
+   * Corrupted plans are rejected.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testCorrupted()
+    throws Exception
+  {
+    final var file = this.directory.resolve("plan.bin");
+    try (var serializer = this.serializers.createSerializer(file)) {
+      serializer.execute(this.plans.createPlan(Map.of()));
+    }
+
+    final var bytes = Files.readAllBytes(file);
+    bytes[bytes.length - 5] ^= 0xff;
+    Files.write(file, bytes);
+
+    final var ex =
+      assertThrows(IOException.class, () -> {
+        try (var parser = this.parsers.createParser(file)) {
+          parser.execute();
+        }
+      });
+    assertTrue(ex.getMessage().contains("checksum"));
+  }
+
+  /**
+   * Plans with valid checksums but malformed, truncated, or hostile
+   * contents are rejected with I/O exceptions.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testMalformed()
+    throws Exception
+  {
+    final var file = this.directory.resolve("plan.bin");
+    try (var serializer = this.serializers.createSerializer(file)) {
+      serializer.execute(this.plans.createPlan(Map.of()));
+    }
+
+    final var valid = Files.readAllBytes(file);
+    final var body = Arrays.copyOfRange(valid, 8, valid.length - 4);
+    final var cases = List.of(
+      Arrays.copyOf(body, body.length - 1),
+      new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07},
+      new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f},
+      new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x7f},
+      new byte[]{0x01, (byte) 0xe8, 0x07, 0x41, 0x42},
+      new byte[]{0x00, 0x00, 0x01, 0x05, 0x00, 0x00, 0x00},
+      new byte[]{0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x7f}
+    );
+
+    for (final var contents : cases) {
+      Files.write(file, planOf(contents));
+      assertThrows(IOException.class, () -> {
+        try (var parser = this.parsers.createParser(file)) {
+          parser.execute();
+        }
+      });
+    }
+  }
+
+  /**
+   * A serializer writes exactly one plan.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public final void testSerializerSingleUse()
+    throws Exception
+  {
+    final var file = this.directory.resolve("plan.bin");
+    final var plan = this.plans.createPlan(Map.of());
+    try (var serializer = this.serializers.createSerializer(file)) {
+      serializer.execute(plan);
+      assertThrows(IllegalStateException.class, () -> {
+        serializer.execute(plan);
+      });
+    }
+
+    try (var parser = this.parsers.createParser(file)) {
+      assertEquals(List.of(), parser.execute().bundles());
+    }
+  }
+
+  private static byte[] planOf(
+    final byte[] body)
+    throws IOException
+  {
+    final var bytes = new ByteArrayOutputStream();
+    final var data = new DataOutputStream(bytes);
+    data.writeInt(OFDeploymentPlanFormat.MAGIC);
+    data.writeShort(OFDeploymentPlanFormat.VERSION_MAJOR);
+    data.writeShort(OFDeploymentPlanFormat.VERSION_MINOR);
+    data.write(body);
+
+    final var crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    data.writeInt((int) crc.getValue());
+    data.flush();
+    return bytes.toByteArray();
+  }
+
+  private Resource bundleOf(
+    final String name,
+    final Consumer<OFBundleWriterType> contents)
+    throws IOException
+  {
+    return OFTestBundles.bundleOf(this.directory, name, contents);
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.tests;
+
+import com.io7m.oatfield.api.OFDeploymentPlanFactoryType;
+import com.io7m.oatfield.api.OFDeploymentPlanParserFactoryType;
+import com.io7m.oatfield.api.OFDeploymentPlanSerializerFactoryType;
+import com.io7m.oatfield.vanilla.OFDeploymentPlanParsers;
+import com.io7m.oatfield.vanilla.OFDeploymentPlanSerializers;
+import com.io7m.oatfield.vanilla.OFDeploymentPlans;
+
+public final class OFDeploymentPlanTest extends OFDeploymentPlanContract
+{
+  @Override
+  protected OFDeploymentPlanFactoryType plans()
+  {
+    return new OFDeploymentPlans();
+  }
+
+  @Override
+  protected OFDeploymentPlanSerializerFactoryType serializers()
+  {
+    return new OFDeploymentPlanSerializers();
+  }
+
+  @Override
+  protected OFDeploymentPlanParserFactoryType parsers()
+  {
+    return new OFDeploymentPlanParsers();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.tests;
+
+import com.io7m.oatfield.vanilla.internal.OFManifestEncoder;
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.CharRange;
+import net.jqwik.api.constraints.StringLength;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.util.jar.Manifest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class OFManifestEncoderTest
+{
+  private static void checkEncoding(
+    final String value)
+    throws Exception
+  {
+    final var encoder = new OFManifestEncoder();
+    encoder.header("Manifest-Version", "1.0");
+    encoder.header("X-Value", value);
+    encoder.endSection();
+
+    final var bytes = encoder.toByteArray();
+    var lineStart = 0;
+    for (int index = 0; index < bytes.length; ++index) {
+      if (bytes[index] == '\n') {
+        final var lineLength = index - lineStart;
+        assertTrue(
+          lineLength <= OFManifestEncoder.LINE_LIMIT,
+          "Line length %d".formatted(lineLength));
+        decodeStrictly(bytes, lineStart, lineLength);
+        lineStart = index + 1;
+      }
+    }
+
+    final var manifest = new Manifest(new ByteArrayInputStream(bytes));
+    assertEquals(value, manifest.getMainAttributes().getValue("X-Value"));
+  }
+
+  private static void decodeStrictly(
+    final byte[] bytes,
+    final int offset,
+    final int length)
+    throws CharacterCodingException
+  {
+    UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPORT)
+      .onUnmappableCharacter(CodingErrorAction.REPORT)
+      .decode(ByteBuffer.wrap(bytes, offset, length));
+  }
+
+  /**
+   * Arbitrary text is split into lines of no more than 72 bytes, each of
+   * which is valid UTF-8, and the original text is recovered by a standard
+   * manifest parser.
+   *
+   * @param text The text
+   *
+   * @throws Exception On errors
+   */
+
+  @Property
+  public void testArbitraryText(
+    @ForAll
+    @StringLength(min = 0, max = 10 * 72)
+    @CharRange(from = ' ', to = '~')
+    @CharRange(from = '\u00a0', to = '\ud7ff')
+    @CharRange(from = '\ue000', to = '\ufffd') final String text)
+    throws Exception
+  {
+    checkEncoding(text);
+  }
+
+  /**
+   * Supplementary characters are never split across lines.
+   *
+   * @throws Exception On errors
+   */
+
+  @Example
+  public void testSupplementary()
+    throws Exception
+  {
+    for (int prefix = 0; prefix < 8; ++prefix) {
+      checkEncoding("x".repeat(prefix) + "\ud83d\ude00".repeat(100));
+    }
+  }
+
+  /**
+   * Unpaired surrogates are replaced.
+   *
+   * @throws Exception On errors
+   */
+
+  @Example
+  public void testUnpairedSurrogate()
+    throws Exception
+  {
+    final var encoder = new OFManifestEncoder();
+    encoder.header("X-Value", "a\ud83db\ude00");
+    assertEquals(
+      "X-Value: a?b?\n",
+      UTF_8.decode(encoder.bytes()).toString()
+    );
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.tests;
+
+import com.io7m.oatfield.api.OFBundleWriterConfiguration;
+import com.io7m.oatfield.api.OFBundleWriterType;
+import com.io7m.oatfield.vanilla.OFBundleReaders;
+import com.io7m.oatfield.vanilla.OFBundleWriters;
+import org.osgi.resource.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+public final class OFTestBundles
+{
+  private OFTestBundles()
+  {
+
+  }
+
+  public static Resource bundleOf(
+    final Path directory,
+    final String name,
+    final Consumer<OFBundleWriterType> contents)
+    throws IOException
+  {
+    return bundleOf(
+      directory,
+      directory.resolve(name + ".jar"),
+      name,
+      "1.0.0",
+      contents
+    );
+  }
+
+  public static Resource bundleOf(
+    final Path directory,
+    final String name,
+    final String version,
+    final Consumer<OFBundleWriterType> contents)
+    throws IOException
+  {
+    return bundleOf(
+      directory,
+      directory.resolve(name + "-" + version + ".jar"),
+      name,
+      version,
+      contents
+    );
+  }
+
+  private static Resource bundleOf(
+    final Path directory,
+    final Path file,
+    final String name,
+    final String version,
+    final Consumer<OFBundleWriterType> contents)
+    throws IOException
+  {
+    final var configuration =
+      new OFBundleWriterConfiguration(file, name, version);
+
+    try (var writer = new OFBundleWriters().createWriter(configuration)) {
+      contents.accept(writer);
+      writer.execute();
+    }
+
+    try (var reader = new OFBundleReaders().createReader(file)) {
+      return reader.toResource();
+    }
+  }
+}
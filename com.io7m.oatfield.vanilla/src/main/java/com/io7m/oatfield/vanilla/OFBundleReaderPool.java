@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla;
+
+import com.io7m.oatfield.api.OFBundleHeaders;
+import com.io7m.oatfield.api.OFBundleReaderFactoryType;
+import com.io7m.oatfield.api.OFBundleReaderType;
+import com.io7m.oatfield.vanilla.internal.OFBundleReaderLeases;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A factory of bundle readers that keeps a bounded number of readers
+ * open and shares them between callers. Readers returned by this factory
+ * are leases on pooled readers: closing a reader returns it to the pool.
+ * A pooled reader is reused only while the size and modification time of
+ * its bundle are unchanged, and the least recently used readers are
+ * closed when more than the configured number of readers are open and
+ * not in use.
+ */
+
+public final class OFBundleReaderPool
+  implements OFBundleReaderFactoryType, Closeable
+{
+  /**
+   * The default maximum number of open readers.
+   */
+
+  public static final int DEFAULT_MAXIMUM_OPEN = 128;
+
+  private final OFBundleReaderLeases leases;
+
+  /**
+   * A factory of pooled bundle readers.
+   *
+   * @param maximumOpen The maximum number of open readers; readers that
+   *                    are in use are never closed, so this may be exceeded
+   *                    while many readers are in use
+   */
+
+  public OFBundleReaderPool(
+    final int maximumOpen)
+  {
+    this.leases = new OFBundleReaderLeases(maximumOpen);
+  }
+
+  /**
+   * A factory of pooled bundle readers that keeps at most
+   * {@link #DEFAULT_MAXIMUM_OPEN} readers open.
+   */
+
+  public OFBundleReaderPool()
+  {
+    this(DEFAULT_MAXIMUM_OPEN);
+  }
+
+  @Override
+  public OFBundleReaderType createReader(
+    final Path input)
+    throws IOException
+  {
+    return this.leases.acquire(input);
+  }
+
+  @Override
+  public OFBundleHeaders readHeaders(
+    final Path input)
+    throws IOException
+  {
+    return this.leases.readHeaders(input);
+  }
+
+  /**
+   * @return The number of readers currently open, including readers that
+   * are in use
+   */
+
+  public int openReaders()
+  {
+    return this.leases.openReaders();
+  }
+
+  /**
+   * Close the pool. Readers that are not in use are closed immediately,
+   * and readers that are in use are closed when they are returned.
+   *
+   * @throws IOException If any reader could not be closed
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.leases.close();
+  }
+}
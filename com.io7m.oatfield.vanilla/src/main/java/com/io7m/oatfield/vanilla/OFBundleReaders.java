@@ -16,8 +16,10 @@
 
 package com.io7m.oatfield.vanilla;
 
+import com.io7m.oatfield.api.OFBundleHeaders;
 import com.io7m.oatfield.api.OFBundleReaderFactoryType;
 import com.io7m.oatfield.api.OFBundleReaderType;
+import com.io7m.oatfield.vanilla.internal.OFBundleHeaderReader;
 import com.io7m.oatfield.vanilla.internal.OFBundleReader;
 
 import java.io.IOException;
@@ -43,12 +45,14 @@ public final class OFBundleReaders implements OFBundleReaderFactoryType
     final Path input)
     throws IOException
   {
-    try {
-      final var reader = new OFBundleReader(input);
-      reader.start();
-      return reader;
-    } catch (final Exception e) {
-      throw new IOException(e);
-    }
+    return OFBundleReader.open(input);
+  }
+
+  @Override
+  public OFBundleHeaders readHeaders(
+    final Path input)
+    throws IOException
+  {
+    return OFBundleHeaderReader.read(input);
   }
 }
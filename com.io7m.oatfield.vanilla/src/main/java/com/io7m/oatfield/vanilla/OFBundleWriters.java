@@ -17,32 +17,71 @@
 
 package com.io7m.oatfield.vanilla;
 
+import com.io7m.oatfield.api.OFBundleBatchConfiguration;
+import com.io7m.oatfield.api.OFBundleBatchResult;
+import com.io7m.oatfield.api.OFBundleStreamingWriterConfiguration;
+import com.io7m.oatfield.api.OFBundleStreamingWriterType;
+import com.io7m.oatfield.api.OFBundleWrapConfiguration;
 import com.io7m.oatfield.api.OFBundleWriterConfiguration;
 import com.io7m.oatfield.api.OFBundleWriterFactoryType;
 import com.io7m.oatfield.api.OFBundleWriterType;
+import com.io7m.oatfield.vanilla.internal.OFBundleBatchWriter;
+import com.io7m.oatfield.vanilla.internal.OFBundleStreamingWriter;
+import com.io7m.oatfield.vanilla.internal.OFBundleWrapper;
 import com.io7m.oatfield.vanilla.internal.OFBundleWriter;
+import com.io7m.oatfield.vanilla.internal.OFZipWriterContexts;
+
+import java.io.IOException;
 
 /**
- * The default factory of bundle writers.
+ * The default factory of bundle writers. Writers created by the same
+ * factory share a thread-safe pool of deflaters and I/O buffers, so a
+ * single factory should be reused when writing many bundles, whether
+ * individually, with {@link #writeBatch(OFBundleBatchConfiguration)}, or
+ * with {@link #wrapDirectory(OFBundleWrapConfiguration)}.
  */
 
 public final class OFBundleWriters implements OFBundleWriterFactoryType
 {
+  private final OFZipWriterContexts contexts;
+
   /**
    * The default factory of bundle writers.
    */
 
   public OFBundleWriters()
   {
-
+    this.contexts = new OFZipWriterContexts();
   }
 
   @Override
   public OFBundleWriterType createWriter(
     final OFBundleWriterConfiguration configuration)
   {
-    final var writer = new OFBundleWriter(configuration);
-    writer.start();
-    return writer;
+    return new OFBundleWriter(this.contexts, configuration);
+  }
+
+  @Override
+  public OFBundleStreamingWriterType createStreamingWriter(
+    final OFBundleStreamingWriterConfiguration configuration)
+    throws IOException
+  {
+    return OFBundleStreamingWriter.open(this.contexts, configuration);
+  }
+
+  @Override
+  public OFBundleBatchResult writeBatch(
+    final OFBundleBatchConfiguration configuration)
+    throws InterruptedException
+  {
+    return new OFBundleBatchWriter(this.contexts, configuration).write();
+  }
+
+  @Override
+  public OFBundleBatchResult wrapDirectory(
+    final OFBundleWrapConfiguration configuration)
+    throws IOException, InterruptedException
+  {
+    return new OFBundleWrapper(this.contexts, configuration).execute();
   }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleBatchConfiguration;
+import com.io7m.oatfield.api.OFBundleBatchItem;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchFailed;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchWritten;
+import com.io7m.oatfield.api.OFBundleBatchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes batches of bundles concurrently. Each bundle is written entirely
+ * on one thread of a fixed pool, and all bundles share the pool of ZIP
+ * writer contexts of the factory that created the batch.
+ */
+
+public final class OFBundleBatchWriter
+{
+  private final OFZipWriterContexts contexts;
+  private final OFBundleBatchConfiguration configuration;
+
+  /**
+   * Writes batches of bundles concurrently.
+   *
+   * @param inContexts      The pool of ZIP writer contexts
+   * @param inConfiguration The batch configuration
+   */
+
+  public OFBundleBatchWriter(
+    final OFZipWriterContexts inContexts,
+    final OFBundleBatchConfiguration inConfiguration)
+  {
+    this.contexts =
+      Objects.requireNonNull(inContexts, "contexts");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+  }
+
+  /**
+   * Write every bundle in the batch.
+   *
+   * @return The outcome of each bundle
+   *
+   * @throws InterruptedException If interrupted while waiting for the batch
+   */
+
+  public OFBundleBatchResult write()
+    throws InterruptedException
+  {
+    final var tasks = new ArrayList<Callable<OFBundleBatchOutcomeType>>();
+    for (final var item : this.configuration.items()) {
+      tasks.add(() -> this.writeOne(item));
+    }
+    return run(this.configuration.parallelism(), tasks);
+  }
+
+  /**
+   * Run tasks that each write one bundle on a fixed pool of threads.
+   * Tasks are expected to report their own failures as outcomes.
+   *
+   * @param parallelism The maximum number of tasks run at once
+   * @param tasks       The tasks
+   *
+   * @return The outcome of each task, in order
+   *
+   * @throws InterruptedException If interrupted while waiting for the tasks
+   */
+
+  static OFBundleBatchResult run(
+    final int parallelism,
+    final List<Callable<OFBundleBatchOutcomeType>> tasks)
+    throws InterruptedException
+  {
+    final var threads =
+      Math.min(parallelism, Math.max(1, tasks.size()));
+
+    final var executor = Executors.newFixedThreadPool(
+      threads,
+      Thread.ofPlatform()
+        .name("com.io7m.oatfield.batch-", 0L)
+        .daemon()
+        .factory()
+    );
+
+    final var futures = new ArrayList<Future<OFBundleBatchOutcomeType>>();
+    try {
+      for (final var task : tasks) {
+        futures.add(executor.submit(task));
+      }
+
+      final var outcomes = new ArrayList<OFBundleBatchOutcomeType>();
+      for (final var future : futures) {
+        outcomes.add(future.get());
+      }
+      return new OFBundleBatchResult(outcomes);
+    } catch (final ExecutionException e) {
+      throw unwrap(e.getCause());
+    } finally {
+      for (final var future : futures) {
+        future.cancel(true);
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  private OFBundleBatchOutcomeType writeOne(
+    final OFBundleBatchItem item)
+  {
+    final var itemConfiguration = item.configuration();
+    try (var writer = new OFBundleWriter(this.contexts, itemConfiguration)) {
+      item.content().addContent(writer);
+      return new OFBatchWritten(itemConfiguration, writer.execute());
+    } catch (final Exception e) {
+      return new OFBatchFailed(itemConfiguration, e);
+    }
+  }
+
+  private static RuntimeException unwrap(
+    final Throwable cause)
+  {
+    return switch (cause) {
+      case final RuntimeException e -> e;
+      case final Error e -> throw e;
+      default -> new IllegalStateException(cause);
+    };
+  }
+}
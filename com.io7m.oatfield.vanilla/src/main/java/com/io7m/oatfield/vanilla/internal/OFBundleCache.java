@@ -0,0 +1,345 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleBuildCache;
+import com.io7m.oatfield.api.OFBundleDigest;
+import com.io7m.oatfield.api.OFBundleOutputTargetType;
+import com.io7m.oatfield.api.OFBundleOutputTargetType.OFOutputChannel;
+import com.io7m.oatfield.api.OFBundleOutputTargetType.OFOutputFile;
+import com.io7m.oatfield.api.OFBundleOutputTargetType.OFOutputStream;
+import com.io7m.oatfield.api.OFBundleWriteResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A local directory of previously written bundles. Each cached bundle is
+ * stored as {@code <key>.jar}, alongside {@code <key>.properties} holding
+ * the result of writing it. Files are written to temporary files and
+ * atomically moved into place, so the directory can be shared between
+ * processes. The modification time of a bundle records when it was last
+ * used, and the least recently used bundles are deleted when the total
+ * size of the cache exceeds its maximum.
+ *
+ * <p>Cached bundles are copied, rather than linked, to output files:
+ * writers truncate and rewrite existing output files in place, which would
+ * corrupt a cached bundle linked to an output file.</p>
+ */
+
+final class OFBundleCache
+{
+  private static final String BUNDLE_SUFFIX = ".jar";
+  private static final String RESULT_SUFFIX = ".properties";
+
+  private final OFBundleBuildCache configuration;
+
+  /**
+   * A local directory of previously written bundles.
+   *
+   * @param inConfiguration The cache configuration
+   */
+
+  OFBundleCache(
+    final OFBundleBuildCache inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+  }
+
+  /**
+   * A function that writes a bundle to an output target.
+   */
+
+  interface WriterType
+  {
+    /**
+     * Write a bundle.
+     *
+     * @param target The output target
+     *
+     * @return The result of writing the bundle
+     *
+     * @throws IOException On I/O errors
+     */
+
+    OFBundleWriteResult write(OFBundleOutputTargetType target)
+      throws IOException;
+  }
+
+  /**
+   * Copy the bundle with the given key to the target if it is cached.
+   * Otherwise, write the bundle into the cache using the given writer, and
+   * then copy it to the target.
+   *
+   * @param key    The cache key
+   * @param target The output target
+   * @param writer The bundle writer
+   *
+   * @return The result of writing the bundle
+   *
+   * @throws IOException On I/O errors
+   */
+
+  OFBundleWriteResult execute(
+    final String key,
+    final OFBundleOutputTargetType target,
+    final WriterType writer)
+    throws IOException
+  {
+    final var directory = this.configuration.directory();
+    Files.createDirectories(directory);
+
+    final var bundle = directory.resolve(key + BUNDLE_SUFFIX);
+    final var results = directory.resolve(key + RESULT_SUFFIX);
+
+    final var cached = load(bundle, results);
+    if (cached.isPresent()) {
+      try {
+        Files.setLastModifiedTime(bundle, FileTime.from(Instant.now()));
+        deliver(bundle, target);
+        return cached.get();
+      } catch (final NoSuchFileException e) {
+        // Evicted by another process; write the bundle again.
+      }
+    }
+
+    final var bundleTemporary =
+      Files.createTempFile(directory, key, ".tmp");
+    final var resultsTemporary =
+      Files.createTempFile(directory, key, ".tmp");
+
+    try {
+      final var result =
+        writer.write(OFBundleOutputTargetType.ofFile(bundleTemporary));
+
+      try (var stream = Files.newOutputStream(resultsTemporary)) {
+        save(result).store(stream, null);
+      }
+      Files.move(bundleTemporary, bundle, ATOMIC_MOVE, REPLACE_EXISTING);
+      Files.move(resultsTemporary, results, ATOMIC_MOVE, REPLACE_EXISTING);
+      deliver(bundle, target);
+      this.evict();
+      return result;
+    } finally {
+      Files.deleteIfExists(bundleTemporary);
+      Files.deleteIfExists(resultsTemporary);
+    }
+  }
+
+  private static void deliver(
+    final Path bundle,
+    final OFBundleOutputTargetType target)
+    throws IOException
+  {
+    switch (target) {
+      case final OFOutputFile file -> {
+        Files.copy(bundle, file.file(), REPLACE_EXISTING);
+      }
+      case final OFOutputStream stream -> {
+        Files.copy(bundle, stream.stream());
+        stream.stream().flush();
+      }
+      case final OFOutputChannel channel -> {
+        try (var source = FileChannel.open(bundle, READ)) {
+          final var size = source.size();
+          var at = 0L;
+          while (at < size) {
+            final var n = source.transferTo(at, size - at, channel.channel());
+            if (n <= 0L) {
+              throw new IOException(
+                "Unexpected end of cached bundle " + bundle);
+            }
+            at += n;
+          }
+        }
+      }
+    }
+  }
+
+  private static Optional<OFBundleWriteResult> load(
+    final Path bundle,
+    final Path results)
+    throws IOException
+  {
+    if (!Files.isRegularFile(bundle)) {
+      return Optional.empty();
+    }
+
+    final var properties = new Properties();
+    try (var stream = Files.newInputStream(results)) {
+      properties.load(stream);
+    } catch (final NoSuchFileException e) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(parse(properties));
+    } catch (final IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Parse a result saved with {@link #save(OFBundleWriteResult)}.
+   */
+
+  private static OFBundleWriteResult parse(
+    final Properties properties)
+  {
+    final var size =
+      Long.parseLong(properties.getProperty("size", "-1"));
+    if (size < 0L) {
+      throw new IllegalArgumentException("Missing size");
+    }
+
+    final var archive = parseDigests(properties, "archive.");
+    final var entries = new TreeMap<String, List<OFBundleDigest>>();
+    for (int index = 0; true; ++index) {
+      final var prefix = "entry.%d.".formatted(Integer.valueOf(index));
+      final var name = properties.getProperty(prefix + "name");
+      if (name == null) {
+        break;
+      }
+      entries.put(name, parseDigests(properties, prefix));
+    }
+    return new OFBundleWriteResult(size, entries, archive);
+  }
+
+  private static List<OFBundleDigest> parseDigests(
+    final Properties properties,
+    final String prefix)
+  {
+    final var digests = new ArrayList<OFBundleDigest>();
+    for (int index = 0; true; ++index) {
+      final var key = prefix + index;
+      final var algorithm = properties.getProperty(key + ".algorithm");
+      if (algorithm == null) {
+        break;
+      }
+      final var value = properties.getProperty(key + ".value", "");
+      digests.add(new OFBundleDigest(algorithm, value));
+    }
+    return digests;
+  }
+
+  private static Properties save(
+    final OFBundleWriteResult result)
+  {
+    final var properties = new Properties();
+    properties.setProperty("size", Long.toString(result.size()));
+    saveDigests(properties, "archive.", result.archiveDigests());
+
+    var index = 0;
+    for (final var entry : result.entryDigests().entrySet()) {
+      final var prefix = "entry.%d.".formatted(Integer.valueOf(index));
+      properties.setProperty(prefix + "name", entry.getKey());
+      saveDigests(properties, prefix, entry.getValue());
+      ++index;
+    }
+    return properties;
+  }
+
+  private static void saveDigests(
+    final Properties properties,
+    final String prefix,
+    final List<OFBundleDigest> digests)
+  {
+    for (int index = 0; index < digests.size(); ++index) {
+      final var digest = digests.get(index);
+      properties.setProperty(prefix + index + ".algorithm", digest.algorithm());
+      properties.setProperty(prefix + index + ".value", digest.value());
+    }
+  }
+
+  /**
+   * Delete the least recently used bundles until the cache is no larger
+   * than its maximum size. Temporary files belonging to writes in progress
+   * are not counted.
+   */
+
+  private void evict()
+    throws IOException
+  {
+    final var entries = new ArrayList<CachedBundle>();
+    try (var files = Files.list(this.configuration.directory())) {
+      files.filter(p -> p.getFileName().toString().endsWith(BUNDLE_SUFFIX))
+        .forEach(p -> entries.add(CachedBundle.of(p)));
+    } catch (final UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    var total = 0L;
+    for (final var entry : entries) {
+      total += entry.size();
+    }
+
+    entries.sort(Comparator.comparing(CachedBundle::used));
+    for (final var entry : entries) {
+      if (total <= this.configuration.maximumSize()) {
+        break;
+      }
+      Files.deleteIfExists(entry.results());
+      Files.deleteIfExists(entry.bundle());
+      total -= entry.size();
+    }
+  }
+
+  private record CachedBundle(
+    Path bundle,
+    Path results,
+    long size,
+    FileTime used)
+  {
+    static CachedBundle of(
+      final Path bundle)
+    {
+      final var name = bundle.getFileName().toString();
+      final var results = bundle.resolveSibling(
+        name.substring(0, name.length() - BUNDLE_SUFFIX.length())
+          + RESULT_SUFFIX);
+
+      try {
+        final var size = Files.size(bundle)
+                         + (Files.exists(results) ? Files.size(results) : 0L);
+        return new CachedBundle(
+          bundle, results, size, Files.getLastModifiedTime(bundle));
+      } catch (final NoSuchFileException e) {
+        return new CachedBundle(bundle, results, 0L, FileTime.fromMillis(0L));
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentBuffer;
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentFile;
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentStreams;
+import com.io7m.oatfield.api.OFBundleWriterConfiguration;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFArchiveEntry;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFFileEntry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Build cache keys. A key is a SHA-256 hash of everything that determines
+ * the bytes of a bundle: the compression, digest and package analysis
+ * settings, the encoded manifest, and the name, storage method and content
+ * of every entry in order. Entries copied from other archives contribute their stored
+ * (possibly compressed) data, which is what the bundle will contain.
+ * The output target and the parallelism do not affect the bytes of a
+ * bundle, and are not part of the key.
+ */
+
+final class OFBundleCacheKey
+{
+  private static final String FORMAT = "com.io7m.oatfield.cache:1";
+
+  private final MessageDigest key;
+  private final MessageDigest content;
+  private final byte[] buffer;
+
+  private OFBundleCacheKey()
+  {
+    this.key = sha256();
+    this.content = sha256();
+    this.buffer = new byte[OFZipWriterContext.BUFFER_SIZE];
+  }
+
+  private static MessageDigest sha256()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compute the cache key of a bundle.
+   *
+   * @param configuration The writer configuration
+   * @param manifest      The manifest
+   * @param entries       The entries, in the order they will be written
+   * @param openArchives  The source archives that are already open, by file
+   *
+   * @return The key, as lowercase hexadecimal
+   *
+   * @throws IOException On I/O errors reading entry content
+   */
+
+  static String keyOf(
+    final OFBundleWriterConfiguration configuration,
+    final OFBundleManifest manifest,
+    final Collection<OFBundleEntryType> entries,
+    final Map<Path, OFZipArchive> openArchives)
+    throws IOException
+  {
+    final var hasher = new OFBundleCacheKey();
+    hasher.putString(FORMAT);
+    hasher.putConfiguration(configuration);
+
+    final var encoder = new OFManifestEncoder();
+    manifest.encode(encoder);
+    hasher.putBytes(encoder.toByteArray());
+
+    try (var archives = new OFZipArchiveSet(openArchives)) {
+      for (final var entry : entries) {
+        switch (entry) {
+          case final OFFileEntry file -> hasher.putFile(file);
+          case final OFArchiveEntry raw -> hasher.putArchiveEntry(
+            archives.open(raw.archive()), raw);
+        }
+      }
+    }
+    return HexFormat.of().formatHex(hasher.key.digest());
+  }
+
+  private void putConfiguration(
+    final OFBundleWriterConfiguration configuration)
+  {
+    this.putLong(configuration.compressionLevel());
+    this.putString(configuration.compressionStrategy().name());
+
+    final var digests = configuration.digests();
+    this.putLong(digests.entryAlgorithms().size());
+    for (final var algorithm : digests.entryAlgorithms()) {
+      this.putString(algorithm);
+    }
+    this.putLong(digests.archiveAlgorithms().size());
+    for (final var algorithm : digests.archiveAlgorithms()) {
+      this.putString(algorithm);
+    }
+    this.putLong(digests.recordEntriesInManifest() ? 1L : 0L);
+
+    final var analysis = configuration.analysis();
+    this.putLong(analysis.importReferencedPackages() ? 1L : 0L);
+    this.putLong(analysis.exportContainedPackages() ? 1L : 0L);
+    this.putLong(analysis.computeUses() ? 1L : 0L);
+  }
+
+  private void putFile(
+    final OFFileEntry file)
+    throws IOException
+  {
+    this.putString("file");
+    this.putString(file.name());
+    this.putString(file.method().name());
+
+    this.content.reset();
+    final var size = switch (file.source()) {
+      case final OFContentBuffer bytes -> {
+        final var data = bytes.buffer();
+        final var remaining = data.remaining();
+        this.content.update(data);
+        yield (long) remaining;
+      }
+      case final OFContentFile path -> {
+        try (var stream = Files.newInputStream(path.file())) {
+          yield this.digestStream(stream);
+        }
+      }
+      case final OFContentStreams streams -> {
+        try (var stream = streams.streams().open()) {
+          yield this.digestStream(stream);
+        }
+      }
+    };
+    this.putLong(size);
+    this.putBytes(this.content.digest());
+  }
+
+  private void putArchiveEntry(
+    final OFZipArchive archive,
+    final OFArchiveEntry raw)
+    throws IOException
+  {
+    final var source = OFBundleEntryWriter.findEntry(archive, raw);
+    this.putString("archive");
+    this.putString(raw.name());
+    this.putLong(source.method());
+    this.putLong(source.crc());
+    this.putLong(source.size());
+    this.putLong(source.compressedSize());
+
+    this.content.reset();
+    final var channel = archive.channel();
+    final var data = ByteBuffer.wrap(this.buffer);
+    var at = archive.dataOffset(source);
+    var remaining = source.compressedSize();
+    while (remaining > 0L) {
+      data.clear().limit((int) Math.min(data.capacity(), remaining));
+      final var r = channel.read(data, at);
+      if (r == -1) {
+        throw new IOException("Unexpected end of archive " + archive.path());
+      }
+      this.content.update(this.buffer, 0, r);
+      at += r;
+      remaining -= r;
+    }
+    this.putBytes(this.content.digest());
+  }
+
+  private long digestStream(
+    final InputStream stream)
+    throws IOException
+  {
+    var size = 0L;
+    while (true) {
+      final var r = stream.read(this.buffer);
+      if (r == -1) {
+        break;
+      }
+      this.content.update(this.buffer, 0, r);
+      size += r;
+    }
+    return size;
+  }
+
+  private void putLong(
+    final long value)
+  {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      this.key.update((byte) (value >>> shift));
+    }
+  }
+
+  private void putBytes(
+    final byte[] data)
+  {
+    this.putLong(data.length);
+    this.key.update(data);
+  }
+
+  private void putString(
+    final String text)
+  {
+    this.putBytes(text.getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,717 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.SortedSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An immutable, sorted directory of entry names. Names are held in natural
+ * {@link String} order as front-coded UTF-8 in a single array: each block
+ * of {@link #BLOCK_SIZE} names begins with a complete name, and every
+ * other name is stored as the length of the prefix it shares with the
+ * previous name followed by the remaining bytes. Lookups encode the query
+ * once, binary search the block heads, and then scan at most one block,
+ * comparing encoded bytes so that no names are decoded.
+ */
+
+final class OFBundleEntryNames
+{
+  private static final int BLOCK_SIZE = 16;
+
+  private final byte[] data;
+  private final int[] blocks;
+  private final int count;
+
+  private OFBundleEntryNames(
+    final byte[] inData,
+    final int[] inBlocks,
+    final int inCount)
+  {
+    this.data =
+      Objects.requireNonNull(inData, "data");
+    this.blocks =
+      Objects.requireNonNull(inBlocks, "blocks");
+    this.count =
+      inCount;
+  }
+
+  /**
+   * Build a directory from names that are already encoded, without
+   * decoding them.
+   *
+   * @param pool    The array holding the encoded names, which must be
+   *                well-formed UTF-8
+   * @param offsets The offset of each name in {@code pool}
+   * @param lengths The length of each name
+   * @param order   The indices of the names to include, such that the
+   *                names are distinct and in natural order
+   * @param count   The number of indices in {@code order}
+   *
+   * @return A directory
+   *
+   * @see #compare(byte[], int, int, byte[], int, int)
+   */
+
+  static OFBundleEntryNames of(
+    final byte[] pool,
+    final int[] offsets,
+    final int[] lengths,
+    final int[] order,
+    final int count)
+  {
+    final var output = new ByteArrayOutputStream(count * 16);
+    final var blocks = new int[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+    var previousOffset = 0;
+    var previousLength = 0;
+    for (int index = 0; index < count; ++index) {
+      final var offset = offsets[order[index]];
+      final var length = lengths[order[index]];
+      if (index > 0 && compare(
+        pool, previousOffset, previousLength, pool, offset, length) >= 0) {
+        throw new IllegalArgumentException(
+          "Names must be distinct and sorted: " + decode(pool, offset, length));
+      }
+
+      var shared = 0;
+      if (index % BLOCK_SIZE == 0) {
+        blocks[index / BLOCK_SIZE] = output.size();
+      } else {
+        shared = Arrays.mismatch(
+          pool, previousOffset, previousOffset + previousLength,
+          pool, offset, offset + length);
+        if (shared < 0) {
+          shared = length;
+        }
+      }
+      writeVarInt(output, shared);
+      writeVarInt(output, length - shared);
+      output.write(pool, offset + shared, length - shared);
+      previousOffset = offset;
+      previousLength = length;
+    }
+
+    return new OFBundleEntryNames(output.toByteArray(), blocks, count);
+  }
+
+  /**
+   * Compare two UTF-8 encoded names in the natural order of the strings
+   * that they encode, without decoding them. The byte order of UTF-8 is
+   * code point order, which differs from the UTF-16 order of
+   * {@link String#compareTo(String)} only in that characters above U+FFFF
+   * (encoded with the lead bytes 0xF0 to 0xF4) sort before the characters
+   * U+E000 to U+FFFF (encoded with the lead bytes 0xEE and 0xEF). The
+   * first bytes at which well-formed encodings differ are either both
+   * lead bytes, or are continuation bytes following the same lead byte,
+   * so it suffices to reorder those two lead bytes.
+   *
+   * @param a       The array holding the first name
+   * @param aOffset The offset of the first name
+   * @param aLength The length of the first name
+   * @param b       The array holding the second name
+   * @param bOffset The offset of the second name
+   * @param bLength The length of the second name
+   *
+   * @return A negative, zero, or positive value as the first name is less
+   * than, equal to, or greater than the second
+   */
+
+  static int compare(
+    final byte[] a,
+    final int aOffset,
+    final int aLength,
+    final byte[] b,
+    final int bOffset,
+    final int bLength)
+  {
+    final var at = Arrays.mismatch(
+      a, aOffset, aOffset + aLength, b, bOffset, bOffset + bLength);
+    if (at < 0) {
+      return 0;
+    }
+    if (at == aLength || at == bLength) {
+      return Integer.compare(aLength, bLength);
+    }
+    return Integer.compare(weightOf(a[aOffset + at]), weightOf(b[bOffset + at]));
+  }
+
+  private static int weightOf(
+    final byte value)
+  {
+    final var unsigned = Byte.toUnsignedInt(value);
+    if (unsigned == 0xee || unsigned == 0xef) {
+      return unsigned + 0x07;
+    }
+    return unsigned;
+  }
+
+  /**
+   * @param bytes  The array
+   * @param offset The offset of the encoded name
+   * @param length The length of the encoded name
+   *
+   * @return {@code true} if the bytes are well-formed UTF-8; that is, if
+   * they would be decoded without any replacement characters
+   */
+
+  static boolean isWellFormed(
+    final byte[] bytes,
+    final int offset,
+    final int length)
+  {
+    final var end = offset + length;
+    var at = offset;
+    while (at < end) {
+      final var size = sequenceLength(bytes, at, end);
+      if (size < 0) {
+        return false;
+      }
+      at += size;
+    }
+    return true;
+  }
+
+  /**
+   * @return The length of the well-formed sequence at {@code at}, or
+   * {@code -1} if the sequence is malformed
+   */
+
+  private static int sequenceLength(
+    final byte[] bytes,
+    final int at,
+    final int end)
+  {
+    final var lead = Byte.toUnsignedInt(bytes[at]);
+    if (lead < 0x80) {
+      return 1;
+    }
+    if (lead < 0xc2 || lead > 0xf4) {
+      return -1;
+    }
+
+    final var size = sequenceSizeOf(lead);
+    if (end - at < size || !isValidSecond(lead, bytes[at + 1])) {
+      return -1;
+    }
+    for (int index = 2; index < size; ++index) {
+      if ((bytes[at + index] & 0xc0) != 0x80) {
+        return -1;
+      }
+    }
+    return size;
+  }
+
+  private static int sequenceSizeOf(
+    final int lead)
+  {
+    if (lead >= 0xf0) {
+      return 4;
+    }
+    if (lead >= 0xe0) {
+      return 3;
+    }
+    return 2;
+  }
+
+  /**
+   * The range of the second byte of a sequence excludes overlong
+   * encodings, encoded surrogates, and code points above U+10FFFF.
+   */
+
+  private static boolean isValidSecond(
+    final int lead,
+    final byte second)
+  {
+    final var value = Byte.toUnsignedInt(second);
+    return switch (lead) {
+      case 0xe0 -> value >= 0xa0 && value <= 0xbf;
+      case 0xed -> value >= 0x80 && value <= 0x9f;
+      case 0xf0 -> value >= 0x90 && value <= 0xbf;
+      case 0xf4 -> value >= 0x80 && value <= 0x8f;
+      default -> value >= 0x80 && value <= 0xbf;
+    };
+  }
+
+  /**
+   * Encode a query, if it can be encoded exactly. A string containing
+   * unpaired surrogates cannot be, and cannot be the name of any entry.
+   */
+
+  private static byte[] encode(
+    final String name)
+  {
+    final var length = name.length();
+    var index = 0;
+    while (index < length) {
+      final var c = name.charAt(index);
+      if (Character.isHighSurrogate(c)) {
+        if (index + 1 >= length
+            || !Character.isLowSurrogate(name.charAt(index + 1))) {
+          return null;
+        }
+        index += 2;
+      } else if (Character.isLowSurrogate(c)) {
+        return null;
+      } else {
+        ++index;
+      }
+    }
+    return name.getBytes(UTF_8);
+  }
+
+  private static String decode(
+    final byte[] bytes,
+    final int offset,
+    final int length)
+  {
+    return UTF_8.decode(ByteBuffer.wrap(bytes, offset, length)).toString();
+  }
+
+  private static boolean startsWith(
+    final byte[] bytes,
+    final int offset,
+    final int length,
+    final byte[] prefix)
+  {
+    return length >= prefix.length
+           && Arrays.equals(
+      bytes, offset, offset + prefix.length, prefix, 0, prefix.length);
+  }
+
+  private static void writeVarInt(
+    final ByteArrayOutputStream output,
+    final int value)
+  {
+    var v = value;
+    while ((v & ~0x7f) != 0) {
+      output.write((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    output.write(v);
+  }
+
+  /**
+   * @return The number of names
+   */
+
+  int size()
+  {
+    return this.count;
+  }
+
+  /**
+   * @param name The name
+   *
+   * @return {@code true} if the directory contains the name
+   */
+
+  boolean contains(
+    final String name)
+  {
+    return this.indexOf(name) >= 0;
+  }
+
+  /**
+   * @param name The name
+   *
+   * @return The index of the name, or {@code -1} if the directory does not
+   * contain the name
+   */
+
+  int indexOf(
+    final String name)
+  {
+    final var encoded = encode(name);
+    if (encoded == null) {
+      return -1;
+    }
+
+    final var index = this.lowerBound(encoded);
+    if (index < this.count) {
+      final var cursor = new Cursor(index);
+      cursor.step();
+      if (Arrays.equals(
+        cursor.current, 0, cursor.length, encoded, 0, encoded.length)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param name The name
+   *
+   * @return The index of the first name that is not less than {@code name}
+   */
+
+  int lowerBound(
+    final String name)
+  {
+    final var encoded = encode(name);
+    if (encoded == null) {
+      return this.firstIndex((bytes, offset, length) -> {
+        return decode(bytes, offset, length).compareTo(name) >= 0;
+      });
+    }
+    return this.lowerBound(encoded);
+  }
+
+  private int lowerBound(
+    final byte[] encoded)
+  {
+    return this.firstIndex((bytes, offset, length) -> {
+      return compare(
+        bytes, offset, length, encoded, 0, encoded.length) >= 0;
+    });
+  }
+
+  /**
+   * @param prefix The prefix
+   *
+   * @return The index of the first name after all names that start with
+   * {@code prefix}
+   */
+
+  int prefixEnd(
+    final String prefix)
+  {
+    final var encoded = encode(prefix);
+    if (encoded == null) {
+      return this.firstIndex((bytes, offset, length) -> {
+        final var name = decode(bytes, offset, length);
+        return name.compareTo(prefix) > 0 && !name.startsWith(prefix);
+      });
+    }
+    return this.firstIndex((bytes, offset, length) -> {
+      return compare(bytes, offset, length, encoded, 0, encoded.length) > 0
+             && !startsWith(bytes, offset, length, encoded);
+    });
+  }
+
+  /**
+   * @param index The index
+   *
+   * @return The name at the given index
+   */
+
+  String get(
+    final int index)
+  {
+    Objects.checkIndex(index, this.count);
+    final var cursor = new Cursor(index);
+    return cursor.next();
+  }
+
+  /**
+   * Find the first index at which the given probe holds, given that the
+   * probe is false for some (possibly empty) run of names and then true
+   * for all remaining names.
+   */
+
+  private int firstIndex(
+    final ProbeType probe)
+  {
+    var low = 0;
+    var high = this.blocks.length;
+    while (low < high) {
+      final var middle = (low + high) >>> 1;
+      if (this.testHead(middle, probe)) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+
+    if (low == 0) {
+      return 0;
+    }
+
+    final var block = low - 1;
+    final var start = block * BLOCK_SIZE;
+    final var end = Math.min(start + BLOCK_SIZE, this.count);
+    final var cursor = new Cursor(start);
+    for (int index = start; index < end; ++index) {
+      cursor.step();
+      if (probe.test(cursor.current, 0, cursor.length)) {
+        return index;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Test the name at the head of a block in place. A block head shares no
+   * prefix, so its encoding is a zero byte, its length, and its bytes.
+   */
+
+  private boolean testHead(
+    final int block,
+    final ProbeType probe)
+  {
+    var position = this.blocks[block] + 1;
+    var length = 0;
+    var shift = 0;
+    while (true) {
+      final var b = this.data[position];
+      ++position;
+      length |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+      shift += 7;
+    }
+    return probe.test(this.data, position, length);
+  }
+
+  /**
+   * A test applied to an encoded name.
+   */
+
+  private interface ProbeType
+  {
+    boolean test(
+      byte[] bytes,
+      int offset,
+      int length);
+  }
+
+  /**
+   * @param from The index of the first name
+   * @param to   The index after the last name
+   *
+   * @return A read-only sorted view of the names in the given range
+   */
+
+  SortedSet<String> view(
+    final int from,
+    final int to)
+  {
+    return new View(from, to);
+  }
+
+  /**
+   * A cursor that decodes names sequentially, starting from an arbitrary
+   * index.
+   */
+
+  private final class Cursor
+  {
+    private byte[] current;
+    private int length;
+    private int position;
+    private int skip;
+
+    Cursor(
+      final int index)
+    {
+      this.current = new byte[64];
+      this.length = 0;
+      this.position =
+        index < OFBundleEntryNames.this.count
+          ? OFBundleEntryNames.this.blocks[index / BLOCK_SIZE]
+          : OFBundleEntryNames.this.data.length;
+      this.skip = index % BLOCK_SIZE;
+    }
+
+    void step()
+    {
+      while (this.skip > 0) {
+        this.advance();
+        --this.skip;
+      }
+      this.advance();
+    }
+
+    String next()
+    {
+      this.step();
+      return decode(this.current, 0, this.length);
+    }
+
+    private void advance()
+    {
+      final var shared = this.readVarInt();
+      final var suffix = this.readVarInt();
+      final var total = shared + suffix;
+      if (total > this.current.length) {
+        this.current = Arrays.copyOf(
+          this.current, Math.max(total, this.current.length * 2));
+      }
+      System.arraycopy(
+        OFBundleEntryNames.this.data,
+        this.position,
+        this.current,
+        shared,
+        suffix
+      );
+      this.position += suffix;
+      this.length = total;
+    }
+
+    private int readVarInt()
+    {
+      final var bytes = OFBundleEntryNames.this.data;
+      var result = 0;
+      var shift = 0;
+      while (true) {
+        final var b = bytes[this.position];
+        ++this.position;
+        result |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+        shift += 7;
+      }
+    }
+  }
+
+  /**
+   * A read-only view of a contiguous range of names.
+   */
+
+  private final class View
+    extends AbstractSet<String>
+    implements SortedSet<String>
+  {
+    private final int from;
+    private final int to;
+
+    View(
+      final int inFrom,
+      final int inTo)
+    {
+      this.from = inFrom;
+      this.to = Math.max(inFrom, inTo);
+    }
+
+    private int clamp(
+      final int index)
+    {
+      return Math.min(Math.max(index, this.from), this.to);
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+      final var cursor = new Cursor(this.from);
+      return new Iterator<>()
+      {
+        private int index = View.this.from;
+
+        @Override
+        public boolean hasNext()
+        {
+          return this.index < View.this.to;
+        }
+
+        @Override
+        public String next()
+        {
+          if (!this.hasNext()) {
+            throw new NoSuchElementException();
+          }
+          ++this.index;
+          return cursor.next();
+        }
+      };
+    }
+
+    @Override
+    public int size()
+    {
+      return this.to - this.from;
+    }
+
+    @Override
+    public boolean contains(
+      final Object o)
+    {
+      if (o instanceof String name) {
+        final var index = OFBundleEntryNames.this.indexOf(name);
+        return index >= this.from && index < this.to;
+      }
+      return false;
+    }
+
+    @Override
+    public Comparator<? super String> comparator()
+    {
+      return null;
+    }
+
+    @Override
+    public SortedSet<String> subSet(
+      final String fromElement,
+      final String toElement)
+    {
+      if (fromElement.compareTo(toElement) > 0) {
+        throw new IllegalArgumentException("fromElement > toElement");
+      }
+      return new View(
+        this.clamp(OFBundleEntryNames.this.lowerBound(fromElement)),
+        this.clamp(OFBundleEntryNames.this.lowerBound(toElement))
+      );
+    }
+
+    @Override
+    public SortedSet<String> headSet(
+      final String toElement)
+    {
+      return new View(
+        this.from,
+        this.clamp(OFBundleEntryNames.this.lowerBound(toElement))
+      );
+    }
+
+    @Override
+    public SortedSet<String> tailSet(
+      final String fromElement)
+    {
+      return new View(
+        this.clamp(OFBundleEntryNames.this.lowerBound(fromElement)),
+        this.to
+      );
+    }
+
+    @Override
+    public String first()
+    {
+      if (this.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      return OFBundleEntryNames.this.get(this.from);
+    }
+
+    @Override
+    public String last()
+    {
+      if (this.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      return OFBundleEntryNames.this.get(this.to - 1);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleSortBuffer;
+import com.io7m.oatfield.api.OFBundleWriterConfiguration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An external sort of bundle entries by name. Entries are buffered until
+ * the buffer is full, and then written in name order to a temporary run
+ * archive. Finishing merges the runs into the bundle by copying the
+ * already-compressed entries.
+ */
+
+final class OFBundleEntrySorter implements Closeable
+{
+  private static final Comparator<OFBundleEntryType> BY_NAME =
+    Comparator.comparing(OFBundleEntryType::name);
+
+  private final OFZipWriterContexts contexts;
+  private final OFBundleWriterConfiguration configuration;
+  private final OFBundleSortBuffer sortBuffer;
+  private final List<OFBundleEntryType> pending;
+  private final List<Path> runs;
+
+  /**
+   * An external sort of bundle entries by name.
+   *
+   * @param inContexts      The pool of ZIP writer contexts
+   * @param inConfiguration The writer configuration
+   * @param inSortBuffer    The sort buffer configuration
+   */
+
+  OFBundleEntrySorter(
+    final OFZipWriterContexts inContexts,
+    final OFBundleWriterConfiguration inConfiguration,
+    final OFBundleSortBuffer inSortBuffer)
+  {
+    this.contexts =
+      Objects.requireNonNull(inContexts, "contexts");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.sortBuffer =
+      Objects.requireNonNull(inSortBuffer, "sortBuffer");
+    this.pending =
+      new ArrayList<>();
+    this.runs =
+      new ArrayList<>();
+  }
+
+  /**
+   * Add an entry, spilling the buffer to a new run if it is full.
+   *
+   * @param entry The entry
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void add(
+    final OFBundleEntryType entry)
+    throws IOException
+  {
+    this.pending.add(entry);
+    if (this.pending.size() >= this.sortBuffer.maximumEntries()) {
+      this.spill();
+    }
+  }
+
+  /**
+   * Write all entries, in name order, to the given writer.
+   *
+   * @param output The writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void finish(
+    final OFBundleEntryWriter output)
+    throws IOException
+  {
+    if (this.runs.isEmpty()) {
+      this.pending.sort(BY_NAME);
+      for (final var entry : this.pending) {
+        output.write(entry);
+      }
+      this.pending.clear();
+      return;
+    }
+
+    if (!this.pending.isEmpty()) {
+      this.spill();
+    }
+    this.merge(output);
+  }
+
+  private void spill()
+    throws IOException
+  {
+    final var run =
+      Files.createTempFile(this.sortBuffer.directory(), "oatfield-", ".run");
+    this.runs.add(run);
+
+    this.pending.sort(BY_NAME);
+    try (var channel = FileChannel.open(run, WRITE);
+         var output = new OFBundleEntryWriter(
+           channel, this.contexts, this.configuration)) {
+      for (final var entry : this.pending) {
+        output.write(entry);
+      }
+      output.finish();
+    }
+    this.pending.clear();
+  }
+
+  private void merge(
+    final OFBundleEntryWriter output)
+    throws IOException
+  {
+    final var cursors = new ArrayList<Cursor>(this.runs.size());
+    try {
+      final var queue = new PriorityQueue<Cursor>(
+        Comparator.comparing(c -> c.current.name()));
+
+      for (final var run : this.runs) {
+        final var cursor = new Cursor(OFZipArchive.open(run));
+        cursors.add(cursor);
+        if (cursor.advance()) {
+          queue.add(cursor);
+        }
+      }
+
+      while (!queue.isEmpty()) {
+        final var cursor = queue.poll();
+        output.writeRaw(cursor.archive, cursor.current);
+        if (cursor.advance()) {
+          queue.add(cursor);
+        }
+      }
+    } finally {
+      for (final var cursor : cursors) {
+        cursor.archive.close();
+      }
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.pending.clear();
+    for (final var run : this.runs) {
+      Files.deleteIfExists(run);
+    }
+    this.runs.clear();
+  }
+
+  private static final class Cursor
+  {
+    private final OFZipArchive archive;
+    private final Iterator<OFZipEntry> entries;
+    private OFZipEntry current;
+
+    Cursor(
+      final OFZipArchive inArchive)
+    {
+      this.archive = inArchive;
+      this.entries = inArchive.entries().iterator();
+    }
+
+    boolean advance()
+    {
+      if (this.entries.hasNext()) {
+        this.current = this.entries.next();
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleContentSourceType;
+import com.io7m.oatfield.api.OFBundleContentStorageMethod;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * An entry to be written to a bundle.
+ */
+
+sealed interface OFBundleEntryType
+{
+  /**
+   * @return The name of the entry in the bundle
+   */
+
+  String name();
+
+  /**
+   * A file entry.
+   *
+   * @param name   The name of the entry in the bundle
+   * @param source The source of the content
+   * @param method The storage method
+   */
+
+  record OFFileEntry(
+    String name,
+    OFBundleContentSourceType source,
+    OFBundleContentStorageMethod method)
+    implements OFBundleEntryType
+  {
+    /**
+     * A file entry.
+     */
+
+    public OFFileEntry
+    {
+      Objects.requireNonNull(name, "name");
+      Objects.requireNonNull(source, "source");
+      Objects.requireNonNull(method, "method");
+    }
+  }
+
+  /**
+   * An entry copied, still compressed, from an existing archive.
+   *
+   * @param name      The name of the entry in the bundle
+   * @param archive   The source archive
+   * @param entryName The name of the entry in the source archive
+   */
+
+  record OFArchiveEntry(
+    String name,
+    Path archive,
+    String entryName)
+    implements OFBundleEntryType
+  {
+    /**
+     * An entry copied from an existing archive.
+     */
+
+    public OFArchiveEntry
+    {
+      Objects.requireNonNull(name, "name");
+      Objects.requireNonNull(archive, "archive");
+      Objects.requireNonNull(entryName, "entryName");
+    }
+  }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleCompressionStrategy;
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentBuffer;
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentFile;
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentStreams;
+import com.io7m.oatfield.api.OFBundleContentStreamSupplierType;
+import com.io7m.oatfield.api.OFBundleDigest;
+import com.io7m.oatfield.api.OFBundleWriteResult;
+import com.io7m.oatfield.api.OFBundleWriterConfiguration;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFArchiveEntry;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFFileEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_AUTOMATIC;
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_DEFLATED;
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_UNCOMPRESSED;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Writes manifests and bundle entries to a ZIP writer, resolving storage
+ * methods, keeping source archives open for raw copies, and computing the
+ * configured digests as the entries are written.
+ */
+
+final class OFBundleEntryWriter implements Closeable
+{
+  private final OFZipWriter zipOutput;
+  private final OFZipArchiveSet archives;
+  private final OFBundleWriterConfiguration configuration;
+  private final OFDigests archiveDigests;
+  private final SortedMap<String, List<OFBundleDigest>> entryDigests;
+
+  /**
+   * Writes manifests and bundle entries to a ZIP writer.
+   *
+   * @param channel         The output channel
+   * @param contexts        The pool of ZIP writer contexts
+   * @param inConfiguration The writer configuration
+   */
+
+  OFBundleEntryWriter(
+    final WritableByteChannel channel,
+    final OFZipWriterContexts contexts,
+    final OFBundleWriterConfiguration inConfiguration)
+  {
+    this(channel, contexts, inConfiguration, Map.of());
+  }
+
+  /**
+   * Writes manifests and bundle entries to a ZIP writer.
+   *
+   * @param channel         The output channel
+   * @param contexts        The pool of ZIP writer contexts
+   * @param inConfiguration The writer configuration
+   * @param openArchives    The source archives that are already open, by
+   *                        file; these are not closed by this writer
+   */
+
+  OFBundleEntryWriter(
+    final WritableByteChannel channel,
+    final OFZipWriterContexts contexts,
+    final OFBundleWriterConfiguration inConfiguration,
+    final Map<Path, OFZipArchive> openArchives)
+  {
+    final var digests = inConfiguration.digests();
+    this.configuration =
+      inConfiguration;
+    this.archiveDigests =
+      new OFDigests(digests.archiveAlgorithms());
+    this.entryDigests =
+      new TreeMap<>();
+    this.zipOutput =
+      new OFZipWriter(
+        this.archiveDigests.isEmpty()
+          ? channel
+          : new OFDigestChannel(channel, this.archiveDigests),
+        contexts,
+        inConfiguration.compressionLevel(),
+        strategyOf(inConfiguration.compressionStrategy()),
+        new OFDigests(digests.entryAlgorithms())
+      );
+    this.archives =
+      new OFZipArchiveSet(openArchives);
+  }
+
+  /**
+   * Write the manifest entry.
+   *
+   * @param manifest The manifest
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeManifest(
+    final OFBundleManifest manifest)
+    throws IOException
+  {
+    final var encoder = this.zipOutput.manifestEncoder();
+    manifest.encode(encoder);
+    this.zipOutput.writeDeflated(OFBundleManifest.NAME, encoder.bytes());
+    this.recordDigests(OFBundleManifest.NAME);
+  }
+
+  /**
+   * Write the manifest entry, recording the digests of the given entries
+   * and the packages analysed from their class files in the manifest if
+   * the configuration requires it. To do so, the content of each of the
+   * entries is read once before the manifest is written; nothing is held
+   * in memory other than the class files being analysed.
+   *
+   * @param manifest The manifest
+   * @param entries  The entries that will follow the manifest
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeManifest(
+    final OFBundleManifest manifest,
+    final Collection<OFBundleEntryType> entries)
+    throws IOException
+  {
+    final var record =
+      this.configuration.digests().recordEntriesInManifest();
+    final var analysis =
+      this.configuration.analysis();
+
+    if (!record && !analysis.isEnabled()) {
+      this.writeManifest(manifest);
+      return;
+    }
+
+    final var algorithms =
+      record ? this.configuration.digests().entryAlgorithms() : List.<String>of();
+    final var packages =
+      new OFPackageReferences();
+    final var recorded =
+      new TreeMap<String, List<OFBundleDigest>>();
+
+    for (final var entry : entries) {
+      final var name = entry.name();
+      final var capture =
+        analysis.isEnabled() && OFPackageReferences.isClassFile(name);
+      final var digests = new OFDigests(algorithms, capture);
+      if (digests.isIdle()) {
+        continue;
+      }
+
+      this.readContent(entry, digests);
+      if (capture) {
+        packages.addClassFile(name, digests.captured());
+      }
+      if (!digests.isEmpty()) {
+        recorded.put(name, digests.finish());
+      }
+    }
+
+    final var analysed = analysis.isEnabled()
+      ? manifest.analysed(analysis, packages.packages())
+      : manifest;
+
+    final var encoder = this.zipOutput.manifestEncoder();
+    analysed.encode(encoder, recorded);
+    this.zipOutput.writeDeflated(OFBundleManifest.NAME, encoder.bytes());
+    this.recordDigests(OFBundleManifest.NAME);
+  }
+
+  private void readContent(
+    final OFBundleEntryType entry,
+    final OFDigests digests)
+    throws IOException
+  {
+    final var input = this.zipOutput.context().input();
+    switch (entry) {
+      case final OFFileEntry file -> {
+        switch (file.source()) {
+          case final OFContentBuffer buffer -> digests.update(buffer.buffer());
+          case final OFContentFile path ->
+            readStream(() -> Files.newInputStream(path.file()), digests, input);
+          case final OFContentStreams streams ->
+            readStream(streams.streams(), digests, input);
+        }
+      }
+      case final OFArchiveEntry raw -> {
+        final var archive = this.archives.open(raw.archive());
+        final var source = findEntry(archive, raw);
+        digests.updateFromEntry(
+          archive.channel(), archive.dataOffset(source), source, input);
+      }
+    }
+  }
+
+  private static void readStream(
+    final OFBundleContentStreamSupplierType streams,
+    final OFDigests digests,
+    final byte[] input)
+    throws IOException
+  {
+    try (var stream = streams.open()) {
+      while (true) {
+        final var r = stream.read(input);
+        if (r == -1) {
+          break;
+        }
+        digests.update(input, 0, r);
+      }
+    }
+  }
+
+  /**
+   * Write an entry.
+   *
+   * @param entry The entry
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void write(
+    final OFBundleEntryType entry)
+    throws IOException
+  {
+    switch (entry) {
+      case final OFFileEntry file -> serializeFile(
+        this.zipOutput, resolveMethod(this.zipOutput.context(), file));
+      case final OFArchiveEntry raw -> serializeArchiveEntry(
+        this.zipOutput, this.archives, raw);
+    }
+    this.recordDigests(entry.name());
+  }
+
+  private void recordDigests(
+    final String name)
+  {
+    final var digests = this.zipOutput.digests();
+    if (!digests.isEmpty()) {
+      this.entryDigests.put(name, digests.finish());
+    }
+  }
+
+  /**
+   * Copy an entry from an open archive without decompressing it.
+   *
+   * @param archive The archive
+   * @param entry   The entry
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeRaw(
+    final OFZipArchive archive,
+    final OFZipEntry entry)
+    throws IOException
+  {
+    this.zipOutput.writeRaw(entry.name(), archive, entry);
+    this.recordDigests(entry.name());
+  }
+
+  /**
+   * Write the central directory.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void finish()
+    throws IOException
+  {
+    this.zipOutput.finish();
+  }
+
+  /**
+   * @return The size and digests of the archive written so far
+   */
+
+  OFBundleWriteResult result()
+  {
+    return new OFBundleWriteResult(
+      this.zipOutput.position(),
+      this.entryDigests,
+      this.archiveDigests.finish()
+    );
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    try {
+      this.zipOutput.close();
+    } finally {
+      this.archives.close();
+    }
+  }
+
+  /**
+   * @param strategy The compression strategy
+   *
+   * @return The deflater strategy constant
+   */
+
+  static int strategyOf(
+    final OFBundleCompressionStrategy strategy)
+  {
+    return switch (strategy) {
+      case DEFAULT -> Deflater.DEFAULT_STRATEGY;
+      case FILTERED -> Deflater.FILTERED;
+      case HUFFMAN_ONLY -> Deflater.HUFFMAN_ONLY;
+    };
+  }
+
+  /**
+   * Replace an automatic storage method with an explicit one by sampling
+   * the start of the content.
+   *
+   * @param context The writer context used for sampling
+   * @param value   The entry
+   *
+   * @return The entry with an explicit storage method
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static OFFileEntry resolveMethod(
+    final OFZipWriterContext context,
+    final OFFileEntry value)
+    throws IOException
+  {
+    if (value.method() != STORE_AUTOMATIC) {
+      return value;
+    }
+
+    final var sample = switch (value.source()) {
+      case final OFContentBuffer buffer -> buffer.buffer();
+      case final OFContentFile file -> readSample(
+        context, () -> Files.newInputStream(file.file()));
+      case final OFContentStreams streams -> readSample(
+        context, streams.streams());
+    };
+
+    final var method =
+      context.isCompressible(sample) ? STORE_DEFLATED : STORE_UNCOMPRESSED;
+    return new OFFileEntry(value.name(), value.source(), method);
+  }
+
+  private static ByteBuffer readSample(
+    final OFZipWriterContext context,
+    final OFBundleContentStreamSupplierType streams)
+    throws IOException
+  {
+    try (var stream = streams.open()) {
+      return context.readSample(stream);
+    }
+  }
+
+  private static void serializeArchiveEntry(
+    final OFZipWriter zipOutput,
+    final OFZipArchiveSet archives,
+    final OFArchiveEntry value)
+    throws IOException
+  {
+    final var archive = archives.open(value.archive());
+    zipOutput.writeRaw(value.name(), archive, findEntry(archive, value));
+  }
+
+  /**
+   * Find the source entry of an archive entry.
+   *
+   * @param archive The open source archive
+   * @param value   The archive entry
+   *
+   * @return The source entry
+   *
+   * @throws NoSuchFileException If the source archive has no such entry
+   */
+
+  static OFZipEntry findEntry(
+    final OFZipArchive archive,
+    final OFArchiveEntry value)
+    throws NoSuchFileException
+  {
+    return archive.entry(value.entryName())
+      .orElseThrow(() -> {
+        return new NoSuchFileException(
+          value.archive().toString(),
+          null,
+          "No such archive entry: " + value.entryName()
+        );
+      });
+  }
+
+  private static void serializeFile(
+    final OFZipWriter zipOutput,
+    final OFFileEntry value)
+    throws IOException
+  {
+    switch (value.source()) {
+      case final OFContentBuffer buffer -> {
+        switch (value.method()) {
+          case STORE_DEFLATED ->
+            zipOutput.writeDeflated(value.name(), buffer.buffer());
+          case STORE_UNCOMPRESSED ->
+            zipOutput.writeStored(value.name(), buffer.buffer());
+        }
+      }
+      case final OFContentFile file -> {
+        switch (value.method()) {
+          case STORE_DEFLATED -> serializeStreams(
+            zipOutput, value, () -> Files.newInputStream(file.file()));
+          case STORE_UNCOMPRESSED -> {
+            try (var channel = FileChannel.open(file.file(), READ)) {
+              zipOutput.writeStored(value.name(), channel);
+            }
+          }
+        }
+      }
+      case final OFContentStreams streams -> serializeStreams(
+        zipOutput, value, streams.streams());
+    }
+  }
+
+  private static void serializeStreams(
+    final OFZipWriter zipOutput,
+    final OFFileEntry value,
+    final OFBundleContentStreamSupplierType streams)
+    throws IOException
+  {
+    switch (value.method()) {
+      case STORE_DEFLATED -> {
+        try (var stream = streams.open()) {
+          zipOutput.writeDeflated(value.name(), stream);
+        }
+      }
+      case STORE_UNCOMPRESSED -> {
+        final var context = zipOutput.context();
+        final var crc = context.crc();
+        final var digests = zipOutput.digests();
+        final var buffer = context.input();
+        var size = 0L;
+        crc.reset();
+        digests.reset();
+        try (var stream = streams.open()) {
+          while (true) {
+            final var r = stream.read(buffer);
+            if (r == -1) {
+              break;
+            }
+            size = size + (long) r;
+            crc.update(buffer, 0, r);
+            digests.update(buffer, 0, r);
+          }
+        }
+
+        zipOutput.beginStored(value.name(), crc.getValue(), size);
+        try (var stream = streams.open()) {
+          zipOutput.writeData(stream, size);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleHeaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Manifest;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads the main section headers of a bundle's manifest, touching as
+ * little of the file as possible: the end of central directory record,
+ * the central directory (scanned in small windows, without decoding entry
+ * names), and the manifest's local header and data.
+ */
+
+public final class OFBundleHeaderReader
+{
+  private OFBundleHeaderReader()
+  {
+
+  }
+
+  /**
+   * Read the main section headers of a bundle's manifest.
+   *
+   * @param path The bundle
+   *
+   * @return The headers
+   *
+   * @throws IOException On I/O errors, or if the bundle has no manifest
+   */
+
+  public static OFBundleHeaders read(
+    final Path path)
+    throws IOException
+  {
+    try (var channel = FileChannel.open(path, READ)) {
+      final var entry =
+        OFZipArchive.findEntry(path, channel, OFBundleManifest.NAME)
+          .orElseThrow(() -> {
+            return new IOException(
+              "File '%s' does not contain a jar manifest.".formatted(path));
+          });
+
+      final var content = OFZipArchive.content(path, channel, entry);
+      final var manifest = new Manifest(new ByteArrayInputStream(content));
+      final var attributes = manifest.getMainAttributes();
+      final var headers = new TreeMap<String, String>();
+      for (final Map.Entry<Object, Object> header : attributes.entrySet()) {
+        headers.put(header.getKey().toString(), header.getValue().toString());
+      }
+      return new OFBundleHeaders(headers);
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleInstallGroup;
+import com.io7m.oatfield.api.OFBundleInstallPlan;
+import com.io7m.oatfield.api.OFBundleInstallWave;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Functions to produce installation plans from resolver results.
+ *
+ * <p>The wiring is treated as a directed graph with an edge from each
+ * requirer to each provider. The strongly connected components of the graph
+ * are computed with Tarjan's algorithm, which emits every component after
+ * all components reachable from it; that is, providers are always emitted
+ * before the resources that require them. Each component is then assigned
+ * to the wave one greater than the highest wave of any component it
+ * depends upon. Resources are first sorted into a deterministic order,
+ * which takes {@code O(n log n)} time in the number of resources; the
+ * graph construction, component search and wave assignment that follow
+ * are linear in the number of resources and wires.</p>
+ */
+
+public final class OFBundleInstallPlanning
+{
+  private OFBundleInstallPlanning()
+  {
+
+  }
+
+  /**
+   * Create an installation plan from the result of a resolver.
+   *
+   * @param wiring The resolved set of resource wires
+   *
+   * @return An installation plan
+   */
+
+  public static OFBundleInstallPlan createInstallPlan(
+    final Map<Resource, List<Wire>> wiring)
+  {
+    Objects.requireNonNull(wiring, "wiring");
+
+    final var resources =
+      OFDeploymentPlanning.resourcesOf(wiring);
+    final var graph =
+      Graph.of(resources, wiring);
+    final var components =
+      graph.components();
+
+    final var componentCount = components.count;
+    final var waves = new int[componentCount];
+    var waveCount = 0;
+    for (int c = 0; c < componentCount; ++c) {
+      var wave = 0;
+      for (int m = components.offsets[c]; m < components.offsets[c + 1]; ++m) {
+        final var v = components.members[m];
+        for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; ++e) {
+          final var target = components.componentOf[graph.targets[e]];
+          if (target != c) {
+            wave = Math.max(wave, waves[target] + 1);
+          }
+        }
+      }
+      waves[c] = wave;
+      waveCount = Math.max(waveCount, wave + 1);
+    }
+
+    final var groupsByWave = new ArrayList<List<Group>>(waveCount);
+    for (int w = 0; w < waveCount; ++w) {
+      groupsByWave.add(new ArrayList<>());
+    }
+    for (int c = 0; c < componentCount; ++c) {
+      final var start = components.offsets[c];
+      final var end = components.offsets[c + 1];
+      final var members = Arrays.copyOfRange(components.members, start, end);
+      Arrays.sort(members);
+      groupsByWave.get(waves[c]).add(new Group(members));
+    }
+
+    final var result = new ArrayList<OFBundleInstallWave>(waveCount);
+    for (int w = 0; w < waveCount; ++w) {
+      final var groups = groupsByWave.get(w);
+      groups.sort((x, y) -> Integer.compare(x.members[0], y.members[0]));
+
+      final var installGroups = new ArrayList<OFBundleInstallGroup>();
+      for (final var group : groups) {
+        final var members = new ArrayList<Resource>(group.members.length);
+        for (final var member : group.members) {
+          members.add(resources.get(member));
+        }
+        installGroups.add(new OFBundleInstallGroup(members));
+      }
+      result.add(new OFBundleInstallWave(w + 1, installGroups));
+    }
+    return new OFBundleInstallPlan(result);
+  }
+
+  private record Group(int[] members)
+  {
+
+  }
+
+  private static final class Components
+  {
+    private final int[] componentOf;
+    private final int[] members;
+    private final int[] offsets;
+    private int count;
+
+    Components(
+      final int vertices)
+    {
+      this.componentOf = new int[vertices];
+      this.members = new int[vertices];
+      this.offsets = new int[vertices + 1];
+      this.count = 0;
+    }
+  }
+
+  /**
+   * A directed graph in compressed sparse row form.
+   */
+
+  private static final class Graph
+  {
+    private final int vertices;
+    private final int[] offsets;
+    private final int[] targets;
+
+    private Graph(
+      final int inVertices,
+      final int[] inOffsets,
+      final int[] inTargets)
+    {
+      this.vertices = inVertices;
+      this.offsets = inOffsets;
+      this.targets = inTargets;
+    }
+
+    static Graph of(
+      final List<Resource> resources,
+      final Map<Resource, List<Wire>> wiring)
+    {
+      final var count = resources.size();
+      final var indices = new HashMap<Resource, Integer>(count * 2);
+      for (int index = 0; index < count; ++index) {
+        indices.put(resources.get(index), Integer.valueOf(index));
+      }
+
+      var edgeCount = 0;
+      for (final var wires : wiring.values()) {
+        edgeCount += wires.size();
+      }
+
+      final var from = new int[edgeCount];
+      final var to = new int[edgeCount];
+      final var offsets = new int[count + 1];
+      var edge = 0;
+      for (final var wires : wiring.values()) {
+        for (final var wire : wires) {
+          final var source = indices.get(wire.getRequirer()).intValue();
+          final var target = indices.get(wire.getProvider()).intValue();
+          if (source != target) {
+            from[edge] = source;
+            to[edge] = target;
+            ++offsets[source + 1];
+            ++edge;
+          }
+        }
+      }
+
+      for (int index = 0; index < count; ++index) {
+        offsets[index + 1] += offsets[index];
+      }
+
+      final var targets = new int[edge];
+      final var cursor = Arrays.copyOf(offsets, count);
+      for (int e = 0; e < edge; ++e) {
+        final var source = from[e];
+        targets[cursor[source]] = to[e];
+        ++cursor[source];
+      }
+      return new Graph(count, offsets, targets);
+    }
+
+    /**
+     * Compute the strongly connected components of the graph using an
+     * iterative form of Tarjan's algorithm.
+     *
+     * @return The components, in reverse topological order
+     */
+
+    Components components()
+    {
+      final var tarjan = new Tarjan(this);
+      for (int root = 0; root < this.vertices; ++root) {
+        if (tarjan.index[root] == -1) {
+          tarjan.run(root);
+        }
+      }
+      return tarjan.result;
+    }
+  }
+
+  private static final class Tarjan
+  {
+    private final Graph graph;
+    private final Components result;
+    private final int[] index;
+    private final int[] low;
+    private final boolean[] onStack;
+    private final int[] stack;
+    private final int[] callVertex;
+    private final int[] callEdge;
+    private int stackTop;
+    private int callTop;
+    private int nextIndex;
+    private int memberCount;
+
+    Tarjan(
+      final Graph inGraph)
+    {
+      final var n = inGraph.vertices;
+      this.graph = inGraph;
+      this.result = new Components(n);
+      this.index = new int[n];
+      this.low = new int[n];
+      this.onStack = new boolean[n];
+      this.stack = new int[n];
+      this.callVertex = new int[n];
+      this.callEdge = new int[n];
+      Arrays.fill(this.index, -1);
+    }
+
+    private void enter(
+      final int v)
+    {
+      this.index[v] = this.nextIndex;
+      this.low[v] = this.nextIndex;
+      ++this.nextIndex;
+      this.stack[this.stackTop] = v;
+      ++this.stackTop;
+      this.onStack[v] = true;
+      ++this.callTop;
+      this.callVertex[this.callTop] = v;
+      this.callEdge[this.callTop] = this.graph.offsets[v];
+    }
+
+    void run(
+      final int root)
+    {
+      this.callTop = -1;
+      this.enter(root);
+
+      while (this.callTop >= 0) {
+        final var v = this.callVertex[this.callTop];
+        if (this.callEdge[this.callTop] < this.graph.offsets[v + 1]) {
+          final var w = this.graph.targets[this.callEdge[this.callTop]];
+          ++this.callEdge[this.callTop];
+          if (this.index[w] == -1) {
+            this.enter(w);
+          } else if (this.onStack[w]) {
+            this.low[v] = Math.min(this.low[v], this.index[w]);
+          }
+          continue;
+        }
+
+        if (this.low[v] == this.index[v]) {
+          this.emitComponent(v);
+        }
+
+        --this.callTop;
+        if (this.callTop >= 0) {
+          final var u = this.callVertex[this.callTop];
+          this.low[u] = Math.min(this.low[u], this.low[v]);
+        }
+      }
+    }
+
+    private void emitComponent(
+      final int v)
+    {
+      final var component = this.result.count;
+      this.result.offsets[component] = this.memberCount;
+      int w;
+      do {
+        --this.stackTop;
+        w = this.stack[this.stackTop];
+        this.onStack[w] = false;
+        this.result.componentOf[w] = component;
+        this.result.members[this.memberCount] = w;
+        ++this.memberCount;
+      } while (w != v);
+      ++this.result.count;
+      this.result.offsets[this.result.count] = this.memberCount;
+    }
+  }
+}
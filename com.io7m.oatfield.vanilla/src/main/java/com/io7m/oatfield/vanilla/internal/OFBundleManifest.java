@@ -0,0 +1,394 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleDigest;
+import com.io7m.oatfield.api.OFBundlePackageAnalysis;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The main section of a bundle manifest under construction, optionally
+ * followed by per-entry digest sections when encoded.
+ */
+
+final class OFBundleManifest
+{
+  /**
+   * The name of the manifest entry.
+   */
+
+  static final String NAME = "META-INF/MANIFEST.MF";
+
+  private static final String EXPORT_PACKAGE = "Export-Package";
+  private static final String IMPORT_PACKAGE = "Import-Package";
+  private static final SortedSet<String> EMPTY =
+    Collections.emptySortedSet();
+
+  private final TreeMap<String, String> headers;
+  private final SortedSet<PackageImport> packageImports;
+  private final SortedSet<PackageExport> packageExports;
+
+  /**
+   * The main section of a bundle manifest under construction, optionally
+   * followed by per-entry digest sections when encoded.
+   *
+   * @param symbolicName  The bundle symbolic name
+   * @param bundleVersion The bundle version
+   */
+
+  OFBundleManifest(
+    final String symbolicName,
+    final String bundleVersion)
+  {
+    this.headers =
+      new TreeMap<>();
+    this.packageImports =
+      new TreeSet<>();
+    this.packageExports =
+      new TreeSet<>();
+
+    this.headers.put(
+      "Bundle-SymbolicName", Objects.requireNonNull(symbolicName, "symbolicName"));
+    this.headers.put(
+      "Bundle-Version", Objects.requireNonNull(bundleVersion, "bundleVersion"));
+    this.headers.put(
+      "Bundle-ManifestVersion", "2");
+  }
+
+  private OFBundleManifest(
+    final OFBundleManifest other)
+  {
+    this.headers =
+      new TreeMap<>(other.headers);
+    this.packageImports =
+      new TreeSet<>(other.packageImports);
+    this.packageExports =
+      new TreeSet<>(other.packageExports);
+  }
+
+  private static void encodePackageExport(
+    final OFManifestEncoder encoder,
+    final PackageExport exportV)
+  {
+    encoder.append(exportV.name);
+    exportV.version.ifPresent(v -> {
+      encoder.append(";version=\"").append(v).append('"');
+    });
+    if (!exportV.uses.isEmpty()) {
+      encoder.append(";uses:=\"");
+      final var uses = exportV.uses;
+      for (int index = 0; index < uses.size(); ++index) {
+        if (index > 0) {
+          encoder.append(',');
+        }
+        encoder.append(uses.get(index));
+      }
+      encoder.append('"');
+    }
+  }
+
+  private static void encodePackageImport(
+    final OFManifestEncoder encoder,
+    final PackageImport importV)
+  {
+    encoder.append(importV.name);
+    importV.version.ifPresent(v -> {
+      encoder.append(";version=\"").append(v).append('"');
+    });
+  }
+
+  /**
+   * Add a package import declaration.
+   *
+   * @param name    The name of the package
+   * @param version The package version
+   */
+
+  void addPackageImport(
+    final String name,
+    final Optional<String> version)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(version, "version");
+
+    this.packageImports.add(new PackageImport(name, version));
+  }
+
+  /**
+   * Add a package export declaration.
+   *
+   * @param name    The name of the package
+   * @param version The package version
+   * @param uses    The list of "uses" for this package
+   */
+
+  void addPackageExport(
+    final String name,
+    final Optional<String> version,
+    final List<String> uses)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(version, "version");
+    Objects.requireNonNull(uses, "uses");
+
+    this.packageExports.add(
+      new PackageExport(
+        name,
+        version,
+        uses.stream().sorted().toList())
+    );
+  }
+
+  /**
+   * Merge the results of a package analysis with this manifest. This
+   * manifest is not modified.
+   *
+   * @param analysis   The package analysis
+   * @param references The contained packages, and the packages referenced
+   *                   by the classes in each of them
+   *
+   * @return A manifest with the computed imports, exports and uses
+   */
+
+  OFBundleManifest analysed(
+    final OFBundlePackageAnalysis analysis,
+    final SortedMap<String, SortedSet<String>> references)
+  {
+    final var result = new OFBundleManifest(this);
+    if (analysis.importReferencedPackages()) {
+      result.importReferenced(references);
+    }
+    if (analysis.exportContainedPackages()) {
+      result.exportContained(references);
+    }
+    if (analysis.computeUses()) {
+      result.computeUses(references);
+    }
+    return result;
+  }
+
+  /**
+   * Import every referenced package that is neither contained in the
+   * bundle nor imported explicitly.
+   */
+
+  private void importReferenced(
+    final SortedMap<String, SortedSet<String>> references)
+  {
+    final var explicit = new HashSet<String>();
+    for (final var importV : this.packageImports) {
+      explicit.add(importV.name);
+    }
+
+    for (final var referenced : references.values()) {
+      for (final var name : referenced) {
+        if (!references.containsKey(name)
+            && !isFrameworkPackage(name)
+            && !explicit.contains(name)) {
+          this.packageImports.add(new PackageImport(name, Optional.empty()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Export every contained package that is not exported explicitly.
+   */
+
+  private void exportContained(
+    final SortedMap<String, SortedSet<String>> references)
+  {
+    final var explicit = new HashSet<String>();
+    for (final var exportV : this.packageExports) {
+      explicit.add(exportV.name);
+    }
+
+    for (final var name : references.keySet()) {
+      if (!name.isEmpty() && !explicit.contains(name)) {
+        this.packageExports.add(
+          new PackageExport(name, Optional.empty(), List.of()));
+      }
+    }
+  }
+
+  /**
+   * Extend the uses of every export with the imported and exported
+   * packages referenced by the classes in the exported package.
+   */
+
+  private void computeUses(
+    final SortedMap<String, SortedSet<String>> references)
+  {
+    final var visible = new HashSet<String>();
+    for (final var importV : this.packageImports) {
+      visible.add(importV.name);
+    }
+    for (final var exportV : this.packageExports) {
+      visible.add(exportV.name);
+    }
+
+    final var exports = new TreeSet<PackageExport>();
+    for (final var exportV : this.packageExports) {
+      final var uses = new TreeSet<>(exportV.uses);
+      for (final var name : references.getOrDefault(exportV.name, EMPTY)) {
+        if (visible.contains(name)) {
+          uses.add(name);
+        }
+      }
+      uses.remove(exportV.name);
+      exports.add(
+        new PackageExport(exportV.name, exportV.version, List.copyOf(uses)));
+    }
+    this.packageExports.clear();
+    this.packageExports.addAll(exports);
+  }
+
+  private static boolean isFrameworkPackage(
+    final String name)
+  {
+    return "java".equals(name) || name.startsWith("java.");
+  }
+
+  private void encodePackageExports(
+    final OFManifestEncoder encoder)
+  {
+    encoder.beginHeader(EXPORT_PACKAGE);
+    var first = true;
+    for (final var exportV : this.packageExports) {
+      if (!first) {
+        encoder.append(',');
+      }
+      encodePackageExport(encoder, exportV);
+      first = false;
+    }
+    encoder.endHeader();
+  }
+
+  private void encodePackageImports(
+    final OFManifestEncoder encoder)
+  {
+    encoder.beginHeader(IMPORT_PACKAGE);
+    var first = true;
+    for (final var importV : this.packageImports) {
+      if (!first) {
+        encoder.append(',');
+      }
+      encodePackageImport(encoder, importV);
+      first = false;
+    }
+    encoder.endHeader();
+  }
+
+  /**
+   * Encode the manifest, replacing any existing content of the encoder.
+   *
+   * @param encoder The encoder
+   */
+
+  void encode(
+    final OFManifestEncoder encoder)
+  {
+    encoder.reset();
+    encoder.header("Manifest-Version", "1.0");
+
+    final var names = new TreeSet<>(this.headers.keySet());
+    if (!this.packageExports.isEmpty()) {
+      names.add(EXPORT_PACKAGE);
+    }
+    if (!this.packageImports.isEmpty()) {
+      names.add(IMPORT_PACKAGE);
+    }
+
+    for (final var name : names) {
+      switch (name) {
+        case EXPORT_PACKAGE -> this.encodePackageExports(encoder);
+        case IMPORT_PACKAGE -> this.encodePackageImports(encoder);
+        default -> encoder.header(name, this.headers.get(name));
+      }
+    }
+    encoder.endSection();
+  }
+
+  /**
+   * Encode the manifest, followed by a section for each entry holding the
+   * entry's digests, replacing any existing content of the encoder. The
+   * manifest's own digests, if present, are not recorded.
+   *
+   * @param encoder The encoder
+   * @param digests The entry digests
+   */
+
+  void encode(
+    final OFManifestEncoder encoder,
+    final SortedMap<String, List<OFBundleDigest>> digests)
+  {
+    this.encode(encoder);
+
+    for (final var entry : digests.entrySet()) {
+      if (NAME.equals(entry.getKey())) {
+        continue;
+      }
+      encoder.header("Name", entry.getKey());
+      for (final var digest : entry.getValue()) {
+        encoder.header(digest.algorithm() + "-Digest", digest.base64());
+      }
+      encoder.endSection();
+    }
+  }
+
+  private record PackageImport(
+    String name,
+    Optional<String> version)
+    implements Comparable<PackageImport>
+  {
+    @Override
+    public int compareTo(
+      final PackageImport other)
+    {
+      return Comparator.comparing(PackageImport::name)
+        .thenComparing(o -> o.version.orElse(""))
+        .compare(this, other);
+    }
+  }
+
+  private record PackageExport(
+    String name,
+    Optional<String> version,
+    List<String> uses)
+    implements Comparable<PackageExport>
+  {
+    @Override
+    public int compareTo(
+      final PackageExport other)
+    {
+      return Comparator.comparing(PackageExport::name)
+        .thenComparing(o -> o.version.orElse(""))
+        .thenComparing(o -> o.uses.toString())
+        .compare(this, other);
+    }
+  }
+}
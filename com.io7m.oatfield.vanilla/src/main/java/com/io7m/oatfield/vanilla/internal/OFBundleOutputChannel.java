@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleOutputTargetType;
+import com.io7m.oatfield.api.OFBundleOutputTargetType.OFOutputChannel;
+import com.io7m.oatfield.api.OFBundleOutputTargetType.OFOutputFile;
+import com.io7m.oatfield.api.OFBundleOutputTargetType.OFOutputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A channel opened for an output target. Closing this object closes
+ * files opened by the writer, and flushes (but does not close) streams
+ * and channels owned by the caller.
+ */
+
+final class OFBundleOutputChannel implements Closeable
+{
+  private final WritableByteChannel channel;
+  private final Closeable onClose;
+  private boolean open;
+
+  private OFBundleOutputChannel(
+    final WritableByteChannel inChannel,
+    final Closeable inOnClose)
+  {
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.onClose =
+      Objects.requireNonNull(inOnClose, "onClose");
+    this.open =
+      true;
+  }
+
+  /**
+   * Open a channel for the given output target.
+   *
+   * @param target The output target
+   *
+   * @return A channel
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static OFBundleOutputChannel open(
+    final OFBundleOutputTargetType target)
+    throws IOException
+  {
+    return switch (target) {
+      case final OFOutputFile file -> {
+        final var channel =
+          FileChannel.open(file.file(), WRITE, TRUNCATE_EXISTING, CREATE);
+        yield new OFBundleOutputChannel(channel, channel);
+      }
+      case final OFOutputStream stream -> new OFBundleOutputChannel(
+        Channels.newChannel(stream.stream()),
+        stream.stream()::flush
+      );
+      case final OFOutputChannel channel -> new OFBundleOutputChannel(
+        channel.channel(),
+        () -> {
+        }
+      );
+    };
+  }
+
+  /**
+   * The underlying channel is exposed directly (rather than wrapped) so
+   * that {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+   * can recognize file targets and avoid copying through the heap.
+   *
+   * @return The channel to which the bundle should be written
+   */
+
+  WritableByteChannel channel()
+  {
+    return this.channel;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.open) {
+      this.open = false;
+      this.onClose.close();
+    }
+  }
+}
@@ -0,0 +1,1092 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentBuffer;
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentFile;
+import com.io7m.oatfield.api.OFBundleContentSourceType.OFContentStreams;
+import com.io7m.oatfield.api.OFBundleContentStreamSupplierType;
+import com.io7m.oatfield.api.OFBundleDigest;
+import com.io7m.oatfield.api.OFBundleWriteResult;
+import com.io7m.oatfield.api.OFBundleWriterConfiguration;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFArchiveEntry;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFFileEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static com.io7m.oatfield.api.OFBundleContentStorageMethod.STORE_DEFLATED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.CENTRAL_HEADER_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_LOCATOR_ZIP64_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_ZIP64_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.FLAG_DATA_DESCRIPTOR;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.FLAG_UTF8;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LOCAL_HEADER_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_DEFLATED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_STORED;
+import static com.io7m.oatfield.vanilla.internal.OFZipHeaders.DATA_DESCRIPTOR_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipHeaders.EXTRA_ZIP64_SIZE;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes a bundle in three phases. First, the content of every entry is
+ * compressed, checksummed and digested concurrently, so that the size of
+ * every entry is known. Second, the offset of every local header and of
+ * the central directory is computed. Third, the entries and the central
+ * directory are written.
+ *
+ * <p>When the output is a file channel and no archive digests are
+ * required, the third phase is also concurrent, using positional writes.
+ * Otherwise, the entries are written in order, because archive digests
+ * depend on the order in which bytes are written.</p>
+ *
+ * <p>Because every entry is prepared before anything is written, the
+ * manifest (the first entry) can record the digests of all of the other
+ * entries, and the packages imported and exported by the class files
+ * among them. Class files are captured and analysed as they are
+ * prepared.</p>
+ *
+ * <p>The bytes written are identical to those written sequentially by
+ * {@link OFBundleEntryWriter}. Deflated entry data is held in memory
+ * between the first and third phases, up to a limit per entry beyond
+ * which it is spilled to a temporary file; stored entries are read again
+ * from their sources.</p>
+ */
+
+final class OFBundleParallelWriter
+{
+  private static final long MAP_WINDOW = 64L * 1024L * 1024L;
+  private static final int SPILL_THRESHOLD = 8 * 1024 * 1024;
+
+  private final SinkType sink;
+  private final OFDigests archiveDigests;
+  private final OFPackageReferences packages;
+  private final OFZipWriterContexts contexts;
+  private final OFBundleWriterConfiguration configuration;
+  private final Map<Path, OFZipArchive> openArchives;
+  private final int strategy;
+  private final ConcurrentLinkedQueue<Path> spills;
+
+  /**
+   * Writes a bundle. The bundle is written starting at the channel's
+   * current position, and the channel is positioned at the end of the
+   * bundle once it is written.
+   *
+   * @param inChannel       The output channel
+   * @param inContexts      The pool of ZIP writer contexts
+   * @param inConfiguration The writer configuration
+   * @param inOpenArchives  The source archives that are already open, by
+   *                        file; these are not closed by this writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  OFBundleParallelWriter(
+    final WritableByteChannel inChannel,
+    final OFZipWriterContexts inContexts,
+    final OFBundleWriterConfiguration inConfiguration,
+    final Map<Path, OFZipArchive> inOpenArchives)
+    throws IOException
+  {
+    Objects.requireNonNull(inChannel, "channel");
+
+    this.contexts =
+      Objects.requireNonNull(inContexts, "contexts");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.openArchives =
+      Objects.requireNonNull(inOpenArchives, "openArchives");
+    this.strategy =
+      OFBundleEntryWriter.strategyOf(inConfiguration.compressionStrategy());
+    this.archiveDigests =
+      new OFDigests(inConfiguration.digests().archiveAlgorithms());
+    this.packages =
+      new OFPackageReferences();
+    this.spills =
+      new ConcurrentLinkedQueue<>();
+
+    if (inConfiguration.parallelism() > 1
+        && this.archiveDigests.isEmpty()
+        && inChannel instanceof final FileChannel file) {
+      this.sink = new PositionalSink(file, file.position());
+    } else if (this.archiveDigests.isEmpty()) {
+      this.sink = new SequentialSink(inChannel);
+    } else {
+      this.sink = new SequentialSink(
+        new OFDigestChannel(inChannel, this.archiveDigests));
+    }
+  }
+
+  /**
+   * Write a bundle.
+   *
+   * @param manifest The manifest
+   * @param entries  The entries, in the order in which they should appear
+   *
+   * @return The size and digests of the bundle
+   *
+   * @throws IOException On I/O errors
+   */
+
+  OFBundleWriteResult write(
+    final OFBundleManifest manifest,
+    final Collection<OFBundleEntryType> entries)
+    throws IOException
+  {
+    checkNames(entries);
+
+    try {
+      return this.writeAll(manifest, entries);
+    } finally {
+      for (final var spill : this.spills) {
+        Files.deleteIfExists(spill);
+      }
+    }
+  }
+
+  private OFBundleWriteResult writeAll(
+    final OFBundleManifest manifest,
+    final Collection<OFBundleEntryType> entries)
+    throws IOException
+  {
+    try (var archives = new OFZipArchiveSet(this.openArchives);
+         var executor = this.createExecutor()) {
+      final var prepared =
+        this.prepareAll(executor, manifest, entries, archives);
+      final var placed =
+        layOut(prepared);
+      final var directory =
+        encodeDirectory(placed);
+
+      switch (this.sink) {
+        case final PositionalSink positional -> {
+          this.writeConcurrently(executor, placed, directory);
+          positional.channel().position(positional.base() + directory.end());
+        }
+        case final SequentialSink ignored -> {
+          this.writeSequentially(placed, directory);
+        }
+      }
+
+      return new OFBundleWriteResult(
+        directory.end(),
+        entryDigestsOf(prepared),
+        this.archiveDigests.finish()
+      );
+    }
+  }
+
+  private void writeConcurrently(
+    final ExecutorService executor,
+    final List<Placed> placed,
+    final Directory directory)
+    throws IOException
+  {
+    final var writes = new ArrayList<Future<Void>>(placed.size() + 1);
+    for (final var entry : placed) {
+      writes.add(executor.submit(() -> this.withContext(context -> {
+        this.writeEntry(context, entry);
+        return null;
+      })));
+    }
+    writes.add(executor.submit(() -> {
+      this.writeFully(directory.data(), directory.offset());
+      return null;
+    }));
+    awaitAll(writes);
+  }
+
+  private void writeSequentially(
+    final List<Placed> placed,
+    final Directory directory)
+    throws IOException
+  {
+    this.withContext(context -> {
+      for (final var entry : placed) {
+        this.writeEntry(context, entry);
+      }
+      this.writeFully(directory.data(), directory.offset());
+      return null;
+    });
+  }
+
+  private static SortedMap<String, List<OFBundleDigest>> entryDigestsOf(
+    final List<Prepared> prepared)
+  {
+    final var results = new TreeMap<String, List<OFBundleDigest>>();
+    for (final var item : prepared) {
+      if (!item.digests().isEmpty()) {
+        results.put(item.entry().name(), item.digests());
+      }
+    }
+    return results;
+  }
+
+  private ExecutorService createExecutor()
+  {
+    return Executors.newFixedThreadPool(
+      this.configuration.parallelism(),
+      Thread.ofPlatform()
+        .name("com.io7m.oatfield.writer-", 0L)
+        .daemon()
+        .factory()
+    );
+  }
+
+  private static void checkNames(
+    final Collection<OFBundleEntryType> entries)
+    throws ZipException
+  {
+    final var names = new HashSet<String>(entries.size() + 1);
+    names.add(OFBundleManifest.NAME);
+    for (final var entry : entries) {
+      if (!names.add(entry.name())) {
+        throw new ZipException("Duplicate entry: " + entry.name());
+      }
+    }
+  }
+
+  private List<Prepared> prepareAll(
+    final ExecutorService executor,
+    final OFBundleManifest manifest,
+    final Collection<OFBundleEntryType> entries,
+    final OFZipArchiveSet archives)
+    throws IOException
+  {
+    final var record =
+      this.configuration.digests().recordEntriesInManifest();
+    final var analyse =
+      this.configuration.analysis().isEnabled();
+    final var tasks =
+      new ArrayList<Future<Prepared>>(entries.size() + 1);
+
+    if (!record && !analyse) {
+      tasks.add(executor.submit(() -> {
+        return this.prepareManifest(manifest, new TreeMap<>());
+      }));
+    }
+
+    for (final var entry : entries) {
+      switch (entry) {
+        case final OFFileEntry file -> {
+          tasks.add(executor.submit(() -> this.withContext(context -> {
+            final var digests = this.entryDigests(file.name());
+            final var prepared = this.prepareFile(
+              context,
+              digests,
+              OFBundleEntryWriter.resolveMethod(context, file)
+            );
+            this.analyse(file.name(), digests);
+            return prepared;
+          })));
+        }
+        case final OFArchiveEntry raw -> {
+          final var archive =
+            archives.open(raw.archive());
+          final var source =
+            OFBundleEntryWriter.findEntry(archive, raw);
+          tasks.add(executor.submit(() -> {
+            final var digests = this.entryDigests(raw.name());
+            final var prepared =
+              prepareRaw(raw.name(), archive, source, digests);
+            this.analyse(raw.name(), digests);
+            return prepared;
+          }));
+        }
+      }
+    }
+
+    final var prepared = awaitAll(tasks);
+    if (record || analyse) {
+      final var analysed = analyse
+        ? manifest.analysed(this.configuration.analysis(), this.packages.packages())
+        : manifest;
+      prepared.addFirst(
+        this.prepareManifest(
+          analysed, record ? entryDigestsOf(prepared) : new TreeMap<>()));
+    }
+    return prepared;
+  }
+
+  private void analyse(
+    final String name,
+    final OFDigests digests)
+    throws ZipException
+  {
+    if (this.configuration.analysis().isEnabled()
+        && OFPackageReferences.isClassFile(name)) {
+      this.packages.addClassFile(name, digests.captured());
+    }
+  }
+
+  private Prepared prepareManifest(
+    final OFBundleManifest manifest,
+    final SortedMap<String, List<OFBundleDigest>> digests)
+    throws IOException
+  {
+    return this.withContext(context -> {
+      final var encoder = context.manifest();
+      manifest.encode(encoder, digests);
+      return this.deflated(
+        OFBundleManifest.NAME,
+        context,
+        this.entryDigests(OFBundleManifest.NAME),
+        encoder.bytes()
+      );
+    });
+  }
+
+  private OFDigests entryDigests(
+    final String name)
+  {
+    return new OFDigests(
+      this.configuration.digests().entryAlgorithms(),
+      this.configuration.analysis().isEnabled()
+        && OFPackageReferences.isClassFile(name)
+    );
+  }
+
+  private <T> T withContext(
+    final ContextTaskType<T> task)
+    throws IOException
+  {
+    final var context = this.contexts.acquire();
+    try {
+      context.prepare(this.configuration.compressionLevel(), this.strategy);
+      return task.run(context);
+    } finally {
+      this.contexts.release(context);
+    }
+  }
+
+  private static Prepared prepareRaw(
+    final String name,
+    final OFZipArchive archive,
+    final OFZipEntry source,
+    final OFDigests digests)
+    throws IOException
+  {
+    OFZipWriter.checkRawEntry(name, archive, source);
+
+    final var dataOffset = archive.dataOffset(source);
+    digests.updateFromEntry(
+      archive.channel(),
+      dataOffset,
+      source,
+      new byte[OFZipWriterContext.BUFFER_SIZE]
+    );
+
+    return new Prepared(
+      new OFZipEntry(
+        name,
+        FLAG_UTF8,
+        source.method(),
+        source.crc(),
+        source.compressedSize(),
+        source.size(),
+        0L
+      ),
+      new Region(archive.channel(), dataOffset),
+      digests.finish()
+    );
+  }
+
+  private Prepared prepareFile(
+    final OFZipWriterContext context,
+    final OFDigests digests,
+    final OFFileEntry file)
+    throws IOException
+  {
+    final var name = file.name();
+    if (file.method() == STORE_DEFLATED) {
+      return switch (file.source()) {
+        case final OFContentBuffer buffer ->
+          this.deflated(name, context, digests, buffer.buffer());
+        case final OFContentFile path -> this.deflated(
+          name, context, digests, () -> Files.newInputStream(path.file()));
+        case final OFContentStreams streams ->
+          this.deflated(name, context, digests, streams.streams());
+      };
+    }
+
+    return switch (file.source()) {
+      case final OFContentBuffer buffer -> {
+        final var data = buffer.buffer();
+        final var crc = context.crc();
+        crc.reset();
+        crc.update(data.duplicate());
+        digests.update(data);
+        yield stored(
+          name, crc.getValue(), data.remaining(), new Bytes(data), digests);
+      }
+      case final OFContentFile path -> {
+        try (var source = FileChannel.open(path.file(), READ)) {
+          final var size = source.size();
+          final var crc = checksum(context, digests, source, size);
+          yield stored(name, crc, size, new FileBody(path.file()), digests);
+        }
+      }
+      case final OFContentStreams streams -> {
+        final var crc = context.crc();
+        crc.reset();
+        var size = 0L;
+        try (var stream = streams.streams().open()) {
+          final var input = context.input();
+          while (true) {
+            final var r = stream.read(input);
+            if (r == -1) {
+              break;
+            }
+            size += r;
+            crc.update(input, 0, r);
+            digests.update(input, 0, r);
+          }
+        }
+        yield stored(
+          name,
+          crc.getValue(),
+          size,
+          new StreamsBody(streams.streams()),
+          digests
+        );
+      }
+    };
+  }
+
+  private static long checksum(
+    final OFZipWriterContext context,
+    final OFDigests digests,
+    final FileChannel source,
+    final long size)
+    throws IOException
+  {
+    final var crc = context.crc();
+    crc.reset();
+    for (long at = 0L; at < size; at += MAP_WINDOW) {
+      final var length = Math.min(MAP_WINDOW, size - at);
+      final var window = source.map(READ_ONLY, at, length);
+      digests.update(window);
+      crc.update(window);
+    }
+    return crc.getValue();
+  }
+
+  private static Prepared stored(
+    final String name,
+    final long crc,
+    final long size,
+    final BodyType body,
+    final OFDigests digests)
+    throws ZipException
+  {
+    OFZipWriter.checkEntrySize(name, size);
+    return new Prepared(
+      new OFZipEntry(name, FLAG_UTF8, METHOD_STORED, crc, size, size, 0L),
+      body,
+      digests.finish()
+    );
+  }
+
+  private Prepared deflated(
+    final String name,
+    final OFZipWriterContext context,
+    final OFDigests digests,
+    final ByteBuffer data)
+    throws IOException
+  {
+    final var crc = context.crc();
+    final var deflater = context.deflater();
+    crc.reset();
+    deflater.reset();
+    crc.update(data.duplicate());
+    digests.update(data);
+    deflater.setInput(data.duplicate());
+
+    try (var output = new DeflatedOutput(this.spills, data.remaining())) {
+      drain(deflater, output);
+      finish(deflater, output);
+      return deflatedEntry(name, crc, data.remaining(), output, digests);
+    }
+  }
+
+  private Prepared deflated(
+    final String name,
+    final OFZipWriterContext context,
+    final OFDigests digests,
+    final OFBundleContentStreamSupplierType streams)
+    throws IOException
+  {
+    final var crc = context.crc();
+    final var deflater = context.deflater();
+    final var input = context.input();
+    crc.reset();
+    deflater.reset();
+
+    try (var output = new DeflatedOutput(this.spills, input.length);
+         var stream = streams.open()) {
+      var size = 0L;
+      while (true) {
+        final var r = stream.read(input);
+        if (r == -1) {
+          break;
+        }
+        size += r;
+        crc.update(input, 0, r);
+        digests.update(input, 0, r);
+        deflater.setInput(input, 0, r);
+        drain(deflater, output);
+      }
+      finish(deflater, output);
+      return deflatedEntry(name, crc, size, output, digests);
+    }
+  }
+
+  /**
+   * Deflate until the deflater needs more input.
+   */
+
+  private static void drain(
+    final Deflater deflater,
+    final DeflatedOutput output)
+    throws IOException
+  {
+    while (!deflater.needsInput()) {
+      deflater.deflate(output.space());
+    }
+  }
+
+  /**
+   * Finish deflating.
+   */
+
+  private static void finish(
+    final Deflater deflater,
+    final DeflatedOutput output)
+    throws IOException
+  {
+    deflater.finish();
+    while (!deflater.finished()) {
+      deflater.deflate(output.space());
+    }
+  }
+
+  private static Prepared deflatedEntry(
+    final String name,
+    final CRC32 crc,
+    final long size,
+    final DeflatedOutput output,
+    final OFDigests digests)
+    throws IOException
+  {
+    final var compressedSize = output.size();
+    OFZipWriter.checkEntrySize(name, size);
+    OFZipWriter.checkEntrySize(name, compressedSize);
+    return new Prepared(
+      new OFZipEntry(
+        name,
+        FLAG_UTF8 | FLAG_DATA_DESCRIPTOR,
+        METHOD_DEFLATED,
+        crc.getValue(),
+        compressedSize,
+        size,
+        0L
+      ),
+      output.body(),
+      digests.finish()
+    );
+  }
+
+  /**
+   * Assign an offset to every entry, relative to the start of the archive.
+   */
+
+  private static List<Placed> layOut(
+    final List<Prepared> prepared)
+  {
+    final var placed = new ArrayList<Placed>(prepared.size());
+    var offset = 0L;
+    for (final var item : prepared) {
+      final var entry = item.entry();
+      final var name = OFZipHeaders.encodeName(entry.name());
+      placed.add(new Placed(
+        new OFZipEntry(
+          entry.name(),
+          entry.flags(),
+          entry.method(),
+          entry.crc(),
+          entry.compressedSize(),
+          entry.size(),
+          offset
+        ),
+        name,
+        item.body()
+      ));
+      offset += LOCAL_HEADER_SIZE + name.length + entry.compressedSize();
+      if (hasDescriptor(entry)) {
+        offset += DATA_DESCRIPTOR_SIZE;
+      }
+    }
+    return placed;
+  }
+
+  private static boolean hasDescriptor(
+    final OFZipEntry entry)
+  {
+    return (entry.flags() & FLAG_DATA_DESCRIPTOR) != 0;
+  }
+
+  private static Directory encodeDirectory(
+    final List<Placed> placed)
+  {
+    final var directoryStart = placed.isEmpty() ? 0L : endOf(placed.getLast());
+    final var count = placed.size();
+
+    var directorySize = 0L;
+    for (final var item : placed) {
+      directorySize += CENTRAL_HEADER_SIZE + item.name().length;
+      if (OFZipHeaders.needsZip64(item.entry())) {
+        directorySize += EXTRA_ZIP64_SIZE;
+      }
+    }
+
+    final var zip64 = OFZipHeaders.needsZip64End(count, directoryStart);
+    final var endSize =
+      END_RECORD_SIZE
+        + (zip64 ? END_RECORD_ZIP64_SIZE + END_LOCATOR_ZIP64_SIZE : 0);
+    final var buffer =
+      ByteBuffer.allocate(Math.toIntExact(directorySize + endSize))
+        .order(LITTLE_ENDIAN);
+
+    for (final var item : placed) {
+      OFZipHeaders.putCentralHeader(buffer, item.entry(), item.name().length);
+      buffer.put(item.name());
+      OFZipHeaders.putCentralExtra(buffer, item.entry());
+    }
+    if (zip64) {
+      OFZipHeaders.putEndRecords64(
+        buffer,
+        directoryStart + directorySize,
+        directoryStart,
+        directorySize,
+        count
+      );
+    }
+    OFZipHeaders.putEndRecord(buffer, directoryStart, directorySize, count);
+    return new Directory(buffer.flip(), directoryStart);
+  }
+
+  private static long endOf(
+    final Placed item)
+  {
+    final var entry = item.entry();
+    var end = entry.localHeaderOffset()
+              + LOCAL_HEADER_SIZE
+              + item.name().length
+              + entry.compressedSize();
+    if (hasDescriptor(entry)) {
+      end += DATA_DESCRIPTOR_SIZE;
+    }
+    return end;
+  }
+
+  private void writeEntry(
+    final OFZipWriterContext context,
+    final Placed item)
+    throws IOException
+  {
+    final var entry = item.entry();
+    final var start = entry.localHeaderOffset();
+    final var descriptor = hasDescriptor(entry);
+
+    /*
+     * Entries with data descriptors have zero CRCs and sizes in their
+     * local headers, exactly as when they are written sequentially.
+     */
+
+    final var local = descriptor
+      ? new OFZipEntry(entry.name(), entry.flags(), entry.method(), 0L, 0L, 0L, start)
+      : entry;
+
+    final var header =
+      ByteBuffer.allocate(LOCAL_HEADER_SIZE + item.name().length)
+        .order(LITTLE_ENDIAN);
+    OFZipHeaders.putLocalHeader(header, local, item.name().length);
+    header.put(item.name());
+    this.writeFully(header.flip(), start);
+
+    final var dataStart = start + LOCAL_HEADER_SIZE + item.name().length;
+    final var size = entry.compressedSize();
+    switch (item.body()) {
+      case final Bytes bytes -> this.writeFully(bytes.data().duplicate(), dataStart);
+      case final Region region -> this.copy(
+        context, region.source(), region.offset(), size, dataStart);
+      case final FileBody file -> {
+        try (var source = FileChannel.open(file.file(), READ)) {
+          checkUnchanged(entry.name(), size, source.size());
+          this.copy(context, source, 0L, size, dataStart);
+        }
+      }
+      case final StreamsBody streams -> {
+        try (var stream = streams.streams().open()) {
+          this.copy(context, entry.name(), stream, size, dataStart);
+        }
+      }
+    }
+
+    if (descriptor) {
+      final var trailer =
+        ByteBuffer.allocate(DATA_DESCRIPTOR_SIZE).order(LITTLE_ENDIAN);
+      OFZipHeaders.putDataDescriptor(trailer, entry);
+      this.writeFully(trailer.flip(), dataStart + size);
+    }
+  }
+
+  private static void checkUnchanged(
+    final String name,
+    final long expected,
+    final long received)
+    throws ZipException
+  {
+    if (expected != received) {
+      throw new ZipException(
+        "Entry '%s' content changed while writing (expected %d bytes, got %d)"
+          .formatted(name, expected, received));
+    }
+  }
+
+  private void copy(
+    final OFZipWriterContext context,
+    final FileChannel source,
+    final long offset,
+    final long count,
+    final long target)
+    throws IOException
+  {
+    if (this.sink instanceof final SequentialSink sequential) {
+      var at = offset;
+      var remaining = count;
+      while (remaining > 0L) {
+        final var n = source.transferTo(at, remaining, sequential.channel());
+        if (n <= 0L) {
+          throw new ZipException("Unexpected end of source data");
+        }
+        at += n;
+        remaining -= n;
+      }
+      return;
+    }
+
+    if (count > OFZipWriterContext.BUFFER_SIZE) {
+      for (long at = 0L; at < count; at += MAP_WINDOW) {
+        final var length = Math.min(MAP_WINDOW, count - at);
+        this.writeFully(source.map(READ_ONLY, offset + at, length), target + at);
+      }
+      return;
+    }
+
+    final var buffer = context.buffer().clear().limit((int) count);
+    while (buffer.hasRemaining()) {
+      if (source.read(buffer, offset + buffer.position()) == -1) {
+        throw new ZipException("Unexpected end of source data");
+      }
+    }
+    this.writeFully(buffer.flip(), target);
+  }
+
+  private void copy(
+    final OFZipWriterContext context,
+    final String name,
+    final InputStream stream,
+    final long count,
+    final long target)
+    throws IOException
+  {
+    final var input = context.input();
+    var total = 0L;
+    while (true) {
+      final var r = stream.read(input);
+      if (r == -1) {
+        break;
+      }
+      if (total + r > count) {
+        checkUnchanged(name, count, total + r);
+      }
+      this.writeFully(ByteBuffer.wrap(input, 0, r), target + total);
+      total += r;
+    }
+    checkUnchanged(name, count, total);
+  }
+
+  private void writeFully(
+    final ByteBuffer data,
+    final long offset)
+    throws IOException
+  {
+    switch (this.sink) {
+      case final PositionalSink positional -> {
+        var at = positional.base() + offset;
+        while (data.hasRemaining()) {
+          at += positional.channel().write(data, at);
+        }
+      }
+      case final SequentialSink sequential -> {
+        while (data.hasRemaining()) {
+          sequential.channel().write(data);
+        }
+      }
+    }
+  }
+
+  private static <T> List<T> awaitAll(
+    final List<Future<T>> futures)
+    throws IOException
+  {
+    final var results = new ArrayList<T>(futures.size());
+    try {
+      for (final var future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (final ExecutionException e) {
+      throw unwrap(e.getCause());
+    } finally {
+      for (final var future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private static IOException unwrap(
+    final Throwable cause)
+  {
+    return switch (cause) {
+      case final IOException e -> e;
+      case final UncheckedIOException e -> e.getCause();
+      case final RuntimeException e -> throw e;
+      case final Error e -> throw e;
+      default -> new IOException(cause);
+    };
+  }
+
+  /**
+   * The output of deflating a single entry. Output accumulates in a heap
+   * buffer that grows up to a fixed size, after which the buffer is
+   * repeatedly flushed to a temporary file. The size of a deflated entry
+   * is therefore not limited by the maximum size of a buffer.
+   */
+
+  private static final class DeflatedOutput implements Closeable
+  {
+    private final ConcurrentLinkedQueue<Path> spills;
+    private ByteBuffer buffer;
+    private Path spillFile;
+    private FileChannel spill;
+    private long spilled;
+
+    DeflatedOutput(
+      final ConcurrentLinkedQueue<Path> inSpills,
+      final int size)
+    {
+      this.spills =
+        inSpills;
+      this.buffer =
+        ByteBuffer.allocate(Math.clamp(size / 2, 64, SPILL_THRESHOLD));
+    }
+
+    /**
+     * @return A buffer with space remaining for more output
+     */
+
+    ByteBuffer space()
+      throws IOException
+    {
+      if (this.buffer.hasRemaining()) {
+        return this.buffer;
+      }
+
+      final var capacity = this.buffer.capacity();
+      if (capacity < SPILL_THRESHOLD) {
+        this.buffer =
+          ByteBuffer.allocate(Math.min(capacity * 2, SPILL_THRESHOLD))
+            .put(this.buffer.flip());
+        return this.buffer;
+      }
+
+      if (this.spill == null) {
+        this.spillFile = Files.createTempFile("oatfield-", ".deflated");
+        this.spills.add(this.spillFile);
+        this.spill = FileChannel.open(this.spillFile, WRITE);
+      }
+      this.flush();
+      return this.buffer;
+    }
+
+    private void flush()
+      throws IOException
+    {
+      this.buffer.flip();
+      while (this.buffer.hasRemaining()) {
+        this.spilled += this.spill.write(this.buffer);
+      }
+      this.buffer.clear();
+    }
+
+    /**
+     * @return The number of bytes of output
+     */
+
+    long size()
+    {
+      return this.spilled + this.buffer.position();
+    }
+
+    /**
+     * @return The complete output
+     */
+
+    BodyType body()
+      throws IOException
+    {
+      if (this.spill == null) {
+        return new Bytes(this.buffer.flip());
+      }
+      this.flush();
+      this.spill.close();
+      return new FileBody(this.spillFile);
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      if (this.spill != null) {
+        this.spill.close();
+      }
+    }
+  }
+
+  private interface ContextTaskType<T>
+  {
+    T run(OFZipWriterContext context)
+      throws IOException;
+  }
+
+  private sealed interface SinkType
+  {
+
+  }
+
+  /**
+   * Entries are written concurrently at their offsets.
+   */
+
+  private record PositionalSink(FileChannel channel, long base)
+    implements SinkType
+  {
+
+  }
+
+  /**
+   * Entries are written in order.
+   */
+
+  private record SequentialSink(WritableByteChannel channel)
+    implements SinkType
+  {
+
+  }
+
+  private sealed interface BodyType
+  {
+
+  }
+
+  private record Bytes(ByteBuffer data)
+    implements BodyType
+  {
+
+  }
+
+  private record Region(FileChannel source, long offset)
+    implements BodyType
+  {
+
+  }
+
+  private record FileBody(Path file)
+    implements BodyType
+  {
+
+  }
+
+  private record StreamsBody(OFBundleContentStreamSupplierType streams)
+    implements BodyType
+  {
+
+  }
+
+  private record Prepared(
+    OFZipEntry entry,
+    BodyType body,
+    List<OFBundleDigest> digests)
+  {
+
+  }
+
+  private record Placed(OFZipEntry entry, byte[] name, BodyType body)
+  {
+
+  }
+
+  private record Directory(ByteBuffer data, long offset)
+  {
+    long end()
+    {
+      return this.offset + this.data.limit();
+    }
+  }
+}
@@ -17,27 +17,46 @@
 package com.io7m.oatfield.vanilla.internal;
 
 import aQute.bnd.osgi.resource.ResourceBuilder;
+import com.io7m.oatfield.api.OFBundleClause;
+import com.io7m.oatfield.api.OFBundleEntryMetadata;
+import com.io7m.oatfield.api.OFBundleHeaders;
 import com.io7m.oatfield.api.OFBundleReaderType;
 import org.osgi.resource.Resource;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
-import static java.util.zip.ZipFile.OPEN_READ;
-
 /**
- * The default bundle reader.
+ * The default bundle reader. Entry metadata and file names are taken
+ * directly from the compact, sorted central directory held by the archive,
+ * manifest headers are parsed on demand and cached, and the OSGi resource
+ * is only built when it is first requested.
+ *
+ * <p>Readers are safe for concurrent use by multiple threads. All entry
+ * content is read with positioned reads on a single shared channel, so
+ * one reader can serve any number of threads without additional file
+ * descriptors. Interrupting a thread that is blocked reading from the
+ * reader fails that thread's read; other threads continue to read, because
+ * the archive reopens the file if an interrupt closed the shared
+ * channel.</p>
  */
 
 public final class OFBundleReader
@@ -45,30 +64,60 @@ public final class OFBundleReader
 {
   private final AtomicBoolean closed;
   private final Path path;
-  private final TreeSet<String> files;
-  private final SortedSet<String> filesRead;
-  private JarFile jar;
+  private final OFZipArchive archive;
+  private final OFBundleHeaders headers;
+  private final OFBundleEntryNames names;
+  private final SortedSet<String> files;
+  private final ConcurrentHashMap<String, List<OFBundleClause>> clauses;
+  private SortedMap<String, OFBundleEntryMetadata> entries;
+  private SortedSet<String> packages;
   private Resource resource;
-  private Manifest manifest;
-  private Attributes attributes;
-
-  /**
-   * The default bundle reader.
-   *
-   * @param inputPath The input path
-   */
 
-  public OFBundleReader(
-    final Path inputPath)
+  private OFBundleReader(
+    final Path inPath,
+    final OFZipArchive inArchive,
+    final OFBundleHeaders inHeaders)
   {
     this.path =
-      Objects.requireNonNull(inputPath, "inputPath");
+      Objects.requireNonNull(inPath, "path");
+    this.archive =
+      Objects.requireNonNull(inArchive, "archive");
+    this.headers =
+      Objects.requireNonNull(inHeaders, "headers");
     this.closed =
       new AtomicBoolean(false);
+    this.clauses =
+      new ConcurrentHashMap<>();
+    this.names =
+      inArchive.names();
     this.files =
-      new TreeSet<String>();
-    this.filesRead =
-      Collections.unmodifiableSortedSet(this.files);
+      this.names.view(0, this.names.size());
+  }
+
+  /**
+   * Open a bundle. Only the central directory and the manifest are read.
+   *
+   * @param path The bundle file
+   *
+   * @return A reader
+   *
+   * @throws IOException On I/O errors, or if the file is not a jar file
+   *                     with a manifest
+   */
+
+  public static OFBundleReader open(
+    final Path path)
+    throws IOException
+  {
+    Objects.requireNonNull(path, "path");
+
+    final var archive = OFZipArchive.open(path);
+    try {
+      return new OFBundleReader(path, archive, readHeaders(path, archive));
+    } catch (final IOException e) {
+      archive.close();
+      throw e;
+    }
   }
 
   private void checkNotClosed()
@@ -83,65 +132,96 @@ public final class OFBundleReader
     throws IOException
   {
     if (this.closed.compareAndSet(false, true)) {
-      this.jar.close();
+      this.archive.close();
     }
   }
 
   /**
-   * Start reading. Must be called exactly once.
-   * @throws Exception On errors
+   * @return {@code true} if the reader is open and its archive channel has
+   * not been closed by an interrupt
    */
 
-  public void start()
-    throws Exception
+  boolean isOpen()
   {
-    this.jar =
-      new JarFile(this.path.toFile(), false, OPEN_READ);
-    this.manifest =
-      this.jar.getManifest();
-
-    if (this.manifest == null) {
-      throw new IOException(
-        "File '%s' does not contain a jar manifest.".formatted(this.path)
-      );
-    }
+    return !this.closed.get() && this.archive.isOpen();
+  }
 
-    this.attributes =
-      this.manifest.getMainAttributes();
+  private static OFBundleHeaders readHeaders(
+    final Path path,
+    final OFZipArchive archive)
+    throws IOException
+  {
+    final var manifestEntry =
+      archive.entry(JarFile.MANIFEST_NAME)
+        .orElseThrow(() -> {
+          return new IOException(
+            "File '%s' does not contain a jar manifest.".formatted(path)
+          );
+        });
 
-    final var fileIter =
-      this.jar.entries()
-        .asIterator();
+    final var manifest = new Manifest(
+      new ByteArrayInputStream(archive.content(manifestEntry))
+    );
 
-    while (fileIter.hasNext()) {
-      this.files.add(fileIter.next().getName());
+    final var values = new TreeMap<String, String>();
+    final var attributes = manifest.getMainAttributes();
+    for (final var entry : attributes.entrySet()) {
+      values.put(entry.getKey().toString(), entry.getValue().toString());
     }
-
-    final var builder = new ResourceBuilder();
-    builder.addFile(this.path.toFile(), this.path.toUri());
-    this.resource = builder.build();
+    return new OFBundleHeaders(values);
   }
 
   @Override
   public String bundleSymbolicName()
   {
     this.checkNotClosed();
-    return this.attributes.getValue("Bundle-SymbolicName");
+    return this.headers.header("Bundle-SymbolicName").orElse(null);
   }
 
   @Override
   public Optional<String> bundleVersion()
   {
     this.checkNotClosed();
-    return Optional.ofNullable(
-      this.attributes.getValue("Bundle-Version")
-    );
+    return this.headers.header("Bundle-Version");
   }
 
   @Override
-  public Resource toResource()
+  public OFBundleHeaders headers()
   {
     this.checkNotClosed();
+    return this.headers;
+  }
+
+  @Override
+  public List<OFBundleClause> clauses(
+    final String header)
+  {
+    Objects.requireNonNull(header, "header");
+    this.checkNotClosed();
+
+    return this.clauses.computeIfAbsent(
+      header.toLowerCase(Locale.ROOT),
+      key -> {
+        return this.headers.header(key)
+          .map(OFManifestClauses::parse)
+          .orElse(List.of());
+      });
+  }
+
+  @Override
+  public synchronized Resource toResource()
+  {
+    this.checkNotClosed();
+
+    if (this.resource == null) {
+      try {
+        final var builder = new ResourceBuilder();
+        builder.addFile(this.path.toFile(), this.path.toUri());
+        this.resource = builder.build();
+      } catch (final Exception e) {
+        throw new UncheckedIOException(new IOException(e));
+      }
+    }
     return this.resource;
   }
 
@@ -149,7 +229,86 @@ public final class OFBundleReader
   public SortedSet<String> files()
   {
     this.checkNotClosed();
-    return this.filesRead;
+    return this.files;
+  }
+
+  @Override
+  public SortedSet<String> filesUnder(
+    final String prefix)
+  {
+    Objects.requireNonNull(prefix, "prefix");
+    this.checkNotClosed();
+    return this.names.view(
+      this.names.lowerBound(prefix),
+      this.names.prefixEnd(prefix)
+    );
+  }
+
+  @Override
+  public synchronized SortedSet<String> packages()
+  {
+    this.checkNotClosed();
+
+    if (this.packages == null) {
+      final var results = new TreeSet<String>();
+      for (final var name : this.files) {
+        if (OFPackageReferences.isClassFile(name)
+            && !name.startsWith("META-INF/")) {
+          final var packageName = OFClassFiles.packageOf(name);
+          if (!packageName.isEmpty()) {
+            results.add(packageName);
+          }
+        }
+      }
+      this.packages = Collections.unmodifiableSortedSet(results);
+    }
+    return this.packages;
+  }
+
+  @Override
+  public boolean containsClass(
+    final String className)
+  {
+    Objects.requireNonNull(className, "className");
+    this.checkNotClosed();
+    return this.names.contains(className.replace('.', '/') + ".class");
+  }
+
+  @Override
+  public Optional<OFBundleEntryMetadata> entry(
+    final String name)
+  {
+    Objects.requireNonNull(name, "name");
+    this.checkNotClosed();
+    return this.archive.entry(name).map(OFBundleReader::metadataOf);
+  }
+
+  @Override
+  public synchronized SortedMap<String, OFBundleEntryMetadata> entries()
+  {
+    this.checkNotClosed();
+
+    if (this.entries == null) {
+      final var metadata = new TreeMap<String, OFBundleEntryMetadata>();
+      for (final var entry : this.archive.entries()) {
+        metadata.put(entry.name(), metadataOf(entry));
+      }
+      this.entries = Collections.unmodifiableSortedMap(metadata);
+    }
+    return this.entries;
+  }
+
+  private static OFBundleEntryMetadata metadataOf(
+    final OFZipEntry entry)
+  {
+    return new OFBundleEntryMetadata(
+      entry.name(),
+      entry.size(),
+      entry.compressedSize(),
+      entry.crc(),
+      entry.method(),
+      entry.localHeaderOffset()
+    );
   }
 
   @Override
@@ -160,10 +319,25 @@ public final class OFBundleReader
     Objects.requireNonNull(name, "name");
     this.checkNotClosed();
 
-    final var entry = this.jar.getEntry(name);
-    if (entry == null) {
+    final var entry = this.archive.entry(name);
+    if (entry.isEmpty()) {
+      throw new NoSuchFileException(name);
+    }
+    return this.archive.stream(entry.get());
+  }
+
+  @Override
+  public ByteBuffer contentBufferFor(
+    final String name)
+    throws IOException
+  {
+    Objects.requireNonNull(name, "name");
+    this.checkNotClosed();
+
+    final var entry = this.archive.entry(name);
+    if (entry.isEmpty()) {
       throw new NoSuchFileException(name);
     }
-    return this.jar.getInputStream(entry);
+    return this.archive.buffer(entry.get());
   }
 }
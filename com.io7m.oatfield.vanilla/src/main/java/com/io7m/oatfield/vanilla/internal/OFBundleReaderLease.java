@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleClause;
+import com.io7m.oatfield.api.OFBundleEntryMetadata;
+import com.io7m.oatfield.api.OFBundleHeaders;
+import com.io7m.oatfield.api.OFBundleReaderType;
+import org.osgi.resource.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A lease on a pooled reader. Closing the lease returns the reader to the
+ * pool rather than closing it.
+ */
+
+final class OFBundleReaderLease implements OFBundleReaderType
+{
+  private final OFBundleReaderLeases leases;
+  private final OFBundleReaderLeases.Pooled pooled;
+  private final OFBundleReader reader;
+  private final AtomicBoolean closed;
+
+  OFBundleReaderLease(
+    final OFBundleReaderLeases inLeases,
+    final OFBundleReaderLeases.Pooled inPooled)
+  {
+    this.leases =
+      Objects.requireNonNull(inLeases, "leases");
+    this.pooled =
+      Objects.requireNonNull(inPooled, "pooled");
+    this.reader =
+      inPooled.reader();
+    this.closed =
+      new AtomicBoolean(false);
+  }
+
+  private OFBundleReader checkNotClosed()
+  {
+    if (this.closed.get()) {
+      throw new IllegalStateException("Reader is closed!");
+    }
+    return this.reader;
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      this.leases.release(this.pooled);
+    }
+  }
+
+  @Override
+  public String bundleSymbolicName()
+  {
+    return this.checkNotClosed().bundleSymbolicName();
+  }
+
+  @Override
+  public Optional<String> bundleVersion()
+  {
+    return this.checkNotClosed().bundleVersion();
+  }
+
+  @Override
+  public OFBundleHeaders headers()
+  {
+    return this.checkNotClosed().headers();
+  }
+
+  @Override
+  public List<OFBundleClause> clauses(
+    final String header)
+  {
+    return this.checkNotClosed().clauses(header);
+  }
+
+  @Override
+  public Resource toResource()
+  {
+    return this.checkNotClosed().toResource();
+  }
+
+  @Override
+  public SortedSet<String> files()
+  {
+    return this.checkNotClosed().files();
+  }
+
+  @Override
+  public SortedSet<String> filesUnder(
+    final String prefix)
+  {
+    return this.checkNotClosed().filesUnder(prefix);
+  }
+
+  @Override
+  public SortedSet<String> packages()
+  {
+    return this.checkNotClosed().packages();
+  }
+
+  @Override
+  public boolean containsClass(
+    final String className)
+  {
+    return this.checkNotClosed().containsClass(className);
+  }
+
+  @Override
+  public Optional<OFBundleEntryMetadata> entry(
+    final String name)
+  {
+    return this.checkNotClosed().entry(name);
+  }
+
+  @Override
+  public SortedMap<String, OFBundleEntryMetadata> entries()
+  {
+    return this.checkNotClosed().entries();
+  }
+
+  @Override
+  public InputStream contentFor(
+    final String name)
+    throws IOException
+  {
+    return this.checkNotClosed().contentFor(name);
+  }
+
+  @Override
+  public ByteBuffer contentBufferFor(
+    final String name)
+    throws IOException
+  {
+    return this.checkNotClosed().contentBufferFor(name);
+  }
+}
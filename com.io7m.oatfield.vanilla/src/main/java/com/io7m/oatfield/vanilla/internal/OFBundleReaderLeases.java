@@ -0,0 +1,338 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleHeaders;
+import com.io7m.oatfield.api.OFBundleReaderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A bounded pool of open bundle readers, keyed by path. Each call to
+ * {@link #acquire(Path)} returns a new lease on a shared reader; closing
+ * the lease returns the reader to the pool. A pooled reader is reused only
+ * if its archive channel is still open and the size and modification time
+ * of its file are unchanged. When more
+ * than the configured number of readers are open, the least recently used
+ * readers that have no outstanding leases are closed.
+ */
+
+public final class OFBundleReaderLeases implements Closeable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(OFBundleReaderLeases.class);
+
+  private final int maximumOpen;
+  private final LinkedHashMap<Path, Pooled> readers;
+  private boolean closed;
+
+  /**
+   * A bounded pool of open bundle readers.
+   *
+   * @param inMaximumOpen The number of readers that may be kept open
+   */
+
+  public OFBundleReaderLeases(
+    final int inMaximumOpen)
+  {
+    if (inMaximumOpen < 1) {
+      throw new IllegalArgumentException(
+        "Maximum open readers %d must be positive"
+          .formatted(Integer.valueOf(inMaximumOpen))
+      );
+    }
+    this.maximumOpen = inMaximumOpen;
+    this.readers = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Obtain a lease on a reader for the given bundle, opening the bundle
+   * if no valid reader is pooled.
+   *
+   * @param path The bundle path
+   *
+   * @return A lease on a reader
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public OFBundleReaderType acquire(
+    final Path path)
+    throws IOException
+  {
+    final var key = path.toAbsolutePath().normalize();
+    final var attributes = Files.readAttributes(key, BasicFileAttributes.class);
+
+    final var existing = this.acquireExisting(key, attributes);
+    if (existing != null) {
+      return new OFBundleReaderLease(this, existing);
+    }
+
+    final var opened = new Pooled(
+      key,
+      OFBundleReader.open(key),
+      attributes.size(),
+      attributes.lastModifiedTime()
+    );
+    final Pooled pooled;
+    try {
+      pooled = this.insert(opened);
+    } catch (final IllegalStateException e) {
+      opened.reader.close();
+      throw e;
+    }
+    if (pooled != opened) {
+      opened.reader.close();
+    }
+    return new OFBundleReaderLease(this, pooled);
+  }
+
+  /**
+   * Read the main manifest headers of a bundle, using a pooled reader if
+   * one is available.
+   *
+   * @param path The bundle path
+   *
+   * @return The headers
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public OFBundleHeaders readHeaders(
+    final Path path)
+    throws IOException
+  {
+    final var key = path.toAbsolutePath().normalize();
+    final var attributes = Files.readAttributes(key, BasicFileAttributes.class);
+
+    final var existing = this.acquireExisting(key, attributes);
+    if (existing == null) {
+      return OFBundleHeaderReader.read(key);
+    }
+    try {
+      return existing.reader.headers();
+    } finally {
+      this.release(existing);
+    }
+  }
+
+  /**
+   * @return The number of readers currently open, including readers with
+   * outstanding leases
+   */
+
+  public synchronized int openReaders()
+  {
+    return this.readers.size();
+  }
+
+  private synchronized Pooled acquireExisting(
+    final Path key,
+    final BasicFileAttributes attributes)
+  {
+    this.checkNotClosed();
+
+    final var pooled = this.readers.get(key);
+    if (pooled == null) {
+      return null;
+    }
+    if (pooled.isValid(attributes.size(), attributes.lastModifiedTime())) {
+      ++pooled.leases;
+      return pooled;
+    }
+
+    this.readers.remove(key);
+    retire(pooled);
+    return null;
+  }
+
+  private synchronized Pooled insert(
+    final Pooled opened)
+  {
+    this.checkNotClosed();
+
+    final var existing = this.readers.get(opened.path);
+    if (existing != null && existing.isValid(opened.size, opened.modified)) {
+      ++existing.leases;
+      return existing;
+    }
+    if (existing != null) {
+      retire(existing);
+    }
+
+    opened.leases = 1;
+    this.readers.put(opened.path, opened);
+    this.evict();
+    return opened;
+  }
+
+  synchronized void release(
+    final Pooled pooled)
+  {
+    --pooled.leases;
+    if (pooled.leases > 0) {
+      return;
+    }
+    if (pooled.retired) {
+      closeQuietly(pooled);
+      return;
+    }
+    this.evict();
+  }
+
+  private static void retire(
+    final Pooled pooled)
+  {
+    pooled.retired = true;
+    if (pooled.leases == 0) {
+      closeQuietly(pooled);
+    }
+  }
+
+  private static void closeQuietly(
+    final Pooled pooled)
+  {
+    try {
+      pooled.reader.close();
+    } catch (final IOException e) {
+      LOG.warn("Failed to close pooled reader {}: ", pooled.path, e);
+    }
+  }
+
+  private void evict()
+  {
+    var excess = this.readers.size() - this.maximumOpen;
+    if (excess <= 0) {
+      return;
+    }
+
+    final var iterator = this.readers.values().iterator();
+    while (excess > 0 && iterator.hasNext()) {
+      final var pooled = iterator.next();
+      if (pooled.leases == 0) {
+        iterator.remove();
+        retire(pooled);
+        --excess;
+      }
+    }
+  }
+
+  private void checkNotClosed()
+  {
+    if (this.closed) {
+      throw new IllegalStateException("Reader pool is closed!");
+    }
+  }
+
+  /**
+   * Close the pool. Readers without outstanding leases are closed
+   * immediately, and the remaining readers are closed as their leases are
+   * closed.
+   *
+   * @throws IOException If any reader could not be closed
+   */
+
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    final List<Pooled> idle = new ArrayList<>();
+    for (final var pooled : this.readers.values()) {
+      pooled.retired = true;
+      if (pooled.leases == 0) {
+        idle.add(pooled);
+      }
+    }
+    this.readers.clear();
+
+    IOException exception = null;
+    for (final var pooled : idle) {
+      try {
+        pooled.reader.close();
+      } catch (final IOException e) {
+        if (exception == null) {
+          exception = e;
+        } else {
+          exception.addSuppressed(e);
+        }
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * A pooled reader. All mutable fields are guarded by the pool.
+   */
+
+  static final class Pooled
+  {
+    private final Path path;
+    private final OFBundleReader reader;
+    private final long size;
+    private final FileTime modified;
+    private int leases;
+    private boolean retired;
+
+    Pooled(
+      final Path inPath,
+      final OFBundleReader inReader,
+      final long inSize,
+      final FileTime inModified)
+    {
+      this.path =
+        Objects.requireNonNull(inPath, "path");
+      this.reader =
+        Objects.requireNonNull(inReader, "reader");
+      this.size =
+        inSize;
+      this.modified =
+        Objects.requireNonNull(inModified, "modified");
+    }
+
+    OFBundleReader reader()
+    {
+      return this.reader;
+    }
+
+    boolean isValid(
+      final long currentSize,
+      final FileTime currentModified)
+    {
+      return this.size == currentSize
+             && this.modified.equals(currentModified)
+             && this.reader.isOpen();
+    }
+  }
+}
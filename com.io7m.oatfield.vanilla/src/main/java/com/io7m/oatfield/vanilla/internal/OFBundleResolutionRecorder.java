@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleResolutionConflict;
+import com.io7m.oatfield.api.OFBundleResolutionDiagnostics;
+import com.io7m.oatfield.api.OFBundleResolutionFailure;
+import com.io7m.oatfield.api.OFBundleResolutionRejection;
+import com.io7m.oatfield.api.OFBundleResolutionRejectionReason;
+import org.apache.felix.resolver.ResolutionError;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.service.resolver.ResolutionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.io7m.oatfield.api.OFBundleResolutionRejectionReason.FILTER_INVALID;
+import static com.io7m.oatfield.api.OFBundleResolutionRejectionReason.FILTER_MISMATCH;
+import static com.io7m.oatfield.api.OFBundleResolutionRejectionReason.PROVIDER_UNRESOLVABLE;
+import static com.io7m.oatfield.api.OFBundleResolutionRejectionReason.PROVIDER_USES_CONFLICT;
+
+/**
+ * A recorder of resolution diagnostics. The recorder only stores references
+ * to existing objects while the resolver is running; all analysis is deferred
+ * until a resolution has actually failed.
+ */
+
+public final class OFBundleResolutionRecorder
+{
+  private final Map<Resource, Requirement> reachedVia;
+  private final ConcurrentLinkedQueue<OFBundleResolutionConflict> conflicts;
+
+  /**
+   * A recorder of resolution diagnostics.
+   */
+
+  public OFBundleResolutionRecorder()
+  {
+    this.reachedVia =
+      new ConcurrentHashMap<>();
+    this.conflicts =
+      new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Record the providers that were found for a requirement.
+   *
+   * @param requirement  The requirement
+   * @param capabilities The matching capabilities
+   */
+
+  public void onProvidersFound(
+    final Requirement requirement,
+    final List<Capability> capabilities)
+  {
+    for (int index = 0; index < capabilities.size(); ++index) {
+      this.reachedVia.putIfAbsent(
+        capabilities.get(index).getResource(),
+        requirement
+      );
+    }
+  }
+
+  /**
+   * Record a uses constraint violation.
+   *
+   * @param resource The resource
+   * @param error    The error
+   */
+
+  public void onUsesConstraintViolation(
+    final Resource resource,
+    final ResolutionError error)
+  {
+    this.conflicts.add(
+      new OFBundleResolutionConflict(
+        resource,
+        List.copyOf(error.getUnresolvedRequirements()))
+    );
+  }
+
+  /**
+   * Analyze a resolution failure.
+   *
+   * @param exception The resolution failure
+   * @param resources The available resources
+   *
+   * @return The diagnostics
+   */
+
+  public OFBundleResolutionDiagnostics analyze(
+    final ResolutionException exception,
+    final List<Resource> resources)
+  {
+    Objects.requireNonNull(exception, "exception");
+    Objects.requireNonNull(resources, "resources");
+
+    final var conflicting = new HashSet<Resource>();
+    for (final var conflict : this.conflicts) {
+      conflicting.add(conflict.resource());
+    }
+
+    final var requirements = new LinkedHashSet<Requirement>();
+    final var seen =
+      Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+    Throwable current = exception;
+    while (current instanceof final ResolutionException re) {
+      if (!seen.add(re)) {
+        break;
+      }
+      requirements.addAll(re.getUnresolvedRequirements());
+      current = re.getCause();
+    }
+
+    final var failures =
+      new ArrayList<OFBundleResolutionFailure>(requirements.size());
+    for (final var requirement : requirements) {
+      failures.add(
+        new OFBundleResolutionFailure(
+          requirement,
+          this.chainFor(requirement),
+          rejectionsFor(requirement, resources, conflicting)
+        )
+      );
+    }
+
+    return new OFBundleResolutionDiagnostics(
+      failures,
+      List.copyOf(this.conflicts)
+    );
+  }
+
+  private List<Requirement> chainFor(
+    final Requirement requirement)
+  {
+    final var chain = new ArrayList<Requirement>();
+    final var visited = new HashSet<Resource>();
+    chain.add(requirement);
+
+    var resource = requirement.getResource();
+    while (resource != null && visited.add(resource)) {
+      final var via = this.reachedVia.get(resource);
+      if (via == null) {
+        break;
+      }
+      chain.add(via);
+      resource = via.getResource();
+    }
+
+    Collections.reverse(chain);
+    return chain;
+  }
+
+  private static List<OFBundleResolutionRejection> rejectionsFor(
+    final Requirement requirement,
+    final List<Resource> resources,
+    final Set<Resource> conflicting)
+  {
+    final var namespace =
+      requirement.getNamespace();
+    final var name =
+      requirement.getAttributes().get(namespace);
+    final var filterText =
+      requirement.getDirectives().get(Constants.FILTER_DIRECTIVE);
+
+    Filter filter = null;
+    var filterValid = true;
+    if (filterText != null) {
+      try {
+        filter = FrameworkUtil.createFilter(filterText);
+      } catch (final InvalidSyntaxException e) {
+        filterValid = false;
+      }
+    }
+
+    final var rejections = new ArrayList<OFBundleResolutionRejection>();
+    for (final var resource : resources) {
+      for (final var capability : resource.getCapabilities(namespace)) {
+        if (name != null) {
+          final var capName = capability.getAttributes().get(namespace);
+          if (capName == null || !Objects.equals(
+            name.toString(),
+            capName.toString())) {
+            continue;
+          }
+        }
+
+        final OFBundleResolutionRejectionReason reason;
+        if (!filterValid) {
+          reason = FILTER_INVALID;
+        } else if (filter != null
+                   && !filter.matches(capability.getAttributes())) {
+          reason = FILTER_MISMATCH;
+        } else if (conflicting.contains(resource)) {
+          reason = PROVIDER_USES_CONFLICT;
+        } else {
+          reason = PROVIDER_UNRESOLVABLE;
+        }
+        rejections.add(new OFBundleResolutionRejection(capability, reason));
+      }
+    }
+    return rejections;
+  }
+}
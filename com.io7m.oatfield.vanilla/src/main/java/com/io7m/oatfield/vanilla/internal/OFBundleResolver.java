@@ -20,6 +20,7 @@ package com.io7m.oatfield.vanilla.internal;
 import com.io7m.oatfield.api.OFBundleResolutionException;
 import com.io7m.oatfield.api.OFBundleResolverConfiguration;
 import com.io7m.oatfield.api.OFBundleResolverType;
+import org.apache.felix.resolver.ResolutionError;
 import org.apache.felix.resolver.ResolverImpl;
 import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkUtil;
@@ -71,20 +72,31 @@ public final class OFBundleResolver implements OFBundleResolverType
   public Map<Resource, List<Wire>> execute()
     throws OFBundleResolutionException
   {
-    final var context = new Context();
+    final OFBundleResolutionRecorder recorder;
+    if (this.configuration.recordDiagnostics()) {
+      recorder = new OFBundleResolutionRecorder();
+    } else {
+      recorder = null;
+    }
+
+    final var context = new Context(recorder);
     context.resources.addAll(this.configuration.availableResources());
     context.mandatory.addAll(this.configuration.mandatoryResources());
     context.optional.addAll(this.configuration.optionalResources());
 
     final Resolver resolver =
-      new ResolverImpl(new ResolverLogger());
+      new ResolverImpl(new ResolverLogger(recorder));
 
     try {
       return resolver.resolve(context);
     } catch (final ResolutionException e) {
-      throw new OFBundleResolutionException(
-        e, List.copyOf(e.getUnresolvedRequirements())
-      );
+      final var unmet = List.copyOf(e.getUnresolvedRequirements());
+      if (recorder != null) {
+        throw new OFBundleResolutionException(
+          e, unmet, recorder.analyze(e, context.resources)
+        );
+      }
+      throw new OFBundleResolutionException(e, unmet);
     }
   }
 
@@ -94,9 +106,12 @@ public final class OFBundleResolver implements OFBundleResolverType
     private final Map<Resource, Wiring> wirings;
     private final Collection<Resource> mandatory;
     private final Collection<Resource> optional;
+    private final OFBundleResolutionRecorder recorder;
 
-    Context()
+    Context(
+      final OFBundleResolutionRecorder inRecorder)
     {
+      this.recorder = inRecorder;
       this.resources = new ArrayList<>();
       this.wirings = new HashMap<>();
       this.mandatory = new ArrayList<>();
@@ -128,6 +143,9 @@ public final class OFBundleResolver implements OFBundleResolverType
         }
       }
 
+      if (this.recorder != null) {
+        this.recorder.onProvidersFound(requirement, capabilities);
+      }
       return capabilities;
     }
 
@@ -188,12 +206,72 @@ public final class OFBundleResolver implements OFBundleResolverType
     }
   }
 
+  /**
+   * A bridge from the Felix logger to SLF4J. The Felix log level is derived
+   * from the levels enabled on the SLF4J logger so that Felix does not
+   * construct messages that would only be discarded. The level is checked
+   * again each time Felix asks whether debugging is enabled, which is what
+   * Felix does before building any of its (expensive) debug messages.
+   */
+
   private static final class ResolverLogger
     extends org.apache.felix.resolver.Logger
   {
-    ResolverLogger()
+    private final OFBundleResolutionRecorder recorder;
+    private volatile int currentLevel;
+
+    ResolverLogger(
+      final OFBundleResolutionRecorder inRecorder)
+    {
+      this(inRecorder, levelOf(LOG));
+    }
+
+    private ResolverLogger(
+      final OFBundleResolutionRecorder inRecorder,
+      final int inLevel)
+    {
+      super(inLevel);
+      this.recorder = inRecorder;
+      this.currentLevel = inLevel;
+    }
+
+    private static int levelOf(
+      final Logger logger)
+    {
+      if (logger.isDebugEnabled()) {
+        return LOG_DEBUG;
+      }
+      if (logger.isInfoEnabled()) {
+        return LOG_INFO;
+      }
+      if (logger.isWarnEnabled()) {
+        return LOG_WARNING;
+      }
+      if (logger.isErrorEnabled()) {
+        return LOG_ERROR;
+      }
+      return 0;
+    }
+
+    @Override
+    public boolean isDebugEnabled()
     {
-      super(5);
+      final var current = levelOf(LOG);
+      if (current != this.currentLevel) {
+        this.currentLevel = current;
+        this.setLogLevel(current);
+      }
+      return current >= LOG_DEBUG;
+    }
+
+    @Override
+    public void logUsesConstraintViolation(
+      final Resource resource,
+      final ResolutionError error)
+    {
+      if (this.recorder != null) {
+        this.recorder.onUsesConstraintViolation(resource, error);
+      }
     }
 
     @Override
@@ -232,7 +310,7 @@ public final class OFBundleResolver implements OFBundleResolverType
           }
         }
         default -> {
-          
+
         }
       }
     }
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleContentSourceType;
+import com.io7m.oatfield.api.OFBundleContentStorageMethod;
+import com.io7m.oatfield.api.OFBundleStreamingWriterConfiguration;
+import com.io7m.oatfield.api.OFBundleStreamingWriterType;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFArchiveEntry;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFFileEntry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The default streaming bundle writer.
+ */
+
+public final class OFBundleStreamingWriter
+  implements OFBundleStreamingWriterType
+{
+  private final AtomicBoolean closed;
+  private final OFBundleManifest manifest;
+  private final OFBundleOutputChannel channel;
+  private final OFBundleEntryWriter output;
+  private final Optional<OFBundleEntrySorter> sorter;
+  private boolean manifestWritten;
+  private boolean finished;
+
+  private OFBundleStreamingWriter(
+    final OFZipWriterContexts contexts,
+    final OFBundleStreamingWriterConfiguration configuration,
+    final OFBundleOutputChannel inChannel)
+  {
+    final var bundle = configuration.bundle();
+
+    this.closed =
+      new AtomicBoolean(false);
+    this.manifest =
+      new OFBundleManifest(bundle.symbolicName(), bundle.bundleVersion());
+    this.channel =
+      inChannel;
+    this.output =
+      new OFBundleEntryWriter(inChannel.channel(), contexts, bundle);
+    this.sorter =
+      configuration.sortBuffer()
+        .map(b -> new OFBundleEntrySorter(contexts, bundle, b));
+  }
+
+  /**
+   * Open a streaming writer.
+   *
+   * @param contexts      The pool of ZIP writer contexts
+   * @param configuration The writer configuration
+   *
+   * @return A new writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static OFBundleStreamingWriter open(
+    final OFZipWriterContexts contexts,
+    final OFBundleStreamingWriterConfiguration configuration)
+    throws IOException
+  {
+    Objects.requireNonNull(contexts, "contexts");
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var channel =
+      OFBundleOutputChannel.open(configuration.bundle().output());
+    return new OFBundleStreamingWriter(contexts, configuration, channel);
+  }
+
+  private void checkNotClosed()
+  {
+    if (this.closed.get()) {
+      throw new IllegalStateException("Writer is closed!");
+    }
+    if (this.finished) {
+      throw new IllegalStateException("Writer is finished!");
+    }
+  }
+
+  private void checkManifestNotWritten()
+  {
+    if (this.manifestWritten) {
+      throw new IllegalStateException(
+        "The manifest has already been written; package declarations must precede entries.");
+    }
+  }
+
+  private void writeManifestIfNecessary()
+    throws IOException
+  {
+    if (!this.manifestWritten) {
+      this.manifestWritten = true;
+      this.output.writeManifest(this.manifest);
+    }
+  }
+
+  @Override
+  public OFBundleStreamingWriterType addPackageImport(
+    final String name,
+    final Optional<String> version)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(version, "version");
+
+    this.checkNotClosed();
+    this.checkManifestNotWritten();
+    this.manifest.addPackageImport(name, version);
+    return this;
+  }
+
+  @Override
+  public OFBundleStreamingWriterType addPackageExport(
+    final String name,
+    final Optional<String> version,
+    final List<String> uses)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(version, "version");
+    Objects.requireNonNull(uses, "uses");
+
+    this.checkNotClosed();
+    this.checkManifestNotWritten();
+    this.manifest.addPackageExport(name, version, uses);
+    return this;
+  }
+
+  @Override
+  public OFBundleStreamingWriterType addFile(
+    final String name,
+    final OFBundleContentStorageMethod storage,
+    final OFBundleContentSourceType source)
+    throws IOException
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(storage, "storage");
+    Objects.requireNonNull(source, "source");
+
+    this.checkNotClosed();
+    this.add(new OFFileEntry(name, source, storage));
+    return this;
+  }
+
+  @Override
+  public OFBundleStreamingWriterType addArchiveEntry(
+    final String name,
+    final Path archive,
+    final String entryName)
+    throws IOException
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(archive, "archive");
+    Objects.requireNonNull(entryName, "entryName");
+
+    this.checkNotClosed();
+    this.add(new OFArchiveEntry(name, archive, entryName));
+    return this;
+  }
+
+  private void add(
+    final OFBundleEntryType entry)
+    throws IOException
+  {
+    this.writeManifestIfNecessary();
+    if (this.sorter.isPresent()) {
+      this.sorter.get().add(entry);
+    } else {
+      this.output.write(entry);
+    }
+  }
+
+  @Override
+  public void finish()
+    throws IOException
+  {
+    this.checkNotClosed();
+    this.writeManifestIfNecessary();
+    if (this.sorter.isPresent()) {
+      this.sorter.get().finish(this.output);
+    }
+    this.output.finish();
+    this.finished = true;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      try {
+        if (this.sorter.isPresent()) {
+          this.sorter.get().close();
+        }
+      } finally {
+        try {
+          this.output.close();
+        } finally {
+          this.channel.close();
+        }
+      }
+    }
+  }
+}
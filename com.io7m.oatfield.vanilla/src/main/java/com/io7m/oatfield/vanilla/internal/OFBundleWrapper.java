@@ -0,0 +1,317 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchFailed;
+import com.io7m.oatfield.api.OFBundleBatchOutcomeType.OFBatchWritten;
+import com.io7m.oatfield.api.OFBundleBatchResult;
+import com.io7m.oatfield.api.OFBundleOutputTargetType;
+import com.io7m.oatfield.api.OFBundleWrapConfiguration;
+import com.io7m.oatfield.api.OFBundleWriteResult;
+import com.io7m.oatfield.api.OFBundleWriterConfiguration;
+import org.osgi.framework.Version;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Wraps a directory of plain jar files into OSGi bundles. Each jar's
+ * central directory is read with {@link OFZipArchive}, its headers are
+ * computed from its manifest and file name, and its entries are added to a
+ * bundle writer as archive entries, so that they are copied without being
+ * recompressed. The writer copies the entries from the same open archive,
+ * so each central directory is read once. The package analysis of the
+ * writer computes imports and exports from the class files as they are
+ * copied. Each bundle is written to a temporary file in the output
+ * directory and atomically moved over the output file once it is complete.
+ */
+
+public final class OFBundleWrapper
+{
+  private static final String JAR_SUFFIX = ".jar";
+
+  private static final Pattern FILE_VERSION =
+    Pattern.compile("^(.+?)[-_]v?([0-9]+(?:\\.[0-9]+)*(?:[.\\-_].*)?)$");
+  private static final Pattern VERSION_NUMBERS =
+    Pattern.compile("^([0-9]+)(?:\\.([0-9]+))?(?:\\.([0-9]+))?[.\\-_]?(.*)$");
+  private static final Pattern INVALID_QUALIFIER =
+    Pattern.compile("[^A-Za-z0-9_\\-]");
+  private static final Pattern INVALID_NAME =
+    Pattern.compile("[^A-Za-z0-9_\\-.]");
+  private static final Pattern SIGNATURE =
+    Pattern.compile("^META-INF/[^/]+\\.(?:SF|RSA|DSA|EC)$|^META-INF/SIG-[^/]+$");
+
+  private final OFZipWriterContexts contexts;
+  private final OFBundleWrapConfiguration configuration;
+
+  /**
+   * Wraps a directory of plain jar files into OSGi bundles.
+   *
+   * @param inContexts      The pool of ZIP writer contexts
+   * @param inConfiguration The wrap configuration
+   */
+
+  public OFBundleWrapper(
+    final OFZipWriterContexts inContexts,
+    final OFBundleWrapConfiguration inConfiguration)
+  {
+    this.contexts =
+      Objects.requireNonNull(inContexts, "contexts");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+  }
+
+  /**
+   * Wrap every jar in the input directory.
+   *
+   * @return The outcome of each jar, in file name order
+   *
+   * @throws IOException          On I/O errors listing the input directory
+   * @throws InterruptedException If interrupted while waiting
+   */
+
+  public OFBundleBatchResult execute()
+    throws IOException, InterruptedException
+  {
+    final List<Path> jars;
+    try (var files = Files.list(this.configuration.inputDirectory())) {
+      jars = files.filter(OFBundleWrapper::isJar).sorted().toList();
+    }
+    Files.createDirectories(this.configuration.outputDirectory());
+
+    final var tasks = new ArrayList<Callable<OFBundleBatchOutcomeType>>();
+    for (final var jar : jars) {
+      tasks.add(() -> this.wrap(jar));
+    }
+    return OFBundleBatchWriter.run(this.configuration.parallelism(), tasks);
+  }
+
+  private static boolean isJar(
+    final Path file)
+  {
+    return file.getFileName().toString().endsWith(JAR_SUFFIX)
+           && Files.isRegularFile(file);
+  }
+
+  private OFBundleBatchOutcomeType wrap(
+    final Path jar)
+  {
+    final var fileName = jar.getFileName().toString();
+    final var output = this.configuration.outputDirectory().resolve(fileName);
+    var bundle =
+      this.bundleConfiguration(output, headersOf(fileName, Optional.empty()));
+
+    try (var archive = OFZipArchive.open(jar)) {
+      bundle =
+        this.bundleConfiguration(output, headersOf(fileName, readManifest(archive)));
+      return new OFBatchWritten(bundle, this.write(jar, archive, bundle));
+    } catch (final Exception e) {
+      return new OFBatchFailed(bundle, e);
+    }
+  }
+
+  private OFBundleWriteResult write(
+    final Path jar,
+    final OFZipArchive archive,
+    final OFBundleWriterConfiguration bundle)
+    throws IOException
+  {
+    final var output =
+      this.configuration.outputDirectory().resolve(jar.getFileName());
+    final var temporary =
+      Files.createTempFile(
+        this.configuration.outputDirectory(),
+        jar.getFileName().toString(),
+        ".tmp"
+      );
+
+    try {
+      final OFBundleWriteResult result;
+      try (var writer = new OFBundleWriter(
+        this.contexts,
+        bundle.withOutput(OFBundleOutputTargetType.ofFile(temporary)))) {
+        writer.useOpenArchive(archive);
+        for (final var entry : archive.entries()) {
+          final var name = entry.name();
+          if (OFBundleManifest.NAME.equals(name) || isSignature(name)) {
+            continue;
+          }
+          writer.addArchiveEntry(name, jar, name);
+        }
+        result = writer.execute();
+      }
+      Files.move(temporary, output, ATOMIC_MOVE, REPLACE_EXISTING);
+      return result;
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private OFBundleWriterConfiguration bundleConfiguration(
+    final Path output,
+    final Headers headers)
+  {
+    return new OFBundleWriterConfiguration(
+      output, headers.symbolicName(), headers.version())
+      .withAnalysis(this.configuration.analysis());
+  }
+
+  private static boolean isSignature(
+    final String name)
+  {
+    return SIGNATURE.matcher(name.toUpperCase(Locale.ROOT)).matches();
+  }
+
+  private static Optional<Manifest> readManifest(
+    final OFZipArchive archive)
+    throws IOException
+  {
+    final var entryOpt = archive.entry(OFBundleManifest.NAME);
+    if (entryOpt.isEmpty()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(
+      new Manifest(new ByteArrayInputStream(archive.content(entryOpt.get()))));
+  }
+
+  /**
+   * The headers of a wrapped bundle.
+   *
+   * @param symbolicName The bundle symbolic name
+   * @param version      The bundle version
+   */
+
+  record Headers(
+    String symbolicName,
+    String version)
+  {
+
+  }
+
+  /**
+   * Compute the headers of a wrapped bundle.
+   *
+   * @param fileName The jar file name
+   * @param manifest The jar manifest, if there is one
+   *
+   * @return The headers
+   */
+
+  static Headers headersOf(
+    final String fileName,
+    final Optional<Manifest> manifest)
+  {
+    final var stem =
+      fileName.substring(0, fileName.length() - JAR_SUFFIX.length());
+    final var matcher = FILE_VERSION.matcher(stem);
+
+    var name = stem;
+    var version = "0.0.0";
+    if (matcher.matches()) {
+      name = matcher.group(1);
+      version = matcher.group(2);
+    }
+
+    if (manifest.isPresent()) {
+      final var main = manifest.get().getMainAttributes();
+      name = firstOf(main, name, "Bundle-SymbolicName", "Automatic-Module-Name");
+      version = firstOf(main, version, "Bundle-Version", "Implementation-Version");
+    }
+
+    final var clauseEnd = name.indexOf(';');
+    if (clauseEnd >= 0) {
+      name = name.substring(0, clauseEnd);
+    }
+    return new Headers(
+      INVALID_NAME.matcher(name.trim()).replaceAll("_"),
+      toOSGiVersion(version.trim())
+    );
+  }
+
+  private static String firstOf(
+    final Attributes attributes,
+    final String fallback,
+    final String... names)
+  {
+    for (final var name : names) {
+      final var value = attributes.getValue(name);
+      if (value != null && !value.isBlank()) {
+        return value;
+      }
+    }
+    return fallback;
+  }
+
+  /**
+   * Convert a version string to an OSGi version, keeping up to three
+   * leading numbers and turning anything that follows into a qualifier.
+   *
+   * @param text The version string
+   *
+   * @return A valid OSGi version
+   */
+
+  static String toOSGiVersion(
+    final String text)
+  {
+    final var matcher = VERSION_NUMBERS.matcher(text);
+    if (!matcher.matches()) {
+      return new Version(0, 0, 0, qualifierOf(text)).toString();
+    }
+    return new Version(
+      numberOf(matcher.group(1)),
+      numberOf(matcher.group(2)),
+      numberOf(matcher.group(3)),
+      qualifierOf(matcher.group(4))
+    ).toString();
+  }
+
+  private static int numberOf(
+    final String text)
+  {
+    if (text == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(text);
+    } catch (final NumberFormatException e) {
+      return Integer.MAX_VALUE;
+    }
+  }
+
+  private static String qualifierOf(
+    final String text)
+  {
+    return INVALID_QUALIFIER.matcher(text).replaceAll("_");
+  }
+}
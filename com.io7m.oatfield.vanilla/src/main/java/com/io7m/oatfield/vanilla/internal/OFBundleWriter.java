@@ -16,39 +16,23 @@
 
 package com.io7m.oatfield.vanilla.internal;
 
+import com.io7m.oatfield.api.OFBundleContentSourceType;
 import com.io7m.oatfield.api.OFBundleContentStorageMethod;
+import com.io7m.oatfield.api.OFBundleOutputTargetType;
+import com.io7m.oatfield.api.OFBundleWriteResult;
 import com.io7m.oatfield.api.OFBundleWriterConfiguration;
 import com.io7m.oatfield.api.OFBundleWriterType;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFArchiveEntry;
+import com.io7m.oatfield.vanilla.internal.OFBundleEntryType.OFFileEntry;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
-import java.time.Instant;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
-import java.util.zip.CRC32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
-
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
-import static java.util.zip.ZipEntry.DEFLATED;
-import static java.util.zip.ZipEntry.STORED;
 
 /**
  * The default bundle writer.
@@ -57,85 +41,56 @@ import static java.util.zip.ZipEntry.STORED;
 public final class OFBundleWriter
   implements OFBundleWriterType
 {
-  private static final FileTime REPRODUCIBLE_TIME =
-    FileTime.from(Instant.parse("2000-01-01T00:00:00Z"));
-
+  private final OFZipWriterContexts contexts;
   private final OFBundleWriterConfiguration configuration;
   private final AtomicBoolean closed;
-  private final TreeMap<String, String> headers;
-  private final SortedSet<PackageImport> packageImports;
-  private final SortedSet<PackageExport> packageExports;
-  private final TreeMap<String, StoreFile> files;
+  private final OFBundleManifest manifest;
+  private final TreeMap<String, OFBundleEntryType> files;
+  private final HashMap<Path, OFZipArchive> openArchives;
 
   /**
    * The default bundle writer.
    *
+   * @param inContexts      The pool of ZIP writer contexts
    * @param inConfiguration The bundle configuration
    */
 
   public OFBundleWriter(
+    final OFZipWriterContexts inContexts,
     final OFBundleWriterConfiguration inConfiguration)
   {
+    this.contexts =
+      Objects.requireNonNull(inContexts, "contexts");
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
     this.closed =
       new AtomicBoolean(false);
-    this.headers =
-      new TreeMap<>();
-    this.packageImports =
-      new TreeSet<>();
-    this.packageExports =
-      new TreeSet<>();
+    this.manifest =
+      new OFBundleManifest(
+        inConfiguration.symbolicName(),
+        inConfiguration.bundleVersion()
+      );
     this.files =
       new TreeMap<>();
+    this.openArchives =
+      new HashMap<>();
   }
 
-  private static String encodePackageExport(
-    final PackageExport exportV)
-  {
-    final var builder = new StringBuilder(64);
-    builder.append(exportV.name);
-    exportV.version.ifPresent(v -> {
-      builder.append(";version=\"");
-      builder.append(v);
-      builder.append("\"");
-    });
-    if (!exportV.uses.isEmpty()) {
-      builder.append(";uses=\"");
-      builder.append(String.join(",", exportV.uses));
-      builder.append("\"");
-    }
-    return builder.toString();
-  }
-
-  private static String encodePackageImport(
-    final PackageImport importV)
-  {
-    final var builder = new StringBuilder(64);
-    builder.append(importV.name);
-    importV.version.ifPresent(v -> {
-      builder.append(";version=\"");
-      builder.append(v);
-      builder.append("\"");
-    });
-    return builder.toString();
-  }
+  /**
+   * Copy archive entries from an archive that the caller already has open,
+   * rather than opening the archive file again. The archive remains owned
+   * by the caller, and must stay open until the writer has executed.
+   *
+   * @param archive The open archive
+   */
 
-  private static void encodeEntry(
-    final BufferedWriter writer,
-    final Map.Entry<String, String> entry)
-    throws IOException
+  void useOpenArchive(
+    final OFZipArchive archive)
   {
-    final var notSplit =
-      "%s: %s".formatted(entry.getKey(), entry.getValue());
-
-    final var lines =
-      OFAttributeSplitting.split(notSplit);
+    Objects.requireNonNull(archive, "archive");
 
-    for (final var line : lines) {
-      writer.append(line);
-      writer.append('\n');
-    }
+    this.checkNotClosed();
+    this.openArchives.put(archive.path(), archive);
   }
 
   private void checkNotClosed()
@@ -154,20 +109,6 @@ public final class OFBundleWriter
     }
   }
 
-  /**
-   * Start writing. Must be called exactly once.
-   */
-
-  public void start()
-  {
-    this.headers.put(
-      "Bundle-SymbolicName", this.configuration.symbolicName());
-    this.headers.put(
-      "Bundle-Version", this.configuration.bundleVersion());
-    this.headers.put(
-      "Bundle-ManifestVersion", "2");
-  }
-
   @Override
   public OFBundleWriterType addPackageImport(
     final String name,
@@ -177,7 +118,7 @@ public final class OFBundleWriter
     Objects.requireNonNull(version, "version");
 
     this.checkNotClosed();
-    this.packageImports.add(new PackageImport(name, version));
+    this.manifest.addPackageImport(name, version);
     return this;
   }
 
@@ -192,12 +133,7 @@ public final class OFBundleWriter
     Objects.requireNonNull(uses, "uses");
 
     this.checkNotClosed();
-    this.packageExports.add(
-      new PackageExport(
-        name,
-        version,
-        uses.stream().sorted().toList())
-    );
+    this.manifest.addPackageExport(name, version, uses);
     return this;
   }
 
@@ -205,176 +141,85 @@ public final class OFBundleWriter
   public OFBundleWriterType addFile(
     final String name,
     final OFBundleContentStorageMethod storage,
-    final Path file)
+    final OFBundleContentSourceType source)
   {
     Objects.requireNonNull(name, "name");
     Objects.requireNonNull(storage, "storage");
-    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(source, "source");
 
     this.checkNotClosed();
-    this.files.put(name, new StoreFile(name, file, storage));
+    this.files.put(name, new OFFileEntry(name, source, storage));
     return this;
   }
 
   @Override
-  public void execute()
-    throws IOException
+  public OFBundleWriterType addArchiveEntry(
+    final String name,
+    final Path archive,
+    final String entryName)
   {
-    this.checkNotClosed();
-
-    this.encodePackageImports();
-    this.encodePackageExports();
-
-    try (var zipOutput =
-           new ZipOutputStream(
-             new BufferedOutputStream(
-               Files.newOutputStream(
-                 this.configuration.outputFile(),
-                 WRITE, TRUNCATE_EXISTING, CREATE)))) {
-
-      final var e = new ZipEntry("META-INF/MANIFEST.MF");
-      e.setLastModifiedTime(REPRODUCIBLE_TIME);
-      e.setLastAccessTime(REPRODUCIBLE_TIME);
-      e.setCreationTime(REPRODUCIBLE_TIME);
-      zipOutput.putNextEntry(e);
-      zipOutput.write(this.serializeManifest());
-      zipOutput.closeEntry();
-
-      for (final var entry : this.files.entrySet()) {
-        serializeFile(zipOutput, entry.getValue());
-      }
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(archive, "archive");
+    Objects.requireNonNull(entryName, "entryName");
 
-      zipOutput.flush();
-      zipOutput.finish();
-    }
+    this.checkNotClosed();
+    this.files.put(name, new OFArchiveEntry(name, archive, entryName));
+    return this;
   }
 
-  private static void serializeFile(
-    final ZipOutputStream zipOutput,
-    final StoreFile value)
+  @Override
+  public OFBundleWriteResult execute()
     throws IOException
   {
-    final var e = new ZipEntry(value.name());
-    e.setLastModifiedTime(REPRODUCIBLE_TIME);
-    e.setLastAccessTime(REPRODUCIBLE_TIME);
-    e.setCreationTime(REPRODUCIBLE_TIME);
-
-    final var crc = new CRC32();
-    final var buffer = new byte[8192];
-    var size = 0L;
-    try (var stream = Files.newInputStream(value.file)) {
-      while (true) {
-        final var r = stream.read(buffer);
-        if (r == -1) {
-          break;
-        }
-        size = size + (long) r;
-        crc.update(buffer, 0, r);
-      }
-    }
-    e.setCrc(crc.getValue());
-    e.setSize(size);
-    e.setMethod(
-      switch (value.method) {
-        case STORE_DEFLATED -> DEFLATED;
-        case STORE_UNCOMPRESSED -> STORED;
-      }
-    );
-
-    zipOutput.putNextEntry(e);
-    try (var stream = Files.newInputStream(value.file)) {
-      stream.transferTo(zipOutput);
-    }
-    zipOutput.closeEntry();
-  }
+    this.checkNotClosed();
 
-  private void encodePackageExports()
-  {
-    if (this.packageExports.isEmpty()) {
-      this.headers.remove("Export-Package");
-    } else {
-      this.headers.put(
-        "Export-Package",
-        this.packageExports.stream()
-          .sorted()
-          .map(OFBundleWriter::encodePackageExport)
-          .collect(Collectors.joining(","))
-      );
+    final var cacheOpt = this.configuration.buildCache();
+    if (cacheOpt.isPresent()) {
+      final var key =
+        OFBundleCacheKey.keyOf(
+          this.configuration,
+          this.manifest,
+          this.files.values(),
+          this.openArchives
+        );
+      return new OFBundleCache(cacheOpt.get())
+        .execute(key, this.configuration.output(), this::writeTo);
     }
+    return this.writeTo(this.configuration.output());
   }
 
-  private void encodePackageImports()
-  {
-    if (this.packageImports.isEmpty()) {
-      this.headers.remove("Import-Package");
-    } else {
-      this.headers.put(
-        "Import-Package",
-        this.packageImports.stream()
-          .sorted()
-          .map(OFBundleWriter::encodePackageImport)
-          .collect(Collectors.joining(","))
-      );
-    }
-  }
-
-  private byte[] serializeManifest()
+  private OFBundleWriteResult writeTo(
+    final OFBundleOutputTargetType target)
     throws IOException
   {
-    try (var outputStream = new ByteArrayOutputStream()) {
-      try (var writer = new BufferedWriter(
-        new OutputStreamWriter(outputStream, UTF_8))) {
-        writer.append("Manifest-Version: 1.0");
-        writer.append('\n');
+    try (var channel = OFBundleOutputChannel.open(target)) {
+      if (this.configuration.parallelism() > 1) {
+        return new OFBundleParallelWriter(
+          channel.channel(),
+          this.contexts,
+          this.configuration,
+          this.openArchives
+        ).write(this.manifest, this.files.values());
+      }
 
-        for (final var entry : this.headers.entrySet()) {
-          encodeEntry(writer, entry);
+      /*
+       * Recording digests or computed packages in the manifest requires
+       * every entry to be read before the manifest (the first entry) is
+       * written, which the entry writer does in a separate pass.
+       */
+
+      try (var entries = new OFBundleEntryWriter(
+        channel.channel(),
+        this.contexts,
+        this.configuration,
+        this.openArchives)) {
+        entries.writeManifest(this.manifest, this.files.values());
+        for (final var entry : this.files.values()) {
+          entries.write(entry);
         }
-
-        writer.append('\n');
-        writer.flush();
-        return outputStream.toByteArray();
+        entries.finish();
+        return entries.result();
       }
     }
   }
-
-  private record StoreFile(
-    String name,
-    Path file,
-    OFBundleContentStorageMethod method)
-  {
-
-  }
-
-  private record PackageImport(
-    String name,
-    Optional<String> version)
-    implements Comparable<PackageImport>
-  {
-    @Override
-    public int compareTo(
-      final PackageImport other)
-    {
-      return Comparator.comparing(PackageImport::name)
-        .thenComparing(o -> o.version.orElse(""))
-        .compare(this, other);
-    }
-  }
-
-  private record PackageExport(
-    String name,
-    Optional<String> version,
-    List<String> uses)
-    implements Comparable<PackageExport>
-  {
-    @Override
-    public int compareTo(
-      final PackageExport other)
-    {
-      return Comparator.comparing(PackageExport::name)
-        .thenComparing(o -> o.version.orElse(""))
-        .thenComparing(o -> o.uses.toString())
-        .compare(this, other);
-    }
-  }
 }
@@ -0,0 +1,375 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal class file reader that finds the packages referenced by a
+ * class. References are taken from class constants, method type constants
+ * and name-and-type descriptors in the constant pool, from field and method
+ * descriptors, and from the types and values of runtime-visible annotations
+ * on the class, its fields and its methods. Together, these are the
+ * references that the JVM resolves when loading and linking the class.
+ * Only the constant pool is decoded eagerly; strings are decoded when they
+ * are referenced.
+ */
+
+final class OFClassFiles
+{
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int ACC_MODULE = 0x8000;
+
+  private static final int TAG_UTF8 = 1;
+  private static final int TAG_INTEGER = 3;
+  private static final int TAG_FLOAT = 4;
+  private static final int TAG_LONG = 5;
+  private static final int TAG_DOUBLE = 6;
+  private static final int TAG_CLASS = 7;
+  private static final int TAG_STRING = 8;
+  private static final int TAG_FIELD_REF = 9;
+  private static final int TAG_METHOD_REF = 10;
+  private static final int TAG_INTERFACE_METHOD_REF = 11;
+  private static final int TAG_NAME_AND_TYPE = 12;
+  private static final int TAG_METHOD_HANDLE = 15;
+  private static final int TAG_METHOD_TYPE = 16;
+  private static final int TAG_DYNAMIC = 17;
+  private static final int TAG_INVOKE_DYNAMIC = 18;
+  private static final int TAG_MODULE = 19;
+  private static final int TAG_PACKAGE = 20;
+
+  private static final String VISIBLE_ANNOTATIONS =
+    "RuntimeVisibleAnnotations";
+
+  private final String name;
+  private final ByteBuffer data;
+  private final byte[] bytes;
+  private final int[] offsets;
+  private final String[] strings;
+  private final TreeSet<String> references;
+
+  private OFClassFiles(
+    final String inName,
+    final byte[] inBytes,
+    final int constantCount)
+  {
+    this.name = inName;
+    this.bytes = inBytes;
+    this.data = ByteBuffer.wrap(inBytes);
+    this.offsets = new int[constantCount];
+    this.strings = new String[constantCount];
+    this.references = new TreeSet<>();
+  }
+
+  /**
+   * The package of a class, and the packages that it references.
+   *
+   * @param packageName The package containing the class ({@code ""} for
+   *                    the unnamed package)
+   * @param references  The packages referenced by the class, excluding the
+   *                    class's own package
+   */
+
+  record ClassReferences(
+    String packageName,
+    Set<String> references)
+  {
+    ClassReferences
+    {
+      references = Set.copyOf(references);
+    }
+  }
+
+  /**
+   * Find the packages referenced by a class file.
+   *
+   * @param name  The name of the entry containing the class file, used in
+   *              error messages
+   * @param bytes The class file
+   *
+   * @return The references, or nothing if the class file describes a module
+   *
+   * @throws ZipException If the class file is malformed
+   */
+
+  static Optional<ClassReferences> scan(
+    final String name,
+    final byte[] bytes)
+    throws ZipException
+  {
+    try {
+      final var data = ByteBuffer.wrap(bytes);
+      if (data.getInt() != MAGIC) {
+        throw new ZipException("Entry '%s' is not a class file".formatted(name));
+      }
+      data.getShort();
+      data.getShort();
+
+      final var reader =
+        new OFClassFiles(name, bytes, Short.toUnsignedInt(data.getShort()));
+      reader.data.position(data.position());
+      return reader.read();
+    } catch (final BufferUnderflowException
+                   | IndexOutOfBoundsException
+                   | IllegalArgumentException e) {
+      throw new ZipException("Entry '%s' is a truncated class file".formatted(name));
+    }
+  }
+
+  private Optional<ClassReferences> read()
+    throws ZipException
+  {
+    this.readConstantPool();
+
+    final var access = this.u2();
+    final var thisClass = this.className(this.u2());
+    if ((access & ACC_MODULE) != 0) {
+      return Optional.empty();
+    }
+
+    this.u2();
+    final var interfaces = this.u2();
+    this.skip(interfaces * 2);
+
+    this.readMembers();
+    this.readMembers();
+    this.readAttributes();
+
+    final var packageName = packageOf(thisClass);
+    this.references.remove(packageName);
+    this.references.remove("");
+    return Optional.of(new ClassReferences(packageName, this.references));
+  }
+
+  private void readConstantPool()
+    throws ZipException
+  {
+    var index = 1;
+    while (index < this.offsets.length) {
+      this.offsets[index] = this.data.position();
+      final var tag = Byte.toUnsignedInt(this.data.get());
+      switch (tag) {
+        case TAG_UTF8 -> this.skip(this.u2());
+        case TAG_CLASS, TAG_STRING, TAG_METHOD_TYPE, TAG_MODULE, TAG_PACKAGE ->
+          this.skip(2);
+        case TAG_METHOD_HANDLE -> this.skip(3);
+        case TAG_INTEGER, TAG_FLOAT, TAG_FIELD_REF, TAG_METHOD_REF,
+             TAG_INTERFACE_METHOD_REF, TAG_NAME_AND_TYPE, TAG_DYNAMIC,
+             TAG_INVOKE_DYNAMIC -> this.skip(4);
+        case TAG_LONG, TAG_DOUBLE -> {
+          this.skip(8);
+          index = index + 1;
+        }
+        default -> throw new ZipException(
+          "Entry '%s' has an unrecognized constant pool tag %d"
+            .formatted(this.name, Integer.valueOf(tag)));
+      }
+      index = index + 1;
+    }
+
+    for (int constant = 1; constant < this.offsets.length; ++constant) {
+      final var offset = this.offsets[constant];
+      if (offset == 0) {
+        continue;
+      }
+      switch (Byte.toUnsignedInt(this.bytes[offset])) {
+        case TAG_CLASS -> this.addClass(this.string(this.u2At(offset + 1)));
+        case TAG_METHOD_TYPE ->
+          this.addDescriptor(this.string(this.u2At(offset + 1)));
+        case TAG_NAME_AND_TYPE ->
+          this.addDescriptor(this.string(this.u2At(offset + 3)));
+        default -> {
+          // No references to other classes
+        }
+      }
+    }
+  }
+
+  private void readMembers()
+    throws ZipException
+  {
+    final var count = this.u2();
+    for (int member = 0; member < count; ++member) {
+      this.u2();
+      this.u2();
+      this.addDescriptor(this.string(this.u2()));
+      this.readAttributes();
+    }
+  }
+
+  private void readAttributes()
+    throws ZipException
+  {
+    final var count = this.u2();
+    for (int attribute = 0; attribute < count; ++attribute) {
+      final var attributeName = this.string(this.u2());
+      final var length = this.data.getInt();
+      final var end = this.data.position() + length;
+      if (VISIBLE_ANNOTATIONS.equals(attributeName)) {
+        final var annotations = this.u2();
+        for (int index = 0; index < annotations; ++index) {
+          this.readAnnotation();
+        }
+      }
+      this.data.position(end);
+    }
+  }
+
+  private void readAnnotation()
+    throws ZipException
+  {
+    this.addDescriptor(this.string(this.u2()));
+    final var pairs = this.u2();
+    for (int index = 0; index < pairs; ++index) {
+      this.u2();
+      this.readElementValue();
+    }
+  }
+
+  private void readElementValue()
+    throws ZipException
+  {
+    final var tag = (char) this.data.get();
+    switch (tag) {
+      case 'e' -> {
+        this.addDescriptor(this.string(this.u2()));
+        this.u2();
+      }
+      case 'c' -> this.addDescriptor(this.string(this.u2()));
+      case '@' -> this.readAnnotation();
+      case '[' -> {
+        final var count = this.u2();
+        for (int index = 0; index < count; ++index) {
+          this.readElementValue();
+        }
+      }
+      default -> this.u2();
+    }
+  }
+
+  private void addClass(
+    final String internalName)
+  {
+    if (internalName.startsWith("[")) {
+      this.addDescriptor(internalName);
+    } else {
+      this.references.add(packageOf(internalName));
+    }
+  }
+
+  /**
+   * Add the package of every class named in a field or method descriptor.
+   * In a descriptor, {@code L} can only begin a class name, and class
+   * names are terminated by {@code ;}.
+   */
+
+  private void addDescriptor(
+    final String descriptor)
+  {
+    var index = descriptor.indexOf('L');
+    while (index >= 0) {
+      final var end = descriptor.indexOf(';', index);
+      if (end < 0) {
+        return;
+      }
+      this.references.add(packageOf(descriptor.substring(index + 1, end)));
+      index = descriptor.indexOf('L', end);
+    }
+  }
+
+  private String className(
+    final int index)
+    throws ZipException
+  {
+    return this.string(this.u2At(this.offsetOf(index, TAG_CLASS) + 1));
+  }
+
+  private String string(
+    final int index)
+    throws ZipException
+  {
+    var result = this.strings[index];
+    if (result == null) {
+      final var offset = this.offsetOf(index, TAG_UTF8);
+      final var length = this.u2At(offset + 1);
+      try (var stream = new DataInputStream(
+        new ByteArrayInputStream(this.bytes, offset + 1, length + 2))) {
+        result = stream.readUTF();
+      } catch (final IOException e) {
+        throw new ZipException(
+          "Entry '%s' has a malformed string constant".formatted(this.name));
+      }
+      this.strings[index] = result;
+    }
+    return result;
+  }
+
+  private int offsetOf(
+    final int index,
+    final int tag)
+    throws ZipException
+  {
+    final var offset = index < this.offsets.length ? this.offsets[index] : 0;
+    if (offset == 0 || Byte.toUnsignedInt(this.bytes[offset]) != tag) {
+      throw new ZipException(
+        "Entry '%s' has an invalid constant pool reference %d"
+          .formatted(this.name, Integer.valueOf(index)));
+    }
+    return offset;
+  }
+
+  private int u2()
+  {
+    return Short.toUnsignedInt(this.data.getShort());
+  }
+
+  private int u2At(
+    final int offset)
+  {
+    return Short.toUnsignedInt(this.data.getShort(offset));
+  }
+
+  private void skip(
+    final int count)
+  {
+    this.data.position(this.data.position() + count);
+  }
+
+  /**
+   * @param internalName A class name in internal form
+   *
+   * @return The name of the package containing the class
+   */
+
+  static String packageOf(
+    final String internalName)
+  {
+    final var slash = internalName.lastIndexOf('/');
+    if (slash < 0) {
+      return "";
+    }
+    return internalName.substring(0, slash).replace('/', '.');
+  }
+}
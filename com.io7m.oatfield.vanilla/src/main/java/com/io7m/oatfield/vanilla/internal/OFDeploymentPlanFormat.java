@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Constants and primitive encodings for the deployment plan format.
+ *
+ * <p>A plan file consists of a fixed header (magic number, major version,
+ * minor version), a body, and a trailing four-byte CRC32 of the header and
+ * body. The
+ * body begins with a table of all strings used in the plan, and all other
+ * sections refer to strings by their index in the table. Integers within the
+ * body are encoded as unsigned LEB128 values.</p>
+ */
+
+public final class OFDeploymentPlanFormat
+{
+  /**
+   * The magic number ('OFDP').
+   */
+
+  public static final int MAGIC = 0x4F464450;
+
+  /**
+   * The major version of the format.
+   */
+
+  public static final int VERSION_MAJOR = 1;
+
+  /**
+   * The minor version of the format.
+   */
+
+  public static final int VERSION_MINOR = 0;
+
+  /**
+   * A string attribute.
+   */
+
+  public static final int TYPE_STRING = 0;
+
+  /**
+   * A long attribute.
+   */
+
+  public static final int TYPE_LONG = 1;
+
+  /**
+   * A double attribute.
+   */
+
+  public static final int TYPE_DOUBLE = 2;
+
+  /**
+   * A version attribute.
+   */
+
+  public static final int TYPE_VERSION = 3;
+
+  /**
+   * A list attribute. The type of the list elements follows.
+   */
+
+  public static final int TYPE_LIST = 4;
+
+  private OFDeploymentPlanFormat()
+  {
+
+  }
+
+  /**
+   * Write an unsigned LEB128 integer.
+   *
+   * @param output The output
+   * @param value  The value
+   *
+   * @throws IOException On errors
+   */
+
+  public static void writeVarInt(
+    final DataOutput output,
+    final int value)
+    throws IOException
+  {
+    var remaining = value;
+    while ((remaining & ~0x7f) != 0) {
+      output.writeByte((remaining & 0x7f) | 0x80);
+      remaining >>>= 7;
+    }
+    output.writeByte(remaining);
+  }
+
+  /**
+   * Read an unsigned LEB128 integer.
+   *
+   * @param input The input
+   *
+   * @return The value, which is never negative
+   *
+   * @throws IOException On errors, or if the value does not fit in a
+   *                     non-negative {@code int}
+   */
+
+  public static int readVarInt(
+    final DataInput input)
+    throws IOException
+  {
+    var result = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      final var b = input.readUnsignedByte();
+      if (shift == 28 && (b & 0x7f) > 0x07) {
+        throw new IOException("Variable-length integer overflows.");
+      }
+      result |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed variable-length integer.");
+  }
+}
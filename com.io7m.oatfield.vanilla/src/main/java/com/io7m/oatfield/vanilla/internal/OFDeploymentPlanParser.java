@@ -0,0 +1,385 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFDeploymentPlan;
+import com.io7m.oatfield.api.OFDeploymentPlanBundle;
+import com.io7m.oatfield.api.OFDeploymentPlanParserType;
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.MAGIC;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_DOUBLE;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_LIST;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_LONG;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_STRING;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_VERSION;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.VERSION_MAJOR;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.readVarInt;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The default deployment plan parser.
+ */
+
+public final class OFDeploymentPlanParser
+  implements OFDeploymentPlanParserType
+{
+  private final InputStream input;
+  private final AtomicBoolean closed;
+  private String[] strings;
+  private OFPlanResource[] resources;
+  private Capability[] capabilities;
+  private Requirement[] requirements;
+
+  /**
+   * The default deployment plan parser.
+   *
+   * @param inInput The input stream
+   */
+
+  public OFDeploymentPlanParser(
+    final InputStream inInput)
+  {
+    this.input =
+      Objects.requireNonNull(inInput, "input");
+    this.closed =
+      new AtomicBoolean(false);
+    this.strings =
+      new String[0];
+    this.resources =
+      new OFPlanResource[0];
+    this.capabilities =
+      new Capability[0];
+    this.requirements =
+      new Requirement[0];
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      this.input.close();
+    }
+  }
+
+  private void checkNotClosed()
+  {
+    if (this.closed.get()) {
+      throw new IllegalStateException("Parser is closed!");
+    }
+  }
+
+  @Override
+  public OFDeploymentPlan execute()
+    throws IOException
+  {
+    this.checkNotClosed();
+
+    final var data = checkedBody(this.input.readAllBytes());
+    readHeader(data);
+    this.readStrings(data);
+    this.readResources(data);
+
+    final var bundles = this.readBundles(data);
+    final var wiring = this.readWiring(data);
+    if (data.available() != 0) {
+      throw new IOException("Trailing garbage in deployment plan.");
+    }
+    return new OFDeploymentPlan(bundles, wiring);
+  }
+
+  private static DataInputStream checkedBody(
+    final byte[] bytes)
+    throws IOException
+  {
+    if (bytes.length < 12) {
+      throw new IOException("Deployment plan is truncated.");
+    }
+
+    final var bodySize = bytes.length - 4;
+    final var crc = new CRC32();
+    crc.update(bytes, 0, bodySize);
+    final var expected =
+      Integer.toUnsignedLong(ByteBuffer.wrap(bytes, bodySize, 4).getInt());
+    if (crc.getValue() != expected) {
+      throw new IOException(
+        "Deployment plan checksum mismatch (expected %08x, received %08x)."
+          .formatted(Long.valueOf(expected), Long.valueOf(crc.getValue()))
+      );
+    }
+    return new DataInputStream(new ByteArrayInputStream(bytes, 0, bodySize));
+  }
+
+  private static void readHeader(
+    final DataInputStream data)
+    throws IOException
+  {
+    final var magic = data.readInt();
+    if (magic != MAGIC) {
+      throw new IOException(
+        "Unrecognized deployment plan magic number %08x."
+          .formatted(Integer.valueOf(magic))
+      );
+    }
+
+    final var major = data.readUnsignedShort();
+    data.readUnsignedShort();
+    if (major != VERSION_MAJOR) {
+      throw new IOException(
+        "Unsupported deployment plan version %d (supported: %d)."
+          .formatted(Integer.valueOf(major), Integer.valueOf(VERSION_MAJOR))
+      );
+    }
+  }
+
+  private void readStrings(
+    final DataInputStream data)
+    throws IOException
+  {
+    this.strings = new String[readCount(data)];
+    for (int index = 0; index < this.strings.length; ++index) {
+      final var text = new byte[readCount(data)];
+      data.readFully(text);
+      this.strings[index] = UTF_8.decode(ByteBuffer.wrap(text)).toString();
+    }
+  }
+
+  private void readResources(
+    final DataInputStream data)
+    throws IOException
+  {
+    this.resources = new OFPlanResource[readCount(data)];
+    for (int index = 0; index < this.resources.length; ++index) {
+      this.resources[index] = new OFPlanResource();
+    }
+
+    this.capabilities = new Capability[readCount(data)];
+    for (int index = 0; index < this.capabilities.length; ++index) {
+      this.capabilities[index] = new OFPlanCapability(
+        element(this.resources, readVarInt(data)),
+        this.readString(data),
+        this.readDirectives(data),
+        this.readAttributes(data)
+      );
+    }
+
+    this.requirements = new Requirement[readCount(data)];
+    for (int index = 0; index < this.requirements.length; ++index) {
+      this.requirements[index] = new OFPlanRequirement(
+        element(this.resources, readVarInt(data)),
+        this.readString(data),
+        this.readDirectives(data),
+        this.readAttributes(data)
+      );
+    }
+
+    for (final var resource : this.resources) {
+      final var capCount = readCount(data);
+      for (int index = 0; index < capCount; ++index) {
+        resource.addCapability(element(this.capabilities, readVarInt(data)));
+      }
+      final var reqCount = readCount(data);
+      for (int index = 0; index < reqCount; ++index) {
+        resource.addRequirement(element(this.requirements, readVarInt(data)));
+      }
+    }
+  }
+
+  private List<OFDeploymentPlanBundle> readBundles(
+    final DataInputStream data)
+    throws IOException
+  {
+    final var bundleCount = readCount(data);
+    final var bundles = new ArrayList<OFDeploymentPlanBundle>(bundleCount);
+    for (int index = 0; index < bundleCount; ++index) {
+      final var resource = element(this.resources, readVarInt(data));
+      final var name = this.readString(data);
+      final var version = this.readString(data);
+      final Optional<URI> location;
+      if (data.readBoolean()) {
+        location = Optional.of(parseURI(this.readString(data)));
+      } else {
+        location = Optional.empty();
+      }
+      bundles.add(
+        new OFDeploymentPlanBundle(resource, name, version, location));
+    }
+    return bundles;
+  }
+
+  private Map<Resource, List<Wire>> readWiring(
+    final DataInputStream data)
+    throws IOException
+  {
+    final var keyCount = readCount(data);
+    final var wiring = new HashMap<Resource, List<Wire>>(keyCount);
+    for (int index = 0; index < keyCount; ++index) {
+      final var resource = element(this.resources, readVarInt(data));
+      final var wireCount = readCount(data);
+      final var wires = new ArrayList<Wire>(wireCount);
+      for (int w = 0; w < wireCount; ++w) {
+        final var requirer =
+          element(this.resources, readVarInt(data));
+        final var requirement =
+          element(this.requirements, readVarInt(data));
+        final var provider =
+          element(this.resources, readVarInt(data));
+        final var capability =
+          element(this.capabilities, readVarInt(data));
+        wires.add(new OFPlanWire(capability, requirement, provider, requirer));
+      }
+      wiring.put(resource, List.copyOf(wires));
+    }
+    return wiring;
+  }
+
+  private static URI parseURI(
+    final String text)
+    throws IOException
+  {
+    try {
+      return URI.create(text);
+    } catch (final IllegalArgumentException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Read the number of elements that follow. Every element occupies at
+   * least one byte, so a count larger than the remaining input cannot be
+   * valid, and is rejected before anything is allocated for it.
+   */
+
+  private static int readCount(
+    final DataInputStream data)
+    throws IOException
+  {
+    final var count = readVarInt(data);
+    final var remaining = data.available();
+    if (count > remaining) {
+      throw new IOException(
+        "Deployment plan count %d exceeds the %d bytes remaining."
+          .formatted(Integer.valueOf(count), Integer.valueOf(remaining))
+      );
+    }
+    return count;
+  }
+
+  private static <T> T element(
+    final T[] array,
+    final int index)
+    throws IOException
+  {
+    if (index < 0 || index >= array.length) {
+      throw new IOException(
+        "Deployment plan index %d out of range [0, %d)."
+          .formatted(Integer.valueOf(index), Integer.valueOf(array.length))
+      );
+    }
+    return array[index];
+  }
+
+  private String readString(
+    final DataInputStream data)
+    throws IOException
+  {
+    return element(this.strings, readVarInt(data));
+  }
+
+  private Map<String, String> readDirectives(
+    final DataInputStream data)
+    throws IOException
+  {
+    final var count = readCount(data);
+    final var directives = new HashMap<String, String>(count);
+    for (int index = 0; index < count; ++index) {
+      directives.put(this.readString(data), this.readString(data));
+    }
+    return directives;
+  }
+
+  private Map<String, Object> readAttributes(
+    final DataInputStream data)
+    throws IOException
+  {
+    final var count = readCount(data);
+    final var attributes = new HashMap<String, Object>(count);
+    for (int index = 0; index < count; ++index) {
+      final var name = this.readString(data);
+      final var type = data.readUnsignedByte();
+      if (type == TYPE_LIST) {
+        final var elementType = data.readUnsignedByte();
+        final var size = readCount(data);
+        final var values = new ArrayList<>(size);
+        for (int e = 0; e < size; ++e) {
+          values.add(this.readScalar(data, elementType));
+        }
+        attributes.put(name, List.copyOf(values));
+      } else {
+        attributes.put(name, this.readScalar(data, type));
+      }
+    }
+    return attributes;
+  }
+
+  private Object readScalar(
+    final DataInputStream data,
+    final int type)
+    throws IOException
+  {
+    return switch (type) {
+      case TYPE_STRING -> this.readString(data);
+      case TYPE_LONG -> Long.valueOf(data.readLong());
+      case TYPE_DOUBLE -> Double.valueOf(data.readDouble());
+      case TYPE_VERSION -> parseVersion(this.readString(data));
+      default -> throw new IOException(
+        "Unrecognized attribute type %d.".formatted(Integer.valueOf(type))
+      );
+    };
+  }
+
+  private static Version parseVersion(
+    final String text)
+    throws IOException
+  {
+    try {
+      return Version.parseVersion(text);
+    } catch (final IllegalArgumentException e) {
+      throw new IOException(e);
+    }
+  }
+}
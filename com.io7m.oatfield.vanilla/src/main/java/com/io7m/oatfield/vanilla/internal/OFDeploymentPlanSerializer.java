@@ -0,0 +1,409 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFDeploymentPlan;
+import com.io7m.oatfield.api.OFDeploymentPlanSerializerType;
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.MAGIC;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_DOUBLE;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_LIST;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_LONG;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_STRING;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.TYPE_VERSION;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.VERSION_MAJOR;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.VERSION_MINOR;
+import static com.io7m.oatfield.vanilla.internal.OFDeploymentPlanFormat.writeVarInt;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The default deployment plan serializer. The string, resource, capability,
+ * and requirement tables are built for a single plan, so a serializer is
+ * closed once it has written its plan.
+ */
+
+public final class OFDeploymentPlanSerializer
+  implements OFDeploymentPlanSerializerType
+{
+  private final OutputStream output;
+  private final AtomicBoolean closed;
+  private final Map<String, Integer> strings;
+  private final List<String> stringsOrdered;
+  private final Map<Resource, Integer> resources;
+  private final Map<Capability, Integer> capabilities;
+  private final Map<Requirement, Integer> requirements;
+  private final List<Capability> capabilitiesOrdered;
+  private final List<Requirement> requirementsOrdered;
+
+  /**
+   * The default deployment plan serializer.
+   *
+   * @param inOutput The output stream
+   */
+
+  public OFDeploymentPlanSerializer(
+    final OutputStream inOutput)
+  {
+    this.output =
+      Objects.requireNonNull(inOutput, "output");
+    this.closed =
+      new AtomicBoolean(false);
+    this.strings =
+      new HashMap<>();
+    this.stringsOrdered =
+      new ArrayList<>();
+    this.resources =
+      new HashMap<>();
+    this.capabilities =
+      new IdentityHashMap<>();
+    this.requirements =
+      new IdentityHashMap<>();
+    this.capabilitiesOrdered =
+      new ArrayList<>();
+    this.requirementsOrdered =
+      new ArrayList<>();
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      this.output.close();
+    }
+  }
+
+  @Override
+  public void execute(
+    final OFDeploymentPlan plan)
+    throws IOException
+  {
+    Objects.requireNonNull(plan, "plan");
+
+    if (!this.closed.compareAndSet(false, true)) {
+      throw new IllegalStateException("Serializer is closed!");
+    }
+
+    try {
+      this.write(plan);
+    } finally {
+      this.output.close();
+    }
+  }
+
+  private void write(
+    final OFDeploymentPlan plan)
+    throws IOException
+  {
+    final var resourceList = this.registerResources(plan);
+
+    final var body = new ByteArrayOutputStream(4096);
+    final var bodyData = new DataOutputStream(body);
+    this.writeResources(bodyData, resourceList);
+    this.writeBundles(bodyData, plan);
+    this.writeWiring(bodyData, plan);
+    bodyData.flush();
+
+    final var buffered = new BufferedOutputStream(this.output);
+    final var checked = new CheckedOutputStream(buffered, new CRC32());
+    final var data = new DataOutputStream(checked);
+    data.writeInt(MAGIC);
+    data.writeShort(VERSION_MAJOR);
+    data.writeShort(VERSION_MINOR);
+
+    writeVarInt(data, this.stringsOrdered.size());
+    for (final var text : this.stringsOrdered) {
+      final var bytes = text.getBytes(UTF_8);
+      writeVarInt(data, bytes.length);
+      data.write(bytes);
+    }
+    body.writeTo(data);
+    data.flush();
+
+    final var trailer = new DataOutputStream(buffered);
+    trailer.writeInt((int) checked.getChecksum().getValue());
+    trailer.flush();
+  }
+
+  private List<Resource> registerResources(
+    final OFDeploymentPlan plan)
+  {
+    final var resourceSet =
+      new LinkedHashSet<>(OFDeploymentPlanning.resourcesOf(plan.wiring()));
+    for (final var bundle : plan.bundles()) {
+      resourceSet.add(bundle.resource());
+    }
+    for (final var wires : plan.wiring().values()) {
+      for (final var wire : wires) {
+        resourceSet.add(wire.getCapability().getResource());
+        resourceSet.add(wire.getRequirement().getResource());
+      }
+    }
+
+    final var resourceList = new ArrayList<>(resourceSet);
+    for (final var resource : resourceList) {
+      this.resources.put(resource, Integer.valueOf(this.resources.size()));
+    }
+    for (final var resource : resourceList) {
+      for (final var capability : resource.getCapabilities(null)) {
+        this.capabilityIndex(capability);
+      }
+      for (final var requirement : resource.getRequirements(null)) {
+        this.requirementIndex(requirement);
+      }
+    }
+
+    /*
+     * Wires may refer to capabilities that do not appear in the capability
+     * lists of any resource (such as capabilities hosted by fragments), so
+     * these must be registered before the capability table is written.
+     */
+
+    for (final var wires : plan.wiring().values()) {
+      for (final var wire : wires) {
+        this.capabilityIndex(wire.getCapability());
+        this.requirementIndex(wire.getRequirement());
+      }
+    }
+    return resourceList;
+  }
+
+  private void writeResources(
+    final DataOutputStream data,
+    final List<Resource> resourceList)
+    throws IOException
+  {
+    writeVarInt(data, resourceList.size());
+
+    writeVarInt(data, this.capabilitiesOrdered.size());
+    for (final var capability : this.capabilitiesOrdered) {
+      writeVarInt(data, this.resourceIndex(capability.getResource()));
+      this.writeString(data, capability.getNamespace());
+      this.writeDirectives(data, capability.getDirectives());
+      this.writeAttributes(data, capability.getAttributes());
+    }
+
+    writeVarInt(data, this.requirementsOrdered.size());
+    for (final var requirement : this.requirementsOrdered) {
+      writeVarInt(data, this.resourceIndex(requirement.getResource()));
+      this.writeString(data, requirement.getNamespace());
+      this.writeDirectives(data, requirement.getDirectives());
+      this.writeAttributes(data, requirement.getAttributes());
+    }
+
+    for (final var resource : resourceList) {
+      final var caps = resource.getCapabilities(null);
+      writeVarInt(data, caps.size());
+      for (final var capability : caps) {
+        writeVarInt(data, this.capabilityIndex(capability));
+      }
+      final var reqs = resource.getRequirements(null);
+      writeVarInt(data, reqs.size());
+      for (final var requirement : reqs) {
+        writeVarInt(data, this.requirementIndex(requirement));
+      }
+    }
+  }
+
+  private void writeBundles(
+    final DataOutputStream data,
+    final OFDeploymentPlan plan)
+    throws IOException
+  {
+    writeVarInt(data, plan.bundles().size());
+    for (final var bundle : plan.bundles()) {
+      writeVarInt(data, this.resourceIndex(bundle.resource()));
+      this.writeString(data, bundle.symbolicName());
+      this.writeString(data, bundle.version());
+      if (bundle.location().isPresent()) {
+        data.writeBoolean(true);
+        this.writeString(data, bundle.location().get().toString());
+      } else {
+        data.writeBoolean(false);
+      }
+    }
+  }
+
+  private void writeWiring(
+    final DataOutputStream data,
+    final OFDeploymentPlan plan)
+    throws IOException
+  {
+    final var wiring = plan.wiring();
+    final var keys = new ArrayList<>(wiring.keySet());
+    keys.sort((x, y) -> Integer.compare(
+      this.resourceIndex(x),
+      this.resourceIndex(y)));
+
+    writeVarInt(data, keys.size());
+    for (final var resource : keys) {
+      final var wires = wiring.get(resource);
+      writeVarInt(data, this.resourceIndex(resource));
+      writeVarInt(data, wires.size());
+      for (final var wire : wires) {
+        writeVarInt(data, this.resourceIndex(wire.getRequirer()));
+        writeVarInt(data, this.requirementIndex(wire.getRequirement()));
+        writeVarInt(data, this.resourceIndex(wire.getProvider()));
+        writeVarInt(data, this.capabilityIndex(wire.getCapability()));
+      }
+    }
+  }
+
+  private void writeDirectives(
+    final DataOutputStream data,
+    final Map<String, String> directives)
+    throws IOException
+  {
+    final var sorted = new TreeMap<>(directives);
+    writeVarInt(data, sorted.size());
+    for (final var entry : sorted.entrySet()) {
+      this.writeString(data, entry.getKey());
+      this.writeString(data, entry.getValue());
+    }
+  }
+
+  private void writeAttributes(
+    final DataOutputStream data,
+    final Map<String, Object> attributes)
+    throws IOException
+  {
+    final var sorted = new TreeMap<>(attributes);
+    writeVarInt(data, sorted.size());
+    for (final var entry : sorted.entrySet()) {
+      this.writeString(data, entry.getKey());
+      this.writeAttribute(data, entry.getValue());
+    }
+  }
+
+  private void writeAttribute(
+    final DataOutputStream data,
+    final Object value)
+    throws IOException
+  {
+    if (value instanceof final List<?> list) {
+      data.writeByte(TYPE_LIST);
+      data.writeByte(list.isEmpty() ? TYPE_STRING : typeOf(list.get(0)));
+      writeVarInt(data, list.size());
+      for (final var element : list) {
+        this.writeScalar(data, element);
+      }
+      return;
+    }
+    data.writeByte(typeOf(value));
+    this.writeScalar(data, value);
+  }
+
+  private static int typeOf(
+    final Object value)
+  {
+    if (value instanceof Long) {
+      return TYPE_LONG;
+    }
+    if (value instanceof Double) {
+      return TYPE_DOUBLE;
+    }
+    if (value instanceof Version) {
+      return TYPE_VERSION;
+    }
+    return TYPE_STRING;
+  }
+
+  private void writeScalar(
+    final DataOutputStream data,
+    final Object value)
+    throws IOException
+  {
+    if (value instanceof final Long x) {
+      data.writeLong(x.longValue());
+    } else if (value instanceof final Double x) {
+      data.writeDouble(x.doubleValue());
+    } else {
+      this.writeString(data, value.toString());
+    }
+  }
+
+  private void writeString(
+    final DataOutputStream data,
+    final String text)
+    throws IOException
+  {
+    var index = this.strings.get(text);
+    if (index == null) {
+      index = Integer.valueOf(this.stringsOrdered.size());
+      this.strings.put(text, index);
+      this.stringsOrdered.add(text);
+    }
+    writeVarInt(data, index.intValue());
+  }
+
+  private int resourceIndex(
+    final Resource resource)
+  {
+    final var index = this.resources.get(resource);
+    if (index == null) {
+      throw new IllegalStateException(
+        "Resource %s is not part of the plan.".formatted(resource)
+      );
+    }
+    return index.intValue();
+  }
+
+  private int capabilityIndex(
+    final Capability capability)
+  {
+    var index = this.capabilities.get(capability);
+    if (index == null) {
+      index = Integer.valueOf(this.capabilitiesOrdered.size());
+      this.capabilities.put(capability, index);
+      this.capabilitiesOrdered.add(capability);
+    }
+    return index.intValue();
+  }
+
+  private int requirementIndex(
+    final Requirement requirement)
+  {
+    var index = this.requirements.get(requirement);
+    if (index == null) {
+      index = Integer.valueOf(this.requirementsOrdered.size());
+      this.requirements.put(requirement, index);
+      this.requirementsOrdered.add(requirement);
+    }
+    return index.intValue();
+  }
+}
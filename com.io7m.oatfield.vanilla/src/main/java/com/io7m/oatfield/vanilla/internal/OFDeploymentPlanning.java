@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFDeploymentPlan;
+import com.io7m.oatfield.api.OFDeploymentPlanBundle;
+import org.osgi.framework.Version;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Functions to produce deployment plans from resolver results.
+ */
+
+public final class OFDeploymentPlanning
+{
+  private static final Comparator<Keyed> KEYED_ORDER =
+    Comparator.comparing(Keyed::name)
+      .thenComparing(Keyed::version)
+      .thenComparing(Keyed::location)
+      .thenComparingInt(Keyed::index);
+
+  private OFDeploymentPlanning()
+  {
+
+  }
+
+  /**
+   * Create a deployment plan from the result of a resolver.
+   *
+   * @param wiring The resolved set of resource wires
+   *
+   * @return A deployment plan
+   */
+
+  public static OFDeploymentPlan createPlan(
+    final Map<Resource, List<Wire>> wiring)
+  {
+    Objects.requireNonNull(wiring, "wiring");
+
+    final var bundles = new ArrayList<OFDeploymentPlanBundle>();
+    final var order =
+      OFBundleInstallPlanning.createInstallPlan(wiring)
+        .installOrder();
+
+    for (final var resource : order) {
+      bundles.add(
+        new OFDeploymentPlanBundle(
+          resource,
+          OFResourceIdentity.symbolicNameOf(resource),
+          OFResourceIdentity.versionOf(resource),
+          OFResourceIdentity.locationOf(resource)
+        )
+      );
+    }
+    return new OFDeploymentPlan(bundles, wiring);
+  }
+
+  /**
+   * @param wiring The resolved set of resource wires
+   *
+   * @return The set of all resources mentioned in the given wiring, ordered
+   * by symbolic name, then by version, then by location; resources that
+   * agree on all three keep the order in which they are first mentioned in
+   * the wiring. Sorting takes {@code O(n log n)} time in the number of
+   * resources.
+   */
+
+  public static List<Resource> resourcesOf(
+    final Map<Resource, List<Wire>> wiring)
+  {
+    final var resources = new LinkedHashSet<Resource>(wiring.keySet());
+    for (final var wires : wiring.values()) {
+      for (final var wire : wires) {
+        resources.add(wire.getRequirer());
+        resources.add(wire.getProvider());
+      }
+    }
+
+    final var keyed = new ArrayList<Keyed>(resources.size());
+    for (final var resource : resources) {
+      keyed.add(
+        new Keyed(
+          OFResourceIdentity.symbolicNameOf(resource),
+          versionOf(resource),
+          OFResourceIdentity.locationOf(resource)
+            .map(URI::toString)
+            .orElse(""),
+          keyed.size(),
+          resource
+        )
+      );
+    }
+    keyed.sort(KEYED_ORDER);
+
+    final var sorted = new ArrayList<Resource>(keyed.size());
+    for (final var k : keyed) {
+      sorted.add(k.resource);
+    }
+    return sorted;
+  }
+
+  private static Version versionOf(
+    final Resource resource)
+  {
+    try {
+      return Version.parseVersion(OFResourceIdentity.versionOf(resource));
+    } catch (final IllegalArgumentException e) {
+      return Version.emptyVersion;
+    }
+  }
+
+  private record Keyed(
+    String name,
+    Version version,
+    String location,
+    int index,
+    Resource resource)
+  {
+
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+
+/**
+ * A channel that updates a set of digests with every byte written to an
+ * underlying channel. Closing this channel does not close the underlying
+ * channel.
+ */
+
+final class OFDigestChannel implements WritableByteChannel
+{
+  private final WritableByteChannel channel;
+  private final OFDigests digests;
+
+  /**
+   * A channel that updates a set of digests.
+   *
+   * @param inChannel The underlying channel
+   * @param inDigests The digests
+   */
+
+  OFDigestChannel(
+    final WritableByteChannel inChannel,
+    final OFDigests inDigests)
+  {
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.digests =
+      Objects.requireNonNull(inDigests, "digests");
+  }
+
+  @Override
+  public int write(
+    final ByteBuffer source)
+    throws IOException
+  {
+    final var start = source.position();
+    final var written = this.channel.write(source);
+    this.digests.update(source.duplicate().position(start).limit(start + written));
+    return written;
+  }
+
+  @Override
+  public boolean isOpen()
+  {
+    return this.channel.isOpen();
+  }
+
+  @Override
+  public void close()
+  {
+    // The underlying channel is owned by the caller
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleDigest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_STORED;
+
+/**
+ * A set of message digests updated together, optionally also capturing
+ * the bytes that they are updated with so that the content of an entry can
+ * be analysed in the same pass that digests and compresses it. A set with
+ * no digests that does not capture ignores all updates, so that callers
+ * can update digests unconditionally.
+ */
+
+final class OFDigests
+{
+  private final List<String> algorithms;
+  private final MessageDigest[] digests;
+  private final ByteArrayOutputStream capture;
+
+  /**
+   * A set of message digests updated together.
+   *
+   * @param inAlgorithms The digest algorithms
+   */
+
+  OFDigests(
+    final List<String> inAlgorithms)
+  {
+    this(inAlgorithms, false);
+  }
+
+  /**
+   * A set of message digests updated together.
+   *
+   * @param inAlgorithms The digest algorithms
+   * @param inCapture    {@code true} if updates should also be captured
+   */
+
+  OFDigests(
+    final List<String> inAlgorithms,
+    final boolean inCapture)
+  {
+    this.algorithms = List.copyOf(inAlgorithms);
+    this.digests = new MessageDigest[this.algorithms.size()];
+    this.capture = inCapture ? new ByteArrayOutputStream() : null;
+
+    for (int index = 0; index < this.digests.length; ++index) {
+      try {
+        this.digests[index] =
+          MessageDigest.getInstance(this.algorithms.get(index));
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if there are no digests in this set
+   */
+
+  boolean isEmpty()
+  {
+    return this.digests.length == 0;
+  }
+
+  /**
+   * @return {@code true} if there are no digests in this set and updates
+   * are not captured
+   */
+
+  boolean isIdle()
+  {
+    return this.isEmpty() && this.capture == null;
+  }
+
+  /**
+   * @return The bytes captured since the last call to this method
+   */
+
+  byte[] captured()
+  {
+    if (this.capture == null) {
+      return new byte[0];
+    }
+    final var result = this.capture.toByteArray();
+    this.capture.reset();
+    return result;
+  }
+
+  /**
+   * Reset all digests.
+   */
+
+  void reset()
+  {
+    for (final var digest : this.digests) {
+      digest.reset();
+    }
+    if (this.capture != null) {
+      this.capture.reset();
+    }
+  }
+
+  /**
+   * Update all digests with the remaining bytes of the given buffer. The
+   * buffer's position is not changed.
+   *
+   * @param data The data
+   */
+
+  void update(
+    final ByteBuffer data)
+  {
+    for (final var digest : this.digests) {
+      digest.update(data.duplicate());
+    }
+    if (this.capture != null) {
+      final var bytes = new byte[data.remaining()];
+      data.duplicate().get(bytes);
+      this.capture.writeBytes(bytes);
+    }
+  }
+
+  /**
+   * Update all digests.
+   *
+   * @param data   The data
+   * @param offset The offset of the data
+   * @param length The length of the data
+   */
+
+  void update(
+    final byte[] data,
+    final int offset,
+    final int length)
+  {
+    for (final var digest : this.digests) {
+      digest.update(data, offset, length);
+    }
+    if (this.capture != null) {
+      this.capture.write(data, offset, length);
+    }
+  }
+
+  /**
+   * Update all digests with the uncompressed content of an entry in an
+   * existing archive. Deflated entries are inflated; nothing is written.
+   *
+   * @param source     The archive channel
+   * @param dataOffset The offset of the entry data
+   * @param entry      The entry
+   * @param scratch    A scratch buffer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void updateFromEntry(
+    final FileChannel source,
+    final long dataOffset,
+    final OFZipEntry entry,
+    final byte[] scratch)
+    throws IOException
+  {
+    if (this.isIdle()) {
+      return;
+    }
+
+    final var input = ByteBuffer.allocate(scratch.length);
+    final var inflater = new Inflater(true);
+    try {
+      var at = dataOffset;
+      var remaining = entry.compressedSize();
+      while (remaining > 0L) {
+        input.clear().limit((int) Math.min(input.capacity(), remaining));
+        while (input.hasRemaining()) {
+          if (source.read(input, at + input.position()) == -1) {
+            throw new ZipException("Unexpected end of source data");
+          }
+        }
+        input.flip();
+        at += input.remaining();
+        remaining -= input.remaining();
+
+        if (entry.method() == METHOD_STORED) {
+          this.update(input);
+        } else {
+          inflater.setInput(input);
+          this.inflate(inflater, scratch);
+        }
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private void inflate(
+    final Inflater inflater,
+    final byte[] scratch)
+    throws ZipException
+  {
+    try {
+      while (!inflater.needsInput() && !inflater.finished()) {
+        final var r = inflater.inflate(scratch);
+        if (r == 0 && inflater.needsDictionary()) {
+          throw new ZipException("Entry data requires a preset dictionary");
+        }
+        if (r == 0 && !inflater.needsInput() && !inflater.finished()) {
+          throw new ZipException("Entry data could not be inflated");
+        }
+        this.update(scratch, 0, r);
+      }
+    } catch (final DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    }
+  }
+
+  /**
+   * Complete all digests, resetting them.
+   *
+   * @return The digest values
+   */
+
+  List<OFBundleDigest> finish()
+  {
+    final var results = new ArrayList<OFBundleDigest>(this.digests.length);
+    for (int index = 0; index < this.digests.length; ++index) {
+      results.add(
+        OFBundleDigest.of(
+          this.algorithms.get(index),
+          this.digests[index].digest()
+        )
+      );
+    }
+    return List.copyOf(results);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import com.io7m.oatfield.api.OFBundleClause;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A parser for the clause syntax of OSGi manifest headers:
+ * {@code name;name;attribute=value;directive:=value, ...}. Values may be
+ * quoted, and quoted values may contain separators.
+ */
+
+final class OFManifestClauses
+{
+  private OFManifestClauses()
+  {
+
+  }
+
+  /**
+   * Parse the clauses of a header value.
+   *
+   * @param text The header value
+   *
+   * @return The clauses
+   *
+   * @throws IllegalArgumentException If the header value is malformed
+   */
+
+  static List<OFBundleClause> parse(
+    final String text)
+  {
+    Objects.requireNonNull(text, "text");
+
+    final var clauses = new ArrayList<OFBundleClause>();
+    for (final var clause : split(text, text, ',')) {
+      if (!clause.isBlank()) {
+        clauses.add(parseClause(text, clause));
+      }
+    }
+    return List.copyOf(clauses);
+  }
+
+  private static OFBundleClause parseClause(
+    final String text,
+    final String clause)
+  {
+    final var names = new ArrayList<String>();
+    final var attributes = new TreeMap<String, String>();
+    final var directives = new TreeMap<String, String>();
+
+    for (final var rawPart : split(text, clause, ';')) {
+      final var part = rawPart.trim();
+      final var equals = indexOfUnquoted(text, part, '=');
+      if (equals < 0) {
+        if (!attributes.isEmpty() || !directives.isEmpty() || part.isEmpty()) {
+          throw malformed(text, clause);
+        }
+        names.add(part);
+        continue;
+      }
+
+      final var value = unquote(part.substring(equals + 1).trim());
+      if (equals > 0 && part.charAt(equals - 1) == ':') {
+        directives.put(part.substring(0, equals - 1).trim(), value);
+      } else {
+        var key = part.substring(0, equals).trim();
+        final var typeStart = key.indexOf(':');
+        if (typeStart >= 0) {
+          key = key.substring(0, typeStart).trim();
+        }
+        attributes.put(key, value);
+      }
+    }
+
+    if (names.isEmpty()) {
+      throw malformed(text, clause);
+    }
+    return new OFBundleClause(names, attributes, directives);
+  }
+
+  private static IllegalArgumentException malformed(
+    final String text,
+    final String clause)
+  {
+    return new IllegalArgumentException(
+      "Malformed clause '%s' in header value '%s'"
+        .formatted(clause.trim(), text)
+    );
+  }
+
+  private static List<String> split(
+    final String header,
+    final String text,
+    final char separator)
+  {
+    final var results = new ArrayList<String>();
+    var quoted = false;
+    var start = 0;
+    var index = 0;
+    while (index < text.length()) {
+      final var c = text.charAt(index);
+      if (quoted && c == '\\') {
+        index += 2;
+        continue;
+      }
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (!quoted && c == separator) {
+        results.add(text.substring(start, index));
+        start = index + 1;
+      }
+      ++index;
+    }
+    if (quoted) {
+      throw malformed(header, text);
+    }
+    results.add(text.substring(Math.min(start, text.length())));
+    return results;
+  }
+
+  private static int indexOfUnquoted(
+    final String header,
+    final String text,
+    final char target)
+  {
+    var quoted = false;
+    var index = 0;
+    while (index < text.length()) {
+      final var c = text.charAt(index);
+      if (quoted && c == '\\') {
+        index += 2;
+        continue;
+      }
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (!quoted && c == target) {
+        return index;
+      }
+      ++index;
+    }
+    if (quoted) {
+      throw malformed(header, text);
+    }
+    return -1;
+  }
+
+  private static String unquote(
+    final String value)
+  {
+    if (value.length() < 2
+        || value.charAt(0) != '"'
+        || value.charAt(value.length() - 1) != '"') {
+      return value;
+    }
+
+    final var inner = value.substring(1, value.length() - 1);
+    if (inner.indexOf('\\') < 0) {
+      return inner;
+    }
+
+    final var result = new StringBuilder(inner.length());
+    var escaped = false;
+    for (int index = 0; index < inner.length(); ++index) {
+      final var c = inner.charAt(index);
+      if (!escaped && c == '\\') {
+        escaped = true;
+      } else {
+        result.append(c);
+        escaped = false;
+      }
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An encoder that writes jar manifest headers directly as UTF-8 into a
+ * reusable byte array. Lines are limited to 72 bytes (excluding the line
+ * terminator) as required by the jar file specification, and continuation
+ * lines are only ever started between complete UTF-8 sequences. Unpaired
+ * surrogates are encoded as {@code '?'}.
+ */
+
+public final class OFManifestEncoder
+{
+  /**
+   * The maximum length of a manifest line in bytes.
+   */
+
+  public static final int LINE_LIMIT = 72;
+
+  private byte[] data;
+  private int size;
+  private int lineBytes;
+
+  /**
+   * An encoder that writes jar manifest headers.
+   */
+
+  public OFManifestEncoder()
+  {
+    this.data = new byte[4096];
+  }
+
+  /**
+   * Discard all encoded data, retaining the allocated storage.
+   *
+   * @return this
+   */
+
+  public OFManifestEncoder reset()
+  {
+    this.size = 0;
+    this.lineBytes = 0;
+    return this;
+  }
+
+  /**
+   * Encode a complete header.
+   *
+   * @param name  The header name
+   * @param value The header value
+   *
+   * @return this
+   */
+
+  public OFManifestEncoder header(
+    final String name,
+    final CharSequence value)
+  {
+    return this.beginHeader(name)
+      .append(value)
+      .endHeader();
+  }
+
+  /**
+   * Begin a header. The value is supplied by zero or more calls to
+   * {@link #append(CharSequence)} and {@link #append(char)}, followed by
+   * a call to {@link #endHeader()}.
+   *
+   * @param name The header name
+   *
+   * @return this
+   */
+
+  public OFManifestEncoder beginHeader(
+    final String name)
+  {
+    Objects.requireNonNull(name, "name");
+    return this.append(name).append(':').append(' ');
+  }
+
+  /**
+   * Append text to the current header.
+   *
+   * @param text The text
+   *
+   * @return this
+   */
+
+  public OFManifestEncoder append(
+    final CharSequence text)
+  {
+    final var length = text.length();
+    var index = 0;
+    while (index < length) {
+      final var c = text.charAt(index);
+      ++index;
+      if (Character.isHighSurrogate(c) && index < length) {
+        final var low = text.charAt(index);
+        if (Character.isLowSurrogate(low)) {
+          this.putCodePoint(Character.toCodePoint(c, low));
+          ++index;
+          continue;
+        }
+      }
+      this.append(c);
+    }
+    return this;
+  }
+
+  /**
+   * Append a character to the current header.
+   *
+   * @param c The character
+   *
+   * @return this
+   */
+
+  public OFManifestEncoder append(
+    final char c)
+  {
+    if (Character.isSurrogate(c)) {
+      this.putCodePoint('?');
+    } else {
+      this.putCodePoint(c);
+    }
+    return this;
+  }
+
+  /**
+   * End the current header.
+   *
+   * @return this
+   */
+
+  public OFManifestEncoder endHeader()
+  {
+    this.ensure(1);
+    this.data[this.size] = '\n';
+    ++this.size;
+    this.lineBytes = 0;
+    return this;
+  }
+
+  /**
+   * End the current section with an empty line.
+   *
+   * @return this
+   */
+
+  public OFManifestEncoder endSection()
+  {
+    return this.endHeader();
+  }
+
+  /**
+   * @return A view of the encoded bytes, valid until the encoder is next
+   * modified
+   */
+
+  public ByteBuffer bytes()
+  {
+    return ByteBuffer.wrap(this.data, 0, this.size).asReadOnlyBuffer();
+  }
+
+  /**
+   * @return A copy of the encoded bytes
+   */
+
+  public byte[] toByteArray()
+  {
+    return Arrays.copyOf(this.data, this.size);
+  }
+
+  private void putCodePoint(
+    final int codePoint)
+  {
+    final int count;
+    if (codePoint < 0x80) {
+      count = 1;
+    } else if (codePoint < 0x800) {
+      count = 2;
+    } else if (codePoint < 0x10000) {
+      count = 3;
+    } else {
+      count = 4;
+    }
+
+    this.ensure(count + 2);
+    if (this.lineBytes + count > LINE_LIMIT) {
+      this.data[this.size] = '\n';
+      this.data[this.size + 1] = ' ';
+      this.size += 2;
+      this.lineBytes = 1;
+    }
+
+    final var at = this.size;
+    switch (count) {
+      case 1 -> {
+        this.data[at] = (byte) codePoint;
+      }
+      case 2 -> {
+        this.data[at] = (byte) (0xc0 | (codePoint >> 6));
+        this.data[at + 1] = (byte) (0x80 | (codePoint & 0x3f));
+      }
+      case 3 -> {
+        this.data[at] = (byte) (0xe0 | (codePoint >> 12));
+        this.data[at + 1] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        this.data[at + 2] = (byte) (0x80 | (codePoint & 0x3f));
+      }
+      default -> {
+        this.data[at] = (byte) (0xf0 | (codePoint >> 18));
+        this.data[at + 1] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        this.data[at + 2] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        this.data[at + 3] = (byte) (0x80 | (codePoint & 0x3f));
+      }
+    }
+    this.size += count;
+    this.lineBytes += count;
+  }
+
+  private void ensure(
+    final int count)
+  {
+    if (this.size + count > this.data.length) {
+      this.data = Arrays.copyOf(
+        this.data,
+        Math.max(this.data.length * 2, this.size + count)
+      );
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipException;
+
+/**
+ * The packages contained in a bundle, and the packages referenced by the
+ * classes in each of them. Class files may be added concurrently.
+ */
+
+final class OFPackageReferences
+{
+  private final ConcurrentHashMap<String, Set<String>> packages;
+
+  /**
+   * The packages contained in a bundle.
+   */
+
+  OFPackageReferences()
+  {
+    this.packages = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @param name The name of an entry
+   *
+   * @return {@code true} if the entry should be analysed as a class file
+   */
+
+  static boolean isClassFile(
+    final String name)
+  {
+    return name.endsWith(".class");
+  }
+
+  /**
+   * Analyse a class file.
+   *
+   * @param name  The name of the entry containing the class file
+   * @param bytes The class file
+   *
+   * @throws ZipException If the class file is malformed
+   */
+
+  void addClassFile(
+    final String name,
+    final byte[] bytes)
+    throws ZipException
+  {
+    final var result = OFClassFiles.scan(name, bytes);
+    if (result.isPresent()) {
+      final var references = result.get();
+      this.packages.computeIfAbsent(
+        references.packageName(), k -> ConcurrentHashMap.newKeySet())
+        .addAll(references.references());
+    }
+  }
+
+  /**
+   * @return The contained packages, and the packages referenced by each
+   */
+
+  SortedMap<String, SortedSet<String>> packages()
+  {
+    final var result = new TreeMap<String, SortedSet<String>>();
+    for (final Map.Entry<String, Set<String>> entry : this.packages.entrySet()) {
+      result.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+    }
+    return result;
+  }
+}
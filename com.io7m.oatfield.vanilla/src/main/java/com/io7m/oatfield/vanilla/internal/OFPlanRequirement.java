@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A requirement restored from a deployment plan.
+ */
+
+final class OFPlanRequirement implements Requirement
+{
+  private final Resource resource;
+  private final String namespace;
+  private final Map<String, String> directives;
+  private final Map<String, Object> attributes;
+
+  OFPlanRequirement(
+    final Resource inResource,
+    final String inNamespace,
+    final Map<String, String> inDirectives,
+    final Map<String, Object> inAttributes)
+  {
+    this.resource =
+      Objects.requireNonNull(inResource, "resource");
+    this.namespace =
+      Objects.requireNonNull(inNamespace, "namespace");
+    this.directives =
+      Map.copyOf(inDirectives);
+    this.attributes =
+      Map.copyOf(inAttributes);
+  }
+
+  @Override
+  public String getNamespace()
+  {
+    return this.namespace;
+  }
+
+  @Override
+  public Map<String, String> getDirectives()
+  {
+    return this.directives;
+  }
+
+  @Override
+  public Map<String, Object> getAttributes()
+  {
+    return this.attributes;
+  }
+
+  @Override
+  public Resource getResource()
+  {
+    return this.resource;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[Requirement %s %s %s]".formatted(
+      this.namespace,
+      this.attributes,
+      this.directives
+    );
+  }
+}
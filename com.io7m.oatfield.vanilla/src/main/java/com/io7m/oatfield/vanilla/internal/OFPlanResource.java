@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A resource restored from a deployment plan.
+ */
+
+final class OFPlanResource implements Resource
+{
+  private final List<Capability> capabilities;
+  private final List<Requirement> requirements;
+
+  OFPlanResource()
+  {
+    this.capabilities = new ArrayList<>();
+    this.requirements = new ArrayList<>();
+  }
+
+  void addCapability(
+    final Capability capability)
+  {
+    this.capabilities.add(capability);
+  }
+
+  void addRequirement(
+    final Requirement requirement)
+  {
+    this.requirements.add(requirement);
+  }
+
+  @Override
+  public List<Capability> getCapabilities(
+    final String namespace)
+  {
+    if (namespace == null) {
+      return Collections.unmodifiableList(this.capabilities);
+    }
+    final var results = new ArrayList<Capability>();
+    for (final var capability : this.capabilities) {
+      if (Objects.equals(capability.getNamespace(), namespace)) {
+        results.add(capability);
+      }
+    }
+    return Collections.unmodifiableList(results);
+  }
+
+  @Override
+  public List<Requirement> getRequirements(
+    final String namespace)
+  {
+    if (namespace == null) {
+      return Collections.unmodifiableList(this.requirements);
+    }
+    final var results = new ArrayList<Requirement>();
+    for (final var requirement : this.requirements) {
+      if (Objects.equals(requirement.getNamespace(), namespace)) {
+        results.add(requirement);
+      }
+    }
+    return Collections.unmodifiableList(results);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "%s %s".formatted(
+      OFResourceIdentity.symbolicNameOf(this),
+      OFResourceIdentity.versionOf(this)
+    );
+  }
+}
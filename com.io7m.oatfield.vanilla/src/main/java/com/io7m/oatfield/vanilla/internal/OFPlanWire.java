@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import java.util.Objects;
+
+/**
+ * A wire restored from a deployment plan.
+ */
+
+final class OFPlanWire implements Wire
+{
+  private final Capability capability;
+  private final Requirement requirement;
+  private final Resource provider;
+  private final Resource requirer;
+
+  OFPlanWire(
+    final Capability inCapability,
+    final Requirement inRequirement,
+    final Resource inProvider,
+    final Resource inRequirer)
+  {
+    this.capability =
+      Objects.requireNonNull(inCapability, "capability");
+    this.requirement =
+      Objects.requireNonNull(inRequirement, "requirement");
+    this.provider =
+      Objects.requireNonNull(inProvider, "provider");
+    this.requirer =
+      Objects.requireNonNull(inRequirer, "requirer");
+  }
+
+  @Override
+  public Capability getCapability()
+  {
+    return this.capability;
+  }
+
+  @Override
+  public Requirement getRequirement()
+  {
+    return this.requirement;
+  }
+
+  @Override
+  public Resource getProvider()
+  {
+    return this.provider;
+  }
+
+  @Override
+  public Resource getRequirer()
+  {
+    return this.requirer;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[Wire %s -> %s]".formatted(this.requirer, this.provider);
+  }
+}
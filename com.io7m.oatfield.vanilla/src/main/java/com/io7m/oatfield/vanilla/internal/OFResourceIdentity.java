@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import org.osgi.resource.Resource;
+
+import java.net.URI;
+import java.util.Optional;
+
+/**
+ * Functions to extract identifying information from OSGi resources.
+ */
+
+public final class OFResourceIdentity
+{
+  private static final String IDENTITY_NAMESPACE = "osgi.identity";
+  private static final String CONTENT_NAMESPACE = "osgi.content";
+
+  private OFResourceIdentity()
+  {
+
+  }
+
+  /**
+   * @param resource The resource
+   *
+   * @return The symbolic name of the resource, or the empty string
+   */
+
+  public static String symbolicNameOf(
+    final Resource resource)
+  {
+    for (final var capability : resource.getCapabilities(IDENTITY_NAMESPACE)) {
+      final var name = capability.getAttributes().get(IDENTITY_NAMESPACE);
+      if (name != null) {
+        return name.toString();
+      }
+    }
+    return "";
+  }
+
+  /**
+   * @param resource The resource
+   *
+   * @return The version of the resource, or {@code 0.0.0}
+   */
+
+  public static String versionOf(
+    final Resource resource)
+  {
+    for (final var capability : resource.getCapabilities(IDENTITY_NAMESPACE)) {
+      final var version = capability.getAttributes().get("version");
+      if (version != null) {
+        return version.toString();
+      }
+    }
+    return "0.0.0";
+  }
+
+  /**
+   * @param resource The resource
+   *
+   * @return The location of the resource content, if any
+   */
+
+  public static Optional<URI> locationOf(
+    final Resource resource)
+  {
+    for (final var capability : resource.getCapabilities(CONTENT_NAMESPACE)) {
+      final var url = capability.getAttributes().get("url");
+      if (url != null) {
+        try {
+          return Optional.of(URI.create(url.toString()));
+        } catch (final IllegalArgumentException e) {
+          return Optional.empty();
+        }
+      }
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,1129 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.CENTRAL_HEADER;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.CENTRAL_HEADER_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_LOCATOR_ZIP64;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_LOCATOR_ZIP64_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_ZIP64;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_ZIP64_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.EXTRA_ZIP64;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LIMIT_16;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LIMIT_32;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LOCAL_HEADER;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LOCAL_HEADER_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_DEFLATED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_STORED;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * An existing archive opened for raw access to its entries. Only the
+ * central directory is read when an archive is opened; entry data is
+ * decompressed only when explicitly requested.
+ *
+ * <p>Interrupting a thread that is blocked in a read closes the archive
+ * channel. The interrupted read fails, and the next read on any other
+ * thread reopens the file, checking that its central directory has not
+ * moved, before retrying.</p>
+ */
+
+final class OFZipArchive implements Closeable
+{
+  private static final int MAXIMUM_COMMENT = 0xffff;
+  private static final int WINDOW_SIZE = 4096;
+  private static final long MAXIMUM_CONTENT = Integer.MAX_VALUE - 8L;
+  private static final long MAXIMUM_MAPPING = Integer.MAX_VALUE;
+
+  /**
+   * Stored entries smaller than this are copied rather than mapped.
+   */
+
+  static final long MAPPING_THRESHOLD = 65536L;
+
+  private final Path path;
+  private final DirectoryLocation location;
+  private final Directory directory;
+  private volatile FileChannel channel;
+  private boolean closed;
+
+  private OFZipArchive(
+    final Path inPath,
+    final FileChannel inChannel,
+    final DirectoryLocation inLocation,
+    final Directory inDirectory)
+  {
+    this.path =
+      Objects.requireNonNull(inPath, "path");
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.location =
+      Objects.requireNonNull(inLocation, "location");
+    this.directory =
+      Objects.requireNonNull(inDirectory, "directory");
+  }
+
+  /**
+   * The central directory, sorted by entry name. Names are held in an
+   * {@link OFBundleEntryNames} directory, and the remaining fields of the
+   * entry at each index are held in parallel arrays, so that no per-entry
+   * objects are retained. If the archive names an entry more than once,
+   * only the last of its headers is kept, as for
+   * {@link java.util.zip.ZipFile}.
+   *
+   * @param names           The entry names
+   * @param flagsAndMethods The general purpose flags (high 16 bits) and
+   *                        compression method (low 16 bits) of each entry
+   * @param crcs            The CRC32 of each entry
+   * @param compressedSizes The compressed size of each entry
+   * @param sizes           The uncompressed size of each entry
+   * @param offsets         The local header offset of each entry
+   * @param directoryOrder  The index of each entry, in the order in which
+   *                        the entries appear in the central directory
+   */
+
+  private record Directory(
+    OFBundleEntryNames names,
+    int[] flagsAndMethods,
+    int[] crcs,
+    long[] compressedSizes,
+    long[] sizes,
+    long[] offsets,
+    int[] directoryOrder)
+  {
+    OFZipEntry entryAt(
+      final int index,
+      final String name)
+    {
+      final var packed = this.flagsAndMethods[index];
+      return new OFZipEntry(
+        name,
+        packed >>> 16,
+        packed & 0xffff,
+        Integer.toUnsignedLong(this.crcs[index]),
+        this.compressedSizes[index],
+        this.sizes[index],
+        this.offsets[index]
+      );
+    }
+  }
+
+  /**
+   * Open an archive and read its central directory.
+   *
+   * @param path The archive
+   *
+   * @return The archive
+   *
+   * @throws IOException On I/O errors, or if the archive is malformed
+   */
+
+  static OFZipArchive open(
+    final Path path)
+    throws IOException
+  {
+    final var channel = FileChannel.open(path, READ);
+    try {
+      final var location = locateDirectory(path, channel);
+      return new OFZipArchive(
+        path, channel, location, readDirectory(path, channel, location));
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Read the central directory into primitive arrays without decoding any
+   * names. Names are left in place in the directory bytes, except for
+   * names that are not well-formed UTF-8, which are replaced with the
+   * encoding of their decoded form. The entries are then sorted by
+   * comparing the encoded names.
+   */
+
+  private static Directory readDirectory(
+    final Path path,
+    final FileChannel channel,
+    final DirectoryLocation location)
+    throws IOException
+  {
+    final var data =
+      readFully(channel, location.offset(), (int) location.size());
+    final var capacity =
+      (int) Math.min(location.count(), location.size() / CENTRAL_HEADER_SIZE);
+
+    final var flagsAndMethods = new int[capacity];
+    final var crcs = new int[capacity];
+    final var compressedSizes = new long[capacity];
+    final var sizes = new long[capacity];
+    final var offsets = new long[capacity];
+    final var nameOffsets = new int[capacity];
+    final var nameLengths = new int[capacity];
+    final var values = new long[3];
+
+    /*
+     * The directory holds at most "capacity" headers, so reading any more
+     * fails before an array index goes out of range.
+     */
+
+    var pool = data.array();
+    var poolSize = pool.length;
+    for (int index = 0; index < location.count(); ++index) {
+      final var at = data.position();
+      checkCentralHeader(path, data);
+      readSizes(data, values);
+
+      flagsAndMethods[index] =
+        (Short.toUnsignedInt(data.getShort(at + 8)) << 16)
+          | Short.toUnsignedInt(data.getShort(at + 10));
+      crcs[index] = data.getInt(at + 16);
+      sizes[index] = values[0];
+      compressedSizes[index] = values[1];
+      offsets[index] = values[2];
+
+      final var nameOffset = at + CENTRAL_HEADER_SIZE;
+      final var nameLength = Short.toUnsignedInt(data.getShort(at + 28));
+      if (OFBundleEntryNames.isWellFormed(pool, nameOffset, nameLength)) {
+        nameOffsets[index] = nameOffset;
+        nameLengths[index] = nameLength;
+      } else {
+        final var replaced =
+          UTF_8.decode(ByteBuffer.wrap(pool, nameOffset, nameLength))
+            .toString()
+            .getBytes(UTF_8);
+        if (poolSize + replaced.length > pool.length) {
+          pool = Arrays.copyOf(
+            pool, Math.max(pool.length * 2, poolSize + replaced.length));
+        }
+        System.arraycopy(replaced, 0, pool, poolSize, replaced.length);
+        nameOffsets[index] = poolSize;
+        nameLengths[index] = replaced.length;
+        poolSize += replaced.length;
+      }
+      data.position(at + centralHeaderLength(data, at));
+    }
+
+    /*
+     * Sort by name, keeping the last of any entries with the same name.
+     * The sort is stable, so that entry is the last of its run.
+     */
+
+    final var total = (int) location.count();
+    final var order = new int[total];
+    for (int index = 0; index < total; ++index) {
+      order[index] = index;
+    }
+    sortByName(order, pool, nameOffsets, nameLengths);
+    final var count =
+      removeDuplicates(order, pool, nameOffsets, nameLengths);
+
+    return new Directory(
+      OFBundleEntryNames.of(pool, nameOffsets, nameLengths, order, count),
+      permuteInts(flagsAndMethods, order, count),
+      permuteInts(crcs, order, count),
+      permuteLongs(compressedSizes, order, count),
+      permuteLongs(sizes, order, count),
+      permuteLongs(offsets, order, count),
+      directoryOrderOf(order, count)
+    );
+  }
+
+  /**
+   * Remove all but the last of each run of entries with the same name
+   * from the sorted indices.
+   *
+   * @return The number of remaining indices
+   */
+
+  private static int removeDuplicates(
+    final int[] order,
+    final byte[] pool,
+    final int[] nameOffsets,
+    final int[] nameLengths)
+  {
+    var count = 0;
+    for (int index = 0; index < order.length; ++index) {
+      final var entry = order[index];
+      if (index + 1 < order.length) {
+        final var next = order[index + 1];
+        if (OFBundleEntryNames.compare(
+          pool, nameOffsets[entry], nameLengths[entry],
+          pool, nameOffsets[next], nameLengths[next]) == 0) {
+          continue;
+        }
+      }
+      order[count] = entry;
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * @return The sorted index of each remaining entry, in directory order
+   */
+
+  private static int[] directoryOrderOf(
+    final int[] order,
+    final int count)
+  {
+    final var ranks = new int[order.length];
+    Arrays.fill(ranks, -1);
+    for (int index = 0; index < count; ++index) {
+      ranks[order[index]] = index;
+    }
+
+    final var result = new int[count];
+    var position = 0;
+    for (final var rank : ranks) {
+      if (rank >= 0) {
+        result[position] = rank;
+        ++position;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Stably sort entry indices by their encoded names. Archives written in
+   * name order, as bundles are, are detected and left as they are.
+   */
+
+  private static void sortByName(
+    final int[] order,
+    final byte[] pool,
+    final int[] nameOffsets,
+    final int[] nameLengths)
+  {
+    final var size = order.length;
+    var sorted = true;
+    for (int index = 1; index < size && sorted; ++index) {
+      sorted = OFBundleEntryNames.compare(
+        pool, nameOffsets[index - 1], nameLengths[index - 1],
+        pool, nameOffsets[index], nameLengths[index]) <= 0;
+    }
+    if (sorted) {
+      return;
+    }
+
+    var source = order;
+    var target = new int[size];
+    for (int width = 1; width < size; width *= 2) {
+      for (int low = 0; low < size; low += 2 * width) {
+        final var middle = Math.min(low + width, size);
+        final var high = Math.min(low + 2 * width, size);
+        var left = low;
+        var right = middle;
+        for (int out = low; out < high; ++out) {
+          final boolean takeRight;
+          if (left == middle) {
+            takeRight = true;
+          } else if (right == high) {
+            takeRight = false;
+          } else {
+            final var r = source[right];
+            final var l = source[left];
+            takeRight = OFBundleEntryNames.compare(
+              pool, nameOffsets[r], nameLengths[r],
+              pool, nameOffsets[l], nameLengths[l]) < 0;
+          }
+          if (takeRight) {
+            target[out] = source[right];
+            ++right;
+          } else {
+            target[out] = source[left];
+            ++left;
+          }
+        }
+      }
+      final var swap = source;
+      source = target;
+      target = swap;
+    }
+
+    if (source != order) {
+      System.arraycopy(source, 0, order, 0, size);
+    }
+  }
+
+  private static int[] permuteInts(
+    final int[] values,
+    final int[] order,
+    final int count)
+  {
+    final var result = new int[count];
+    for (int index = 0; index < count; ++index) {
+      result[index] = values[order[index]];
+    }
+    return result;
+  }
+
+  private static long[] permuteLongs(
+    final long[] values,
+    final int[] order,
+    final int count)
+  {
+    final var result = new long[count];
+    for (int index = 0; index < count; ++index) {
+      result[index] = values[order[index]];
+    }
+    return result;
+  }
+
+  /**
+   * Find a single entry by scanning the central directory in small
+   * windows, without holding the whole directory in memory. Entry names
+   * are compared without being decoded. If the directory names the entry
+   * more than once, the last header wins, as it does for a fully opened
+   * archive and for {@link java.util.zip.ZipFile}.
+   *
+   * @param path    The archive file, used in error messages
+   * @param channel The archive channel
+   * @param name    The entry name
+   *
+   * @return The entry, if present
+   *
+   * @throws IOException On I/O errors, or if the archive is malformed
+   */
+
+  static Optional<OFZipEntry> findEntry(
+    final Path path,
+    final FileChannel channel,
+    final String name)
+    throws IOException
+  {
+    final var target = name.getBytes(UTF_8);
+    final var location = locateDirectory(path, channel);
+    final var directoryEnd = location.offset() + location.size();
+
+    var offset = location.offset();
+    var window = ByteBuffer.allocate(0);
+    OFZipEntry found = null;
+    for (long index = 0L; index < location.count(); ++index) {
+      if (!hasCentralHeader(window)) {
+        window = readWindow(channel, offset, directoryEnd);
+        if (!hasCentralHeader(window)) {
+          throw malformed(path, "Bad central directory header");
+        }
+      }
+
+      final var at = window.position();
+      final var length = centralHeaderLength(window, at);
+      if (Short.toUnsignedInt(window.getShort(at + 28)) == target.length
+          && window.slice(at + CENTRAL_HEADER_SIZE, target.length)
+          .equals(ByteBuffer.wrap(target))) {
+        found = readCentralHeader(path, window);
+      }
+      window.position(at + length);
+      offset += length;
+    }
+    return Optional.ofNullable(found);
+  }
+
+  private static ByteBuffer readWindow(
+    final FileChannel channel,
+    final long offset,
+    final long directoryEnd)
+    throws IOException
+  {
+    final var size = (int) Math.min(WINDOW_SIZE, directoryEnd - offset);
+    final var window = readFully(channel, offset, size);
+    if (hasFixedHeader(window)) {
+      final var length = centralHeaderLength(window, 0);
+      if (length > window.remaining()) {
+        return readFully(
+          channel, offset, (int) Math.min(length, directoryEnd - offset));
+      }
+    }
+    return window;
+  }
+
+  private static boolean hasFixedHeader(
+    final ByteBuffer window)
+  {
+    return window.remaining() >= CENTRAL_HEADER_SIZE
+           && window.getInt(window.position()) == CENTRAL_HEADER;
+  }
+
+  private static boolean hasCentralHeader(
+    final ByteBuffer window)
+  {
+    return hasFixedHeader(window)
+           && centralHeaderLength(window, window.position())
+              <= window.remaining();
+  }
+
+  private static int centralHeaderLength(
+    final ByteBuffer window,
+    final int at)
+  {
+    return CENTRAL_HEADER_SIZE
+           + Short.toUnsignedInt(window.getShort(at + 28))
+           + Short.toUnsignedInt(window.getShort(at + 30))
+           + Short.toUnsignedInt(window.getShort(at + 32));
+  }
+
+  private record DirectoryLocation(
+    long offset,
+    long size,
+    long count)
+  {
+
+  }
+
+  private static DirectoryLocation locateDirectory(
+    final Path path,
+    final FileChannel channel)
+    throws IOException
+  {
+    final var endOffset = findEndRecord(path, channel);
+    final var end = readFully(channel, endOffset, END_RECORD_SIZE);
+    var count = (long) Short.toUnsignedInt(end.getShort(10));
+    var size = Integer.toUnsignedLong(end.getInt(12));
+    var offset = Integer.toUnsignedLong(end.getInt(16));
+
+    if (count == LIMIT_16 || size == LIMIT_32 || offset == LIMIT_32) {
+      final var end64 = readEndRecord64(path, channel, endOffset);
+      count = end64.getLong(32);
+      size = end64.getLong(40);
+      offset = end64.getLong(48);
+    }
+
+    if (size > Integer.MAX_VALUE || offset + size > channel.size()) {
+      throw malformed(path, "Central directory out of range");
+    }
+    return new DirectoryLocation(offset, size, count);
+  }
+
+  /**
+   * Locate the end of central directory record. Most archives have no
+   * comment, so the last record-sized block of the file is checked first,
+   * before scanning backwards over the largest possible archive comment.
+   */
+
+  private static long findEndRecord(
+    final Path path,
+    final FileChannel channel)
+    throws IOException
+  {
+    final var fileSize = channel.size();
+    if (fileSize >= END_RECORD_SIZE) {
+      final var last =
+        readFully(channel, fileSize - END_RECORD_SIZE, END_RECORD_SIZE);
+      if (last.getInt(0) == END_RECORD && last.getShort(20) == 0) {
+        return fileSize - END_RECORD_SIZE;
+      }
+    }
+
+    final var tailSize =
+      (int) Math.min(fileSize, END_RECORD_SIZE + MAXIMUM_COMMENT);
+    final var tailStart = fileSize - tailSize;
+    final var tail = readFully(channel, tailStart, tailSize);
+
+    for (int at = tailSize - END_RECORD_SIZE; at >= 0; --at) {
+      if (tail.getInt(at) == END_RECORD) {
+        return tailStart + at;
+      }
+    }
+    throw malformed(path, "No end of central directory record");
+  }
+
+  private static ByteBuffer readEndRecord64(
+    final Path path,
+    final FileChannel channel,
+    final long endOffset)
+    throws IOException
+  {
+    final var locatorOffset = endOffset - END_LOCATOR_ZIP64_SIZE;
+    if (locatorOffset < 0L) {
+      throw malformed(path, "Missing ZIP64 end of central directory locator");
+    }
+    final var locator =
+      readFully(channel, locatorOffset, END_LOCATOR_ZIP64_SIZE);
+    if (locator.getInt(0) != END_LOCATOR_ZIP64) {
+      throw malformed(path, "Missing ZIP64 end of central directory locator");
+    }
+    final var record =
+      readFully(channel, locator.getLong(8), END_RECORD_ZIP64_SIZE);
+    if (record.getInt(0) != END_RECORD_ZIP64) {
+      throw malformed(path, "Missing ZIP64 end of central directory record");
+    }
+    return record;
+  }
+
+  private static void checkCentralHeader(
+    final Path path,
+    final ByteBuffer directory)
+    throws ZipException
+  {
+    if (!hasFixedHeader(directory)) {
+      throw malformed(path, "Bad central directory header");
+    }
+    if (centralHeaderLength(directory, directory.position())
+        > directory.remaining()) {
+      throw malformed(path, "Truncated central directory header");
+    }
+  }
+
+  /**
+   * Read the uncompressed size, compressed size, and local header offset
+   * of the central directory header at the directory's position, taking
+   * them from the ZIP64 extra field where necessary.
+   */
+
+  private static void readSizes(
+    final ByteBuffer directory,
+    final long[] values)
+  {
+    final var at = directory.position();
+    final var nameLength = Short.toUnsignedInt(directory.getShort(at + 28));
+    final var extraLength = Short.toUnsignedInt(directory.getShort(at + 30));
+
+    values[0] = Integer.toUnsignedLong(directory.getInt(at + 24));
+    values[1] = Integer.toUnsignedLong(directory.getInt(at + 20));
+    values[2] = Integer.toUnsignedLong(directory.getInt(at + 42));
+
+    readZip64Extra(
+      directory.slice(at + CENTRAL_HEADER_SIZE + nameLength, extraLength)
+        .order(LITTLE_ENDIAN),
+      values
+    );
+  }
+
+  private static OFZipEntry readCentralHeader(
+    final Path path,
+    final ByteBuffer directory)
+    throws IOException
+  {
+    final var at = directory.position();
+    checkCentralHeader(path, directory);
+
+    final var flags = Short.toUnsignedInt(directory.getShort(at + 8));
+    final var method = Short.toUnsignedInt(directory.getShort(at + 10));
+    final var crc = Integer.toUnsignedLong(directory.getInt(at + 16));
+    final var nameLength = Short.toUnsignedInt(directory.getShort(at + 28));
+
+    final var nameBytes = new byte[nameLength];
+    directory.get(at + CENTRAL_HEADER_SIZE, nameBytes);
+    final var name = UTF_8.decode(ByteBuffer.wrap(nameBytes)).toString();
+
+    final var sizes = new long[3];
+    readSizes(directory, sizes);
+
+    directory.position(at + centralHeaderLength(directory, at));
+    return new OFZipEntry(
+      name, flags, method, crc, sizes[1], sizes[0], sizes[2]);
+  }
+
+  /**
+   * Replace any of the given 32-bit size, compressed size, and offset
+   * values that are saturated with the values from the ZIP64 extra field.
+   */
+
+  private static void readZip64Extra(
+    final ByteBuffer extra,
+    final long[] values)
+  {
+    while (extra.remaining() >= 4) {
+      final var id = Short.toUnsignedInt(extra.getShort());
+      final var length = Short.toUnsignedInt(extra.getShort());
+      final var next = extra.position() + length;
+      if (id == EXTRA_ZIP64) {
+        for (int index = 0; index < values.length; ++index) {
+          if (values[index] == LIMIT_32 && extra.position() + 8 <= next) {
+            values[index] = extra.getLong();
+          }
+        }
+        return;
+      }
+      extra.position(Math.min(next, extra.limit()));
+    }
+  }
+
+  private static ByteBuffer readFully(
+    final FileChannel channel,
+    final long offset,
+    final int size)
+    throws IOException
+  {
+    final var buffer = ByteBuffer.allocate(size).order(LITTLE_ENDIAN);
+    var position = offset;
+    while (buffer.hasRemaining()) {
+      final var r = channel.read(buffer, position);
+      if (r == -1) {
+        throw new EOFException();
+      }
+      position += r;
+    }
+    return buffer.flip();
+  }
+
+  private static ZipException malformed(
+    final Path path,
+    final String message)
+  {
+    return new ZipException("%s: %s".formatted(path, message));
+  }
+
+  /**
+   * @return The archive file
+   */
+
+  Path path()
+  {
+    return this.path;
+  }
+
+  /**
+   * @return The channel from which entry data may be read; the channel is
+   * replaced if it is closed by an interrupt
+   */
+
+  FileChannel channel()
+  {
+    return this.channel;
+  }
+
+  /**
+   * @return The names of the entries
+   */
+
+  OFBundleEntryNames names()
+  {
+    return this.directory.names();
+  }
+
+  /**
+   * @return A read-only view of the entries in the order in which they
+   * appear in the central directory, with only the last of any entries
+   * with the same name; entries are created as they are retrieved
+   */
+
+  List<OFZipEntry> entries()
+  {
+    return new EntryList();
+  }
+
+  /**
+   * A read-only view of the entries in directory order.
+   */
+
+  private final class EntryList extends AbstractList<OFZipEntry>
+  {
+    EntryList()
+    {
+
+    }
+
+    @Override
+    public OFZipEntry get(
+      final int index)
+    {
+      final var entries = OFZipArchive.this.directory;
+      final var sorted = entries.directoryOrder()[index];
+      return entries.entryAt(sorted, entries.names().get(sorted));
+    }
+
+    @Override
+    public Iterator<OFZipEntry> iterator()
+    {
+      return new EntryIterator();
+    }
+
+    @Override
+    public int size()
+    {
+      return OFZipArchive.this.directory.names().size();
+    }
+  }
+
+  /**
+   * An iterator over the entries in directory order. Names are decoded
+   * sequentially while the directory order matches the name order, which
+   * it does for archives written in name order.
+   */
+
+  private final class EntryIterator implements Iterator<OFZipEntry>
+  {
+    private Iterator<String> names;
+    private int index;
+    private int expected;
+
+    EntryIterator()
+    {
+      this.names = Collections.emptyIterator();
+      this.expected = -1;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return this.index < OFZipArchive.this.directory.directoryOrder().length;
+    }
+
+    @Override
+    public OFZipEntry next()
+    {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      final var entries = OFZipArchive.this.directory;
+      final var sorted = entries.directoryOrder()[this.index];
+      if (sorted != this.expected) {
+        final var directoryNames = entries.names();
+        this.names =
+          directoryNames.view(sorted, directoryNames.size()).iterator();
+      }
+
+      final var entry = entries.entryAt(sorted, this.names.next());
+      ++this.index;
+      this.expected = sorted + 1;
+      return entry;
+    }
+  }
+
+  /**
+   * Find the entry with the given name.
+   *
+   * @param name The entry name
+   *
+   * @return The entry, if present
+   */
+
+  Optional<OFZipEntry> entry(
+    final String name)
+  {
+    final var index = this.directory.names().indexOf(name);
+    if (index < 0) {
+      return Optional.empty();
+    }
+    return Optional.of(this.directory.entryAt(index, name));
+  }
+
+  /**
+   * Find the offset of the (possibly compressed) data of the given entry.
+   *
+   * @param entry The entry
+   *
+   * @return The offset of the first byte of entry data
+   *
+   * @throws IOException On I/O errors, or if the local header is malformed
+   */
+
+  long dataOffset(
+    final OFZipEntry entry)
+    throws IOException
+  {
+    return this.withChannel(c -> dataOffset(this.path, c, entry));
+  }
+
+  private static long dataOffset(
+    final Path path,
+    final FileChannel channel,
+    final OFZipEntry entry)
+    throws IOException
+  {
+    final var offset = entry.localHeaderOffset();
+    final var header = readFully(channel, offset, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != LOCAL_HEADER) {
+      throw malformed(path, "Bad local header for " + entry.name());
+    }
+    final var nameLength = Short.toUnsignedInt(header.getShort(26));
+    final var extraLength = Short.toUnsignedInt(header.getShort(28));
+    final var start = offset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    if (start + entry.compressedSize() > channel.size()) {
+      throw malformed(path, "Entry data out of range: " + entry.name());
+    }
+    return start;
+  }
+
+  /**
+   * Read and decompress the content of an entry.
+   *
+   * @param entry The entry
+   *
+   * @return The uncompressed content
+   *
+   * @throws IOException On I/O errors, or if the entry is malformed
+   */
+
+  byte[] content(
+    final OFZipEntry entry)
+    throws IOException
+  {
+    return this.withChannel(c -> content(this.path, c, entry));
+  }
+
+  /**
+   * Read and decompress the content of an entry with positioned reads.
+   *
+   * @param path    The archive file, used in error messages
+   * @param channel The archive channel
+   * @param entry   The entry
+   *
+   * @return The uncompressed content
+   *
+   * @throws IOException On I/O errors, or if the entry is malformed
+   */
+
+  static byte[] content(
+    final Path path,
+    final FileChannel channel,
+    final OFZipEntry entry)
+    throws IOException
+  {
+    if (entry.size() > MAXIMUM_CONTENT || entry.compressedSize() > MAXIMUM_CONTENT) {
+      throw malformed(path, "Entry too large to read: " + entry.name());
+    }
+
+    final var data = readFully(
+      channel,
+      dataOffset(path, channel, entry),
+      (int) entry.compressedSize()
+    );
+
+    return switch (entry.method()) {
+      case METHOD_STORED -> data.array();
+      case METHOD_DEFLATED -> inflate(path, entry, data);
+      default -> throw malformed(
+        path,
+        "Unsupported compression method %d for %s"
+          .formatted(Integer.valueOf(entry.method()), entry.name()));
+    };
+  }
+
+  /**
+   * Open a stream that decompresses the content of an entry as it is read.
+   * The stream uses positioned reads and may be used concurrently with
+   * other streams over the same archive.
+   *
+   * @param entry The entry
+   *
+   * @return The uncompressed content
+   *
+   * @throws IOException On I/O errors, or if the entry is malformed
+   */
+
+  InputStream stream(
+    final OFZipEntry entry)
+    throws IOException
+  {
+    final var raw = new OFZipEntryInputStream(
+      this,
+      this.dataOffset(entry),
+      entry.compressedSize()
+    );
+
+    return switch (entry.method()) {
+      case METHOD_STORED -> raw;
+      case METHOD_DEFLATED -> OFZipEntryInputStream.inflating(raw, entry.size());
+      default -> throw malformed(
+        this.path,
+        "Unsupported compression method %d for %s"
+          .formatted(Integer.valueOf(entry.method()), entry.name()));
+    };
+  }
+
+  /**
+   * Obtain the content of an entry as a read-only buffer. The content of a
+   * deflated entry is decompressed into a new heap buffer, and the content
+   * of a stored entry smaller than {@link #MAPPING_THRESHOLD} is copied into
+   * a new heap buffer. A larger stored entry is returned as a memory mapping
+   * of exactly that entry's region of the archive and is not copied.
+   *
+   * <p>A mapped buffer remains usable after the archive is closed, but it
+   * reads the file itself: if the file is truncated, or its region is
+   * overwritten, while the buffer is still in use, then reads of the buffer
+   * observe the new data or fail with an {@link InternalError} (or crash
+   * the JVM on some platforms). Callers that cannot guarantee the file is
+   * left alone should copy the buffer.</p>
+   *
+   * @param entry The entry
+   *
+   * @return The uncompressed content
+   *
+   * @throws IOException On I/O errors, or if the entry is malformed
+   */
+
+  ByteBuffer buffer(
+    final OFZipEntry entry)
+    throws IOException
+  {
+    if (entry.method() != METHOD_STORED) {
+      return ByteBuffer.wrap(this.content(entry)).asReadOnlyBuffer();
+    }
+    if (entry.size() != entry.compressedSize()) {
+      throw malformed(this.path, "Inconsistent stored size: " + entry.name());
+    }
+
+    final var size = entry.size();
+    if (size < MAPPING_THRESHOLD) {
+      return ByteBuffer.wrap(this.content(entry)).asReadOnlyBuffer();
+    }
+    if (size > MAXIMUM_MAPPING) {
+      throw malformed(this.path, "Entry too large to map: " + entry.name());
+    }
+    final var offset = this.dataOffset(entry);
+    return this.withChannel(c -> c.map(READ_ONLY, offset, size))
+      .asReadOnlyBuffer();
+  }
+
+  private static byte[] inflate(
+    final Path path,
+    final OFZipEntry entry,
+    final ByteBuffer data)
+    throws ZipException
+  {
+    final var output = new byte[(int) entry.size()];
+    final var inflater = new Inflater(true);
+    try {
+      inflater.setInput(data);
+      var total = 0;
+      while (total < output.length && !inflater.finished()) {
+        final var r = inflater.inflate(output, total, output.length - total);
+        if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        total += r;
+      }
+      if (total != output.length) {
+        throw malformed(path, "Truncated entry data: " + entry.name());
+      }
+      return output;
+    } catch (final DataFormatException e) {
+      throw malformed(path, "%s: %s".formatted(entry.name(), e.getMessage()));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * @return {@code true} if the archive is open and its channel has not been
+   * closed by an interrupt
+   */
+
+  boolean isOpen()
+  {
+    return this.channel.isOpen();
+  }
+
+  /**
+   * Read bytes from the archive at the given position.
+   *
+   * @param buffer   The destination buffer
+   * @param position The file position
+   *
+   * @return The number of bytes read, or {@code -1} at the end of the file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  int read(
+    final ByteBuffer buffer,
+    final long position)
+    throws IOException
+  {
+    return this.withChannel(c -> c.read(buffer, position));
+  }
+
+  private interface ChannelOperationType<T>
+  {
+    T execute(FileChannel channel)
+      throws IOException;
+  }
+
+  /**
+   * Run an operation against the archive channel. If another thread's
+   * interrupt closed the channel, reopen the channel and try again. An
+   * operation that fails because the current thread was interrupted is
+   * not retried.
+   */
+
+  private <T> T withChannel(
+    final ChannelOperationType<T> operation)
+    throws IOException
+  {
+    var current = this.channel;
+    while (true) {
+      try {
+        return operation.execute(current);
+      } catch (final ClosedByInterruptException e) {
+        throw e;
+      } catch (final ClosedChannelException e) {
+        current = this.reopen(current);
+      }
+    }
+  }
+
+  private synchronized FileChannel reopen(
+    final FileChannel failed)
+    throws IOException
+  {
+    if (this.closed) {
+      throw new ClosedChannelException();
+    }
+    if (this.channel != failed) {
+      return this.channel;
+    }
+
+    final var reopened = FileChannel.open(this.path, READ);
+    try {
+      if (!locateDirectory(this.path, reopened).equals(this.location)) {
+        throw malformed(this.path, "Central directory changed while open");
+      }
+    } catch (final IOException e) {
+      reopened.close();
+      throw e;
+    }
+    this.channel = reopened;
+    return reopened;
+  }
+
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    this.closed = true;
+    this.channel.close();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The source archives of raw entry copies. Each archive is opened at most
+ * once. Archives that were already open when the set was created are
+ * borrowed from the caller and are not closed with the set.
+ */
+
+final class OFZipArchiveSet implements Closeable
+{
+  private final Map<Path, OFZipArchive> borrowed;
+  private final Map<Path, OFZipArchive> owned;
+
+  /**
+   * The source archives of raw entry copies.
+   *
+   * @param inBorrowed The archives that are already open, by file
+   */
+
+  OFZipArchiveSet(
+    final Map<Path, OFZipArchive> inBorrowed)
+  {
+    this.borrowed =
+      Objects.requireNonNull(inBorrowed, "borrowed");
+    this.owned =
+      new HashMap<>();
+  }
+
+  /**
+   * Open an archive, reusing an archive that is already open.
+   *
+   * @param file The archive file
+   *
+   * @return The archive
+   *
+   * @throws IOException On I/O errors
+   */
+
+  OFZipArchive open(
+    final Path file)
+    throws IOException
+  {
+    final var existing = this.borrowed.get(file);
+    if (existing != null) {
+      return existing;
+    }
+
+    var archive = this.owned.get(file);
+    if (archive == null) {
+      archive = OFZipArchive.open(file);
+      this.owned.put(file, archive);
+    }
+    return archive;
+  }
+
+  /**
+   * Close every archive opened by this set.
+   *
+   * @throws IOException If any archive could not be closed
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    IOException exception = null;
+    for (final var archive : this.owned.values()) {
+      try {
+        archive.close();
+      } catch (final IOException e) {
+        if (exception == null) {
+          exception = e;
+        } else {
+          exception.addSuppressed(e);
+        }
+      }
+    }
+    this.owned.clear();
+    if (exception != null) {
+      throw exception;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.util.Objects;
+
+/**
+ * An entry in the central directory of an archive.
+ *
+ * @param name             The entry name
+ * @param flags            The general purpose flags
+ * @param method           The compression method
+ * @param crc              The CRC32 of the uncompressed data
+ * @param compressedSize   The size of the compressed data
+ * @param size             The size of the uncompressed data
+ * @param localHeaderOffset The offset of the entry's local file header
+ */
+
+record OFZipEntry(
+  String name,
+  int flags,
+  int method,
+  long crc,
+  long compressedSize,
+  long size,
+  long localHeaderOffset)
+{
+  /**
+   * An entry in the central directory of an archive.
+   *
+   * @param name             The entry name
+   * @param flags            The general purpose flags
+   * @param method           The compression method
+   * @param crc              The CRC32 of the uncompressed data
+   * @param compressedSize   The size of the compressed data
+   * @param size             The size of the uncompressed data
+   * @param localHeaderOffset The offset of the entry's local file header
+   */
+
+  OFZipEntry
+  {
+    Objects.requireNonNull(name, "name");
+  }
+}
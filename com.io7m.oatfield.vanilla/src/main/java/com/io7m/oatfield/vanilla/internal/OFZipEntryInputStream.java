@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A stream over a range of an archive. Data is read with positioned reads,
+ * so the channel position is never changed. Closing the stream does not
+ * close the archive.
+ */
+
+final class OFZipEntryInputStream extends InputStream
+{
+  private final OFZipArchive archive;
+  private final long end;
+  private long position;
+
+  /**
+   * A stream over a range of an archive.
+   *
+   * @param inArchive The archive
+   * @param inOffset  The offset of the first byte
+   * @param inLength  The number of bytes in the range
+   */
+
+  OFZipEntryInputStream(
+    final OFZipArchive inArchive,
+    final long inOffset,
+    final long inLength)
+  {
+    this.archive =
+      Objects.requireNonNull(inArchive, "archive");
+    this.position =
+      inOffset;
+    this.end =
+      inOffset + inLength;
+  }
+
+  /**
+   * Wrap a stream of raw deflated data in a stream that inflates it. The
+   * inflater is released when the returned stream is closed.
+   *
+   * @param stream The stream of deflated data
+   * @param size   The expected uncompressed size, used to size the buffer
+   *
+   * @return An inflating stream
+   */
+
+  static InputStream inflating(
+    final InputStream stream,
+    final long size)
+  {
+    final var bufferSize = (int) Math.max(512L, Math.min(size, 8192L));
+    return new InflatingStream(stream, bufferSize);
+  }
+
+  @Override
+  public int read()
+    throws IOException
+  {
+    final var single = new byte[1];
+    final var r = this.read(single, 0, 1);
+    return r == -1 ? -1 : Byte.toUnsignedInt(single[0]);
+  }
+
+  @Override
+  public int read(
+    final byte[] buffer,
+    final int offset,
+    final int length)
+    throws IOException
+  {
+    Objects.checkFromIndexSize(offset, length, buffer.length);
+
+    final var remaining = this.end - this.position;
+    if (remaining <= 0L) {
+      return -1;
+    }
+    if (length == 0) {
+      return 0;
+    }
+
+    final var wanted = (int) Math.min(remaining, length);
+    final var r =
+      this.archive.read(ByteBuffer.wrap(buffer, offset, wanted), this.position);
+    if (r == -1) {
+      throw new EOFException();
+    }
+    this.position += r;
+    return r;
+  }
+
+  @Override
+  public long skip(
+    final long count)
+  {
+    final var skipped = Math.max(0L, Math.min(count, this.end - this.position));
+    this.position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available()
+  {
+    return (int) Math.min(Integer.MAX_VALUE, this.end - this.position);
+  }
+
+  private static final class InflatingStream extends InflaterInputStream
+  {
+    InflatingStream(
+      final InputStream stream,
+      final int bufferSize)
+    {
+      super(stream, new Inflater(true), bufferSize);
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      try {
+        super.close();
+      } finally {
+        this.inf.end();
+      }
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+/**
+ * Constants for the subset of the ZIP format produced by bundle writers.
+ *
+ * <p>All multi-byte values are little-endian. Archives are written with
+ * UTF-8 entry names, a fixed modification time, and no extra fields other
+ * than ZIP64 extended information where offsets or counts require it.</p>
+ */
+
+public final class OFZipFormat
+{
+  /**
+   * The signature of a local file header.
+   */
+
+  public static final int LOCAL_HEADER = 0x04034b50;
+
+  /**
+   * The size of a local file header, excluding the name and extra field.
+   */
+
+  public static final int LOCAL_HEADER_SIZE = 30;
+
+  /**
+   * The signature of a data descriptor.
+   */
+
+  public static final int DATA_DESCRIPTOR = 0x08074b50;
+
+  /**
+   * The signature of a central directory file header.
+   */
+
+  public static final int CENTRAL_HEADER = 0x02014b50;
+
+  /**
+   * The size of a central directory file header, excluding the name,
+   * extra field, and comment.
+   */
+
+  public static final int CENTRAL_HEADER_SIZE = 46;
+
+  /**
+   * The signature of the end of central directory record.
+   */
+
+  public static final int END_RECORD = 0x06054b50;
+
+  /**
+   * The size of the end of central directory record, excluding the comment.
+   */
+
+  public static final int END_RECORD_SIZE = 22;
+
+  /**
+   * The signature of the ZIP64 end of central directory record.
+   */
+
+  public static final int END_RECORD_ZIP64 = 0x06064b50;
+
+  /**
+   * The size of the ZIP64 end of central directory record.
+   */
+
+  public static final int END_RECORD_ZIP64_SIZE = 56;
+
+  /**
+   * The signature of the ZIP64 end of central directory locator.
+   */
+
+  public static final int END_LOCATOR_ZIP64 = 0x07064b50;
+
+  /**
+   * The size of the ZIP64 end of central directory locator.
+   */
+
+  public static final int END_LOCATOR_ZIP64_SIZE = 20;
+
+  /**
+   * The header ID of the ZIP64 extended information extra field.
+   */
+
+  public static final int EXTRA_ZIP64 = 0x0001;
+
+  /**
+   * The general purpose flag indicating that the entry is encrypted.
+   */
+
+  public static final int FLAG_ENCRYPTED = 0x0001;
+
+  /**
+   * The general purpose flag indicating that a data descriptor follows
+   * the entry data.
+   */
+
+  public static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+
+  /**
+   * The general purpose flag indicating that the entry name is UTF-8.
+   */
+
+  public static final int FLAG_UTF8 = 0x0800;
+
+  /**
+   * The stored (uncompressed) method.
+   */
+
+  public static final int METHOD_STORED = 0;
+
+  /**
+   * The deflate method.
+   */
+
+  public static final int METHOD_DEFLATED = 8;
+
+  /**
+   * The version needed to extract stored entries.
+   */
+
+  public static final int VERSION_STORED = 10;
+
+  /**
+   * The version needed to extract deflated entries.
+   */
+
+  public static final int VERSION_DEFLATED = 20;
+
+  /**
+   * The version needed to extract entries that use ZIP64 extensions.
+   */
+
+  public static final int VERSION_ZIP64 = 45;
+
+  /**
+   * The MS-DOS time used for all entries (00:00:00).
+   */
+
+  public static final int DOS_TIME = 0;
+
+  /**
+   * The MS-DOS date used for all entries (2000-01-01).
+   */
+
+  public static final int DOS_DATE = ((2000 - 1980) << 9) | (1 << 5) | 1;
+
+  /**
+   * The largest value representable in a 16-bit field.
+   */
+
+  public static final int LIMIT_16 = 0xffff;
+
+  /**
+   * The largest value representable in a 32-bit field. A field holding
+   * this value defers to the ZIP64 extended information.
+   */
+
+  public static final long LIMIT_32 = 0xffffffffL;
+
+  private OFZipFormat()
+  {
+
+  }
+}
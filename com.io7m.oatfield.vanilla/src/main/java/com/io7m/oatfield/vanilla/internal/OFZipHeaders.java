@@ -0,0 +1,276 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.nio.ByteBuffer;
+
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.CENTRAL_HEADER;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.DATA_DESCRIPTOR;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.DOS_DATE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.DOS_TIME;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_LOCATOR_ZIP64;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_ZIP64;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_ZIP64_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.EXTRA_ZIP64;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LIMIT_16;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LIMIT_32;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LOCAL_HEADER;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_DEFLATED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.VERSION_DEFLATED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.VERSION_STORED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.VERSION_ZIP64;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Functions to encode the fixed-size parts of ZIP records. The functions
+ * write into buffers that are known to have enough space, and the caller
+ * is responsible for appending the variable-length entry names. Keeping
+ * the encoding in one place guarantees that archives laid out ahead of
+ * time are byte-for-byte identical to archives written sequentially.
+ */
+
+final class OFZipHeaders
+{
+  /**
+   * The size of a data descriptor.
+   */
+
+  static final int DATA_DESCRIPTOR_SIZE = 16;
+
+  /**
+   * The size of the ZIP64 extended information in a central header.
+   */
+
+  static final int EXTRA_ZIP64_SIZE = 12;
+
+  private OFZipHeaders()
+  {
+
+  }
+
+  /**
+   * @param name The entry name
+   *
+   * @return The UTF-8 encoded entry name
+   */
+
+  static byte[] encodeName(
+    final String name)
+  {
+    final var encoded = UTF_8.encode(name);
+    final var bytes = new byte[encoded.remaining()];
+    encoded.get(bytes);
+    return bytes;
+  }
+
+  private static int versionOf(
+    final int method)
+  {
+    return method == METHOD_DEFLATED ? VERSION_DEFLATED : VERSION_STORED;
+  }
+
+  /**
+   * @param entry The entry
+   *
+   * @return {@code true} if the entry's central header requires ZIP64
+   * extended information
+   */
+
+  static boolean needsZip64(
+    final OFZipEntry entry)
+  {
+    return entry.localHeaderOffset() >= LIMIT_32;
+  }
+
+  /**
+   * @param count          The number of entries
+   * @param directoryStart The offset of the central directory
+   *
+   * @return {@code true} if the archive requires ZIP64 end records
+   */
+
+  static boolean needsZip64End(
+    final int count,
+    final long directoryStart)
+  {
+    return count >= LIMIT_16 || directoryStart >= LIMIT_32;
+  }
+
+  /**
+   * Encode a local file header, excluding the entry name.
+   *
+   * @param buffer     The target buffer
+   * @param entry      The entry
+   * @param nameLength The length of the encoded entry name
+   */
+
+  static void putLocalHeader(
+    final ByteBuffer buffer,
+    final OFZipEntry entry,
+    final int nameLength)
+  {
+    buffer.putInt(LOCAL_HEADER);
+    buffer.putShort((short) versionOf(entry.method()));
+    buffer.putShort((short) entry.flags());
+    buffer.putShort((short) entry.method());
+    buffer.putShort((short) DOS_TIME);
+    buffer.putShort((short) DOS_DATE);
+    buffer.putInt((int) entry.crc());
+    buffer.putInt((int) entry.compressedSize());
+    buffer.putInt((int) entry.size());
+    buffer.putShort((short) nameLength);
+    buffer.putShort((short) 0);
+  }
+
+  /**
+   * Encode a data descriptor.
+   *
+   * @param buffer The target buffer
+   * @param entry  The entry
+   */
+
+  static void putDataDescriptor(
+    final ByteBuffer buffer,
+    final OFZipEntry entry)
+  {
+    buffer.putInt(DATA_DESCRIPTOR);
+    buffer.putInt((int) entry.crc());
+    buffer.putInt((int) entry.compressedSize());
+    buffer.putInt((int) entry.size());
+  }
+
+  /**
+   * Encode a central directory header, excluding the entry name and any
+   * ZIP64 extended information.
+   *
+   * @param buffer     The target buffer
+   * @param entry      The entry
+   * @param nameLength The length of the encoded entry name
+   *
+   * @see #putCentralExtra(ByteBuffer, OFZipEntry)
+   */
+
+  static void putCentralHeader(
+    final ByteBuffer buffer,
+    final OFZipEntry entry,
+    final int nameLength)
+  {
+    final var zip64 = needsZip64(entry);
+    final var version = zip64 ? VERSION_ZIP64 : versionOf(entry.method());
+
+    buffer.putInt(CENTRAL_HEADER);
+    buffer.putShort((short) version);
+    buffer.putShort((short) version);
+    buffer.putShort((short) entry.flags());
+    buffer.putShort((short) entry.method());
+    buffer.putShort((short) DOS_TIME);
+    buffer.putShort((short) DOS_DATE);
+    buffer.putInt((int) entry.crc());
+    buffer.putInt((int) entry.compressedSize());
+    buffer.putInt((int) entry.size());
+    buffer.putShort((short) nameLength);
+    buffer.putShort((short) (zip64 ? EXTRA_ZIP64_SIZE : 0));
+    buffer.putShort((short) 0);
+    buffer.putShort((short) 0);
+    buffer.putShort((short) 0);
+    buffer.putInt(0);
+    buffer.putInt((int) Math.min(entry.localHeaderOffset(), LIMIT_32));
+  }
+
+  /**
+   * Encode the ZIP64 extended information that follows the name in a
+   * central directory header, if the entry requires it.
+   *
+   * @param buffer The target buffer
+   * @param entry  The entry
+   *
+   * @return The number of bytes written
+   */
+
+  static int putCentralExtra(
+    final ByteBuffer buffer,
+    final OFZipEntry entry)
+  {
+    if (!needsZip64(entry)) {
+      return 0;
+    }
+    buffer.putShort((short) EXTRA_ZIP64);
+    buffer.putShort((short) 8);
+    buffer.putLong(entry.localHeaderOffset());
+    return EXTRA_ZIP64_SIZE;
+  }
+
+  /**
+   * Encode the ZIP64 end record and locator.
+   *
+   * @param buffer         The target buffer
+   * @param recordStart    The offset of the ZIP64 end record
+   * @param directoryStart The offset of the central directory
+   * @param directorySize  The size of the central directory
+   * @param count          The number of entries
+   */
+
+  static void putEndRecords64(
+    final ByteBuffer buffer,
+    final long recordStart,
+    final long directoryStart,
+    final long directorySize,
+    final int count)
+  {
+    buffer.putInt(END_RECORD_ZIP64);
+    buffer.putLong(END_RECORD_ZIP64_SIZE - 12L);
+    buffer.putShort((short) VERSION_ZIP64);
+    buffer.putShort((short) VERSION_ZIP64);
+    buffer.putInt(0);
+    buffer.putInt(0);
+    buffer.putLong(count);
+    buffer.putLong(count);
+    buffer.putLong(directorySize);
+    buffer.putLong(directoryStart);
+
+    buffer.putInt(END_LOCATOR_ZIP64);
+    buffer.putInt(0);
+    buffer.putLong(recordStart);
+    buffer.putInt(1);
+  }
+
+  /**
+   * Encode the end of central directory record.
+   *
+   * @param buffer         The target buffer
+   * @param directoryStart The offset of the central directory
+   * @param directorySize  The size of the central directory
+   * @param count          The number of entries
+   */
+
+  static void putEndRecord(
+    final ByteBuffer buffer,
+    final long directoryStart,
+    final long directorySize,
+    final int count)
+  {
+    buffer.putInt(END_RECORD);
+    buffer.putShort((short) 0);
+    buffer.putShort((short) 0);
+    buffer.putShort((short) Math.min(count, LIMIT_16));
+    buffer.putShort((short) Math.min(count, LIMIT_16));
+    buffer.putInt((int) Math.min(directorySize, LIMIT_32));
+    buffer.putInt((int) Math.min(directoryStart, LIMIT_32));
+    buffer.putShort((short) 0);
+  }
+}
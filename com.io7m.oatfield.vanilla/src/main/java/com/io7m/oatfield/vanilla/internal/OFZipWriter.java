@@ -0,0 +1,645 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.CENTRAL_HEADER_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_LOCATOR_ZIP64_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.END_RECORD_ZIP64_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.FLAG_DATA_DESCRIPTOR;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.FLAG_ENCRYPTED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.FLAG_UTF8;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LIMIT_32;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.LOCAL_HEADER_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_DEFLATED;
+import static com.io7m.oatfield.vanilla.internal.OFZipFormat.METHOD_STORED;
+import static com.io7m.oatfield.vanilla.internal.OFZipHeaders.DATA_DESCRIPTOR_SIZE;
+import static com.io7m.oatfield.vanilla.internal.OFZipHeaders.EXTRA_ZIP64_SIZE;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * A minimal ZIP writer. Unlike {@link java.util.zip.ZipOutputStream}, the
+ * writer can copy already-compressed entry data from other archives without
+ * inflating and deflating it again.
+ */
+
+final class OFZipWriter implements Closeable
+{
+  private static final long MAP_WINDOW = 64L * 1024L * 1024L;
+
+  private final WritableByteChannel channel;
+  private final OFZipWriterContexts contexts;
+  private final OFZipWriterContext context;
+  private final ByteBuffer buffer;
+  private final List<OFZipEntry> written;
+  private final Set<String> names;
+  private final CRC32 crc;
+  private final Deflater deflater;
+  private final byte[] input;
+  private final OFDigests digests;
+  private long position;
+
+  /**
+   * A minimal ZIP writer. The writer takes a context from the given pool
+   * and returns it when closed.
+   *
+   * @param inChannel  The output channel
+   * @param inContexts The pool of writer contexts
+   * @param inLevel    The deflate level
+   * @param inStrategy The deflate strategy
+   * @param inDigests  The digests computed over the uncompressed content
+   *                   of each entry
+   */
+
+  OFZipWriter(
+    final WritableByteChannel inChannel,
+    final OFZipWriterContexts inContexts,
+    final int inLevel,
+    final int inStrategy,
+    final OFDigests inDigests)
+  {
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.contexts =
+      Objects.requireNonNull(inContexts, "contexts");
+    this.digests =
+      Objects.requireNonNull(inDigests, "digests");
+    this.context =
+      this.contexts.acquire();
+    this.written =
+      new ArrayList<>();
+    this.names =
+      new HashSet<>();
+
+    this.context.prepare(inLevel, inStrategy);
+    this.buffer = this.context.buffer();
+    this.crc = this.context.crc();
+    this.deflater = this.context.deflater();
+    this.input = this.context.input();
+  }
+
+  /**
+   * @return The manifest encoder belonging to this writer's context
+   */
+
+  OFManifestEncoder manifestEncoder()
+  {
+    return this.context.manifest();
+  }
+
+  /**
+   * @return The context belonging to this writer
+   */
+
+  OFZipWriterContext context()
+  {
+    return this.context;
+  }
+
+  /**
+   * The digests are reset when each entry is started. Once an entry has
+   * been written, the digests hold the digests of its uncompressed
+   * content. The digests of stored entries written with
+   * {@link #beginStored(String, long, long)} must be updated by the caller.
+   *
+   * @return The entry digests
+   */
+
+  OFDigests digests()
+  {
+    return this.digests;
+  }
+
+  /**
+   * @return The number of bytes written so far
+   */
+
+  long position()
+  {
+    return this.position;
+  }
+
+  /**
+   * Check that an entry size fits in the 32-bit fields of entry headers.
+   *
+   * @param name The entry name
+   * @param size The size
+   *
+   * @throws ZipException If the size is too large
+   */
+
+  static void checkEntrySize(
+    final String name,
+    final long size)
+    throws ZipException
+  {
+    if (size >= LIMIT_32) {
+      throw new ZipException(
+        "Entry '%s' is too large (%d bytes)".formatted(name, size));
+    }
+  }
+
+  /**
+   * Write a stored entry whose CRC and size are already known. The entry
+   * data must be written by the caller immediately afterwards using
+   * {@link #writeData(InputStream, long)}.
+   *
+   * @param name     The entry name
+   * @param crcValue The CRC32 of the data
+   * @param size     The size of the data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void beginStored(
+    final String name,
+    final long crcValue,
+    final long size)
+    throws IOException
+  {
+    checkEntrySize(name, size);
+    this.writeLocalHeader(
+      new OFZipEntry(name, FLAG_UTF8, METHOD_STORED, crcValue, size, size, 0L));
+  }
+
+  /**
+   * Copy the given stream into the archive verbatim.
+   *
+   * @param stream The stream
+   * @param size   The size declared when the entry was started
+   *
+   * @throws IOException On I/O errors, or if the stream does not yield
+   *                     exactly {@code size} bytes
+   */
+
+  void writeData(
+    final InputStream stream,
+    final long size)
+    throws IOException
+  {
+    var total = 0L;
+    while (true) {
+      final var r = stream.read(this.input);
+      if (r == -1) {
+        break;
+      }
+      total += r;
+      this.put(this.input, 0, r);
+    }
+    if (total != size) {
+      throw new ZipException(
+        "Entry content changed while writing (expected %d bytes, got %d)"
+          .formatted(size, total));
+    }
+  }
+
+  /**
+   * Write a stored entry holding the remaining bytes of the given buffer.
+   *
+   * @param name The entry name
+   * @param data The entry data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeStored(
+    final String name,
+    final ByteBuffer data)
+    throws IOException
+  {
+    this.crc.reset();
+    this.crc.update(data.duplicate());
+    this.digests.reset();
+    this.digests.update(data);
+    this.beginStored(name, this.crc.getValue(), data.remaining());
+    this.putBuffer(data.duplicate());
+  }
+
+  /**
+   * Write a stored entry holding the contents of the given file. Small
+   * files are read once into the writer's buffer. Larger files have their
+   * CRC computed over memory-mapped windows, and their data is moved with
+   * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so
+   * that the content never passes through the Java heap when the output
+   * is itself a file.
+   *
+   * @param name   The entry name
+   * @param source The file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeStored(
+    final String name,
+    final FileChannel source)
+    throws IOException
+  {
+    final var size = source.size();
+    checkEntrySize(name, size);
+
+    if (size <= this.input.length) {
+      final var data = ByteBuffer.wrap(this.input, 0, (int) size);
+      while (data.hasRemaining()) {
+        if (source.read(data, data.position()) == -1) {
+          throw new ZipException(
+            "Entry content changed while writing: " + name);
+        }
+      }
+      this.writeStored(name, data.flip());
+      return;
+    }
+
+    this.crc.reset();
+    this.digests.reset();
+    for (long at = 0L; at < size; at += MAP_WINDOW) {
+      final var length = Math.min(MAP_WINDOW, size - at);
+      final var window = source.map(READ_ONLY, at, length);
+      this.digests.update(window);
+      this.crc.update(window);
+    }
+
+    this.beginStored(name, this.crc.getValue(), size);
+    this.transferFrom(source, 0L, size);
+  }
+
+  /**
+   * Write a deflated entry, compressing the given stream. The CRC and
+   * sizes are written in a data descriptor following the entry data.
+   *
+   * @param name   The entry name
+   * @param stream The uncompressed data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeDeflated(
+    final String name,
+    final InputStream stream)
+    throws IOException
+  {
+    final var start = this.beginDeflated(name);
+    final var dataStart = this.position;
+
+    var size = 0L;
+    while (true) {
+      final var r = stream.read(this.input);
+      if (r == -1) {
+        break;
+      }
+      size += r;
+      this.crc.update(this.input, 0, r);
+      this.digests.update(this.input, 0, r);
+      this.deflater.setInput(this.input, 0, r);
+      this.deflateInput();
+    }
+
+    this.endDeflated(name, start, dataStart, size);
+  }
+
+  /**
+   * Write a deflated entry, compressing the remaining bytes of the given
+   * buffer. The CRC and sizes are written in a data descriptor following
+   * the entry data.
+   *
+   * @param name The entry name
+   * @param data The uncompressed data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeDeflated(
+    final String name,
+    final ByteBuffer data)
+    throws IOException
+  {
+    final var start = this.beginDeflated(name);
+    final var dataStart = this.position;
+    final var size = data.remaining();
+
+    this.crc.update(data.duplicate());
+    this.digests.update(data);
+    this.deflater.setInput(data.duplicate());
+    this.deflateInput();
+    this.endDeflated(name, start, dataStart, size);
+  }
+
+  private long beginDeflated(
+    final String name)
+    throws IOException
+  {
+    this.crc.reset();
+    this.digests.reset();
+    this.deflater.reset();
+    return this.writeLocalHeader(
+      new OFZipEntry(
+        name,
+        FLAG_UTF8 | FLAG_DATA_DESCRIPTOR,
+        METHOD_DEFLATED,
+        0L,
+        0L,
+        0L,
+        0L)
+    );
+  }
+
+  private void endDeflated(
+    final String name,
+    final long start,
+    final long dataStart,
+    final long size)
+    throws IOException
+  {
+    this.deflater.finish();
+    while (!this.deflater.finished()) {
+      this.deflate();
+    }
+
+    final var compressed = this.position - dataStart;
+    checkEntrySize(name, size);
+    checkEntrySize(name, compressed);
+
+    final var entry =
+      new OFZipEntry(
+        name,
+        FLAG_UTF8 | FLAG_DATA_DESCRIPTOR,
+        METHOD_DEFLATED,
+        this.crc.getValue(),
+        compressed,
+        size,
+        start
+      );
+
+    this.ensure(DATA_DESCRIPTOR_SIZE);
+    OFZipHeaders.putDataDescriptor(this.buffer, entry);
+    this.position += DATA_DESCRIPTOR_SIZE;
+    this.written.set(this.written.size() - 1, entry);
+  }
+
+  /**
+   * Copy an entry from an existing archive without decompressing it.
+   *
+   * @param name    The name of the new entry
+   * @param archive The source archive
+   * @param entry   The source entry
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void writeRaw(
+    final String name,
+    final OFZipArchive archive,
+    final OFZipEntry entry)
+    throws IOException
+  {
+    checkRawEntry(name, archive, entry);
+
+    final var dataOffset = archive.dataOffset(entry);
+    this.digests.reset();
+    this.digests.updateFromEntry(
+      archive.channel(), dataOffset, entry, this.input);
+    this.writeLocalHeader(
+      new OFZipEntry(
+        name,
+        FLAG_UTF8,
+        entry.method(),
+        entry.crc(),
+        entry.compressedSize(),
+        entry.size(),
+        0L)
+    );
+    this.transferFrom(archive.channel(), dataOffset, entry.compressedSize());
+  }
+
+  /**
+   * Check that an entry in an existing archive can be copied without
+   * decompressing it.
+   *
+   * @param name    The name of the new entry
+   * @param archive The source archive
+   * @param entry   The source entry
+   *
+   * @throws ZipException If the entry cannot be copied
+   */
+
+  static void checkRawEntry(
+    final String name,
+    final OFZipArchive archive,
+    final OFZipEntry entry)
+    throws ZipException
+  {
+    if ((entry.flags() & FLAG_ENCRYPTED) != 0) {
+      throw new ZipException(
+        "%s: Entry '%s' is encrypted".formatted(archive.path(), entry.name()));
+    }
+    if (entry.method() != METHOD_STORED && entry.method() != METHOD_DEFLATED) {
+      throw new ZipException(
+        "%s: Entry '%s' uses unsupported compression method %d"
+          .formatted(archive.path(), entry.name(), entry.method()));
+    }
+
+    checkEntrySize(name, entry.size());
+    checkEntrySize(name, entry.compressedSize());
+  }
+
+  /**
+   * Write the central directory and end records. No further entries may be
+   * written.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void finish()
+    throws IOException
+  {
+    final var directoryStart = this.position;
+    for (final var entry : this.written) {
+      this.writeCentralHeader(entry);
+    }
+    final var directorySize = this.position - directoryStart;
+    final var count = this.written.size();
+
+    if (OFZipHeaders.needsZip64End(count, directoryStart)) {
+      this.ensure(END_RECORD_ZIP64_SIZE + END_LOCATOR_ZIP64_SIZE);
+      OFZipHeaders.putEndRecords64(
+        this.buffer, this.position, directoryStart, directorySize, count);
+      this.position += END_RECORD_ZIP64_SIZE + END_LOCATOR_ZIP64_SIZE;
+    }
+
+    this.ensure(END_RECORD_SIZE);
+    OFZipHeaders.putEndRecord(
+      this.buffer, directoryStart, directorySize, count);
+    this.position += END_RECORD_SIZE;
+    this.flush();
+  }
+
+  private long writeLocalHeader(
+    final OFZipEntry entry)
+    throws IOException
+  {
+    if (!this.names.add(entry.name())) {
+      throw new ZipException("Duplicate entry: " + entry.name());
+    }
+
+    final var start = this.position;
+    final var nameBytes = OFZipHeaders.encodeName(entry.name());
+    this.ensure(LOCAL_HEADER_SIZE);
+    OFZipHeaders.putLocalHeader(this.buffer, entry, nameBytes.length);
+    this.position += LOCAL_HEADER_SIZE;
+    this.put(nameBytes, 0, nameBytes.length);
+
+    this.written.add(
+      new OFZipEntry(
+        entry.name(),
+        entry.flags(),
+        entry.method(),
+        entry.crc(),
+        entry.compressedSize(),
+        entry.size(),
+        start)
+    );
+    return start;
+  }
+
+  private void writeCentralHeader(
+    final OFZipEntry entry)
+    throws IOException
+  {
+    final var nameBytes = OFZipHeaders.encodeName(entry.name());
+    this.ensure(CENTRAL_HEADER_SIZE);
+    OFZipHeaders.putCentralHeader(this.buffer, entry, nameBytes.length);
+    this.position += CENTRAL_HEADER_SIZE;
+    this.put(nameBytes, 0, nameBytes.length);
+
+    this.ensure(EXTRA_ZIP64_SIZE);
+    this.position += OFZipHeaders.putCentralExtra(this.buffer, entry);
+  }
+
+  private void deflate()
+    throws IOException
+  {
+    if (!this.buffer.hasRemaining()) {
+      this.flush();
+    }
+    final var n = this.deflater.deflate(this.buffer);
+    this.position += n;
+  }
+
+  private void deflateInput()
+    throws IOException
+  {
+    while (!this.deflater.needsInput()) {
+      this.deflate();
+    }
+  }
+
+  private void putBuffer(
+    final ByteBuffer data)
+    throws IOException
+  {
+    final var length = data.remaining();
+    if (length <= this.buffer.remaining()) {
+      this.buffer.put(data);
+    } else {
+      this.flush();
+      while (data.hasRemaining()) {
+        this.channel.write(data);
+      }
+    }
+    this.position += length;
+  }
+
+  private void put(
+    final byte[] data,
+    final int offset,
+    final int length)
+    throws IOException
+  {
+    var at = offset;
+    var remaining = length;
+    while (remaining > 0) {
+      if (!this.buffer.hasRemaining()) {
+        this.flush();
+      }
+      final var count = Math.min(remaining, this.buffer.remaining());
+      this.buffer.put(data, at, count);
+      at += count;
+      remaining -= count;
+    }
+    this.position += length;
+  }
+
+  private void transferFrom(
+    final FileChannel source,
+    final long offset,
+    final long count)
+    throws IOException
+  {
+    this.flush();
+
+    var at = offset;
+    var remaining = count;
+    while (remaining > 0L) {
+      final var n = source.transferTo(at, remaining, this.channel);
+      if (n <= 0L) {
+        throw new ZipException("Unexpected end of source data");
+      }
+      at += n;
+      remaining -= n;
+    }
+    this.position += count;
+  }
+
+  private void ensure(
+    final int count)
+    throws IOException
+  {
+    if (this.buffer.remaining() < count) {
+      this.flush();
+    }
+  }
+
+  private void flush()
+    throws IOException
+  {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.channel.write(this.buffer);
+    }
+    this.buffer.clear();
+  }
+
+  @Override
+  public void close()
+  {
+    this.contexts.release(this.context);
+  }
+}
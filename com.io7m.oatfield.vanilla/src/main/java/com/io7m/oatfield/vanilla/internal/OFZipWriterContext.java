@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * The reusable state of a ZIP writer: I/O buffers, checksums, native
+ * deflaters, and the manifest encoder. A context is used by one writer at
+ * a time.
+ *
+ * @see OFZipWriterContexts
+ */
+
+final class OFZipWriterContext
+{
+  /**
+   * The size of the writer's buffers.
+   */
+
+  static final int BUFFER_SIZE = 65536;
+
+  private final ByteBuffer buffer;
+  private final byte[] input;
+  private final byte[] sample;
+  private final CRC32 crc;
+  private final Deflater deflater;
+  private final OFManifestEncoder manifest;
+  private Deflater sampler;
+
+  OFZipWriterContext()
+  {
+    this.buffer =
+      ByteBuffer.allocateDirect(BUFFER_SIZE).order(LITTLE_ENDIAN);
+    this.input =
+      new byte[BUFFER_SIZE];
+    this.sample =
+      new byte[BUFFER_SIZE];
+    this.crc =
+      new CRC32();
+    this.deflater =
+      new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    this.manifest =
+      new OFManifestEncoder();
+  }
+
+  /**
+   * Reset all state ready for a new archive.
+   *
+   * @param level    The deflate level
+   * @param strategy The deflate strategy
+   */
+
+  void prepare(
+    final int level,
+    final int strategy)
+  {
+    this.buffer.clear();
+    this.crc.reset();
+    this.deflater.reset();
+    this.deflater.setLevel(level);
+    this.deflater.setStrategy(strategy);
+    this.manifest.reset();
+  }
+
+  OFManifestEncoder manifest()
+  {
+    return this.manifest;
+  }
+
+  ByteBuffer buffer()
+  {
+    return this.buffer;
+  }
+
+  byte[] input()
+  {
+    return this.input;
+  }
+
+  byte[] sample()
+  {
+    return this.sample;
+  }
+
+  CRC32 crc()
+  {
+    return this.crc;
+  }
+
+  Deflater deflater()
+  {
+    return this.deflater;
+  }
+
+  Deflater sampler()
+  {
+    if (this.sampler == null) {
+      this.sampler = new Deflater(Deflater.BEST_SPEED, true);
+    }
+    return this.sampler;
+  }
+
+  /**
+   * Read a sample from the start of the given stream into the context's
+   * sample buffer.
+   *
+   * @param stream The stream
+   *
+   * @return The sample
+   *
+   * @throws IOException On I/O errors
+   */
+
+  ByteBuffer readSample(
+    final InputStream stream)
+    throws IOException
+  {
+    final var r = stream.readNBytes(this.sample, 0, this.sample.length);
+    return ByteBuffer.wrap(this.sample, 0, r);
+  }
+
+  /**
+   * Decide whether deflating content is worthwhile by deflating a sample
+   * of it at the fastest level. Content is considered compressible if the
+   * sample shrinks by at least 10%.
+   *
+   * @param data A sample of the content; at most {@link #BUFFER_SIZE}
+   *             bytes are examined
+   *
+   * @return {@code true} if the content should be deflated
+   */
+
+  boolean isCompressible(
+    final ByteBuffer data)
+  {
+    final var inputSize = (long) Math.min(data.remaining(), BUFFER_SIZE);
+    if (inputSize == 0L) {
+      return false;
+    }
+
+    final var deflate = this.sampler();
+    final var limit = (inputSize * 9L) / 10L;
+    final var scratch = ByteBuffer.wrap(this.input);
+    deflate.reset();
+    deflate.setInput(data.slice(data.position(), (int) inputSize));
+    deflate.finish();
+
+    var outputSize = 0L;
+    while (!deflate.finished() && outputSize < limit) {
+      outputSize += deflate.deflate(scratch.clear());
+    }
+    return outputSize < limit;
+  }
+
+  /**
+   * Release the native resources held by this context.
+   */
+
+  void end()
+  {
+    this.deflater.end();
+    if (this.sampler != null) {
+      this.sampler.end();
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2022 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.oatfield.vanilla.internal;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread-safe pool of ZIP writer contexts. Writers created by the same
+ * factory share a pool, so that writing many bundles recycles deflaters
+ * and buffers rather than allocating new ones for every bundle.
+ */
+
+public final class OFZipWriterContexts
+{
+  private final ConcurrentLinkedQueue<OFZipWriterContext> idle;
+  private final AtomicInteger idleCount;
+  private final int maximumIdle;
+
+  /**
+   * A thread-safe pool of ZIP writer contexts.
+   *
+   * @param inMaximumIdle The maximum number of idle contexts retained
+   */
+
+  public OFZipWriterContexts(
+    final int inMaximumIdle)
+  {
+    if (inMaximumIdle < 0) {
+      throw new IllegalArgumentException(
+        "Maximum idle count %d must be non-negative"
+          .formatted(Integer.valueOf(inMaximumIdle))
+      );
+    }
+
+    this.maximumIdle =
+      inMaximumIdle;
+    this.idle =
+      new ConcurrentLinkedQueue<>();
+    this.idleCount =
+      new AtomicInteger(0);
+  }
+
+  /**
+   * A thread-safe pool of ZIP writer contexts that retains up to two idle
+   * contexts per available processor.
+   */
+
+  public OFZipWriterContexts()
+  {
+    this(Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  OFZipWriterContext acquire()
+  {
+    final var context = this.idle.poll();
+    if (context != null) {
+      this.idleCount.decrementAndGet();
+      return context;
+    }
+    return new OFZipWriterContext();
+  }
+
+  void release(
+    final OFZipWriterContext context)
+  {
+    if (this.idleCount.incrementAndGet() <= this.maximumIdle) {
+      this.idle.offer(context);
+    } else {
+      this.idleCount.decrementAndGet();
+      context.end();
+    }
+  }
+
+  /**
+   * @return The number of idle contexts currently retained
+   */
+
+  public int idleCount()
+  {
+    return this.idleCount.get();
+  }
+}